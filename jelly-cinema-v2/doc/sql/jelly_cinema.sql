@@ -177,12 +177,71 @@ CREATE TABLE `t_chat_msg` (
     `update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
     `deleted` TINYINT NOT NULL DEFAULT 0 COMMENT '逻辑删除',
     PRIMARY KEY (`id`),
-    KEY `idx_session_id` (`session_id`),
+    KEY `idx_session_seq` (`session_id`, `msg_seq`),
     KEY `idx_from_id` (`from_id`),
     KEY `idx_to_id` (`to_id`),
     KEY `idx_msg_seq` (`msg_seq`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='IM消息表';
 
+-- -------------------------------------------
+-- IM 用户会话索引表（会话列表的持久化副本）
+-- -------------------------------------------
+DROP TABLE IF EXISTS `t_im_conversation`;
+CREATE TABLE `t_im_conversation` (
+    `id` BIGINT NOT NULL COMMENT '主键ID',
+    `user_id` BIGINT NOT NULL COMMENT '用户ID',
+    `session_id` VARCHAR(100) NOT NULL COMMENT '会话ID',
+    `type` TINYINT NOT NULL DEFAULT 1 COMMENT '会话类型：1-单聊，2-群聊',
+    `target_id` BIGINT NOT NULL COMMENT '对方用户ID / 群ID',
+    `last_msg_id` BIGINT DEFAULT NULL COMMENT '最后一条消息ID',
+    `last_message` VARCHAR(500) DEFAULT NULL COMMENT '最后一条消息摘要',
+    `last_time` DATETIME DEFAULT NULL COMMENT '最后一条消息时间',
+    `unread_count` INT NOT NULL DEFAULT 0 COMMENT '未读消息数',
+    `create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    `deleted` TINYINT NOT NULL DEFAULT 0 COMMENT '逻辑删除（会话已从列表移除）',
+    PRIMARY KEY (`id`),
+    UNIQUE KEY `uk_user_session` (`user_id`, `session_id`),
+    KEY `idx_user_last_time` (`user_id`, `last_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='IM用户会话索引表';
+
+-- -------------------------------------------
+-- IM 已读水位表（每个用户在每个会话中已读到的序列号）
+-- -------------------------------------------
+DROP TABLE IF EXISTS `t_im_read_watermark`;
+CREATE TABLE `t_im_read_watermark` (
+    `id` BIGINT NOT NULL COMMENT '主键ID',
+    `user_id` BIGINT NOT NULL COMMENT '用户ID',
+    `session_id` VARCHAR(100) NOT NULL COMMENT '会话ID',
+    `read_seq` BIGINT NOT NULL DEFAULT 0 COMMENT '已读到的消息序列号（含）',
+    `create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    `deleted` TINYINT NOT NULL DEFAULT 0 COMMENT '逻辑删除',
+    PRIMARY KEY (`id`),
+    UNIQUE KEY `uk_user_session` (`user_id`, `session_id`),
+    KEY `idx_session_id` (`session_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='IM已读水位表';
+
+-- -------------------------------------------
+-- IM 离线消息溢出表（Redis 离线收件箱超过上限后的较早消息，送达确认后删除）
+-- -------------------------------------------
+DROP TABLE IF EXISTS `t_im_offline_msg`;
+CREATE TABLE `t_im_offline_msg` (
+    `id` BIGINT NOT NULL COMMENT '主键ID',
+    `user_id` BIGINT NOT NULL COMMENT '接收者ID',
+    `message_id` BIGINT NOT NULL COMMENT '消息ID',
+    `session_type` TINYINT DEFAULT NULL COMMENT '会话类型：1-私聊，2-群聊',
+    `payload` TEXT NOT NULL COMMENT '消息内容（JSON）',
+    `msg_time` BIGINT NOT NULL COMMENT '消息时间戳（毫秒）',
+    `create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    `deleted` TINYINT NOT NULL DEFAULT 0 COMMENT '逻辑删除',
+    PRIMARY KEY (`id`),
+    UNIQUE KEY `uk_user_message` (`user_id`, `message_id`),
+    KEY `idx_user_time` (`user_id`, `msg_time`),
+    KEY `idx_msg_time` (`msg_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='IM离线消息溢出表';
+
 -- -------------------------------------------
 -- 群组表
 -- -------------------------------------------
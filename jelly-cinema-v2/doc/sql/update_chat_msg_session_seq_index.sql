@@ -0,0 +1,6 @@
+-- 历史消息按 (session_id, msg_seq) 游标分页
+-- 复合索引按会话内序列号有序，WHERE session_id = ? AND msg_seq < ? ORDER BY msg_seq DESC LIMIT n 为索引范围扫描，无需排序
+-- 原 idx_session_id 是新索引的前缀，一并删除
+ALTER TABLE `t_chat_msg`
+ADD INDEX `idx_session_seq` (`session_id`, `msg_seq`),
+DROP INDEX `idx_session_id`;
@@ -0,0 +1,19 @@
+-- 添加用户会话索引表
+-- 会话列表由 Redis 中的会话索引提供，本表为其持久化副本，索引丢失时据此恢复
+CREATE TABLE IF NOT EXISTS `t_im_conversation` (
+    `id` BIGINT NOT NULL COMMENT '主键ID',
+    `user_id` BIGINT NOT NULL COMMENT '用户ID',
+    `session_id` VARCHAR(100) NOT NULL COMMENT '会话ID',
+    `type` TINYINT NOT NULL DEFAULT 1 COMMENT '会话类型：1-单聊，2-群聊',
+    `target_id` BIGINT NOT NULL COMMENT '对方用户ID / 群ID',
+    `last_msg_id` BIGINT DEFAULT NULL COMMENT '最后一条消息ID',
+    `last_message` VARCHAR(500) DEFAULT NULL COMMENT '最后一条消息摘要',
+    `last_time` DATETIME DEFAULT NULL COMMENT '最后一条消息时间',
+    `unread_count` INT NOT NULL DEFAULT 0 COMMENT '未读消息数',
+    `create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    `deleted` TINYINT NOT NULL DEFAULT 0 COMMENT '逻辑删除（会话已从列表移除）',
+    PRIMARY KEY (`id`),
+    UNIQUE KEY `uk_user_session` (`user_id`, `session_id`),
+    KEY `idx_user_last_time` (`user_id`, `last_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='IM用户会话索引表';
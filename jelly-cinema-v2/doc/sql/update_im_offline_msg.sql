@@ -0,0 +1,18 @@
+-- 添加离线消息溢出表
+-- 离线消息按页投递：Redis 中每个用户最多保留 netty.offline.redis-cap 条，超出的最早消息溢出到本表，
+-- 登录后先投递本表中的消息，客户端确认后物理删除；超过 7 天未投递的消息定期清理
+CREATE TABLE IF NOT EXISTS `t_im_offline_msg` (
+    `id` BIGINT NOT NULL COMMENT '主键ID',
+    `user_id` BIGINT NOT NULL COMMENT '接收者ID',
+    `message_id` BIGINT NOT NULL COMMENT '消息ID',
+    `session_type` TINYINT DEFAULT NULL COMMENT '会话类型：1-私聊，2-群聊',
+    `payload` TEXT NOT NULL COMMENT '消息内容（JSON）',
+    `msg_time` BIGINT NOT NULL COMMENT '消息时间戳（毫秒）',
+    `create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    `deleted` TINYINT NOT NULL DEFAULT 0 COMMENT '逻辑删除',
+    PRIMARY KEY (`id`),
+    UNIQUE KEY `uk_user_message` (`user_id`, `message_id`),
+    KEY `idx_user_time` (`user_id`, `msg_time`),
+    KEY `idx_msg_time` (`msg_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='IM离线消息溢出表';
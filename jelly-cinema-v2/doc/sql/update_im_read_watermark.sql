@@ -0,0 +1,15 @@
+-- 添加已读水位表
+-- 已读不再逐条更新 t_chat_msg.read_status，而是推进 (user_id, session_id) 的已读序列号，一次已读只需一条 upsert
+-- 私聊消息的已读状态由接收方水位推导：msg_seq <= read_seq 即为已读
+CREATE TABLE IF NOT EXISTS `t_im_read_watermark` (
+    `id` BIGINT NOT NULL COMMENT '主键ID',
+    `user_id` BIGINT NOT NULL COMMENT '用户ID',
+    `session_id` VARCHAR(100) NOT NULL COMMENT '会话ID',
+    `read_seq` BIGINT NOT NULL DEFAULT 0 COMMENT '已读到的消息序列号（含）',
+    `create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    `deleted` TINYINT NOT NULL DEFAULT 0 COMMENT '逻辑删除',
+    PRIMARY KEY (`id`),
+    UNIQUE KEY `uk_user_session` (`user_id`, `session_id`),
+    KEY `idx_session_id` (`session_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='IM已读水位表';
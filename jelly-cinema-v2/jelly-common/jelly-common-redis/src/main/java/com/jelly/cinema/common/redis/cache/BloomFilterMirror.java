@@ -0,0 +1,187 @@
+package com.jelly.cinema.common.redis.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBloomFilter;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BloomFilter 本地镜像管理
+ *
+ * 为每个 Redisson BloomFilter 维护一个 {@link LocalBloomFilter}：
+ * - 后台线程按固定间隔全量同步
+ * - 本节点写入后通过 Redis Pub/Sub 广播新增的位下标，其他节点增量更新；批量写入则广播全量同步信号
+ *
+ * 消息格式：{filterName}\n{index,index,...}，第二行为 * 表示需要全量同步
+ *
+ * @author Jelly Cinema
+ */
+@Slf4j
+@Component
+public class BloomFilterMirror {
+
+    private static final String RESYNC = "*";
+
+    private final RedissonClient redissonClient;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    private final Map<String, LocalBloomFilter<?>> filters = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService syncExecutor;
+
+    @Value("${jelly.cache.bloom.channel:bloom:sync}")
+    private String channel;
+
+    @Value("${jelly.cache.bloom.sync-interval-seconds:60}")
+    private long syncIntervalSeconds;
+
+    public BloomFilterMirror(RedissonClient redissonClient, RedisTemplate<String, Object> redisTemplate,
+                             RedisMessageListenerContainer listenerContainer) {
+        this.redissonClient = redissonClient;
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+    }
+
+    @PostConstruct
+    public void init() {
+        listenerContainer.addMessageListener(new BloomSyncListener(), new ChannelTopic(channel));
+
+        syncExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bloom-filter-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncExecutor.scheduleWithFixedDelay(this::syncAll, syncIntervalSeconds, syncIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (syncExecutor != null) {
+            syncExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 获取（或创建并首次同步）指定 BloomFilter 的本地镜像
+     *
+     * @param filterName Redis 中的 BloomFilter 名称
+     */
+    @SuppressWarnings("unchecked")
+    public <T> LocalBloomFilter<T> get(String filterName) {
+        return (LocalBloomFilter<T>) filters.computeIfAbsent(filterName, name -> {
+            RBloomFilter<T> remote = redissonClient.getBloomFilter(name);
+            LocalBloomFilter<T> filter = new LocalBloomFilter<>(name, remote, redissonClient.getBitSet(name));
+            filter.sync();
+            log.info("创建 BloomFilter 本地镜像: name={}, ready={}", name, filter.isReady());
+            return filter;
+        });
+    }
+
+    /**
+     * 添加元素并通知其他节点
+     */
+    public <T> void add(String filterName, T value) {
+        LocalBloomFilter<T> filter = get(filterName);
+        long[] indexes = filter.add(value);
+        if (indexes.length == 0) {
+            publish(filterName, RESYNC);
+            return;
+        }
+        StringBuilder payload = new StringBuilder();
+        for (long index : indexes) {
+            if (!payload.isEmpty()) {
+                payload.append(',');
+            }
+            payload.append(index);
+        }
+        publish(filterName, payload.toString());
+    }
+
+    /**
+     * 批量添加元素并通知其他节点全量同步
+     */
+    public <T> void addAll(String filterName, Collection<T> values) {
+        if (values == null || values.isEmpty()) {
+            return;
+        }
+        LocalBloomFilter<T> filter = get(filterName);
+        filter.addAll(values);
+        publish(filterName, RESYNC);
+    }
+
+    /**
+     * 检查元素是否可能存在（本地计算）
+     */
+    public <T> boolean mightContain(String filterName, T value) {
+        LocalBloomFilter<T> filter = get(filterName);
+        return filter.mightContain(value);
+    }
+
+    /**
+     * 立即全量同步所有镜像
+     */
+    public void syncAll() {
+        filters.values().forEach(LocalBloomFilter::sync);
+    }
+
+    private void publish(String filterName, String body) {
+        try {
+            byte[] channelBytes = channel.getBytes(StandardCharsets.UTF_8);
+            byte[] message = (filterName + "\n" + body).getBytes(StandardCharsets.UTF_8);
+            redisTemplate.execute((RedisCallback<Long>) connection -> connection.publish(channelBytes, message));
+        } catch (Exception e) {
+            // 其他节点会在下一次周期同步时补齐
+            log.warn("广播 BloomFilter 更新失败: name={}, error={}", filterName, e.getMessage());
+        }
+    }
+
+    /**
+     * BloomFilter 同步消息监听器
+     */
+    private class BloomSyncListener implements MessageListener {
+        @Override
+        public void onMessage(Message message, byte[] pattern) {
+            String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split("\n", 2);
+            if (parts.length < 2) {
+                return;
+            }
+            LocalBloomFilter<?> filter = filters.get(parts[0]);
+            if (filter == null) {
+                return;
+            }
+
+            try {
+                if (RESYNC.equals(parts[1])) {
+                    syncExecutor.execute(filter::sync);
+                    return;
+                }
+                String[] values = parts[1].split(",");
+                long[] indexes = new long[values.length];
+                for (int i = 0; i < values.length; i++) {
+                    indexes[i] = Long.parseLong(values[i]);
+                }
+                filter.applyIndexes(indexes);
+            } catch (Exception e) {
+                log.error("处理 BloomFilter 同步消息失败: name={}", parts[0], e);
+            }
+        }
+    }
+}
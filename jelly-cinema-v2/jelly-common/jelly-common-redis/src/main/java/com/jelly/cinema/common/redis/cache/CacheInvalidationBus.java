@@ -0,0 +1,210 @@
+package com.jelly.cinema.common.redis.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+/**
+ * 本地缓存跨节点失效总线
+ *
+ * 基于 Redis Pub/Sub 广播 L1 失效消息，替代依赖 Keyspace Notifications 的 {@link CacheKeyEventListener}：
+ * - 写入/删除时只登记待失效 Key，由后台线程按固定间隔合并发送（同一 Key 在一个周期内只发一次）
+ * - 单条消息携带一批 Key，按 maxBatchSize 分片
+ * - 节点忽略自己发出的消息（本地已在写入时处理）
+ *
+ * 消息格式（UTF-8 文本，按行分隔）：
+ * 第一行为发送节点 ID，其后每行一个条目 {cacheName}:{key}，key 为 * 表示清空整个缓存
+ *
+ * @author Jelly Cinema
+ */
+@Slf4j
+@Component
+public class CacheInvalidationBus {
+
+    /**
+     * 清空整个缓存的标记
+     */
+    public static final String ALL_KEYS = "*";
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    /**
+     * 当前节点 ID（用于过滤自身消息）
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    /**
+     * 待发送的失效条目（天然去重）
+     */
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 失效处理器（cacheName, key）
+     */
+    private final List<BiConsumer<String, String>> handlers = new CopyOnWriteArrayList<>();
+
+    private final AtomicBoolean flushing = new AtomicBoolean(false);
+
+    private ScheduledExecutorService flushExecutor;
+
+    @Value("${jelly.cache.invalidation.enabled:true}")
+    private boolean enabled;
+
+    @Value("${jelly.cache.invalidation.channel:cache:invalidation}")
+    private String channel;
+
+    @Value("${jelly.cache.invalidation.flush-interval-ms:20}")
+    private long flushIntervalMs;
+
+    @Value("${jelly.cache.invalidation.max-batch-size:500}")
+    private int maxBatchSize;
+
+    public CacheInvalidationBus(RedisTemplate<String, Object> redisTemplate,
+                                RedisMessageListenerContainer listenerContainer) {
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            log.info("本地缓存失效总线未启用");
+            return;
+        }
+
+        listenerContainer.addMessageListener(new InvalidationListener(), new ChannelTopic(channel));
+
+        flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cache-invalidation-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flushExecutor.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+
+        log.info("本地缓存失效总线已启动: channel={}, nodeId={}, flushInterval={}ms",
+                channel, nodeId, flushIntervalMs);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (flushExecutor != null) {
+            flushExecutor.shutdown();
+            // 发送剩余的失效消息
+            flush();
+        }
+    }
+
+    /**
+     * 注册失效处理器（收到其他节点的失效消息时回调）
+     */
+    public void register(BiConsumer<String, String> handler) {
+        handlers.add(handler);
+    }
+
+    /**
+     * 登记单个 Key 失效，等待下一个周期合并发送
+     */
+    public void publish(String cacheName, String key) {
+        if (enabled) {
+            pending.add(cacheName + ":" + key);
+        }
+    }
+
+    /**
+     * 登记整个缓存清空
+     */
+    public void publishClear(String cacheName) {
+        publish(cacheName, ALL_KEYS);
+    }
+
+    /**
+     * 合并发送待失效条目
+     */
+    void flush() {
+        if (pending.isEmpty() || !flushing.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            List<String> batch = new ArrayList<>(Math.min(pending.size(), maxBatchSize));
+            Iterator<String> iterator = pending.iterator();
+            while (iterator.hasNext()) {
+                batch.add(iterator.next());
+                iterator.remove();
+                if (batch.size() >= maxBatchSize) {
+                    send(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                send(batch);
+            }
+        } catch (Exception e) {
+            log.error("发送本地缓存失效消息失败", e);
+        } finally {
+            flushing.set(false);
+        }
+    }
+
+    private void send(List<String> entries) {
+        StringBuilder payload = new StringBuilder(nodeId);
+        for (String entry : entries) {
+            payload.append('\n').append(entry);
+        }
+        byte[] channelBytes = channel.getBytes(StandardCharsets.UTF_8);
+        byte[] body = payload.toString().getBytes(StandardCharsets.UTF_8);
+        redisTemplate.execute((RedisCallback<Long>) connection -> connection.publish(channelBytes, body));
+        log.debug("发送本地缓存失效消息: size={}", entries.size());
+    }
+
+    /**
+     * 失效消息监听器
+     */
+    private class InvalidationListener implements MessageListener {
+        @Override
+        public void onMessage(Message message, byte[] pattern) {
+            String[] lines = new String(message.getBody(), StandardCharsets.UTF_8).split("\n");
+            if (lines.length < 2 || nodeId.equals(lines[0])) {
+                return;
+            }
+
+            for (int i = 1; i < lines.length; i++) {
+                String[] parts = lines[i].split(":", 2);
+                if (parts.length < 2) {
+                    continue;
+                }
+                for (BiConsumer<String, String> handler : handlers) {
+                    try {
+                        handler.accept(parts[0], parts[1]);
+                    } catch (Exception e) {
+                        log.error("处理本地缓存失效消息失败: entry={}", lines[i], e);
+                    }
+                }
+            }
+            log.debug("收到本地缓存失效消息: from={}, size={}", lines[0], lines.length - 1);
+        }
+    }
+}
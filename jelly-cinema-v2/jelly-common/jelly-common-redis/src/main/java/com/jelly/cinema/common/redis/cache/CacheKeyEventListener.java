@@ -2,6 +2,7 @@ package com.jelly.cinema.common.redis.cache;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.data.redis.connection.Message;
 import org.springframework.data.redis.connection.MessageListener;
 import org.springframework.data.redis.listener.KeyExpirationEventMessageListener;
@@ -27,11 +28,15 @@ import java.nio.charset.StandardCharsets;
  * CONFIG SET notify-keyspace-events "Kg"  # 监听通用命令和过期
  * CONFIG SET notify-keyspace-events "AKE" # 监听所有事件
  * 
+ * 默认关闭（跨节点失效由 {@link CacheInvalidationBus} 负责），
+ * 需要时设置 jelly.cache.keyspace-events.enabled=true 开启
+ * 
  * @author Jelly Cinema
  */
 @Slf4j
 @Component
 @RequiredArgsConstructor
+@ConditionalOnProperty(name = "jelly.cache.keyspace-events.enabled", havingValue = "true", matchIfMissing = false)
 public class CacheKeyEventListener {
 
     private final RedisMessageListenerContainer listenerContainer;
@@ -150,6 +155,7 @@ public class CacheKeyEventListener {
  */
 @Slf4j
 @Component
+@ConditionalOnProperty(name = "jelly.cache.keyspace-events.enabled", havingValue = "true", matchIfMissing = false)
 class CacheKeyExpirationListener extends KeyExpirationEventMessageListener {
 
     private final MultiLevelCache multiLevelCache;
@@ -0,0 +1,117 @@
+package com.jelly.cinema.common.redis.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 缓存指标
+ *
+ * 按缓存名称统计各层命中、回源次数与耗时、BloomFilter 拦截和互斥锁等待时间，
+ * 通过 Actuator（/actuator/prometheus）暴露：
+ * - jelly.cache.gets{cache, result=l1_hit|l2_hit|miss}
+ * - jelly.cache.loads{cache, outcome=success|empty|failure}（Timer，含百分位直方图）
+ * - jelly.cache.bloom.rejections{filter}
+ * - jelly.cache.mutex.wait{cache}（Timer）
+ * - cache.*{cache, tier=l1}（Caffeine 自带统计）
+ *
+ * @author Jelly Cinema
+ */
+@Component
+public class CacheMetrics {
+
+    public static final String L1_HIT = "l1_hit";
+    public static final String L2_HIT = "l2_hit";
+    public static final String MISS = "miss";
+
+    private final MeterRegistry registry;
+
+    /**
+     * 指标实例缓存，避免每次记录都走注册表查找
+     */
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public CacheMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * 记录一次读取结果
+     *
+     * @param result {@link #L1_HIT} / {@link #L2_HIT} / {@link #MISS}
+     */
+    public void recordGet(String cacheName, String result) {
+        recordGets(cacheName, result, 1);
+    }
+
+    /**
+     * 批量记录读取结果
+     */
+    public void recordGets(String cacheName, String result, long count) {
+        if (count <= 0) {
+            return;
+        }
+        counters.computeIfAbsent("gets:" + cacheName + ":" + result, k -> Counter.builder("jelly.cache.gets")
+                .tag("cache", cacheName)
+                .tag("result", result)
+                .register(registry)).increment(count);
+    }
+
+    /**
+     * 执行并计时回源加载
+     */
+    public <T> T timeLoad(String cacheName, Supplier<T> loader) {
+        long start = System.nanoTime();
+        String outcome = "failure";
+        try {
+            T value = loader.get();
+            outcome = value == null ? "empty" : "success";
+            return value;
+        } finally {
+            loadTimer(cacheName, outcome).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 记录 BloomFilter 拦截
+     */
+    public void recordBloomRejection(String filterName) {
+        counters.computeIfAbsent("bloom:" + filterName, k -> Counter.builder("jelly.cache.bloom.rejections")
+                .tag("filter", filterName)
+                .register(registry)).increment();
+    }
+
+    /**
+     * 记录互斥锁等待时间
+     */
+    public void recordMutexWait(String cacheName, long waitNanos) {
+        timers.computeIfAbsent("mutex:" + cacheName, k -> Timer.builder("jelly.cache.mutex.wait")
+                .tag("cache", cacheName)
+                .publishPercentileHistogram()
+                .register(registry)).record(waitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 绑定 Caffeine 本地缓存统计（缓存需开启 recordStats）
+     */
+    public void monitor(String cacheName, Cache<?, ?> cache) {
+        CaffeineCacheMetrics.monitor(registry, cache, cacheName, "tier", "l1");
+    }
+
+    private Timer loadTimer(String cacheName, String outcome) {
+        return timers.computeIfAbsent("load:" + cacheName + ":" + outcome, k -> Timer.builder("jelly.cache.loads")
+                .tag("cache", cacheName)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+}
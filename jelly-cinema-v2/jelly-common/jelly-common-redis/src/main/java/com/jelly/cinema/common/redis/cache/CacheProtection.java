@@ -8,13 +8,15 @@ import org.redisson.api.RedissonClient;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
 /**
  * 缓存保护机制
  * 
- * 1. 缓存穿透保护：BloomFilter 拦截非法请求
+ * 1. 缓存穿透保护：BloomFilter 拦截非法请求（本地镜像判断，Redis 为数据源）
  * 2. 缓存击穿保护：互斥锁防止热点 Key 并发重建
  * 3. 缓存雪崩保护：随机过期时间 + 多级缓存兜底
  * 
@@ -28,6 +30,8 @@ public class CacheProtection {
     private final RedissonClient redissonClient;
     private final RedisTemplate<String, Object> redisTemplate;
     private final MultiLevelCache multiLevelCache;
+    private final BloomFilterMirror bloomFilterMirror;
+    private final CacheMetrics cacheMetrics;
 
     /**
      * BloomFilter 名称前缀
@@ -71,6 +75,7 @@ public class CacheProtection {
     public void initBloomFilter(String filterName, long expectedInsertions, double falseProbability) {
         RBloomFilter<String> bloomFilter = redissonClient.getBloomFilter(BLOOM_FILTER_PREFIX + filterName);
         bloomFilter.tryInit(expectedInsertions, falseProbability);
+        bloomFilterMirror.get(BLOOM_FILTER_PREFIX + filterName).sync();
         log.info("初始化 BloomFilter: name={}, expectedInsertions={}, falseProbability={}", 
                 filterName, expectedInsertions, falseProbability);
     }
@@ -79,28 +84,25 @@ public class CacheProtection {
      * 向 BloomFilter 添加元素
      */
     public void addToBloomFilter(String filterName, String value) {
-        RBloomFilter<String> bloomFilter = redissonClient.getBloomFilter(BLOOM_FILTER_PREFIX + filterName);
-        bloomFilter.add(value);
+        bloomFilterMirror.add(BLOOM_FILTER_PREFIX + filterName, value);
     }
 
     /**
-     * 批量添加到 BloomFilter
+     * 批量添加到 BloomFilter（按批次 pipeline 写入 Redis）
      */
     public void addAllToBloomFilter(String filterName, Iterable<String> values) {
-        RBloomFilter<String> bloomFilter = redissonClient.getBloomFilter(BLOOM_FILTER_PREFIX + filterName);
-        for (String value : values) {
-            bloomFilter.add(value);
-        }
+        List<String> list = new ArrayList<>();
+        values.forEach(list::add);
+        bloomFilterMirror.addAll(BLOOM_FILTER_PREFIX + filterName, list);
     }
 
     /**
-     * 检查元素是否可能存在
+     * 检查元素是否可能存在（查询本地镜像，不产生网络往返）
      * 
      * @return true 表示可能存在，false 表示一定不存在
      */
     public boolean mightContain(String filterName, String value) {
-        RBloomFilter<String> bloomFilter = redissonClient.getBloomFilter(BLOOM_FILTER_PREFIX + filterName);
-        return bloomFilter.contains(value);
+        return bloomFilterMirror.mightContain(BLOOM_FILTER_PREFIX + filterName, value);
     }
 
     /**
@@ -113,6 +115,7 @@ public class CacheProtection {
         // 1. BloomFilter 检查
         if (!mightContain(filterName, key)) {
             log.debug("BloomFilter 拦截，key 不存在: filterName={}, key={}", filterName, key);
+            cacheMetrics.recordBloomRejection(filterName);
             return null;
         }
 
@@ -150,7 +153,9 @@ public class CacheProtection {
 
         try {
             // 尝试获取锁（等待 3 秒，持有 10 秒）
+            long waitStart = System.nanoTime();
             boolean acquired = lock.tryLock(MUTEX_WAIT_TIME, MUTEX_LEASE_TIME, TimeUnit.SECONDS);
+            cacheMetrics.recordMutexWait(cacheName, System.nanoTime() - waitStart);
             
             if (acquired) {
                 try {
@@ -162,7 +167,7 @@ public class CacheProtection {
 
                     // 从数据源加载
                     log.debug("获取互斥锁，开始重建缓存: key={}", fullKey);
-                    value = loader.get();
+                    value = cacheMetrics.timeLoad(cacheName, loader);
 
                     if (value != null) {
                         // 写入缓存
@@ -0,0 +1,91 @@
+package com.jelly.cinema.common.redis.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 缓存异步刷新器（Refresh-Ahead）
+ *
+ * 缓存条目接近过期时，由读请求触发异步重新加载，读请求本身直接返回旧值（stale-while-revalidate）。
+ * - 有界线程池 + 有界队列，队列满时放弃本次刷新，由后续读请求再次触发
+ * - 同一个 Key 同时只会有一个刷新任务
+ *
+ * @author Jelly Cinema
+ */
+@Slf4j
+@Component
+public class CacheRefresher {
+
+    /**
+     * 正在刷新的 Key
+     */
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    private ThreadPoolExecutor executor;
+
+    @Value("${jelly.cache.refresh.threads:4}")
+    private int threads;
+
+    @Value("${jelly.cache.refresh.queue-capacity:1000}")
+    private int queueCapacity;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger index = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "cache-refresh-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        log.info("缓存异步刷新器已启动: threads={}, queueCapacity={}", threads, queueCapacity);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 提交异步刷新任务
+     *
+     * @param refreshKey 刷新去重 Key
+     * @param task 刷新任务
+     * @return true 表示已提交，false 表示该 Key 正在刷新或队列已满
+     */
+    public boolean refreshAsync(String refreshKey, Runnable task) {
+        if (!refreshing.add(refreshKey)) {
+            return false;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                    log.debug("异步刷新缓存完成: key={}", refreshKey);
+                } catch (Exception e) {
+                    log.warn("异步刷新缓存失败: key={}, error={}", refreshKey, e.getMessage());
+                } finally {
+                    refreshing.remove(refreshKey);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(refreshKey);
+            log.debug("刷新队列已满，放弃本次刷新: key={}", refreshKey);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.jelly.cinema.common.redis.cache;
+
+import com.github.benmanes.caffeine.cache.Weigher;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.time.temporal.Temporal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 本地缓存条目权重（估算的堆内存字节数）
+ *
+ * 按对象图粗略估算占用，不追求精确，只需要让一个搜索结果列表和一个 FilmVO 的权重拉开量级：
+ * - 字符串、数组、集合、Map 按长度估算
+ * - 普通对象按字段递归估算（字段列表按类缓存），超过最大深度按固定值计
+ * - 大集合只抽样前若干个元素再按比例放大
+ *
+ * @author Jelly Cinema
+ */
+public class CacheWeigher implements Weigher<String, Object> {
+
+    public static final CacheWeigher INSTANCE = new CacheWeigher();
+
+    private static final int OBJECT_HEADER = 16;
+    private static final int REFERENCE = 8;
+    private static final int MAX_DEPTH = 6;
+    private static final int SAMPLE_SIZE = 64;
+
+    /**
+     * 无法继续展开时的估算值
+     */
+    private static final int OPAQUE_OBJECT = 32;
+
+    private static final ClassValue<Field[]> FIELDS = new ClassValue<>() {
+        @Override
+        protected Field[] computeValue(Class<?> type) {
+            List<Field> fields = new ArrayList<>();
+            for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+                for (Field field : current.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+                    try {
+                        field.setAccessible(true);
+                        fields.add(field);
+                    } catch (RuntimeException e) {
+                        // JDK 内部类型等无法访问的字段跳过
+                    }
+                }
+            }
+            return fields.toArray(new Field[0]);
+        }
+    };
+
+    @Override
+    public int weigh(String key, Object value) {
+        long weight = estimate(key, 0) + estimate(value, 0);
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, weight));
+    }
+
+    /**
+     * 估算对象占用的字节数
+     */
+    public static long estimate(Object value, int depth) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof CharSequence sequence) {
+            return 40 + 2L * sequence.length();
+        }
+        if (value instanceof Number || value instanceof Boolean || value instanceof Character || value instanceof Enum<?>) {
+            return OBJECT_HEADER + REFERENCE;
+        }
+        if (value instanceof Date || value instanceof Temporal) {
+            return OBJECT_HEADER + 2 * REFERENCE;
+        }
+        if (depth >= MAX_DEPTH) {
+            return OPAQUE_OBJECT;
+        }
+        if (value instanceof byte[] bytes) {
+            return OBJECT_HEADER + bytes.length;
+        }
+        if (value instanceof Object[] array) {
+            return OBJECT_HEADER + (long) REFERENCE * array.length + sampled(Arrays.asList(array), array.length, depth);
+        }
+        if (value.getClass().isArray()) {
+            return OBJECT_HEADER + (long) REFERENCE * java.lang.reflect.Array.getLength(value);
+        }
+        if (value instanceof Collection<?> collection) {
+            return 40 + (long) REFERENCE * collection.size() + sampled(collection, collection.size(), depth);
+        }
+        if (value instanceof Map<?, ?> map) {
+            long entries = 0;
+            int sampled = 0;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (sampled++ >= SAMPLE_SIZE) {
+                    break;
+                }
+                entries += 32 + estimate(entry.getKey(), depth + 1) + estimate(entry.getValue(), depth + 1);
+            }
+            return 48 + (sampled == 0 ? 0 : entries * map.size() / Math.min(sampled, map.size()));
+        }
+        return estimateFields(value, depth);
+    }
+
+    private static long sampled(Iterable<?> elements, int size, int depth) {
+        long total = 0;
+        int sampled = 0;
+        Iterator<?> iterator = elements.iterator();
+        while (iterator.hasNext() && sampled < SAMPLE_SIZE) {
+            total += estimate(iterator.next(), depth + 1);
+            sampled++;
+        }
+        return sampled == 0 ? 0 : total * size / sampled;
+    }
+
+    private static long estimateFields(Object value, int depth) {
+        Class<?> type = value.getClass();
+        if (type.getName().startsWith("java.")) {
+            return OPAQUE_OBJECT;
+        }
+        long total = OBJECT_HEADER;
+        for (Field field : FIELDS.get(type)) {
+            if (field.getType().isPrimitive()) {
+                total += REFERENCE;
+                continue;
+            }
+            total += REFERENCE;
+            try {
+                total += estimate(field.get(value), depth + 1);
+            } catch (IllegalAccessException | RuntimeException e) {
+                total += OPAQUE_OBJECT;
+            }
+        }
+        return total;
+    }
+}
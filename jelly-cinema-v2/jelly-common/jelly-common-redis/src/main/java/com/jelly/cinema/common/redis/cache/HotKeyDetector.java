@@ -0,0 +1,517 @@
+package com.jelly.cinema.common.redis.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 热点 Key 探测与本地提升
+ *
+ * 本地探测：滑动窗口 Count-Min Sketch，窗口切分为若干段，每段一个 Sketch，过期段整体清零；
+ * 访问按采样率记录，估算值达到阈值即判定为本地热点。
+ *
+ * 集群汇总：每次切段时把本节点候选 Key 在上一段内的访问次数 ZINCRBY 到当前时间窗口的 ZSet，
+ * 所有节点合计超过集群阈值的 Key 即使在本节点访问不多也按热点处理。
+ *
+ * 本地提升：热点 Key 的值固定在一个短 TTL 的本地缓存中。{@link com.jelly.cinema.common.redis.service.RedisService}
+ * 只对 pin-prefixes 白名单内的 Key 做本地提升（登录失败计数、限流计数等必须实时读取的 Key 不在白名单内），
+ * 白名单内的 Key 写入后立即失效本地副本并通过 {@link CacheInvalidationBus} 通知其他节点；
+ * 失效会推进该 Key 所在分段的版本号，读取开始后发生过失效的值不会被固定，避免并发读把旧值重新固定。
+ *
+ * @author Jelly Cinema
+ */
+@Slf4j
+@Component
+public class HotKeyDetector {
+
+    /**
+     * 失效总线中的缓存名称
+     */
+    static final String BUS_CACHE_NAME = "hotkey";
+
+    private static final String CLUSTER_KEY_PREFIX = "hotkey:cluster:";
+
+    /**
+     * 候选 Key 的数量上限（相对 topK 的倍数）
+     */
+    private static final int CANDIDATE_FACTOR = 10;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final CacheInvalidationBus invalidationBus;
+
+    @Value("${jelly.cache.hotkey.enabled:true}")
+    private boolean enabled;
+
+    @Value("${jelly.cache.hotkey.window-seconds:10}")
+    private int windowSeconds;
+
+    @Value("${jelly.cache.hotkey.segments:5}")
+    private int segmentCount;
+
+    /**
+     * 单节点在一个窗口内的访问次数阈值
+     */
+    @Value("${jelly.cache.hotkey.threshold:200}")
+    private long threshold;
+
+    /**
+     * 全部节点在一个窗口内的访问次数阈值
+     */
+    @Value("${jelly.cache.hotkey.cluster-threshold:1000}")
+    private long clusterThreshold;
+
+    @Value("${jelly.cache.hotkey.top-k:20}")
+    private int topK;
+
+    /**
+     * 采样率（0, 1]，访问量大时可调低，计数按 1 / 采样率放大
+     */
+    @Value("${jelly.cache.hotkey.sample-rate:1.0}")
+    private double sampleRate;
+
+    @Value("${jelly.cache.hotkey.local-ttl-seconds:3}")
+    private long localTtlSeconds;
+
+    @Value("${jelly.cache.hotkey.local-max-size:1000}")
+    private int localMaxSize;
+
+    /**
+     * 不参与探测的 Key 前缀（如限流计数器等必须实时读取的 Key）
+     */
+    @Value("${jelly.cache.hotkey.exclude-prefixes:}")
+    private List<String> excludePrefixes;
+
+    /**
+     * 允许 RedisService 单 Key 读取做本地提升的 Key 前缀（默认为空，即不提升）
+     */
+    @Value("${jelly.cache.hotkey.pin-prefixes:}")
+    private List<String> pinPrefixes;
+
+    /**
+     * 失效版本号分段数
+     */
+    private static final int STAMP_STRIPES = 256;
+
+    /**
+     * 按 Key 哈希分段的失效版本号
+     */
+    private final AtomicLongArray invalidationStamps = new AtomicLongArray(STAMP_STRIPES);
+
+    private CountMinSketch[] segments;
+    private volatile int currentSegment;
+
+    /**
+     * 候选 Key 在当前段内的访问次数（用于集群汇总）
+     */
+    private final Map<String, LongAdder> candidates = new ConcurrentHashMap<>();
+
+    /**
+     * 本地热点 Key -> 窗口内估算访问次数
+     */
+    private final Map<String, Long> localHotKeys = new ConcurrentHashMap<>();
+
+    /**
+     * 集群热点 Key -> 窗口内全部节点访问次数
+     */
+    private volatile Map<String, Long> clusterHotKeys = Map.of();
+
+    /**
+     * 热点 Key 的本地副本
+     */
+    private Cache<String, Object> pinned;
+
+    private ScheduledExecutorService rotateExecutor;
+
+    public HotKeyDetector(StringRedisTemplate stringRedisTemplate, CacheInvalidationBus invalidationBus) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.invalidationBus = invalidationBus;
+    }
+
+    /**
+     * 热点 Key 及访问次数
+     */
+    public record HotKey(String key, long count) {
+    }
+
+    @PostConstruct
+    public void init() {
+        pinned = Caffeine.newBuilder()
+                .maximumSize(localMaxSize)
+                .expireAfterWrite(Duration.ofSeconds(localTtlSeconds))
+                .build();
+        if (!enabled) {
+            log.info("热点 Key 探测未启用");
+            return;
+        }
+
+        segments = new CountMinSketch[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new CountMinSketch();
+        }
+        invalidationBus.register((cacheName, key) -> {
+            if (BUS_CACHE_NAME.equals(cacheName)) {
+                bumpStamp(key);
+                pinned.invalidate(key);
+            }
+        });
+
+        long segmentMillis = windowSeconds * 1000L / segmentCount;
+        rotateExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hot-key-rotate");
+            thread.setDaemon(true);
+            return thread;
+        });
+        rotateExecutor.scheduleWithFixedDelay(this::rotateSafely, segmentMillis, segmentMillis, TimeUnit.MILLISECONDS);
+        log.info("热点 Key 探测已启动: window={}s, segments={}, threshold={}, clusterThreshold={}",
+                windowSeconds, segmentCount, threshold, clusterThreshold);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (rotateExecutor != null) {
+            rotateExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 记录一次访问
+     *
+     * @return 该 Key 当前是否为热点
+     */
+    public boolean record(String key) {
+        if (!enabled || key == null || isExcluded(key)) {
+            return false;
+        }
+        if (sampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return isHot(key);
+        }
+
+        long increment = sampleRate < 1.0 ? Math.round(1 / sampleRate) : 1;
+        segments[currentSegment].add(key, increment);
+        long estimate = windowEstimate(key);
+
+        if (estimate >= threshold / 2) {
+            LongAdder counter = candidates.get(key);
+            if (counter == null && candidates.size() < topK * CANDIDATE_FACTOR) {
+                counter = candidates.computeIfAbsent(key, k -> new LongAdder());
+            }
+            if (counter != null) {
+                counter.add(increment);
+            }
+        }
+        if (estimate >= threshold) {
+            if (localHotKeys.put(key, estimate) == null) {
+                log.info("检测到热点 Key: key={}, count={}", key, estimate);
+            }
+            return true;
+        }
+        return clusterHotKeys.containsKey(key);
+    }
+
+    /**
+     * 是否为热点（本地或集群）
+     */
+    public boolean isHot(String key) {
+        return localHotKeys.containsKey(key) || clusterHotKeys.containsKey(key);
+    }
+
+    /**
+     * 获取热点 Key 的本地副本
+     */
+    public Object getPinned(String key) {
+        return pinned.getIfPresent(key);
+    }
+
+    /**
+     * 将热点 Key 的值固定到本地（非热点 Key 忽略）
+     */
+    public void pin(String key, Object value) {
+        if (value != null && isHot(key)) {
+            pinned.put(key, value);
+        }
+    }
+
+    /**
+     * Key 是否在本地提升白名单内
+     */
+    public boolean isPinnable(String key) {
+        return matchesAny(key, pinPrefixes);
+    }
+
+    /**
+     * 读取前获取 Key 的失效版本号，配合 {@link #pin(String, Object, long)} 使用
+     */
+    public long stamp(String key) {
+        return invalidationStamps.get(stripe(key));
+    }
+
+    /**
+     * 将热点 Key 的值固定到本地：读取期间发生过失效（版本号变化）或非热点时忽略
+     */
+    public void pin(String key, Object value, long stamp) {
+        if (value != null && isHot(key) && invalidationStamps.get(stripe(key)) == stamp) {
+            pinned.put(key, value);
+        }
+    }
+
+    /**
+     * 仅清除本地副本（用于处理其他节点的失效消息）
+     */
+    public void unpin(String key) {
+        pinned.invalidate(key);
+    }
+
+    /**
+     * 清除指定前缀的本地副本
+     */
+    public void unpinByPrefix(String prefix) {
+        pinned.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    /**
+     * 推进失效版本号并清除本地副本，不通知其他节点（调用方自行广播，或本身就是在处理其他节点的失效消息）
+     */
+    public void invalidateLocal(String key) {
+        bumpStamp(key);
+        pinned.invalidate(key);
+    }
+
+    /**
+     * 清除指定前缀的本地副本，并推进全部分段的版本号（前缀无法定位分段，仅用于清空整个缓存）
+     */
+    public void invalidateLocalByPrefix(String prefix) {
+        for (int i = 0; i < STAMP_STRIPES; i++) {
+            invalidationStamps.incrementAndGet(i);
+        }
+        unpinByPrefix(prefix);
+    }
+
+    /**
+     * Key 写入或删除完成后调用：推进失效版本号并清除本地副本；
+     * 白名单内的 Key 或本节点视为热点的 Key 通知其他节点
+     */
+    public void invalidate(String key) {
+        if (!enabled) {
+            return;
+        }
+        bumpStamp(key);
+        boolean wasPinned = pinned.getIfPresent(key) != null;
+        pinned.invalidate(key);
+        if (wasPinned || isPinnable(key) || isHot(key)) {
+            invalidationBus.publish(BUS_CACHE_NAME, key);
+        }
+    }
+
+    /**
+     * 本节点 Top-K 热点
+     */
+    public List<HotKey> localTopK() {
+        return topOf(localHotKeys);
+    }
+
+    /**
+     * 集群 Top-K 热点（最近一个窗口内全部节点合计）
+     */
+    public List<HotKey> clusterTopK() {
+        return topOf(clusterHotKeys);
+    }
+
+    /**
+     * 当前固定在本地的热点 Key 数量
+     */
+    public long pinnedSize() {
+        return pinned.estimatedSize();
+    }
+
+    private List<HotKey> topOf(Map<String, Long> source) {
+        return source.entrySet().stream()
+                .map(entry -> new HotKey(entry.getKey(), entry.getValue()))
+                .sorted(Comparator.comparingLong(HotKey::count).reversed())
+                .limit(topK)
+                .toList();
+    }
+
+    private boolean isExcluded(String key) {
+        return matchesAny(key, excludePrefixes);
+    }
+
+    private static boolean matchesAny(String key, List<String> prefixes) {
+        if (key == null || prefixes == null) {
+            return false;
+        }
+        for (String prefix : prefixes) {
+            if (!prefix.isEmpty() && key.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void bumpStamp(String key) {
+        invalidationStamps.incrementAndGet(stripe(key));
+    }
+
+    private static int stripe(String key) {
+        return (key.hashCode() & 0x7fffffff) % STAMP_STRIPES;
+    }
+
+    private long windowEstimate(String key) {
+        long total = 0;
+        for (CountMinSketch segment : segments) {
+            total += segment.estimate(key);
+        }
+        return total;
+    }
+
+    private void rotateSafely() {
+        try {
+            rotate();
+        } catch (Exception e) {
+            log.warn("热点 Key 窗口切换失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 切换到下一段：上报本段候选 Key，清零最旧的一段，重新计算本地与集群热点
+     */
+    private void rotate() {
+        Map<String, Long> reported = new HashMap<>();
+        candidates.forEach((key, counter) -> {
+            long count = counter.sumThenReset();
+            if (count > 0) {
+                reported.put(key, count);
+            }
+        });
+        candidates.clear();
+
+        int next = (currentSegment + 1) % segments.length;
+        segments[next].clear();
+        currentSegment = next;
+
+        localHotKeys.replaceAll((key, count) -> windowEstimate(key));
+        localHotKeys.entrySet().removeIf(entry -> {
+            boolean cooled = entry.getValue() < threshold;
+            if (cooled) {
+                log.debug("热点 Key 降温: key={}, count={}", entry.getKey(), entry.getValue());
+            }
+            return cooled;
+        });
+
+        syncCluster(reported);
+
+        // 不再是热点的 Key 不保留本地副本
+        pinned.asMap().keySet().removeIf(key -> !isHot(key));
+    }
+
+    /**
+     * 上报本节点计数并读取集群热点（一次 pipeline 写入，两次 ZREVRANGE 读取）
+     */
+    private void syncCluster(Map<String, Long> reported) {
+        long bucket = System.currentTimeMillis() / (windowSeconds * 1000L);
+        String currentKey = CLUSTER_KEY_PREFIX + bucket;
+        String previousKey = CLUSTER_KEY_PREFIX + (bucket - 1);
+
+        try {
+            if (!reported.isEmpty()) {
+                byte[] rawKey = currentKey.getBytes(StandardCharsets.UTF_8);
+                stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    reported.forEach((key, count) -> connection.zSetCommands()
+                            .zIncrBy(rawKey, count, key.getBytes(StandardCharsets.UTF_8)));
+                    connection.keyCommands().expire(rawKey, windowSeconds * 3L);
+                    return null;
+                });
+            }
+
+            Map<String, Long> totals = new HashMap<>();
+            for (String key : List.of(previousKey, currentKey)) {
+                Set<ZSetOperations.TypedTuple<String>> top =
+                        stringRedisTemplate.opsForZSet().reverseRangeWithScores(key, 0, topK - 1L);
+                if (top == null) {
+                    continue;
+                }
+                for (ZSetOperations.TypedTuple<String> tuple : top) {
+                    if (tuple.getValue() != null && tuple.getScore() != null) {
+                        totals.merge(tuple.getValue(), tuple.getScore().longValue(), Long::sum);
+                    }
+                }
+            }
+
+            Map<String, Long> hot = new HashMap<>();
+            totals.forEach((key, count) -> {
+                if (count >= clusterThreshold) {
+                    hot.put(key, count);
+                }
+            });
+            clusterHotKeys = hot;
+        } catch (Exception e) {
+            // 集群汇总失败不影响本地探测
+            log.warn("同步集群热点 Key 失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Count-Min Sketch（depth 行 x width 列计数器，估算值为各行计数的最小值）
+     */
+    private static final class CountMinSketch {
+
+        private static final int DEPTH = 4;
+        private static final int WIDTH = 4096;
+        private static final int MASK = WIDTH - 1;
+
+        private final AtomicLongArray counters = new AtomicLongArray(DEPTH * WIDTH);
+
+        void add(String key, long increment) {
+            int hash = spread(key.hashCode());
+            int step = spread(hash ^ 0x9E3779B9) | 1;
+            for (int row = 0; row < DEPTH; row++) {
+                counters.addAndGet(row * WIDTH + ((hash + row * step) & MASK), increment);
+            }
+        }
+
+        long estimate(String key) {
+            int hash = spread(key.hashCode());
+            int step = spread(hash ^ 0x9E3779B9) | 1;
+            long min = Long.MAX_VALUE;
+            for (int row = 0; row < DEPTH; row++) {
+                min = Math.min(min, counters.get(row * WIDTH + ((hash + row * step) & MASK)));
+            }
+            return min;
+        }
+
+        void clear() {
+            for (int i = 0; i < counters.length(); i++) {
+                counters.set(i, 0);
+            }
+        }
+
+        private static int spread(int hash) {
+            hash ^= hash >>> 16;
+            hash *= 0x85EBCA6B;
+            hash ^= hash >>> 13;
+            hash *= 0xC2B2AE35;
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.jelly.cinema.common.redis.cache;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * 热点 Key 管理端点（/actuator/hotkeys）
+ *
+ * 返回本节点与集群的 Top-K 热点 Key 以及当前固定在本地的热点数量
+ *
+ * @author Jelly Cinema
+ */
+@Component
+@Endpoint(id = "hotkeys")
+public class HotKeyEndpoint {
+
+    private final HotKeyDetector hotKeyDetector;
+
+    public HotKeyEndpoint(HotKeyDetector hotKeyDetector) {
+        this.hotKeyDetector = hotKeyDetector;
+    }
+
+    @ReadOperation
+    public Map<String, Object> hotKeys() {
+        return Map.of(
+                "local", hotKeyDetector.localTopK(),
+                "cluster", hotKeyDetector.clusterTopK(),
+                "pinned", hotKeyDetector.pinnedSize()
+        );
+    }
+}
@@ -0,0 +1,218 @@
+package com.jelly.cinema.common.redis.cache;
+
+import io.netty.buffer.ByteBuf;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBitSet;
+import org.redisson.api.RBloomFilter;
+import org.redisson.client.codec.Codec;
+import org.redisson.misc.Hash;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Redisson BloomFilter 的本地只读镜像
+ *
+ * 位图从 Redis 整体加载到堆外内存，mightContain 在本地计算，不再产生网络往返。
+ * 哈希算法与 Redisson 完全一致（HighwayHash 128 + 双重哈希），Redis 中的过滤器仍是唯一数据源：
+ * - add/addAll 先写 Redis，再把对应的位写入本地镜像
+ * - 周期性全量同步，与本地位图按位或合并（BloomFilter 只增不减）
+ * - 尚未完成首次同步时退化为直接查询 Redis
+ *
+ * @author Jelly Cinema
+ */
+@Slf4j
+public class LocalBloomFilter<T> {
+
+    /**
+     * 批量写入 Redis 时每批的元素数量
+     */
+    private static final int ADD_BATCH_SIZE = 1000;
+
+    private final String name;
+    private final RBloomFilter<T> remote;
+    private final RBitSet remoteBits;
+    private final Codec codec;
+
+    /**
+     * 当前镜像（位图与配置整体替换，保证读取时三者一致）
+     */
+    private volatile Mirror mirror;
+
+    private record Mirror(ByteBuffer bits, long size, int hashIterations) {
+    }
+
+    public LocalBloomFilter(String name, RBloomFilter<T> remote, RBitSet remoteBits) {
+        this.name = name;
+        this.remote = remote;
+        this.remoteBits = remoteBits;
+        this.codec = remote.getCodec();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 镜像是否可用
+     */
+    public boolean isReady() {
+        return mirror != null;
+    }
+
+    /**
+     * 从 Redis 全量同步位图
+     */
+    public void sync() {
+        try {
+            long remoteSize = remote.getSize();
+            int remoteIterations = remote.getHashIterations();
+            byte[] raw = remoteBits.toByteArray();
+
+            int byteLength = (int) ((remoteSize + 7) / 8);
+            ByteBuffer loaded = ByteBuffer.allocateDirect(byteLength);
+            if (raw != null) {
+                loaded.put(raw, 0, Math.min(raw.length, byteLength));
+            }
+
+            synchronized (this) {
+                Mirror current = mirror;
+                // 配置未变化时保留同步期间本地写入的位
+                if (current != null && remoteSize == current.size() && remoteIterations == current.hashIterations()) {
+                    for (int i = 0; i < byteLength; i++) {
+                        loaded.put(i, (byte) (loaded.get(i) | current.bits().get(i)));
+                    }
+                }
+                mirror = new Mirror(loaded, remoteSize, remoteIterations);
+            }
+            log.debug("BloomFilter 本地镜像同步完成: name={}, size={}, bytes={}", name, remoteSize, byteLength);
+        } catch (Exception e) {
+            log.warn("BloomFilter 本地镜像同步失败: name={}, error={}", name, e.getMessage());
+        }
+    }
+
+    /**
+     * 检查元素是否可能存在
+     *
+     * @return true 表示可能存在，false 表示一定不存在
+     */
+    public boolean mightContain(T value) {
+        Mirror current = mirror;
+        if (current == null) {
+            return remote.contains(value);
+        }
+
+        for (long index : indexes(value, current)) {
+            if (!isSet(current.bits(), index)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 添加元素（先写 Redis，再更新本地镜像）
+     *
+     * @return 本次写入设置的位下标，供其他节点增量同步
+     */
+    public long[] add(T value) {
+        remote.add(value);
+        Mirror current = mirror;
+        if (current == null) {
+            return new long[0];
+        }
+        long[] indexes = indexes(value, current);
+        applyIndexes(indexes);
+        return indexes;
+    }
+
+    /**
+     * 批量添加元素（按批次一次往返写入 Redis）
+     */
+    public void addAll(Collection<T> values) {
+        List<T> batch = new ArrayList<>(Math.min(values.size(), ADD_BATCH_SIZE));
+        for (T value : values) {
+            batch.add(value);
+            if (batch.size() >= ADD_BATCH_SIZE) {
+                addBatch(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            addBatch(batch);
+        }
+    }
+
+    private void addBatch(List<T> batch) {
+        remote.add(batch);
+        Mirror current = mirror;
+        if (current == null) {
+            return;
+        }
+        for (T value : batch) {
+            applyIndexes(indexes(value, current));
+        }
+    }
+
+    /**
+     * 设置本地位图中的位（来自本节点或其他节点的写入）
+     */
+    public synchronized void applyIndexes(long[] indexes) {
+        Mirror current = mirror;
+        if (current == null) {
+            return;
+        }
+        ByteBuffer buffer = current.bits();
+        for (long index : indexes) {
+            int byteIndex = (int) (index >>> 3);
+            if (byteIndex < buffer.capacity()) {
+                buffer.put(byteIndex, (byte) (buffer.get(byteIndex) | mask(index)));
+            }
+        }
+    }
+
+    /**
+     * 计算元素对应的位下标（与 RedissonBloomFilter 的算法保持一致）
+     */
+    private long[] indexes(T value, Mirror current) {
+        long[] hashes;
+        ByteBuf state;
+        try {
+            state = codec.getValueEncoder().encode(value);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("BloomFilter 元素编码失败: " + value, e);
+        }
+        try {
+            hashes = Hash.hash128(state);
+        } finally {
+            state.release();
+        }
+
+        long[] indexes = new long[current.hashIterations()];
+        long hash = hashes[0];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = (hash & Long.MAX_VALUE) % current.size();
+            if (i % 2 == 0) {
+                hash += hashes[1];
+            } else {
+                hash += hashes[0];
+            }
+        }
+        return indexes;
+    }
+
+    /**
+     * Redis 位图按字节高位在前存储
+     */
+    private static boolean isSet(ByteBuffer buffer, long index) {
+        int byteIndex = (int) (index >>> 3);
+        return byteIndex < buffer.capacity() && (buffer.get(byteIndex) & mask(index)) != 0;
+    }
+
+    private static int mask(long index) {
+        return 0x80 >>> (int) (index & 7);
+    }
+}
@@ -0,0 +1,226 @@
+package com.jelly.cinema.common.redis.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Policy;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地缓存全局内存预算
+ *
+ * 所有按权重（字节）限制的 L1 缓存共享一份预算，后台线程周期性地根据 Caffeine 统计重新分配容量：
+ * - 每个周期计算各缓存的边际收益：容量导致的未命中数（min(未命中, 淘汰)）/ 当前容量（MB），
+ *   占用率低于阈值的缓存再扩容也不会提高命中率，收益记为 0
+ * - 从收益最低的缓存划出一个步长给收益最高的缓存，单个缓存的容量限制在 [请求值/4, 请求值*4] 且不超过预算一半
+ * - 任意时刻各缓存容量之和不超过预算
+ *
+ * @author Jelly Cinema
+ */
+@Slf4j
+@Component
+public class LocalCacheBudget {
+
+    private static final long MB = 1024 * 1024;
+
+    /**
+     * 占用率低于该值的缓存不需要扩容
+     */
+    private static final double FULL_RATIO = 0.8;
+
+    /**
+     * 接收方收益需超过出让方的倍数才调整，避免来回抖动
+     */
+    private static final double BENEFIT_MARGIN = 1.5;
+
+    private final Map<String, Allocation> allocations = new LinkedHashMap<>();
+
+    private ScheduledExecutorService rebalanceExecutor;
+
+    @Value("${jelly.cache.local.budget-mb:128}")
+    private long budgetMb;
+
+    @Value("${jelly.cache.local.rebalance-interval-seconds:60}")
+    private long rebalanceIntervalSeconds;
+
+    /**
+     * 每次调整的步长（占预算的比例）
+     */
+    @Value("${jelly.cache.local.rebalance-step:0.05}")
+    private double rebalanceStep;
+
+    /**
+     * 单个缓存的分配状态
+     */
+    private static class Allocation {
+        private final String name;
+        private final Policy.Eviction<String, Object> eviction;
+        private final Cache<String, Object> cache;
+        private final long requested;
+        private long minimum;
+        private long maximum;
+        private CacheStats lastStats;
+
+        private Allocation(String name, Cache<String, Object> cache, Policy.Eviction<String, Object> eviction,
+                           long requested) {
+            this.name = name;
+            this.cache = cache;
+            this.eviction = eviction;
+            this.requested = requested;
+            this.lastStats = cache.stats();
+        }
+
+        private long capacity() {
+            return eviction.getMaximum();
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        rebalanceExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "local-cache-budget");
+            thread.setDaemon(true);
+            return thread;
+        });
+        rebalanceExecutor.scheduleWithFixedDelay(this::rebalanceSafely,
+                rebalanceIntervalSeconds, rebalanceIntervalSeconds, TimeUnit.SECONDS);
+        log.info("本地缓存内存预算: budget={}MB, rebalanceInterval={}s", budgetMb, rebalanceIntervalSeconds);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (rebalanceExecutor != null) {
+            rebalanceExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 登记按权重限制的缓存，预算不足时从已登记的缓存按比例划出容量
+     *
+     * @param requestedBytes 期望容量（字节）
+     */
+    public synchronized void register(String cacheName, Cache<String, Object> cache, long requestedBytes) {
+        Policy.Eviction<String, Object> eviction = cache.policy().eviction()
+                .filter(policy -> policy.isWeighted())
+                .orElseThrow(() -> new IllegalArgumentException("缓存未按权重限制: " + cacheName));
+
+        long budget = budgetBytes();
+        Allocation allocation = new Allocation(cacheName, cache, eviction, requestedBytes);
+        allocation.minimum = Math.max(MB, requestedBytes / 4);
+        allocation.maximum = Math.max(allocation.minimum, Math.min(requestedBytes * 4, budget / 2));
+
+        Allocation previous = allocations.remove(cacheName);
+        long othersRequested = allocations.values().stream().mapToLong(a -> a.requested).sum();
+        long othersCapacity = allocations.values().stream().mapToLong(Allocation::capacity).sum();
+        long spare = budget - othersCapacity;
+
+        long initial = Math.min(requestedBytes, budget * requestedBytes / Math.max(1, othersRequested + requestedBytes));
+        initial = clamp(initial, allocation);
+        if (initial > spare && othersCapacity > 0) {
+            // 其余缓存按比例缩容让出空间
+            double factor = Math.max(0, (double) (budget - initial) / othersCapacity);
+            allocations.values().forEach(a -> a.eviction.setMaximum(Math.max(a.minimum, (long) (a.capacity() * factor))));
+        }
+        eviction.setMaximum(initial);
+        allocations.put(cacheName, allocation);
+
+        log.info("登记本地缓存预算: name={}, capacity={}KB, range=[{}KB, {}KB]{}", cacheName, initial / 1024,
+                allocation.minimum / 1024, allocation.maximum / 1024, previous != null ? "（替换旧实例）" : "");
+    }
+
+    /**
+     * 按边际收益重新分配一次容量
+     */
+    public synchronized void rebalance() {
+        if (allocations.size() < 2) {
+            return;
+        }
+
+        Allocation receiver = null;
+        Allocation donor = null;
+        double receiverBenefit = 0;
+        double donorBenefit = Double.MAX_VALUE;
+        Map<String, Double> benefits = new LinkedHashMap<>();
+
+        for (Allocation allocation : allocations.values()) {
+            CacheStats stats = allocation.cache.stats();
+            CacheStats delta = stats.minus(allocation.lastStats);
+            allocation.lastStats = stats;
+
+            double benefit = marginalBenefit(allocation, delta);
+            benefits.put(allocation.name, benefit);
+            if (benefit > receiverBenefit && allocation.capacity() < allocation.maximum) {
+                receiver = allocation;
+                receiverBenefit = benefit;
+            }
+            if (benefit < donorBenefit && allocation.capacity() > allocation.minimum) {
+                donor = allocation;
+                donorBenefit = benefit;
+            }
+        }
+
+        if (receiver == null) {
+            return;
+        }
+
+        long step = Math.min((long) (budgetBytes() * rebalanceStep), receiver.maximum - receiver.capacity());
+        long spare = budgetBytes() - allocations.values().stream().mapToLong(Allocation::capacity).sum();
+        long grant;
+        if (spare > 0) {
+            // 还有未分配的预算，直接给收益最高的缓存
+            grant = Math.min(step, spare);
+        } else if (donor != null && donor != receiver && receiverBenefit > donorBenefit * BENEFIT_MARGIN) {
+            grant = Math.min(step, donor.capacity() - donor.minimum);
+            if (grant > 0) {
+                donor.eviction.setMaximum(donor.capacity() - grant);
+            }
+        } else {
+            return;
+        }
+
+        if (grant <= 0) {
+            return;
+        }
+        receiver.eviction.setMaximum(receiver.capacity() + grant);
+        log.info("本地缓存容量调整: +{}KB -> {}（{}KB）, donor={}, benefits={}", grant / 1024, receiver.name,
+                receiver.capacity() / 1024, spare > 0 ? "spare" : donor.name, benefits);
+    }
+
+    /**
+     * 边际收益：本周期内因容量不足导致的未命中数 / 当前容量（MB）
+     */
+    private double marginalBenefit(Allocation allocation, CacheStats delta) {
+        long capacity = allocation.capacity();
+        long used = allocation.eviction.weightedSize().orElse(0L);
+        if (capacity <= 0 || used < capacity * FULL_RATIO) {
+            return 0;
+        }
+        long capacityMisses = Math.min(delta.missCount(), delta.evictionCount());
+        return capacityMisses / ((double) capacity / MB);
+    }
+
+    private void rebalanceSafely() {
+        try {
+            rebalance();
+        } catch (Exception e) {
+            log.warn("本地缓存容量调整失败: {}", e.getMessage());
+        }
+    }
+
+    private long clamp(long value, Allocation allocation) {
+        return Math.max(allocation.minimum, Math.min(allocation.maximum, value));
+    }
+
+    private long budgetBytes() {
+        return budgetMb * MB;
+    }
+}
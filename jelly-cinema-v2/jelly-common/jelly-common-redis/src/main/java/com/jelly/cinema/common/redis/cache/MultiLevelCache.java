@@ -3,13 +3,26 @@ package com.jelly.cinema.common.redis.cache;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.stereotype.Component;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 /**
@@ -21,6 +34,20 @@ import java.util.function.Supplier;
  * 读取顺序：L1 -> L2 -> DB
  * 写入顺序：DB -> L2 -> L1
  * 
+ * 跨节点一致性：写入/删除/清空时通过 {@link CacheInvalidationBus} 合并广播失效消息，
+ * 其他节点收到后只清除自己的 L1，下次读取从 L2 获取最新值。
+ * 
+ * 提前刷新：通过 createCache 为缓存配置 refreshAfterWrite，L1 条目写入时间超过该值后，
+ * 读请求直接返回旧值，同时在 {@link CacheRefresher} 的有界线程池中异步重新加载。
+ * 
+ * 容量控制：L1 按估算的字节数（{@link CacheWeigher}）限制，所有缓存共享 {@link LocalCacheBudget} 的全局预算，
+ * 由预算控制器根据命中统计把容量调给边际收益更高的缓存。
+ * 
+ * 热点探测：访问记录到 {@link HotKeyDetector}，热点 Key 在 L1 被淘汰后仍可从热点副本读取。
+ * 
+ * 回源合并：同一 JVM 内同一个 Key 同时只有一个 loader 在执行，其余线程等待同一个 Future，
+ * 避免热点 Key 过期瞬间所有请求同时打到数据库。
+ * 
  * @author Jelly Cinema
  */
 @Slf4j
@@ -28,17 +55,33 @@ import java.util.function.Supplier;
 public class MultiLevelCache {
 
     private final RedisTemplate<String, Object> redisTemplate;
+    private final CacheInvalidationBus invalidationBus;
+    private final CacheRefresher cacheRefresher;
+    private final CacheMetrics cacheMetrics;
+    private final LocalCacheBudget cacheBudget;
+    private final HotKeyDetector hotKeyDetector;
 
     /**
      * 本地缓存容器（支持多个不同配置的缓存实例）
      */
     private final Map<String, Cache<String, Object>> localCaches = new ConcurrentHashMap<>();
 
+    /**
+     * 正在回源的加载任务（fullKey -> Future），用于合并同一 Key 的并发回源
+     */
+    private final Map<String, CompletableFuture<Object>> inFlightLoads = new ConcurrentHashMap<>();
+
+    /**
+     * 各缓存的提前刷新时间（未配置的缓存不做提前刷新）
+     */
+    private final Map<String, Duration> refreshAfterWrites = new ConcurrentHashMap<>();
+
     /**
      * 默认本地缓存配置
      */
     private static final int DEFAULT_INITIAL_CAPACITY = 100;
-    private static final int DEFAULT_MAXIMUM_SIZE = 10000;
+    private static final long MB = 1024 * 1024;
+    private static final long DEFAULT_MAXIMUM_WEIGHT = 8 * MB;
     private static final Duration DEFAULT_EXPIRE_AFTER_WRITE = Duration.ofMinutes(5);
 
     /**
@@ -46,45 +89,67 @@ public class MultiLevelCache {
      */
     private static final long DEFAULT_REDIS_EXPIRE_SECONDS = 3600;
 
-    public MultiLevelCache(RedisTemplate<String, Object> redisTemplate) {
+    public MultiLevelCache(@Qualifier("cacheRedisTemplate") RedisTemplate<String, Object> redisTemplate,
+                           CacheInvalidationBus invalidationBus,
+                           CacheRefresher cacheRefresher, CacheMetrics cacheMetrics,
+                           LocalCacheBudget cacheBudget, HotKeyDetector hotKeyDetector) {
         this.redisTemplate = redisTemplate;
+        this.invalidationBus = invalidationBus;
+        this.cacheRefresher = cacheRefresher;
+        this.cacheMetrics = cacheMetrics;
+        this.cacheBudget = cacheBudget;
+        this.hotKeyDetector = hotKeyDetector;
         // 初始化默认缓存
         initDefaultCaches();
+        // 接收其他节点的失效消息
+        invalidationBus.register(this::onRemoteInvalidation);
     }
 
     /**
      * 初始化默认缓存实例
      */
     private void initDefaultCaches() {
-        // 电影信息缓存（容量大，过期时间长）
-        createCache("film", 200, 50000, Duration.ofMinutes(30));
+        // 电影信息缓存（容量大，过期时间长；跨节点失效由失效总线保证）
+        createCache("film", 200, 48 * MB, Duration.ofMinutes(60), Duration.ofMinutes(50));
         
-        // 热门数据缓存（容量中等，过期时间短）
-        createCache("hot", 100, 5000, Duration.ofMinutes(5));
+        // 热门数据缓存（容量中等，过期时间短，临近过期时提前刷新）
+        createCache("hot", 100, 24 * MB, Duration.ofMinutes(5), Duration.ofMinutes(4));
         
         // 用户信息缓存
-        createCache("user", 100, 10000, Duration.ofMinutes(10));
+        createCache("user", 100, 24 * MB, Duration.ofMinutes(10));
         
-        // 搜索结果缓存
-        createCache("search", 50, 1000, Duration.ofMinutes(2));
+        // 搜索结果缓存（单个值为结果列表，条目少但体积大）
+        createCache("search", 50, 16 * MB, Duration.ofMinutes(2));
         
         // 推荐结果缓存
-        createCache("recommend", 50, 2000, Duration.ofMinutes(5));
+        createCache("recommend", 50, 16 * MB, Duration.ofMinutes(5));
     }
 
     /**
      * 创建缓存实例
+     *
+     * @param maximumWeight 期望容量（估算字节数），实际容量由全局预算分配并动态调整
      */
-    public void createCache(String cacheName, int initialCapacity, int maximumSize, Duration expireAfterWrite) {
-        Cache<String, Object> cache = Caffeine.newBuilder()
-                .initialCapacity(initialCapacity)
-                .maximumSize(maximumSize)
-                .expireAfterWrite(expireAfterWrite)
-                .recordStats() // 开启统计
-                .build();
+    public void createCache(String cacheName, int initialCapacity, long maximumWeight, Duration expireAfterWrite) {
+        createCache(cacheName, initialCapacity, maximumWeight, expireAfterWrite, null);
+    }
+
+    /**
+     * 创建缓存实例（带提前刷新）
+     *
+     * @param refreshAfterWrite 写入超过该时间后读取会触发异步刷新，需小于 expireAfterWrite，为 null 表示不刷新
+     */
+    public void createCache(String cacheName, int initialCapacity, long maximumWeight,
+                            Duration expireAfterWrite, Duration refreshAfterWrite) {
+        if (refreshAfterWrite != null && refreshAfterWrite.compareTo(expireAfterWrite) < 0) {
+            refreshAfterWrites.put(cacheName, refreshAfterWrite);
+        } else {
+            refreshAfterWrites.remove(cacheName);
+        }
+        Cache<String, Object> cache = buildCache(cacheName, initialCapacity, maximumWeight, expireAfterWrite);
         localCaches.put(cacheName, cache);
-        log.info("创建本地缓存: name={}, maxSize={}, expireAfterWrite={}", 
-                cacheName, maximumSize, expireAfterWrite);
+        log.info("创建本地缓存: name={}, maxWeight={}KB, expireAfterWrite={}, refreshAfterWrite={}", 
+                cacheName, maximumWeight / 1024, expireAfterWrite, refreshAfterWrites.get(cacheName));
     }
 
     /**
@@ -98,36 +163,111 @@ public class MultiLevelCache {
     @SuppressWarnings("unchecked")
     public <T> T get(String cacheName, String key, Supplier<T> loader, long redisExpireSeconds) {
         String fullKey = buildKey(cacheName, key);
+        boolean hot = hotKeyDetector.record(fullKey);
 
         // 1. 尝试从 L1（本地缓存）获取
         Cache<String, Object> localCache = getOrCreateCache(cacheName);
         Object localValue = localCache.getIfPresent(fullKey);
         if (localValue != null) {
             log.debug("L1 缓存命中: key={}", fullKey);
+            cacheMetrics.recordGet(cacheName, CacheMetrics.L1_HIT);
+            if (loader != null) {
+                refreshIfStale(cacheName, key, fullKey, localCache, loader, redisExpireSeconds);
+            }
             return (T) localValue;
         }
 
-        // 2. 尝试从 L2（Redis）获取
+        // 热点 Key 可能因 L1 容量不足被淘汰，再查一次热点副本
+        if (hot) {
+            Object pinnedValue = hotKeyDetector.getPinned(fullKey);
+            if (pinnedValue != null) {
+                cacheMetrics.recordGet(cacheName, CacheMetrics.L1_HIT);
+                return (T) pinnedValue;
+            }
+        }
+
+        // 2. 尝试从 L2（Redis）获取；读取前取版本号，读取期间发生失效时不固定旧值
+        long stamp = hot ? hotKeyDetector.stamp(fullKey) : 0;
         Object redisValue = redisTemplate.opsForValue().get(fullKey);
         if (redisValue != null) {
             log.debug("L2 缓存命中: key={}", fullKey);
+            cacheMetrics.recordGet(cacheName, CacheMetrics.L2_HIT);
             // 回填 L1
             localCache.put(fullKey, redisValue);
+            if (hot) {
+                hotKeyDetector.pin(fullKey, redisValue, stamp);
+            }
             return (T) redisValue;
         }
 
-        // 3. 缓存未命中，从数据源加载
+        // 3. 缓存未命中，从数据源加载（同一 Key 的并发回源合并为一次）
+        cacheMetrics.recordGet(cacheName, CacheMetrics.MISS);
         if (loader != null) {
-            T value = loader.get();
+            return loadSingleFlight(cacheName, key, fullKey, loader, redisExpireSeconds);
+        }
+
+        return null;
+    }
+
+    /**
+     * 提前刷新：条目写入时间超过 refreshAfterWrite 时异步重新加载，本次读取仍返回旧值
+     */
+    private <T> void refreshIfStale(String cacheName, String key, String fullKey, Cache<String, Object> localCache,
+                                    Supplier<T> loader, long redisExpireSeconds) {
+        Duration refreshAfterWrite = refreshAfterWrites.get(cacheName);
+        if (refreshAfterWrite == null) {
+            return;
+        }
+
+        boolean stale = localCache.policy().expireAfterWrite()
+                .flatMap(policy -> policy.ageOf(fullKey))
+                .map(age -> age.compareTo(refreshAfterWrite) >= 0)
+                .orElse(false);
+        if (stale && !inFlightLoads.containsKey(fullKey)) {
+            cacheRefresher.refreshAsync(fullKey, () -> loadSingleFlight(cacheName, key, fullKey, loader, redisExpireSeconds));
+        }
+    }
+
+    /**
+     * 合并回源：当前线程抢到加载权则执行 loader，否则等待正在进行的加载结果
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T loadSingleFlight(String cacheName, String key, String fullKey,
+                                   Supplier<T> loader, long redisExpireSeconds) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlightLoads.putIfAbsent(fullKey, future);
+        if (existing != null) {
+            log.debug("等待进行中的回源: key={}", fullKey);
+            try {
+                return (T) existing.join();
+            } catch (CompletionException e) {
+                throw unwrap(e);
+            }
+        }
+
+        try {
+            T value = cacheMetrics.timeLoad(cacheName, loader);
             if (value != null) {
                 log.debug("缓存未命中，从数据源加载: key={}", fullKey);
                 // 写入 L2 和 L1
                 put(cacheName, key, value, redisExpireSeconds);
             }
+            future.complete(value);
             return value;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightLoads.remove(fullKey, future);
         }
+    }
 
-        return null;
+    /**
+     * 还原等待方收到的加载异常
+     */
+    private RuntimeException unwrap(CompletionException e) {
+        Throwable cause = e.getCause();
+        return cause instanceof RuntimeException runtimeException ? runtimeException : e;
     }
 
     /**
@@ -145,6 +285,146 @@ public class MultiLevelCache {
         return get(cacheName, key, null, 0);
     }
 
+    /**
+     * 批量获取缓存（带批量加载）
+     *
+     * 一次 Caffeine getAllPresent 取 L1，剩余 Key 一次 Redis MGET 取 L2，
+     * 仍未命中的 Key 交给 bulkLoader 一次性加载，加载结果通过 pipeline 回写 L2 并回填 L1。
+     *
+     * @param cacheName 缓存名称
+     * @param keys 缓存键集合
+     * @param bulkLoader 批量加载器（入参为未命中的 Key，返回 Key -> 值）
+     * @param redisExpireSeconds Redis 过期时间（秒）
+     * @return 命中或加载到的值，按入参 Key 顺序排列，不存在的 Key 不会出现在结果中
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Map<String, T> getAll(String cacheName, Collection<String> keys,
+                                     Function<Collection<String>, Map<String, T>> bulkLoader,
+                                     long redisExpireSeconds) {
+        if (keys == null || keys.isEmpty()) {
+            return Map.of();
+        }
+
+        Set<String> distinctKeys = new LinkedHashSet<>(keys);
+        Map<String, String> fullKeyMap = new LinkedHashMap<>();
+        for (String key : distinctKeys) {
+            String fullKey = buildKey(cacheName, key);
+            fullKeyMap.put(fullKey, key);
+            hotKeyDetector.record(fullKey);
+        }
+        Map<String, Object> found = new LinkedHashMap<>();
+
+        // 1. L1 批量获取
+        Cache<String, Object> localCache = getOrCreateCache(cacheName);
+        Map<String, Object> localHits = localCache.getAllPresent(fullKeyMap.keySet());
+        localHits.forEach((fullKey, value) -> found.put(fullKeyMap.get(fullKey), value));
+        cacheMetrics.recordGets(cacheName, CacheMetrics.L1_HIT, localHits.size());
+
+        // 2. L2 MGET 获取剩余 Key
+        List<String> redisKeys = new ArrayList<>();
+        for (Map.Entry<String, String> entry : fullKeyMap.entrySet()) {
+            if (!localHits.containsKey(entry.getKey())) {
+                redisKeys.add(entry.getKey());
+            }
+        }
+        int l1Hits = found.size();
+        if (!redisKeys.isEmpty()) {
+            List<Object> redisValues = redisTemplate.opsForValue().multiGet(redisKeys);
+            if (redisValues != null) {
+                for (int i = 0; i < redisKeys.size() && i < redisValues.size(); i++) {
+                    Object value = redisValues.get(i);
+                    if (value != null) {
+                        String fullKey = redisKeys.get(i);
+                        localCache.put(fullKey, value);
+                        found.put(fullKeyMap.get(fullKey), value);
+                    }
+                }
+            }
+        }
+
+        cacheMetrics.recordGets(cacheName, CacheMetrics.L2_HIT, found.size() - l1Hits);
+        cacheMetrics.recordGets(cacheName, CacheMetrics.MISS, distinctKeys.size() - found.size());
+
+        // 3. 剩余 Key 一次性回源
+        if (bulkLoader != null && found.size() < distinctKeys.size()) {
+            List<String> missingKeys = new ArrayList<>();
+            for (String key : distinctKeys) {
+                if (!found.containsKey(key)) {
+                    missingKeys.add(key);
+                }
+            }
+            Map<String, T> loaded = cacheMetrics.timeLoad(cacheName, () -> bulkLoader.apply(missingKeys));
+            if (loaded != null && !loaded.isEmpty()) {
+                Map<String, Object> toCache = new LinkedHashMap<>();
+                loaded.forEach((key, value) -> {
+                    if (value != null) {
+                        toCache.put(key, value);
+                        found.put(key, value);
+                    }
+                });
+                putAll(cacheName, toCache, redisExpireSeconds);
+                log.debug("批量回源: cacheName={}, missing={}, loaded={}",
+                        cacheName, missingKeys.size(), toCache.size());
+            }
+        }
+
+        Map<String, T> result = new LinkedHashMap<>();
+        for (String key : distinctKeys) {
+            Object value = found.get(key);
+            if (value != null) {
+                result.put(key, (T) value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 批量获取缓存（使用默认过期时间）
+     */
+    public <T> Map<String, T> getAll(String cacheName, Collection<String> keys,
+                                     Function<Collection<String>, Map<String, T>> bulkLoader) {
+        return getAll(cacheName, keys, bulkLoader, DEFAULT_REDIS_EXPIRE_SECONDS);
+    }
+
+    /**
+     * 批量写入缓存（L2 使用 pipeline 一次往返）
+     */
+    public void putAll(String cacheName, Map<String, ?> values, long redisExpireSeconds) {
+        if (values == null || values.isEmpty()) {
+            return;
+        }
+
+        Map<String, Object> fullValues = new LinkedHashMap<>();
+        values.forEach((key, value) -> fullValues.put(buildKey(cacheName, key), value));
+
+        // 写入 L2（Redis）
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                fullValues.forEach((fullKey, value) -> {
+                    if (redisExpireSeconds > 0) {
+                        // 添加随机过期时间，防止缓存雪崩
+                        long randomExpire = redisExpireSeconds + (long) (Math.random() * 60);
+                        ops.opsForValue().set(fullKey, value, randomExpire, TimeUnit.SECONDS);
+                    } else {
+                        ops.opsForValue().set(fullKey, value);
+                    }
+                });
+                return null;
+            }
+        });
+
+        // 写入 L1（本地缓存），并通知其他节点失效
+        getOrCreateCache(cacheName).putAll(fullValues);
+        fullValues.keySet().forEach(hotKeyDetector::invalidateLocal);
+        values.keySet().forEach(key -> invalidationBus.publish(cacheName, key));
+
+        log.debug("批量写入缓存: cacheName={}, size={}, redisExpire={}s",
+                cacheName, fullValues.size(), redisExpireSeconds);
+    }
+
     /**
      * 写入缓存
      */
@@ -160,9 +440,11 @@ public class MultiLevelCache {
             redisTemplate.opsForValue().set(fullKey, value);
         }
 
-        // 写入 L1（本地缓存）
+        // 写入 L1（本地缓存），并通知其他节点失效
         Cache<String, Object> localCache = getOrCreateCache(cacheName);
         localCache.put(fullKey, value);
+        hotKeyDetector.invalidateLocal(fullKey);
+        invalidationBus.publish(cacheName, key);
 
         log.debug("写入缓存: key={}, redisExpire={}s", fullKey, redisExpireSeconds);
     }
@@ -183,11 +465,13 @@ public class MultiLevelCache {
         // 删除 L2
         redisTemplate.delete(fullKey);
 
-        // 删除 L1
+        // 删除 L1，并通知其他节点失效
         Cache<String, Object> localCache = localCaches.get(cacheName);
         if (localCache != null) {
             localCache.invalidate(fullKey);
         }
+        hotKeyDetector.invalidateLocal(fullKey);
+        invalidationBus.publish(cacheName, key);
 
         log.debug("删除缓存: key={}", fullKey);
     }
@@ -201,6 +485,7 @@ public class MultiLevelCache {
         if (localCache != null) {
             localCache.invalidateAll();
         }
+        hotKeyDetector.invalidateLocalByPrefix(buildKey(cacheName, ""));
 
         // 清空 L2（按前缀删除）
         String pattern = "cache:" + cacheName + ":*";
@@ -208,15 +493,32 @@ public class MultiLevelCache {
         if (keys != null && !keys.isEmpty()) {
             redisTemplate.delete(keys);
         }
+        invalidationBus.publishClear(cacheName);
 
         log.info("清空缓存: cacheName={}", cacheName);
     }
 
     /**
-     * 仅删除本地缓存（用于接收 Redis Key 事件时同步）
+     * 处理其他节点广播的失效消息（只清除本地缓存）
+     */
+    private void onRemoteInvalidation(String cacheName, String key) {
+        if (CacheInvalidationBus.ALL_KEYS.equals(key)) {
+            Cache<String, Object> localCache = localCaches.get(cacheName);
+            if (localCache != null) {
+                localCache.invalidateAll();
+            }
+            hotKeyDetector.invalidateLocalByPrefix(buildKey(cacheName, ""));
+            return;
+        }
+        evictLocal(cacheName, key);
+    }
+
+    /**
+     * 仅删除本地缓存（用于接收失效总线或 Redis Key 事件时同步）
      */
     public void evictLocal(String cacheName, String key) {
         String fullKey = buildKey(cacheName, key);
+        hotKeyDetector.invalidateLocal(fullKey);
         Cache<String, Object> localCache = localCaches.get(cacheName);
         if (localCache != null) {
             localCache.invalidate(fullKey);
@@ -254,12 +556,15 @@ public class MultiLevelCache {
         }
 
         var stats = cache.stats();
+        var eviction = cache.policy().eviction();
         return Map.of(
                 "hitCount", stats.hitCount(),
                 "missCount", stats.missCount(),
                 "hitRate", stats.hitRate(),
                 "evictionCount", stats.evictionCount(),
-                "estimatedSize", cache.estimatedSize()
+                "estimatedSize", cache.estimatedSize(),
+                "weightedSize", eviction.map(e -> e.weightedSize().orElse(0L)).orElse(0L),
+                "maximumWeight", eviction.map(e -> e.getMaximum()).orElse(0L)
         );
     }
 
@@ -274,13 +579,24 @@ public class MultiLevelCache {
      * 获取或创建缓存实例
      */
     private Cache<String, Object> getOrCreateCache(String cacheName) {
-        return localCaches.computeIfAbsent(cacheName, name -> 
-                Caffeine.newBuilder()
-                        .initialCapacity(DEFAULT_INITIAL_CAPACITY)
-                        .maximumSize(DEFAULT_MAXIMUM_SIZE)
-                        .expireAfterWrite(DEFAULT_EXPIRE_AFTER_WRITE)
-                        .recordStats()
-                        .build()
-        );
+        return localCaches.computeIfAbsent(cacheName, name ->
+                buildCache(name, DEFAULT_INITIAL_CAPACITY, DEFAULT_MAXIMUM_WEIGHT, DEFAULT_EXPIRE_AFTER_WRITE));
+    }
+
+    /**
+     * 构建按权重限制的本地缓存，并登记到全局预算和指标
+     */
+    private Cache<String, Object> buildCache(String cacheName, int initialCapacity, long maximumWeight,
+                                             Duration expireAfterWrite) {
+        Cache<String, Object> cache = Caffeine.newBuilder()
+                .initialCapacity(initialCapacity)
+                .maximumWeight(maximumWeight)
+                .weigher(CacheWeigher.INSTANCE)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats() // 开启统计
+                .build();
+        cacheBudget.register(cacheName, cache, maximumWeight);
+        cacheMetrics.monitor(cacheName, cache);
+        return cache;
     }
 }
@@ -5,10 +5,14 @@ import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.jelly.cinema.common.redis.serializer.CompactRedisSerializer;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.listener.RedisMessageListenerContainer;
@@ -25,20 +29,13 @@ import org.springframework.data.redis.serializer.StringRedisSerializer;
 public class RedisConfig {
 
     @Bean
+    @Primary
     public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory factory) {
         RedisTemplate<String, Object> template = new RedisTemplate<>();
         template.setConnectionFactory(factory);
 
-        // 配置 ObjectMapper
-        ObjectMapper om = new ObjectMapper();
-        om.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
-        om.activateDefaultTyping(LaissezFaireSubTypeValidator.instance,
-                ObjectMapper.DefaultTyping.NON_FINAL,
-                JsonTypeInfo.As.PROPERTY);
-        om.registerModule(new JavaTimeModule());
-
         // 使用 JSON 序列化
-        GenericJackson2JsonRedisSerializer jsonSerializer = new GenericJackson2JsonRedisSerializer(om);
+        GenericJackson2JsonRedisSerializer jsonSerializer = new GenericJackson2JsonRedisSerializer(createObjectMapper(new ObjectMapper()));
         StringRedisSerializer stringSerializer = new StringRedisSerializer();
 
         // Key 使用 String 序列化
@@ -52,6 +49,50 @@ public class RedisConfig {
         return template;
     }
 
+    /**
+     * 缓存层 RedisTemplate（MultiLevelCache / FilmCacheService 的 L2 读写）
+     *
+     * Value 使用紧凑二进制编码，同时兼容读取 JSON 旧值。
+     * 灰度方式：先以 write-format=json 全量发布，再切换为 compact。
+     * 仅用于整值读写的缓存 Key，Set/ZSet 成员等仍走默认 redisTemplate，避免编码变化导致成员不一致。
+     */
+    @Bean
+    public RedisTemplate<String, Object> cacheRedisTemplate(
+            RedisConnectionFactory factory,
+            @Value("${jelly.cache.codec.write-format:json}") String writeFormat,
+            @Value("${jelly.cache.codec.compress-threshold:1024}") int compressThreshold) {
+        RedisTemplate<String, Object> template = new RedisTemplate<>();
+        template.setConnectionFactory(factory);
+
+        GenericJackson2JsonRedisSerializer jsonSerializer = new GenericJackson2JsonRedisSerializer(createObjectMapper(new ObjectMapper()));
+        CompactRedisSerializer compactSerializer = new CompactRedisSerializer(
+                createObjectMapper(new ObjectMapper(new SmileFactory())),
+                jsonSerializer,
+                CompactRedisSerializer.WriteFormat.valueOf(writeFormat.trim().toUpperCase()),
+                compressThreshold);
+        StringRedisSerializer stringSerializer = new StringRedisSerializer();
+
+        template.setKeySerializer(stringSerializer);
+        template.setHashKeySerializer(stringSerializer);
+        template.setValueSerializer(compactSerializer);
+        template.setHashValueSerializer(compactSerializer);
+
+        template.afterPropertiesSet();
+        return template;
+    }
+
+    /**
+     * 配置 ObjectMapper（JSON 与二进制编码共用同一套可见性和类型信息配置）
+     */
+    private ObjectMapper createObjectMapper(ObjectMapper om) {
+        om.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
+        om.activateDefaultTyping(LaissezFaireSubTypeValidator.instance,
+                ObjectMapper.DefaultTyping.NON_FINAL,
+                JsonTypeInfo.As.PROPERTY);
+        om.registerModule(new JavaTimeModule());
+        return om;
+    }
+
     /**
      * Redis 消息监听容器
      * 用于监听 Redis Keyspace Notifications
@@ -0,0 +1,145 @@
+package com.jelly.cinema.common.redis.serializer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 缓存层紧凑二进制序列化器
+ *
+ * 使用 Smile（二进制 JSON，保留与 JSON 相同的类型信息）编码，
+ * 超过压缩阈值时再做 LZ4 压缩，适合 FilmVO 列表、推荐结果等较大的缓存值。
+ *
+ * 二进制格式：
+ * [MAGIC 1B][VERSION 1B][FLAGS 1B][原始长度 4B，仅压缩时存在][payload]
+ *
+ * 读取时根据 MAGIC 判断格式，非二进制格式的值交给 JSON 序列化器解析，
+ * 因此可以先以 JSON 写入模式上线，再切换为二进制写入，新旧值共存期间均可正常读取。
+ *
+ * @author Jelly Cinema
+ */
+public class CompactRedisSerializer implements RedisSerializer<Object> {
+
+    /**
+     * 格式标识（合法 JSON 不会以该字节开头）
+     */
+    static final byte MAGIC = (byte) 0xCE;
+
+    /**
+     * 当前格式版本
+     */
+    static final byte VERSION = 1;
+
+    static final byte FLAG_NONE = 0;
+    static final byte FLAG_LZ4 = 1;
+
+    private static final int HEADER_LENGTH = 3;
+
+    /**
+     * 写入格式
+     */
+    public enum WriteFormat {
+        /**
+         * 仍写入 JSON（灰度第一阶段：所有节点具备读取二进制的能力）
+         */
+        JSON,
+        /**
+         * 写入二进制格式
+         */
+        COMPACT
+    }
+
+    private final ObjectMapper smileMapper;
+    private final RedisSerializer<Object> jsonSerializer;
+    private final WriteFormat writeFormat;
+    private final int compressThreshold;
+    private final LZ4Compressor compressor;
+    private final LZ4FastDecompressor decompressor;
+
+    /**
+     * @param smileMapper 基于 SmileFactory 的 ObjectMapper
+     * @param jsonSerializer JSON 序列化器（兼容读取旧值，JSON 写入模式下也用于写入）
+     * @param writeFormat 写入格式
+     * @param compressThreshold 压缩阈值（字节），小于等于 0 表示不压缩
+     */
+    public CompactRedisSerializer(ObjectMapper smileMapper, RedisSerializer<Object> jsonSerializer,
+                                  WriteFormat writeFormat, int compressThreshold) {
+        this.smileMapper = smileMapper;
+        this.jsonSerializer = jsonSerializer;
+        this.writeFormat = writeFormat;
+        this.compressThreshold = compressThreshold;
+        LZ4Factory factory = LZ4Factory.fastestInstance();
+        this.compressor = factory.fastCompressor();
+        this.decompressor = factory.fastDecompressor();
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return new byte[0];
+        }
+        if (writeFormat == WriteFormat.JSON) {
+            return jsonSerializer.serialize(value);
+        }
+
+        byte[] payload;
+        try {
+            payload = smileMapper.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new SerializationException("二进制序列化失败: " + e.getMessage(), e);
+        }
+
+        if (compressThreshold > 0 && payload.length > compressThreshold) {
+            byte[] compressed = new byte[compressor.maxCompressedLength(payload.length)];
+            int compressedLength = compressor.compress(payload, 0, payload.length, compressed, 0);
+            // 压缩收益不足时保留原始数据
+            if (compressedLength + Integer.BYTES < payload.length) {
+                ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + Integer.BYTES + compressedLength);
+                buffer.put(MAGIC).put(VERSION).put(FLAG_LZ4)
+                        .putInt(payload.length)
+                        .put(compressed, 0, compressedLength);
+                return buffer.array();
+            }
+        }
+
+        byte[] result = new byte[HEADER_LENGTH + payload.length];
+        result[0] = MAGIC;
+        result[1] = VERSION;
+        result[2] = FLAG_NONE;
+        System.arraycopy(payload, 0, result, HEADER_LENGTH, payload.length);
+        return result;
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] != MAGIC) {
+            // 旧的 JSON 值
+            return jsonSerializer.deserialize(bytes);
+        }
+        if (bytes.length < HEADER_LENGTH || bytes[1] != VERSION) {
+            throw new SerializationException("不支持的缓存编码版本: " + (bytes.length > 1 ? bytes[1] : -1));
+        }
+
+        try {
+            byte flags = bytes[2];
+            if (flags == FLAG_LZ4) {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH);
+                int rawLength = buffer.getInt();
+                byte[] raw = decompressor.decompress(bytes, HEADER_LENGTH + Integer.BYTES, rawLength);
+                return smileMapper.readValue(raw, Object.class);
+            }
+            return smileMapper.readValue(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH, Object.class);
+        } catch (IOException e) {
+            throw new SerializationException("二进制反序列化失败: " + e.getMessage(), e);
+        }
+    }
+}
@@ -1,18 +1,34 @@
 package com.jelly.cinema.common.redis.service;
 
+import com.jelly.cinema.common.redis.cache.HotKeyDetector;
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Redis 操作服务
  *
+ * 批量接口（mGet / mSet / *Pipelined / executePipelined）一次网络往返完成多个命令，
+ * 列表页等需要按条目读取 Redis 的场景应优先使用，避免循环内逐个访问。
+ *
+ * 单 Key 读取和 ZSet 读取（热度榜等）会记录到 {@link HotKeyDetector}；ZSet 只参与探测，不做本地提升；只有 jelly.cache.hotkey.pin-prefixes 白名单内的热点 Key
+ * 才在本地保留一个短 TTL 副本，其余 Key（计数器、限流、验证码等）始终读取 Redis。
+ * 通过本服务写入/删除时，先完成 Redis 写入再失效副本并通知其他节点。
+ *
  * @author Jelly Cinema
  */
 @Service
@@ -20,6 +36,7 @@ import java.util.concurrent.TimeUnit;
 public class RedisService {
 
     private final RedisTemplate<String, Object> redisTemplate;
+    private final HotKeyDetector hotKeyDetector;
 
     // ============================== String ==============================
 
@@ -28,6 +45,7 @@ public class RedisService {
      */
     public void set(String key, Object value) {
         redisTemplate.opsForValue().set(key, value);
+        hotKeyDetector.invalidate(key);
     }
 
     /**
@@ -35,6 +53,7 @@ public class RedisService {
      */
     public void set(String key, Object value, long timeout, TimeUnit unit) {
         redisTemplate.opsForValue().set(key, value, timeout, unit);
+        hotKeyDetector.invalidate(key);
     }
 
     /**
@@ -42,21 +61,75 @@ public class RedisService {
      */
     @SuppressWarnings("unchecked")
     public <T> T get(String key) {
-        return (T) redisTemplate.opsForValue().get(key);
+        if (!hotKeyDetector.record(key) || !hotKeyDetector.isPinnable(key)) {
+            return (T) redisTemplate.opsForValue().get(key);
+        }
+        // 白名单内的热点 Key 优先读本地副本
+        Object value = hotKeyDetector.getPinned(key);
+        if (value == null) {
+            long stamp = hotKeyDetector.stamp(key);
+            value = redisTemplate.opsForValue().get(key);
+            hotKeyDetector.pin(key, value, stamp);
+        }
+        return (T) value;
+    }
+
+    /**
+     * 批量获取值（MGET）
+     *
+     * @return 与 keys 顺序一一对应，不存在的 key 对应 null
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> mGet(Collection<String> keys) {
+        if (keys == null || keys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        keys.forEach(hotKeyDetector::record);
+        List<Object> values = redisTemplate.opsForValue().multiGet(keys);
+        if (values == null) {
+            return new ArrayList<>(Collections.nCopies(keys.size(), null));
+        }
+        return (List<T>) values;
+    }
+
+    /**
+     * 批量设置值（MSET）
+     */
+    public void mSet(Map<String, Object> values) {
+        if (values == null || values.isEmpty()) {
+            return;
+        }
+        redisTemplate.opsForValue().multiSet(values);
+        values.keySet().forEach(hotKeyDetector::invalidate);
+    }
+
+    /**
+     * 批量设置值（带过期时间，pipeline 一次往返）
+     */
+    public void mSet(Map<String, Object> values, long timeout, TimeUnit unit) {
+        if (values == null || values.isEmpty()) {
+            return;
+        }
+        executePipelined(ops -> values.forEach((key, value) -> ops.opsForValue().set(key, value, timeout, unit)));
+        values.keySet().forEach(hotKeyDetector::invalidate);
     }
 
     /**
      * 删除
      */
     public Boolean delete(String key) {
-        return redisTemplate.delete(key);
+        Boolean deleted = redisTemplate.delete(key);
+        hotKeyDetector.invalidate(key);
+        return deleted;
     }
 
     /**
      * 批量删除
      */
     public Long delete(Collection<String> keys) {
-        return redisTemplate.delete(keys);
+        Long deleted = redisTemplate.delete(keys);
+        keys.forEach(hotKeyDetector::invalidate);
+        return deleted;
     }
 
     /**
@@ -84,14 +157,18 @@ public class RedisService {
      * 自增
      */
     public Long increment(String key) {
-        return redisTemplate.opsForValue().increment(key);
+        Long value = redisTemplate.opsForValue().increment(key);
+        hotKeyDetector.invalidate(key);
+        return value;
     }
 
     /**
      * 自增（指定步长）
      */
     public Long increment(String key, long delta) {
-        return redisTemplate.opsForValue().increment(key, delta);
+        Long value = redisTemplate.opsForValue().increment(key, delta);
+        hotKeyDetector.invalidate(key);
+        return value;
     }
 
     // ============================== Hash ==============================
@@ -125,6 +202,49 @@ public class RedisService {
         return redisTemplate.opsForHash().entries(key);
     }
 
+    /**
+     * Hash 批量获取同一个 key 下的多个字段（HMGET）
+     *
+     * @return 与 hashKeys 顺序一一对应
+     */
+    public List<Object> hMultiGet(String key, Collection<String> hashKeys) {
+        if (hashKeys == null || hashKeys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return redisTemplate.opsForHash().multiGet(key, new ArrayList<>(hashKeys));
+    }
+
+    /**
+     * Hash 批量获取多个 key 下的同一字段（pipeline 一次往返）
+     *
+     * @return 与 keys 顺序一一对应
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> hGetPipelined(Collection<String> keys, String hashKey) {
+        if (keys == null || keys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return (List<T>) executePipelined(ops -> keys.forEach(key -> ops.opsForHash().get(key, hashKey)));
+    }
+
+    /**
+     * Hash 批量获取多个 key 的全部字段（pipeline 一次往返）
+     *
+     * @return 与 keys 顺序一一对应
+     */
+    @SuppressWarnings("unchecked")
+    public List<Map<Object, Object>> hGetAllPipelined(Collection<String> keys) {
+        if (keys == null || keys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Object> results = executePipelined(ops -> keys.forEach(key -> ops.opsForHash().entries(key)));
+        List<Map<Object, Object>> maps = new ArrayList<>(results.size());
+        for (Object result : results) {
+            maps.add(result == null ? Collections.emptyMap() : (Map<Object, Object>) result);
+        }
+        return maps;
+    }
+
     /**
      * Hash 删除
      */
@@ -193,6 +313,29 @@ public class RedisService {
         return redisTemplate.opsForSet().isMember(key, value);
     }
 
+    /**
+     * Set 批量判断是否存在（SMISMEMBER）
+     */
+    public Map<Object, Boolean> sIsMembers(String key, Object... values) {
+        if (values == null || values.length == 0) {
+            return Collections.emptyMap();
+        }
+        return redisTemplate.opsForSet().isMember(key, values);
+    }
+
+    /**
+     * Set 批量获取多个 key 的成员数（pipeline 一次往返）
+     *
+     * @return 与 keys 顺序一一对应
+     */
+    @SuppressWarnings("unchecked")
+    public List<Long> sSizePipelined(Collection<String> keys) {
+        if (keys == null || keys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return (List<Long>) (List<?>) executePipelined(ops -> keys.forEach(key -> ops.opsForSet().size(key)));
+    }
+
     /**
      * Set 删除
      */
@@ -213,6 +356,7 @@ public class RedisService {
      * ZSet 范围获取（按分数升序）
      */
     public Set<Object> zRange(String key, long start, long end) {
+        hotKeyDetector.record(key);
         return redisTemplate.opsForZSet().range(key, start, end);
     }
 
@@ -220,6 +364,7 @@ public class RedisService {
      * ZSet 范围获取（按分数降序）
      */
     public Set<Object> zReverseRange(String key, long start, long end) {
+        hotKeyDetector.record(key);
         return redisTemplate.opsForZSet().reverseRange(key, start, end);
     }
 
@@ -230,6 +375,45 @@ public class RedisService {
         return redisTemplate.opsForZSet().incrementScore(key, value, delta);
     }
 
+    /**
+     * ZSet 批量添加（ZADD 多成员）
+     */
+    public Long zAddAll(String key, Map<Object, Double> scoreMembers) {
+        if (scoreMembers == null || scoreMembers.isEmpty()) {
+            return 0L;
+        }
+        Set<ZSetOperations.TypedTuple<Object>> tuples = new LinkedHashSet<>();
+        scoreMembers.forEach((member, score) ->
+                tuples.add(ZSetOperations.TypedTuple.of(member, score)));
+        return redisTemplate.opsForZSet().add(key, tuples);
+    }
+
+    /**
+     * ZSet 批量获取成员分数（ZMSCORE）
+     *
+     * @return 与 members 顺序一一对应，不存在的成员对应 null
+     */
+    public List<Double> zScores(String key, Object... members) {
+        if (members == null || members.length == 0) {
+            return Collections.emptyList();
+        }
+        hotKeyDetector.record(key);
+        return redisTemplate.opsForZSet().score(key, members);
+    }
+
+    /**
+     * ZSet 批量获取多个 key 的成员数（pipeline 一次往返）
+     *
+     * @return 与 keys 顺序一一对应
+     */
+    @SuppressWarnings("unchecked")
+    public List<Long> zSizePipelined(Collection<String> keys) {
+        if (keys == null || keys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return (List<Long>) (List<?>) executePipelined(ops -> keys.forEach(key -> ops.opsForZSet().zCard(key)));
+    }
+
     /**
      * ZSet 删除
      */
@@ -237,6 +421,34 @@ public class RedisService {
         return redisTemplate.opsForZSet().remove(key, values);
     }
 
+    // ============================== Pipeline ==============================
+
+    /**
+     * 在一个 pipeline 中执行一批命令（一次网络往返）
+     *
+     * 回调内通过 ops 发出的命令只会排队，返回值均为 null，结果在执行结束后按命令顺序一次性返回。
+     * 例如：
+     * <pre>
+     * List&lt;Object&gt; results = redisService.executePipelined(ops -&gt; {
+     *     ops.opsForValue().increment("a");
+     *     ops.opsForHash().get("b", "field");
+     * });
+     * </pre>
+     *
+     * @param batch 命令构造器
+     * @return 各命令的结果，与发出顺序一一对应
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object> executePipelined(Consumer<RedisOperations<String, Object>> batch) {
+        return redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                batch.accept((RedisOperations<String, Object>) operations);
+                return null;
+            }
+        });
+    }
+
     // ============================== Pattern ==============================
 
     /**
@@ -247,6 +459,8 @@ public class RedisService {
         if (keys == null || keys.isEmpty()) {
             return 0L;
         }
-        return redisTemplate.delete(keys);
+        Long deleted = redisTemplate.delete(keys);
+        keys.forEach(hotKeyDetector::invalidate);
+        return deleted;
     }
 }
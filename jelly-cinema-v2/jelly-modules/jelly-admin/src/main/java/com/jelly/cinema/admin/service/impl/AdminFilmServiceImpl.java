@@ -11,6 +11,7 @@ import com.jelly.cinema.admin.service.AdminFilmService;
 import com.jelly.cinema.common.core.domain.PageQuery;
 import com.jelly.cinema.common.core.domain.PageResult;
 import com.jelly.cinema.common.core.exception.ServiceException;
+import com.jelly.cinema.common.redis.cache.MultiLevelCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -28,7 +29,13 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class AdminFilmServiceImpl implements AdminFilmService {
 
+    /**
+     * 电影详情多级缓存名（与 film 服务的 FilmServiceImpl 一致）
+     */
+    private static final String FILM_CACHE_NAME = "film";
+
     private final AdminFilmMapper filmMapper;
+    private final MultiLevelCache multiLevelCache;
 
     @Override
     public PageResult<Film> list(PageQuery query, String keyword, Long categoryId) {
@@ -61,6 +68,7 @@ public class AdminFilmServiceImpl implements AdminFilmService {
             }
             BeanUtil.copyProperties(dto, film, "id", "playCount", "status");
             filmMapper.updateById(film);
+            evictFilmCache(film.getId());
             log.info("电影更新: id={}", film.getId());
         } else {
             // 创建
@@ -82,15 +90,24 @@ public class AdminFilmServiceImpl implements AdminFilmService {
 
         film.setStatus(status);
         filmMapper.updateById(film);
+        evictFilmCache(id);
         log.info("电影状态更新: id={}, status={}", id, status);
     }
 
     @Override
     public void delete(Long id) {
         filmMapper.deleteById(id);
+        evictFilmCache(id);
         log.info("电影删除: id={}", id);
     }
 
+    /**
+     * 写库后删除电影详情缓存（L2 + 各节点 L1，经失效总线广播）
+     */
+    private void evictFilmCache(Long id) {
+        multiLevelCache.evict(FILM_CACHE_NAME, String.valueOf(id));
+    }
+
     @Override
     public Long countTotal() {
         return filmMapper.countTotal();
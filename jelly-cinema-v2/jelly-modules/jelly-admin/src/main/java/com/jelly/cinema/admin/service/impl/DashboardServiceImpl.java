@@ -129,14 +129,20 @@ public class DashboardServiceImpl implements DashboardService {
         String[] periods = {"00-04", "04-08", "08-12", "12-16", "16-20", "20-24"};
         int[][] hourRanges = {{0, 4}, {4, 8}, {8, 12}, {12, 16}, {16, 20}, {20, 24}};
         
+        // 一次 MGET 取回当天 24 个小时的消息数
+        List<String> hourKeys = new ArrayList<>(24);
+        for (int h = 0; h < 24; h++) {
+            hourKeys.add(MSG_HOUR_KEY + today + ":" + String.format("%02d", h));
+        }
+        List<Object> hourCounts = redisService.mGet(hourKeys);
+        
         for (int i = 0; i < periods.length; i++) {
             long totalCount = 0;
-            // 从 Redis 累加该时段内每小时的消息数
+            // 累加该时段内每小时的消息数
             for (int h = hourRanges[i][0]; h < hourRanges[i][1]; h++) {
-                String key = MSG_HOUR_KEY + today + ":" + String.format("%02d", h);
-                Long count = redisService.get(key);
-                if (count != null) {
-                    totalCount += count;
+                Object count = h < hourCounts.size() ? hourCounts.get(h) : null;
+                if (count instanceof Number number) {
+                    totalCount += number.longValue();
                 }
             }
             dist.add(new DashboardStatsVO.TrendItem(periods[i], totalCount));
@@ -20,10 +20,10 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 /**
  * 帖子服务实现
@@ -65,9 +65,7 @@ public class PostServiceImpl implements PostService {
                 wrapper
         );
 
-        List<PostVO> voList = page.getRecords().stream()
-                .map(this::toVO)
-                .collect(Collectors.toList());
+        List<PostVO> voList = toVOList(page.getRecords());
 
         return PageResult.build(voList, page.getTotal(), query.getPageNum(), query.getPageSize());
     }
@@ -78,7 +76,7 @@ public class PostServiceImpl implements PostService {
         if (post == null || post.getStatus() == 1) {
             throw new ServiceException("帖子不存在");
         }
-        return toVO(post);
+        return toVOList(List.of(post)).get(0);
     }
 
     @Override
@@ -200,9 +198,7 @@ public class PostServiceImpl implements PostService {
                 wrapper
         );
 
-        List<PostVO> voList = page.getRecords().stream()
-                .map(this::toVO)
-                .collect(Collectors.toList());
+        List<PostVO> voList = toVOList(page.getRecords());
 
         return PageResult.build(voList, page.getTotal(), query.getPageNum(), query.getPageSize());
     }
@@ -235,10 +231,48 @@ public class PostServiceImpl implements PostService {
         return text.length() > 200 ? text.substring(0, 200) + "..." : text;
     }
 
+    /**
+     * 批量转换为 VO
+     *
+     * 浏览次数和当前用户投票状态通过一次 MGET 取回，避免每个帖子两次 GET
+     */
+    private List<PostVO> toVOList(List<Post> posts) {
+        if (posts.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Long userId = LoginHelper.isLogin() ? LoginHelper.getUserId() : null;
+        List<String> keys = new ArrayList<>(posts.size() * 2);
+        for (Post post : posts) {
+            keys.add(POST_VIEW_KEY + post.getId());
+        }
+        if (userId != null) {
+            for (Post post : posts) {
+                keys.add(POST_VOTE_KEY + post.getId() + ":" + userId);
+            }
+        }
+        List<Object> values = redisService.mGet(keys);
+
+        List<PostVO> voList = new ArrayList<>(posts.size());
+        for (int i = 0; i < posts.size(); i++) {
+            Object viewCount = valueAt(values, i);
+            Object voteStatus = userId != null ? valueAt(values, posts.size() + i) : null;
+            voList.add(toVO(posts.get(i), viewCount, voteStatus));
+        }
+        return voList;
+    }
+
+    private Object valueAt(List<Object> values, int index) {
+        return index < values.size() ? values.get(index) : null;
+    }
+
     /**
      * 转换为 VO
+     *
+     * @param viewCountObj Redis 中的实时浏览次数
+     * @param voteStatusObj 当前用户投票状态
      */
-    private PostVO toVO(Post post) {
+    private PostVO toVO(Post post, Object viewCountObj, Object voteStatusObj) {
         PostVO vo = BeanUtil.copyProperties(post, PostVO.class);
 
         // 填充默认用户信息
@@ -247,22 +281,13 @@ public class PostServiceImpl implements PostService {
             vo.setUserAvatar("https://cube.elemecdn.com/3/7c/3ea6beec64369c2642b92c6726f1epng.png");
         }
 
-        // 从 Redis 获取实时浏览次数
-        String viewKey = POST_VIEW_KEY + post.getId();
-        Object viewCountObj = redisService.get(viewKey);
+        // 实时浏览次数
         if (viewCountObj != null) {
             vo.setViewCount(((Number) viewCountObj).intValue());
         }
 
-        // 获取当前用户投票状态
-        if (LoginHelper.isLogin()) {
-            Long userId = LoginHelper.getUserId();
-            String key = POST_VOTE_KEY + post.getId() + ":" + userId;
-            Integer voteStatus = redisService.get(key);
-            vo.setVoteStatus(voteStatus != null ? voteStatus : 0);
-        } else {
-            vo.setVoteStatus(0);
-        }
+        // 当前用户投票状态
+        vo.setVoteStatus(voteStatusObj instanceof Number number ? number.intValue() : 0);
 
         return vo;
     }
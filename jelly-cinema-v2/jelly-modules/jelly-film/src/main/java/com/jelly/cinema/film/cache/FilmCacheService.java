@@ -2,15 +2,18 @@ package com.jelly.cinema.film.cache;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.jelly.cinema.common.redis.cache.BloomFilterMirror;
+import com.jelly.cinema.common.redis.cache.CacheMetrics;
+import com.jelly.cinema.common.redis.cache.CacheRefresher;
 import com.jelly.cinema.film.domain.entity.Film;
 import com.jelly.cinema.film.domain.vo.FilmVO;
 import com.jelly.cinema.film.mapper.FilmMapper;
 import jakarta.annotation.PostConstruct;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RBloomFilter;
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 
@@ -28,20 +31,23 @@ import java.util.function.Supplier;
  * L2: Redis 分布式缓存（支持集群）
  * 
  * 缓存保护：
- * - BloomFilter 防止缓存穿透
+ * - BloomFilter 防止缓存穿透（本地镜像判断，不产生网络往返）
  * - 互斥锁防止缓存击穿
  * - 随机过期时间防止缓存雪崩
+ * - 本地缓存临近过期时异步提前刷新，读请求直接返回旧值
  * 
  * @author Jelly Cinema
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class FilmCacheService {
 
     private final RedisTemplate<String, Object> redisTemplate;
     private final RedissonClient redissonClient;
     private final FilmMapper filmMapper;
+    private final CacheRefresher cacheRefresher;
+    private final BloomFilterMirror bloomFilterMirror;
+    private final CacheMetrics cacheMetrics;
 
     /**
      * 本地缓存：电影详情
@@ -58,6 +64,8 @@ public class FilmCacheService {
      */
     private RBloomFilter<Long> filmIdBloomFilter;
 
+    private static final String FILM_ID_BLOOM_FILTER = "bloom:film:id";
+
     /**
      * Redis Key 前缀
      */
@@ -79,6 +87,32 @@ public class FilmCacheService {
     private static final long CATEGORY_EXPIRE_SECONDS = 1800;    // 30 分钟
     private static final long NULL_EXPIRE_SECONDS = 60;          // 空值 1 分钟
 
+    /**
+     * 本地缓存提前刷新时间（需小于本地缓存过期时间）
+     */
+    private static final Duration DETAIL_REFRESH_AFTER = Duration.ofMinutes(8);
+    private static final Duration HOT_REFRESH_AFTER = Duration.ofSeconds(90);
+
+    /**
+     * 指标中的缓存名称
+     */
+    private static final String DETAIL_METRIC_NAME = "film-detail";
+    private static final String HOT_METRIC_NAME = "film-hot";
+
+    /**
+     * L2 使用缓存层 RedisTemplate（紧凑二进制编码）
+     */
+    public FilmCacheService(@Qualifier("cacheRedisTemplate") RedisTemplate<String, Object> redisTemplate,
+                            RedissonClient redissonClient, FilmMapper filmMapper, CacheRefresher cacheRefresher,
+                            BloomFilterMirror bloomFilterMirror, CacheMetrics cacheMetrics) {
+        this.redisTemplate = redisTemplate;
+        this.redissonClient = redissonClient;
+        this.filmMapper = filmMapper;
+        this.cacheRefresher = cacheRefresher;
+        this.bloomFilterMirror = bloomFilterMirror;
+        this.cacheMetrics = cacheMetrics;
+    }
+
     @PostConstruct
     public void init() {
         log.info("===== 初始化电影缓存服务 =====");
@@ -98,8 +132,11 @@ public class FilmCacheService {
                 .recordStats()
                 .build();
 
+        cacheMetrics.monitor(DETAIL_METRIC_NAME, filmDetailCache);
+        cacheMetrics.monitor(HOT_METRIC_NAME, hotFilmCache);
+
         // 初始化 BloomFilter
-        filmIdBloomFilter = redissonClient.getBloomFilter("bloom:film:id");
+        filmIdBloomFilter = redissonClient.getBloomFilter(FILM_ID_BLOOM_FILTER);
         filmIdBloomFilter.tryInit(1000000, 0.01); // 预期 100 万数据，误判率 1%
 
         // 预热 BloomFilter
@@ -115,9 +152,7 @@ public class FilmCacheService {
         try {
             List<Long> filmIds = filmMapper.selectAllIds();
             if (filmIds != null && !filmIds.isEmpty()) {
-                for (Long id : filmIds) {
-                    filmIdBloomFilter.add(id);
-                }
+                bloomFilterMirror.addAll(FILM_ID_BLOOM_FILTER, filmIds);
                 log.info("BloomFilter 预热完成: {} 条电影 ID", filmIds.size());
             }
         } catch (Exception e) {
@@ -129,7 +164,7 @@ public class FilmCacheService {
      * 添加电影 ID 到 BloomFilter
      */
     public void addToBloomFilter(Long filmId) {
-        filmIdBloomFilter.add(filmId);
+        bloomFilterMirror.add(FILM_ID_BLOOM_FILTER, filmId);
     }
 
     // ==================== 电影详情缓存 ====================
@@ -139,8 +174,9 @@ public class FilmCacheService {
      */
     public FilmVO getFilmDetail(Long filmId, Supplier<FilmVO> loader) {
         // 1. BloomFilter 检查（防止缓存穿透）
-        if (!filmIdBloomFilter.contains(filmId)) {
+        if (!bloomFilterMirror.mightContain(FILM_ID_BLOOM_FILTER, filmId)) {
             log.debug("BloomFilter 拦截，电影不存在: filmId={}", filmId);
+            cacheMetrics.recordBloomRejection(FILM_ID_BLOOM_FILTER);
             return null;
         }
 
@@ -155,6 +191,10 @@ public class FilmCacheService {
         FilmVO localValue = filmDetailCache.getIfPresent(filmId);
         if (localValue != null) {
             log.debug("L1 缓存命中: filmId={}", filmId);
+            cacheMetrics.recordGet(DETAIL_METRIC_NAME, CacheMetrics.L1_HIT);
+            if (isStale(filmDetailCache, filmId, DETAIL_REFRESH_AFTER)) {
+                cacheRefresher.refreshAsync(FILM_DETAIL_KEY + filmId, () -> reloadFilmDetail(filmId, loader));
+            }
             return localValue;
         }
 
@@ -163,6 +203,7 @@ public class FilmCacheService {
         Object redisValue = redisTemplate.opsForValue().get(redisKey);
         if (redisValue != null) {
             log.debug("L2 缓存命中: filmId={}", filmId);
+            cacheMetrics.recordGet(DETAIL_METRIC_NAME, CacheMetrics.L2_HIT);
             FilmVO filmVO = (FilmVO) redisValue;
             // 回填 L1
             filmDetailCache.put(filmId, filmVO);
@@ -170,9 +211,32 @@ public class FilmCacheService {
         }
 
         // 5. 缓存未命中，使用互斥锁加载（防止缓存击穿）
+        cacheMetrics.recordGet(DETAIL_METRIC_NAME, CacheMetrics.MISS);
         return loadWithMutex(filmId, redisKey, loader);
     }
 
+    /**
+     * 异步刷新电影详情（不加互斥锁，同一 JVM 内由 CacheRefresher 去重）
+     */
+    private void reloadFilmDetail(Long filmId, Supplier<FilmVO> loader) {
+        FilmVO filmVO = cacheMetrics.timeLoad(DETAIL_METRIC_NAME, loader);
+        if (filmVO != null) {
+            updateFilmDetail(filmId, filmVO);
+        } else {
+            evictFilmDetail(filmId);
+        }
+    }
+
+    /**
+     * 本地缓存条目写入时间是否已超过刷新阈值
+     */
+    private <K> boolean isStale(Cache<K, ?> cache, K key, Duration refreshAfter) {
+        return cache.policy().expireAfterWrite()
+                .flatMap(policy -> policy.ageOf(key))
+                .map(age -> age.compareTo(refreshAfter) >= 0)
+                .orElse(false);
+    }
+
     /**
      * 使用互斥锁加载数据
      */
@@ -182,7 +246,9 @@ public class FilmCacheService {
 
         try {
             // 尝试获取锁（等待 3 秒，持有 10 秒）
+            long waitStart = System.nanoTime();
             boolean acquired = lock.tryLock(3, 10, TimeUnit.SECONDS);
+            cacheMetrics.recordMutexWait(DETAIL_METRIC_NAME, System.nanoTime() - waitStart);
 
             if (acquired) {
                 try {
@@ -196,7 +262,7 @@ public class FilmCacheService {
 
                     // 从数据源加载
                     log.debug("从数据源加载电影详情: filmId={}", filmId);
-                    FilmVO filmVO = loader.get();
+                    FilmVO filmVO = cacheMetrics.timeLoad(DETAIL_METRIC_NAME, loader);
 
                     if (filmVO != null) {
                         // 写入缓存（添加随机过期时间，防止雪崩）
@@ -222,12 +288,12 @@ public class FilmCacheService {
                     return (FilmVO) redisValue;
                 }
                 // 降级：直接从数据源加载
-                return loader.get();
+                return cacheMetrics.timeLoad(DETAIL_METRIC_NAME, loader);
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             log.error("获取互斥锁被中断: filmId={}", filmId);
-            return loader.get();
+            return cacheMetrics.timeLoad(DETAIL_METRIC_NAME, loader);
         }
     }
 
@@ -278,6 +344,10 @@ public class FilmCacheService {
         List<FilmVO> localValue = hotFilmCache.getIfPresent(cacheKey);
         if (localValue != null) {
             log.debug("热门电影 L1 缓存命中: category={}", cacheKey);
+            cacheMetrics.recordGet(HOT_METRIC_NAME, CacheMetrics.L1_HIT);
+            if (isStale(hotFilmCache, cacheKey, HOT_REFRESH_AFTER)) {
+                cacheRefresher.refreshAsync(FILM_HOT_KEY + cacheKey, () -> reloadHotFilms(cacheKey, loader));
+            }
             return localValue;
         }
 
@@ -286,13 +356,15 @@ public class FilmCacheService {
         Object redisValue = redisTemplate.opsForValue().get(redisKey);
         if (redisValue != null) {
             log.debug("热门电影 L2 缓存命中: category={}", cacheKey);
+            cacheMetrics.recordGet(HOT_METRIC_NAME, CacheMetrics.L2_HIT);
             List<FilmVO> films = (List<FilmVO>) redisValue;
             hotFilmCache.put(cacheKey, films);
             return films;
         }
 
         // 3. 从数据源加载
-        List<FilmVO> films = loader.get();
+        cacheMetrics.recordGet(HOT_METRIC_NAME, CacheMetrics.MISS);
+        List<FilmVO> films = cacheMetrics.timeLoad(HOT_METRIC_NAME, loader);
         if (films != null && !films.isEmpty()) {
             // 写入缓存
             long randomExpire = HOT_EXPIRE_SECONDS + (long) (Math.random() * 60);
@@ -303,6 +375,18 @@ public class FilmCacheService {
         return films;
     }
 
+    /**
+     * 异步刷新热门电影列表
+     */
+    private void reloadHotFilms(String cacheKey, Supplier<List<FilmVO>> loader) {
+        List<FilmVO> films = cacheMetrics.timeLoad(HOT_METRIC_NAME, loader);
+        if (films != null && !films.isEmpty()) {
+            long randomExpire = HOT_EXPIRE_SECONDS + (long) (Math.random() * 60);
+            redisTemplate.opsForValue().set(FILM_HOT_KEY + cacheKey, films, randomExpire, TimeUnit.SECONDS);
+            hotFilmCache.put(cacheKey, films);
+        }
+    }
+
     /**
      * 刷新热门电影缓存
      */
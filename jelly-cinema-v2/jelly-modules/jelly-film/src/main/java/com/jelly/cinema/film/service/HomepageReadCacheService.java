@@ -2,7 +2,9 @@ package com.jelly.cinema.film.service;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.jelly.cinema.common.redis.cache.CacheMetrics;
 import com.jelly.cinema.film.domain.vo.HomepageContentVO;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
@@ -24,14 +26,22 @@ public class HomepageReadCacheService {
     private static final int MIN_LIMIT = 1;
     private static final int MAX_LIMIT = 50;
     private static final long CACHE_TTL_MINUTES = 3;
+    private static final String METRIC_NAME = "homepage";
 
     private final HomepageContentService homepageContentService;
+    private final CacheMetrics cacheMetrics;
 
     private final Cache<String, Object> cache = Caffeine.newBuilder()
             .maximumSize(256)
             .expireAfterWrite(CACHE_TTL_MINUTES, TimeUnit.MINUTES)
+            .recordStats()
             .build();
 
+    @PostConstruct
+    public void init() {
+        cacheMetrics.monitor(METRIC_NAME, cache);
+    }
+
     public List<HomepageContentVO> getRecommend(Integer limit) {
         int safeLimit = normalizeLimit(limit, 18);
         return cachedList("recommend:" + safeLimit, () -> homepageContentService.getRecommendList(safeLimit));
@@ -70,7 +80,8 @@ public class HomepageReadCacheService {
     @SuppressWarnings("unchecked")
     public Map<String, List<HomepageContentVO>> getSections() {
         return (Map<String, List<HomepageContentVO>>) cache.get("sections:full", key -> {
-            Map<String, List<HomepageContentVO>> sections = homepageContentService.getSectionedContent();
+            Map<String, List<HomepageContentVO>> sections =
+                    cacheMetrics.timeLoad(METRIC_NAME, homepageContentService::getSectionedContent);
             return deepCopySections(sections);
         });
     }
@@ -82,7 +93,7 @@ public class HomepageReadCacheService {
     @SuppressWarnings("unchecked")
     private List<HomepageContentVO> cachedList(String key, Supplier<List<HomepageContentVO>> loader) {
         return (List<HomepageContentVO>) cache.get(key, k -> {
-            List<HomepageContentVO> list = loader.get();
+            List<HomepageContentVO> list = cacheMetrics.timeLoad(METRIC_NAME, loader);
             if (list == null || list.isEmpty()) {
                 return Collections.emptyList();
             }
@@ -10,6 +10,7 @@ import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.jelly.cinema.common.core.domain.PageResult;
 import com.jelly.cinema.common.core.exception.ServiceException;
+import com.jelly.cinema.common.redis.cache.MultiLevelCache;
 import com.jelly.cinema.common.redis.service.RedisService;
 import com.jelly.cinema.film.domain.dto.FilmQueryDTO;
 import com.jelly.cinema.film.domain.entity.Category;
@@ -59,6 +60,7 @@ public class FilmServiceImpl implements FilmService {
     private final FilmMapper filmMapper;
     private final CategoryMapper categoryMapper;
     private final RedisService redisService;
+    private final MultiLevelCache multiLevelCache;
     private final RestTemplate restTemplate;
     private final FilmRagSyncService filmRagSyncService;
 
@@ -85,6 +87,8 @@ public class FilmServiceImpl implements FilmService {
 
     private static final String FILM_HOT_RANK_KEY = "jelly:film:hot:rank";
     private static final String FILM_PLAY_COUNT_KEY = "jelly:film:play:count:";
+    private static final String FILM_CACHE_NAME = "film";
+    private static final long FILM_CACHE_EXPIRE_SECONDS = 600;
     private static final int SEARCH_LIMIT = 20;
     private static final int RAG_SYNC_LIMIT = 200;
     private static final int RAG_SYNC_TRIGGER_LIMIT = 100;
@@ -134,11 +138,14 @@ public class FilmServiceImpl implements FilmService {
 
     @Override
     public FilmVO getDetail(Long id) {
-        Film film = filmMapper.selectById(id);
-        if (film == null) {
+        FilmVO vo = multiLevelCache.get(FILM_CACHE_NAME, String.valueOf(id), () -> {
+            Film film = filmMapper.selectById(id);
+            return film == null ? null : toVO(film);
+        }, FILM_CACHE_EXPIRE_SECONDS);
+        if (vo == null) {
             throw new ServiceException("电影不存在");
         }
-        return toVO(film);
+        return vo;
     }
 
     @Override
@@ -188,17 +195,10 @@ public class FilmServiceImpl implements FilmService {
         try {
             Set<Object> cachedIds = redisService.zReverseRange(FILM_HOT_RANK_KEY, 0, limit - 1);
             if (cachedIds != null && !cachedIds.isEmpty()) {
-                return cachedIds.stream()
-                        .map(obj -> {
-                            try {
-                                return getDetail(Long.valueOf(obj.toString()));
-                            } catch (Exception e) {
-                                log.warn("获取电影详情失败: {}", obj, e);
-                                return null;
-                            }
-                        })
-                        .filter(vo -> vo != null)
+                List<Long> ids = cachedIds.stream()
+                        .map(obj -> Long.valueOf(obj.toString()))
                         .collect(Collectors.toList());
+                return getFilmsByIds(ids);
             }
         } catch (Exception e) {
             log.warn("从 Redis 获取热门榜单失败，回退数据库查询", e);
@@ -227,16 +227,28 @@ public class FilmServiceImpl implements FilmService {
             return List.of();
         }
 
-        List<Film> films = filmMapper.selectBatchIds(ids);
-        Map<Long, FilmVO> filmMap = films.stream()
-                .collect(Collectors.toMap(Film::getId, this::toVO));
+        List<String> keys = ids.stream()
+                .filter(id -> id != null)
+                .map(String::valueOf)
+                .collect(Collectors.toList());
+        Map<String, FilmVO> filmMap = multiLevelCache.getAll(FILM_CACHE_NAME, keys,
+                this::loadFilmVOs, FILM_CACHE_EXPIRE_SECONDS);
 
-        return ids.stream()
+        return keys.stream()
                 .map(filmMap::get)
                 .filter(vo -> vo != null)
                 .collect(Collectors.toList());
     }
 
+    /**
+     * 批量回源：缓存未命中的电影 ID 一次查库
+     */
+    private Map<String, FilmVO> loadFilmVOs(Collection<String> keys) {
+        List<Long> missingIds = keys.stream().map(Long::valueOf).collect(Collectors.toList());
+        return filmMapper.selectBatchIds(missingIds).stream()
+                .collect(Collectors.toMap(film -> String.valueOf(film.getId()), this::toVO));
+    }
+
     @Override
     public boolean saveFromTvbox(Map<String, Object> data) {
         String title = stringValue(data.get("title"));
@@ -250,6 +262,7 @@ public class FilmServiceImpl implements FilmService {
             boolean changed = mergeExistingFilm(existing, data);
             if (changed) {
                 filmMapper.updateById(existing);
+                multiLevelCache.evict(FILM_CACHE_NAME, String.valueOf(existing.getId()));
                 filmRagSyncService.syncFilm(existing);
             }
             return false;
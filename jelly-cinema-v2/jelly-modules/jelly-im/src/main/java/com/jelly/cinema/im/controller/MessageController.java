@@ -5,6 +5,7 @@ import com.jelly.cinema.common.core.domain.PageQuery;
 import com.jelly.cinema.common.core.domain.PageResult;
 import com.jelly.cinema.common.core.domain.R;
 import com.jelly.cinema.common.security.utils.LoginHelper;
+import com.jelly.cinema.im.domain.vo.MessageCursorVO;
 import com.jelly.cinema.im.domain.vo.MessageVO;
 import com.jelly.cinema.im.domain.vo.SessionVO;
 import com.jelly.cinema.im.service.ImAdminService;
@@ -47,6 +48,24 @@ public class MessageController {
         return R.ok(messageService.getHistory(sessionId, query));
     }
 
+    @Operation(summary = "按序列号游标获取历史消息")
+    @GetMapping("/history/{sessionId}/cursor")
+    public R<MessageCursorVO> getHistoryBefore(@PathVariable String sessionId,
+                                               @RequestParam(required = false) Long beforeSeq,
+                                               @RequestParam(defaultValue = "20") Integer limit) {
+        Long userId = LoginHelper.getUserId();
+        return R.ok(messageService.getHistoryBefore(userId, sessionId, beforeSeq, limit));
+    }
+
+    @Operation(summary = "按序列号拉取群消息")
+    @GetMapping("/group/{groupId}/pull")
+    public R<List<MessageVO>> pullGroupMessages(@PathVariable Long groupId,
+                                                @RequestParam(defaultValue = "0") Long afterSeq,
+                                                @RequestParam(defaultValue = "50") Integer limit) {
+        Long userId = LoginHelper.getUserId();
+        return R.ok(messageService.pullGroupMessages(userId, groupId, afterSeq, limit));
+    }
+
     @Operation(summary = "撤回消息")
     @PostMapping("/recall/{messageId}")
     public R<Void> recall(@PathVariable Long messageId) {
@@ -0,0 +1,701 @@
+package com.jelly.cinema.im.conversation;
+
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
+import com.jelly.cinema.common.redis.service.RedisService;
+import com.jelly.cinema.im.domain.entity.ChatMessage;
+import com.jelly.cinema.im.domain.entity.Conversation;
+import com.jelly.cinema.im.domain.entity.ReadWatermark;
+import com.jelly.cinema.im.domain.vo.SessionVO;
+import com.jelly.cinema.im.fanout.FanoutMode;
+import com.jelly.cinema.im.fanout.GroupFanoutEngine;
+import com.jelly.cinema.im.mapper.ChatMessageMapper;
+import com.jelly.cinema.im.mapper.ConversationMapper;
+import com.jelly.cinema.im.mapper.ReadWatermarkMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.stereotype.Component;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用户会话索引（物化的会话列表）
+ *
+ * 会话列表不再每次扫描消息表聚合，而是在发送/撤回/已读时增量维护：
+ * - jelly:im:conv:{userId}          ZSet，成员为 sessionId，分数为最后消息时间（毫秒）
+ * - jelly:im:conv:{userId}:unread   Hash，sessionId -> 未读数（HINCRBY）
+ * - jelly:im:conv:{userId}:read     Hash，sessionId -> 已读水位（已读到的序列号）
+ * - jelly:im:conv:last:{sessionId}  会话最后一条消息摘要，每个会话只存一份，不随成员数放大，有新消息时续期
+ *
+ * 读扩散的群只更新会话摘要和发送者自己的条目，成员的排序时间在读取时取摘要时间与条目分数的较大值，
+ * 未读数在读取时按已读水位统计消息表（msg_seq > 已读水位，走 idx_session_seq，最多数到 unread-count-limit 条），
+ * 只对有新消息的群统计；Redis 中没有水位的成员从 t_im_read_watermark 补齐，入群时水位初始化为群的最后序列号。
+ * 变更过的 (userId, sessionId) 记入脏集合，由后台线程批量回写 t_im_conversation；
+ * Redis 中的索引过期或丢失时先从该表恢复，表中也没有记录时由调用方按消息表重建一次。
+ *
+ * @author Jelly Cinema
+ */
+@Slf4j
+@Component
+public class ConversationIndex {
+
+    public static final String CONV_KEY = "jelly:im:conv:";
+
+    public static final String LAST_KEY = "jelly:im:conv:last:";
+
+    private static final String UNREAD_SUFFIX = ":unread";
+
+    private static final String READ_SUFFIX = ":read";
+
+    private static final String GROUP_PREFIX = "group_";
+
+    private static final String PRIVATE_PREFIX = "private_";
+
+    private static final String RECALLED = "[消息已撤回]";
+
+    private static final String GROUP_CREATED = "[群聊创建]";
+
+    /**
+     * 空列表标记：用户没有任何会话时写入索引，避免每次读取都回退到消息表聚合（无法解析为会话，读取时被跳过）
+     */
+    private static final String EMPTY_MARKER = "#empty";
+
+    private final RedisService redisService;
+    private final ConversationMapper conversationMapper;
+    private final ChatMessageMapper chatMessageMapper;
+    private final ReadWatermarkMapper readWatermarkMapper;
+
+    /**
+     * 会话列表最多返回的会话数
+     */
+    @Value("${im.conversation.max-sessions:500}")
+    private int maxSessions;
+
+    /**
+     * 用户索引的保留天数（读取会话列表或发送消息时续期）
+     */
+    @Value("${im.conversation.ttl-days:30}")
+    private long ttlDays;
+
+    @Value("${im.conversation.flush-interval-ms:2000}")
+    private long flushIntervalMs;
+
+    @Value("${im.conversation.flush-batch-size:500}")
+    private int flushBatchSize;
+
+    /**
+     * 最后一条消息摘要的最大长度
+     */
+    @Value("${im.conversation.preview-length:200}")
+    private int previewLength;
+
+    /**
+     * 读扩散群未读数的统计上限（超过时按上限显示）
+     */
+    @Value("${im.conversation.unread-count-limit:100}")
+    private int unreadCountLimit;
+
+    private final Set<DirtyKey> dirty = ConcurrentHashMap.newKeySet();
+
+    private ScheduledExecutorService flushExecutor;
+
+    private record DirtyKey(long userId, String sessionId) {
+    }
+
+    /**
+     * 会话最后一条消息摘要
+     */
+    @Data
+    public static class LastMessage implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private Long msgId;
+
+        private Long fromId;
+
+        private String content;
+
+        /**
+         * 消息时间（毫秒）
+         */
+        private Long time;
+
+        private Long seq;
+    }
+
+    public ConversationIndex(RedisService redisService, ConversationMapper conversationMapper,
+                             ChatMessageMapper chatMessageMapper, ReadWatermarkMapper readWatermarkMapper) {
+        this.redisService = redisService;
+        this.conversationMapper = conversationMapper;
+        this.chatMessageMapper = chatMessageMapper;
+        this.readWatermarkMapper = readWatermarkMapper;
+    }
+
+    @PostConstruct
+    public void init() {
+        flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "im-conversation-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flushExecutor.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("会话索引: maxSessions={}, flushInterval={}ms, flushBatchSize={}", maxSessions, flushIntervalMs, flushBatchSize);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (flushExecutor != null) {
+            flushExecutor.shutdownNow();
+        }
+        flush();
+    }
+
+    // ============================== 增量维护 ==============================
+
+    /**
+     * 私聊消息：更新双方条目，接收方未读数 +1
+     */
+    public void onPrivateMessage(ChatMessage message) {
+        String sessionId = message.getSessionId();
+        long fromId = message.getFromId();
+        long toId = message.getToId();
+        LastMessage last = lastOf(message);
+        try {
+            redisService.executePipelined(ops -> {
+                ops.opsForValue().set(LAST_KEY + sessionId, last, ttlDays, TimeUnit.DAYS);
+                touchSender(ops, fromId, sessionId, last);
+                touchRecipient(ops, toId, sessionId, last.getTime());
+            });
+        } catch (Exception e) {
+            log.warn("更新私聊会话索引失败: sessionId={}, error={}", sessionId, e.getMessage());
+        }
+        markDirty(fromId, sessionId);
+        markDirty(toId, sessionId);
+    }
+
+    /**
+     * 群消息：写扩散时更新所有接收者条目并累加未读数，读扩散时只更新会话摘要和发送者条目
+     */
+    public void onGroupMessage(ChatMessage message, GroupFanoutEngine.FanoutPlan plan) {
+        String sessionId = message.getSessionId();
+        long fromId = message.getFromId();
+        long[] recipients = plan.mode() == FanoutMode.WRITE_DIFFUSION ? plan.recipients() : new long[0];
+        LastMessage last = lastOf(message);
+        try {
+            redisService.executePipelined(ops -> {
+                ops.opsForValue().set(LAST_KEY + sessionId, last, ttlDays, TimeUnit.DAYS);
+                touchSender(ops, fromId, sessionId, last);
+                for (long userId : recipients) {
+                    touchRecipient(ops, userId, sessionId, last.getTime());
+                }
+            });
+        } catch (Exception e) {
+            log.warn("更新群会话索引失败: sessionId={}, recipients={}, error={}", sessionId, recipients.length, e.getMessage());
+        }
+        markDirty(fromId, sessionId);
+        for (long userId : recipients) {
+            markDirty(userId, sessionId);
+        }
+    }
+
+    /**
+     * 撤回的是会话最后一条消息时，摘要改为撤回提示
+     */
+    public void onRecall(ChatMessage message) {
+        String key = LAST_KEY + message.getSessionId();
+        List<Object> values = redisService.mGet(List.of(key));
+        if (!values.isEmpty() && values.get(0) instanceof LastMessage last
+                && message.getId().equals(last.getMsgId())) {
+            last.setContent(RECALLED);
+            redisService.set(key, last, ttlDays, TimeUnit.DAYS);
+        }
+    }
+
+    /**
+     * 会话已读：清零未读数
+     */
+    public void clearUnread(Long userId, String sessionId) {
+        redisService.hDelete(CONV_KEY + userId + UNREAD_SUFFIX, sessionId);
+        markDirty(userId, sessionId);
+    }
+
+    /**
+     * 推进已读水位：清零未读数并记录已读到的序列号
+     */
+    public void markRead(Long userId, String sessionId, Long readSeq) {
+        String key = CONV_KEY + userId;
+        redisService.executePipelined(ops -> {
+            ops.opsForHash().delete(key + UNREAD_SUFFIX, sessionId);
+            if (readSeq != null && readSeq > 0) {
+                ops.opsForHash().put(key + READ_SUFFIX, sessionId, readSeq);
+            }
+        });
+        markDirty(userId, sessionId);
+    }
+
+    /**
+     * 会话最后一条消息的序列号，未知时返回 null
+     */
+    public Long lastSeq(String sessionId) {
+        List<Object> values = redisService.mGet(List.of(LAST_KEY + sessionId));
+        return !values.isEmpty() && values.get(0) instanceof LastMessage last ? last.getSeq() : null;
+    }
+
+    /**
+     * 批量读取用户在会话中的已读水位（一次 pipeline），没有记录的用户不出现在结果中
+     */
+    public Map<Long, Long> readSeqs(String sessionId, Collection<Long> userIds) {
+        List<Long> ids = new ArrayList<>(userIds);
+        List<Object> values = redisService.executePipelined(ops -> {
+            for (Long userId : ids) {
+                ops.opsForHash().get(CONV_KEY + userId + READ_SUFFIX, sessionId);
+            }
+        });
+        Map<Long, Long> readSeqs = new HashMap<>();
+        for (int i = 0; i < ids.size() && i < values.size(); i++) {
+            if (values.get(i) instanceof Number readSeq) {
+                readSeqs.put(ids.get(i), readSeq.longValue());
+            }
+        }
+        return readSeqs;
+    }
+
+    /**
+     * 用户清空会话消息：只重置该用户的条目（清零未读数、已读到最后一条），会话摘要由所有参与者共享，保留
+     */
+    public void onCleared(Long userId, String sessionId) {
+        markRead(userId, sessionId, lastSeq(sessionId));
+    }
+
+    /**
+     * 从用户的会话列表中移除会话
+     */
+    public void remove(Long userId, String sessionId) {
+        removeAll(List.of(userId), sessionId);
+    }
+
+    /**
+     * 入群：为新成员添加群会话条目，已读水位从群当前的最后一条消息开始（入群前的消息不计未读）
+     */
+    public void onGroupJoin(Long groupId, Collection<Long> userIds) {
+        if (userIds == null || userIds.isEmpty()) {
+            return;
+        }
+        String sessionId = GROUP_PREFIX + groupId;
+        long now = System.currentTimeMillis();
+        Long lastSeq = lastSeq(sessionId);
+        long readSeq = lastSeq != null ? lastSeq : Objects.requireNonNullElse(chatMessageMapper.selectMaxSeq(sessionId), 0L);
+        redisService.executePipelined(ops -> {
+            for (Long userId : userIds) {
+                ops.opsForZSet().add(CONV_KEY + userId, sessionId, now);
+                if (readSeq > 0) {
+                    ops.opsForHash().put(CONV_KEY + userId + READ_SUFFIX, sessionId, readSeq);
+                }
+            }
+        });
+        userIds.forEach(userId -> markDirty(userId, sessionId));
+    }
+
+    /**
+     * 退群/被踢：移除群会话条目
+     */
+    public void onGroupLeave(Long groupId, Collection<Long> userIds) {
+        if (userIds == null || userIds.isEmpty()) {
+            return;
+        }
+        removeAll(userIds, GROUP_PREFIX + groupId);
+    }
+
+    private void removeAll(Collection<Long> userIds, String sessionId) {
+        redisService.executePipelined(ops -> {
+            for (Long userId : userIds) {
+                ops.opsForZSet().remove(CONV_KEY + userId, sessionId);
+                ops.opsForHash().delete(CONV_KEY + userId + UNREAD_SUFFIX, sessionId);
+                ops.opsForHash().delete(CONV_KEY + userId + READ_SUFFIX, sessionId);
+            }
+        });
+        userIds.forEach(userId -> markDirty(userId, sessionId));
+    }
+
+    /**
+     * 发送者：发出消息即视为已读到该消息，并为其索引续期（接收者的索引在其读取会话列表时续期）
+     */
+    private void touchSender(RedisOperations<String, Object> ops, long userId, String sessionId, LastMessage last) {
+        String key = CONV_KEY + userId;
+        ops.opsForZSet().add(key, sessionId, last.getTime());
+        if (last.getSeq() != null) {
+            ops.opsForHash().put(key + READ_SUFFIX, sessionId, last.getSeq());
+        }
+        ops.expire(key, ttlDays, TimeUnit.DAYS);
+        ops.expire(key + UNREAD_SUFFIX, ttlDays, TimeUnit.DAYS);
+        ops.expire(key + READ_SUFFIX, ttlDays, TimeUnit.DAYS);
+    }
+
+    private void touchRecipient(RedisOperations<String, Object> ops, long userId, String sessionId, long time) {
+        ops.opsForZSet().add(CONV_KEY + userId, sessionId, time);
+        ops.opsForHash().increment(CONV_KEY + userId + UNREAD_SUFFIX, sessionId, 1);
+    }
+
+    private LastMessage lastOf(ChatMessage message) {
+        LastMessage last = new LastMessage();
+        last.setMsgId(message.getId());
+        last.setFromId(message.getFromId());
+        last.setContent(preview(message.getContent()));
+        last.setTime(message.getCreateTime() != null ? toMillis(message.getCreateTime()) : System.currentTimeMillis());
+        last.setSeq(message.getMsgSeq());
+        return last;
+    }
+
+    private String preview(String content) {
+        if (content == null || content.length() <= previewLength) {
+            return content;
+        }
+        return content.substring(0, previewLength);
+    }
+
+    // ============================== 读取 ==============================
+
+    /**
+     * 读取用户的会话列表（按最后消息时间倒序，昵称/头像由调用方填充）
+     *
+     * @return 索引不存在且无法从 t_im_conversation 恢复时返回 null，由调用方重建
+     */
+    @SuppressWarnings("unchecked")
+    public List<SessionVO> list(Long userId) {
+        String key = CONV_KEY + userId;
+        List<Object> results = redisService.executePipelined(ops -> {
+            ops.opsForZSet().reverseRangeWithScores(key, 0, maxSessions - 1);
+            ops.opsForHash().entries(key + UNREAD_SUFFIX);
+            ops.opsForHash().entries(key + READ_SUFFIX);
+            ops.expire(key, ttlDays, TimeUnit.DAYS);
+            ops.expire(key + UNREAD_SUFFIX, ttlDays, TimeUnit.DAYS);
+            ops.expire(key + READ_SUFFIX, ttlDays, TimeUnit.DAYS);
+        });
+        Set<ZSetOperations.TypedTuple<Object>> entries = (Set<ZSetOperations.TypedTuple<Object>>) results.get(0);
+        if (entries == null || entries.isEmpty()) {
+            return restore(userId);
+        }
+        Map<Object, Object> unread = results.get(1) instanceof Map<?, ?> map
+                ? (Map<Object, Object>) map : Collections.emptyMap();
+        Map<Object, Object> readSeqs = results.get(2) instanceof Map<?, ?> map
+                ? (Map<Object, Object>) map : Collections.emptyMap();
+
+        List<String> sessionIds = new ArrayList<>(entries.size());
+        List<String> lastKeys = new ArrayList<>(entries.size());
+        for (ZSetOperations.TypedTuple<Object> entry : entries) {
+            String sessionId = String.valueOf(entry.getValue());
+            sessionIds.add(sessionId);
+            lastKeys.add(LAST_KEY + sessionId);
+        }
+        List<Object> lasts = redisService.mGet(lastKeys);
+        Map<String, Integer> groupUnread = countGroupUnread(userId, sessionIds, lasts, unread, readSeqs);
+
+        List<SessionVO> sessions = new ArrayList<>(entries.size());
+        int i = 0;
+        for (ZSetOperations.TypedTuple<Object> entry : entries) {
+            String sessionId = sessionIds.get(i);
+            Object last = i < lasts.size() ? lasts.get(i) : null;
+            i++;
+            long time = entry.getScore() != null ? entry.getScore().longValue() : 0L;
+            Object count = unread.get(sessionId);
+            LastMessage lastMessage = last instanceof LastMessage value ? value : null;
+            int unreadCount = count instanceof Number number ? number.intValue() : groupUnread.getOrDefault(sessionId, 0);
+            SessionVO vo = toSessionVO(userId, sessionId, time, lastMessage, unreadCount);
+            if (vo != null) {
+                sessions.add(vo);
+            }
+        }
+        return sessions;
+    }
+
+    /**
+     * 读扩散的群没有逐人累加的未读数：对最后序列号超过已读水位的群，统计水位之后的消息数
+     */
+    private Map<String, Integer> countGroupUnread(Long userId, List<String> sessionIds, List<Object> lasts,
+                                                  Map<Object, Object> unread, Map<Object, Object> readSeqs) {
+        Map<String, Long> candidates = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (int i = 0; i < sessionIds.size(); i++) {
+            String sessionId = sessionIds.get(i);
+            if (!sessionId.startsWith(GROUP_PREFIX) || unread.get(sessionId) instanceof Number
+                    || !(i < lasts.size() && lasts.get(i) instanceof LastMessage last) || last.getSeq() == null) {
+                continue;
+            }
+            candidates.put(sessionId, last.getSeq());
+            if (!(readSeqs.get(sessionId) instanceof Number)) {
+                missing.add(sessionId);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, Long> watermarks = new HashMap<>();
+        readSeqs.forEach((sessionId, readSeq) -> {
+            if (readSeq instanceof Number number) {
+                watermarks.put(String.valueOf(sessionId), number.longValue());
+            }
+        });
+        if (!missing.isEmpty()) {
+            // Redis 中的水位缺失（索引过期后从数据库恢复）：从水位表补齐并写回
+            List<ReadWatermark> rows = readWatermarkMapper.selectByUserId(userId, missing);
+            rows.forEach(row -> watermarks.put(row.getSessionId(), row.getReadSeq()));
+            if (!rows.isEmpty()) {
+                String key = CONV_KEY + userId + READ_SUFFIX;
+                redisService.executePipelined(ops -> {
+                    rows.forEach(row -> ops.opsForHash().putIfAbsent(key, row.getSessionId(), row.getReadSeq()));
+                    ops.expire(key, ttlDays, TimeUnit.DAYS);
+                });
+            }
+        }
+
+        Map<String, Integer> counts = new HashMap<>();
+        candidates.forEach((sessionId, lastSeq) -> {
+            long readSeq = watermarks.getOrDefault(sessionId, 0L);
+            if (lastSeq > readSeq) {
+                counts.put(sessionId, chatMessageMapper.countAfterSeq(sessionId, readSeq, unreadCountLimit));
+            }
+        });
+        return counts;
+    }
+
+    /**
+     * 按消息表聚合出的会话列表重建索引（仅在索引和 t_im_conversation 中都没有记录时调用）
+     */
+    public void rebuild(Long userId, List<SessionVO> sessions) {
+        if (sessions.isEmpty()) {
+            String key = CONV_KEY + userId;
+            redisService.executePipelined(ops -> {
+                ops.opsForZSet().add(key, EMPTY_MARKER, 0);
+                ops.expire(key, ttlDays, TimeUnit.DAYS);
+            });
+            return;
+        }
+        load(userId, sessions);
+        sessions.forEach(vo -> markDirty(userId, vo.getSessionId()));
+        log.info("会话索引重建: userId={}, sessions={}", userId, sessions.size());
+    }
+
+    private List<SessionVO> restore(Long userId) {
+        List<Conversation> rows = conversationMapper.selectRecentByUserId(userId, maxSessions);
+        if (rows.isEmpty()) {
+            return conversationMapper.existsByUserId(userId) ? new ArrayList<>() : null;
+        }
+        List<SessionVO> sessions = new ArrayList<>(rows.size());
+        for (Conversation row : rows) {
+            LastMessage last = null;
+            if (row.getLastMessage() != null || row.getLastMsgId() != null) {
+                last = new LastMessage();
+                last.setMsgId(row.getLastMsgId());
+                last.setContent(row.getLastMessage());
+                last.setTime(row.getLastTime() != null ? toMillis(row.getLastTime()) : null);
+            }
+            long time = row.getLastTime() != null ? toMillis(row.getLastTime()) : 0L;
+            SessionVO vo = toSessionVO(userId, row.getSessionId(), time, last,
+                    row.getUnreadCount() != null ? row.getUnreadCount() : 0);
+            if (vo != null) {
+                sessions.add(vo);
+            }
+        }
+        load(userId, sessions);
+        log.info("会话索引从数据库恢复: userId={}, sessions={}", userId, sessions.size());
+        return sessions;
+    }
+
+    /**
+     * 把会话列表写回 Redis；会话摘要只在不存在时写入，不覆盖更新的消息
+     */
+    private void load(Long userId, List<SessionVO> sessions) {
+        String key = CONV_KEY + userId;
+        redisService.executePipelined(ops -> {
+            for (SessionVO vo : sessions) {
+                long time = vo.getLastTime() != null ? toMillis(vo.getLastTime()) : 0L;
+                ops.opsForZSet().add(key, vo.getSessionId(), time);
+                if (vo.getUnreadCount() != null && vo.getUnreadCount() > 0) {
+                    ops.opsForHash().put(key + UNREAD_SUFFIX, vo.getSessionId(), vo.getUnreadCount());
+                }
+                if (vo.getLastMessage() != null && !GROUP_CREATED.equals(vo.getLastMessage())) {
+                    LastMessage last = new LastMessage();
+                    last.setContent(preview(vo.getLastMessage()));
+                    last.setTime(time);
+                    ops.opsForValue().setIfAbsent(LAST_KEY + vo.getSessionId(), last, ttlDays, TimeUnit.DAYS);
+                }
+            }
+            ops.expire(key, ttlDays, TimeUnit.DAYS);
+            ops.expire(key + UNREAD_SUFFIX, ttlDays, TimeUnit.DAYS);
+        });
+    }
+
+    private SessionVO toSessionVO(Long userId, String sessionId, long time, LastMessage last, int unreadCount) {
+        Long targetId = targetOf(userId, sessionId);
+        if (targetId == null) {
+            return null;
+        }
+        SessionVO vo = new SessionVO();
+        vo.setSessionId(sessionId);
+        if (last != null && last.getTime() != null && last.getTime() > time) {
+            // 读扩散的群不更新成员条目的分数，以会话摘要时间为准
+            time = last.getTime();
+        }
+        if (sessionId.startsWith(GROUP_PREFIX)) {
+            vo.setType(2);
+            vo.setGroupId(targetId);
+            vo.setLastMessage(last != null ? last.getContent() : GROUP_CREATED);
+        } else {
+            vo.setType(1);
+            vo.setUserId(targetId);
+            vo.setLastMessage(last != null ? last.getContent() : null);
+        }
+        vo.setLastTime(time > 0 ? toLocalDateTime(time) : null);
+        vo.setUnreadCount(unreadCount);
+        return vo;
+    }
+
+    /**
+     * 会话的对方用户 ID / 群 ID，无法解析时返回 null
+     */
+    public static Long targetOf(Long userId, String sessionId) {
+        try {
+            if (sessionId.startsWith(GROUP_PREFIX)) {
+                return Long.valueOf(sessionId.substring(GROUP_PREFIX.length()));
+            }
+            // 兼容旧格式 min_max
+            String ids = sessionId.startsWith(PRIVATE_PREFIX) ? sessionId.substring(PRIVATE_PREFIX.length()) : sessionId;
+            int separator = ids.indexOf('_');
+            if (separator < 0) {
+                return null;
+            }
+            Long first = Long.valueOf(ids.substring(0, separator));
+            Long second = Long.valueOf(ids.substring(separator + 1));
+            return first.equals(userId) ? second : first;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // ============================== 回写数据库 ==============================
+
+    private void markDirty(long userId, String sessionId) {
+        dirty.add(new DirtyKey(userId, sessionId));
+    }
+
+    private void flush() {
+        try {
+            // 逐批回写，直到脏集合清空或回写失败
+            while (!dirty.isEmpty()) {
+                if (!flushBatch()) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            log.error("会话索引回写异常", e);
+        }
+    }
+
+    /**
+     * 回写一批脏条目：以 Redis 中的当前状态为准，条目已不存在的记为删除
+     *
+     * @return 是否成功
+     */
+    private boolean flushBatch() {
+        List<DirtyKey> batch = new ArrayList<>(flushBatchSize);
+        Iterator<DirtyKey> iterator = dirty.iterator();
+        while (iterator.hasNext() && batch.size() < flushBatchSize) {
+            batch.add(iterator.next());
+            iterator.remove();
+        }
+        if (batch.isEmpty()) {
+            return false;
+        }
+        try {
+            List<Object> states = redisService.executePipelined(ops -> {
+                for (DirtyKey key : batch) {
+                    ops.opsForZSet().score(CONV_KEY + key.userId(), key.sessionId());
+                    ops.opsForHash().get(CONV_KEY + key.userId() + UNREAD_SUFFIX, key.sessionId());
+                }
+            });
+            Set<String> sessionIds = new LinkedHashSet<>();
+            batch.forEach(key -> sessionIds.add(key.sessionId()));
+            List<String> lastKeys = sessionIds.stream().map(sessionId -> LAST_KEY + sessionId).toList();
+            List<Object> lastValues = redisService.mGet(lastKeys);
+            Map<String, LastMessage> lasts = new HashMap<>();
+            int j = 0;
+            for (String sessionId : sessionIds) {
+                if (j < lastValues.size() && lastValues.get(j) instanceof LastMessage last) {
+                    lasts.put(sessionId, last);
+                }
+                j++;
+            }
+
+            List<Conversation> rows = new ArrayList<>(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                DirtyKey key = batch.get(i);
+                Long targetId = targetOf(key.userId(), key.sessionId());
+                if (targetId == null) {
+                    continue;
+                }
+                Object score = states.get(i * 2);
+                Object unread = states.get(i * 2 + 1);
+                LastMessage last = lasts.get(key.sessionId());
+
+                Conversation row = new Conversation();
+                row.setId(IdWorker.getId());
+                row.setUserId(key.userId());
+                row.setSessionId(key.sessionId());
+                row.setType(key.sessionId().startsWith(GROUP_PREFIX) ? 2 : 1);
+                row.setTargetId(targetId);
+                if (last != null) {
+                    row.setLastMsgId(last.getMsgId());
+                    row.setLastMessage(last.getContent());
+                }
+                long time = score instanceof Number number ? number.longValue() : 0L;
+                if (last != null && last.getTime() != null && last.getTime() > time) {
+                    time = last.getTime();
+                }
+                row.setLastTime(time > 0 ? toLocalDateTime(time) : null);
+                row.setUnreadCount(unread instanceof Number number ? number.intValue() : 0);
+                row.setDeleted(score == null ? 1 : 0);
+                rows.add(row);
+            }
+            if (!rows.isEmpty()) {
+                conversationMapper.batchUpsert(rows);
+            }
+            return true;
+        } catch (Exception e) {
+            // 放回脏集合，下一轮重试
+            dirty.addAll(batch);
+            log.warn("会话索引回写失败，稍后重试: size={}, error={}", batch.size(), e.getMessage());
+            return false;
+        }
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static LocalDateTime toLocalDateTime(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+}
@@ -0,0 +1,100 @@
+package com.jelly.cinema.im.conversation;
+
+import cn.hutool.json.JSONUtil;
+import com.jelly.cinema.im.websocket.ChatWebSocketHandler;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 已读回执批量推送
+ *
+ * 已读水位推进后不再同步逐条通知发送方：同一 (通知对象, 读者, 会话) 在一个推送周期内只保留最大的已读序列号，
+ * 由后台线程统一推送 {"type":"read", sessionId, readerId, readSeq}，连续翻页/多端同时已读只推一次。
+ *
+ * @author Jelly Cinema
+ */
+@Slf4j
+@Component
+public class ReadReceiptBatcher {
+
+    private final ChatWebSocketHandler webSocketHandler;
+
+    @Value("${im.read-receipt.flush-interval-ms:300}")
+    private long flushIntervalMs;
+
+    private final Map<Receipt, Long> pending = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService flushExecutor;
+
+    private record Receipt(long notifyUserId, long readerId, String sessionId) {
+    }
+
+    public ReadReceiptBatcher(ChatWebSocketHandler webSocketHandler) {
+        this.webSocketHandler = webSocketHandler;
+    }
+
+    @PostConstruct
+    public void init() {
+        flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "im-read-receipt-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flushExecutor.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (flushExecutor != null) {
+            flushExecutor.shutdownNow();
+        }
+        flush();
+    }
+
+    /**
+     * 登记一条待推送的已读回执
+     *
+     * @param notifyUserId 接收通知的用户（消息发送方）
+     * @param readerId     已读用户
+     * @param readSeq      已读到的序列号
+     */
+    public void submit(Long notifyUserId, Long readerId, String sessionId, long readSeq) {
+        pending.merge(new Receipt(notifyUserId, readerId, sessionId), readSeq, Math::max);
+    }
+
+    private void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        int sent = 0;
+        for (Receipt receipt : pending.keySet()) {
+            Long readSeq = pending.remove(receipt);
+            if (readSeq == null) {
+                continue;
+            }
+            try {
+                Map<String, Object> notification = new HashMap<>();
+                notification.put("type", "read");
+                notification.put("sessionId", receipt.sessionId());
+                notification.put("readerId", String.valueOf(receipt.readerId()));  // 转为字符串避免 JS 大数字精度丢失
+                notification.put("readSeq", readSeq);
+                webSocketHandler.sendToUser(receipt.notifyUserId(), JSONUtil.toJsonStr(notification));
+                sent++;
+            } catch (Exception e) {
+                log.warn("推送已读回执失败: notifyUserId={}, sessionId={}, error={}",
+                        receipt.notifyUserId(), receipt.sessionId(), e.getMessage());
+            }
+        }
+        log.debug("已读回执推送: count={}", sent);
+    }
+}
@@ -0,0 +1,59 @@
+package com.jelly.cinema.im.domain.entity;
+
+import com.baomidou.mybatisplus.annotation.TableName;
+import com.jelly.cinema.common.mybatis.domain.BaseEntity;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import java.time.LocalDateTime;
+
+/**
+ * 用户会话索引实体（会话列表的持久化副本，Redis 中的索引丢失后据此恢复）
+ *
+ * @author Jelly Cinema
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+@TableName("t_im_conversation")
+public class Conversation extends BaseEntity {
+
+    /**
+     * 用户 ID
+     */
+    private Long userId;
+
+    /**
+     * 会话 ID
+     */
+    private String sessionId;
+
+    /**
+     * 会话类型：1-单聊，2-群聊
+     */
+    private Integer type;
+
+    /**
+     * 对方用户 ID / 群 ID
+     */
+    private Long targetId;
+
+    /**
+     * 最后一条消息 ID
+     */
+    private Long lastMsgId;
+
+    /**
+     * 最后一条消息摘要
+     */
+    private String lastMessage;
+
+    /**
+     * 最后一条消息时间
+     */
+    private LocalDateTime lastTime;
+
+    /**
+     * 未读消息数
+     */
+    private Integer unreadCount;
+}
@@ -0,0 +1,42 @@
+package com.jelly.cinema.im.domain.entity;
+
+import com.baomidou.mybatisplus.annotation.TableName;
+import com.jelly.cinema.common.mybatis.domain.BaseEntity;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * 离线消息实体（Redis 离线收件箱超过上限后溢出到 MySQL 的较早消息，送达确认后物理删除）
+ *
+ * @author Jelly Cinema
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+@TableName("t_im_offline_msg")
+public class OfflineMessage extends BaseEntity {
+
+    /**
+     * 接收者 ID
+     */
+    private Long userId;
+
+    /**
+     * 消息 ID
+     */
+    private Long messageId;
+
+    /**
+     * 会话类型：1-私聊，2-群聊
+     */
+    private Integer sessionType;
+
+    /**
+     * 消息内容（ChatMessageDTO 的 JSON）
+     */
+    private String payload;
+
+    /**
+     * 消息时间戳（毫秒）
+     */
+    private Long msgTime;
+}
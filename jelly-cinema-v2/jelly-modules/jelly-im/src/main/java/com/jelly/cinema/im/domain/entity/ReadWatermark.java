@@ -0,0 +1,32 @@
+package com.jelly.cinema.im.domain.entity;
+
+import com.baomidou.mybatisplus.annotation.TableName;
+import com.jelly.cinema.common.mybatis.domain.BaseEntity;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * 已读水位实体（用户在会话中已读到的消息序列号）
+ *
+ * @author Jelly Cinema
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+@TableName("t_im_read_watermark")
+public class ReadWatermark extends BaseEntity {
+
+    /**
+     * 用户 ID
+     */
+    private Long userId;
+
+    /**
+     * 会话 ID
+     */
+    private String sessionId;
+
+    /**
+     * 已读到的消息序列号（含）
+     */
+    private Long readSeq;
+}
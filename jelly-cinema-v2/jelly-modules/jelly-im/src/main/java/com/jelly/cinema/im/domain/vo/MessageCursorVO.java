@@ -0,0 +1,35 @@
+package com.jelly.cinema.im.domain.vo;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 历史消息游标分页结果
+ *
+ * @author Jelly Cinema
+ */
+@Data
+public class MessageCursorVO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 本页消息（按序列号倒序）
+     */
+    private List<MessageVO> records;
+
+    /**
+     * 下一页的游标（作为 beforeSeq 传入），没有更早的消息时为 null
+     */
+    @JsonSerialize(using = ToStringSerializer.class)
+    private Long nextBeforeSeq;
+
+    /**
+     * 是否还有更早的消息
+     */
+    private Boolean hasMore;
+}
@@ -0,0 +1,19 @@
+package com.jelly.cinema.im.fanout;
+
+/**
+ * 群消息扩散模式
+ *
+ * @author Jelly Cinema
+ */
+public enum FanoutMode {
+
+    /**
+     * 写扩散：在线成员实时推送，离线成员各写一份离线消息/未读计数
+     */
+    WRITE_DIFFUSION,
+
+    /**
+     * 读扩散：消息只存一份，在线成员实时推送，离线成员上线后按序列号拉取
+     */
+    READ_DIFFUSION
+}
@@ -0,0 +1,223 @@
+package com.jelly.cinema.im.fanout;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 群消息扩散引擎
+ *
+ * 负责一条群消息"发给谁、怎么发"，具体的投递动作由接入层（WebSocket / Netty）提供：
+ * 1. 成员列表来自 {@link GroupMemberCache}，排除发送者
+ * 2. 成员数超过 read-diffusion-threshold 的群切换为读扩散，离线成员不再逐个写入
+ * 3. 接收者按 mix(userId) % parallelism 划分到投递通道（单线程），每条通道内再按 chunk-size 分片，
+ *    多个通道并行投递；同一成员的消息总落在同一通道且按提交顺序执行，保证单个成员看到的消息顺序
+ *
+ * 所有投递都经过通道，不在调用线程执行。通道队列满时调用线程阻塞等待入队（背压，不打乱顺序）；
+ * 引擎关闭后提交的分片直接丢弃，接收者上线后按序列号拉取。
+ *
+ * @author Jelly Cinema
+ */
+@Slf4j
+@Component
+public class GroupFanoutEngine {
+
+    private final GroupMemberCache groupMemberCache;
+
+    /**
+     * 成员数超过该值的群使用读扩散
+     */
+    @Value("${im.group.fanout.read-diffusion-threshold:500}")
+    private int readDiffusionThreshold;
+
+    /**
+     * 并行投递通道数
+     */
+    @Value("${im.group.fanout.parallelism:4}")
+    private int parallelism;
+
+    /**
+     * 每个分片的接收者数量
+     */
+    @Value("${im.group.fanout.chunk-size:256}")
+    private int chunkSize;
+
+    /**
+     * 每条通道的待投递分片上限
+     */
+    @Value("${im.group.fanout.queue-capacity:1024}")
+    private int queueCapacity;
+
+    private ExecutorService[] lanes;
+
+    /**
+     * 通道队列满时阻塞提交线程，直到有空位（由调用线程执行会绕过通道，打乱成员的消息顺序）
+     */
+    private static final RejectedExecutionHandler BLOCK_WHEN_FULL = (task, executor) -> {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("群消息扩散引擎已关闭");
+        }
+        try {
+            executor.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("等待群消息投递通道被中断", e);
+        }
+    };
+
+    /**
+     * 扩散计划
+     *
+     * @param recipients  接收者（已排除发送者，升序）
+     * @param memberCount 群成员总数
+     */
+    public record FanoutPlan(Long groupId, long[] recipients, int memberCount, FanoutMode mode) {
+    }
+
+    /**
+     * 分片投递回调：投递 userIds[from, to) 并返回实际送达数
+     */
+    @FunctionalInterface
+    public interface ChunkDelivery {
+        int deliver(long[] userIds, int from, int to);
+    }
+
+    public GroupFanoutEngine(GroupMemberCache groupMemberCache) {
+        this.groupMemberCache = groupMemberCache;
+    }
+
+    @PostConstruct
+    public void init() {
+        lanes = new ExecutorService[Math.max(1, parallelism)];
+        for (int i = 0; i < lanes.length; i++) {
+            String name = "im-group-fanout-" + i;
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(queueCapacity),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, name);
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    BLOCK_WHEN_FULL);
+        }
+        log.info("群消息扩散引擎: readDiffusionThreshold={}, parallelism={}, chunkSize={}",
+                readDiffusionThreshold, lanes.length, chunkSize);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (lanes != null) {
+            for (ExecutorService lane : lanes) {
+                lane.shutdown();
+            }
+        }
+    }
+
+    /**
+     * 生成扩散计划
+     */
+    public FanoutPlan plan(Long groupId, Long senderId) {
+        long[] members = groupMemberCache.getMemberIds(groupId);
+        return new FanoutPlan(groupId, excludeSender(members, senderId), members.length, modeOf(members.length));
+    }
+
+    /**
+     * 按群成员数选择扩散模式
+     */
+    public FanoutMode modeOf(int memberCount) {
+        return memberCount > readDiffusionThreshold ? FanoutMode.READ_DIFFUSION : FanoutMode.WRITE_DIFFUSION;
+    }
+
+    /**
+     * 按成员划分通道并分片投递（异步，不等待投递完成）
+     */
+    public void deliver(long[] recipients, ChunkDelivery delivery) {
+        if (recipients.length == 0) {
+            return;
+        }
+        long[][] partitions = partition(recipients);
+        int size = Math.max(1, chunkSize);
+        for (int lane = 0; lane < partitions.length; lane++) {
+            long[] userIds = partitions[lane];
+            for (int from = 0; from < userIds.length; from += size) {
+                int start = from;
+                int end = Math.min(userIds.length, from + size);
+                try {
+                    lanes[lane].execute(() -> runChunk(delivery, userIds, start, end));
+                } catch (RejectedExecutionException e) {
+                    log.warn("群消息分片未投递: lane={}, size={}, reason={}", lane, end - start, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 按 mix(userId) 把接收者划分到各通道，通道内保持原有顺序
+     */
+    private long[][] partition(long[] recipients) {
+        int laneCount = lanes.length;
+        long[][] partitions = new long[laneCount][];
+        if (laneCount == 1) {
+            partitions[0] = recipients;
+            return partitions;
+        }
+        int[] counts = new int[laneCount];
+        for (long userId : recipients) {
+            counts[laneOf(userId, laneCount)]++;
+        }
+        for (int i = 0; i < laneCount; i++) {
+            partitions[i] = new long[counts[i]];
+            counts[i] = 0;
+        }
+        for (long userId : recipients) {
+            int lane = laneOf(userId, laneCount);
+            partitions[lane][counts[lane]++] = userId;
+        }
+        return partitions;
+    }
+
+    private static int laneOf(long userId, int laneCount) {
+        return (int) ((mix(userId) >>> 1) % laneCount);
+    }
+
+    /**
+     * 64 位混淆（MurmurHash3 fmix64），雪花 ID 低位分布不均
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    private void runChunk(ChunkDelivery delivery, long[] recipients, int from, int to) {
+        try {
+            delivery.deliver(recipients, from, to);
+        } catch (Exception e) {
+            log.error("群消息分片投递失败: range=[{}, {})", from, to, e);
+        }
+    }
+
+    private static long[] excludeSender(long[] members, Long senderId) {
+        int index = senderId != null ? Arrays.binarySearch(members, senderId) : -1;
+        if (index < 0) {
+            return members;
+        }
+        long[] recipients = new long[members.length - 1];
+        System.arraycopy(members, 0, recipients, 0, index);
+        System.arraycopy(members, index + 1, recipients, index, members.length - index - 1);
+        return recipients;
+    }
+}
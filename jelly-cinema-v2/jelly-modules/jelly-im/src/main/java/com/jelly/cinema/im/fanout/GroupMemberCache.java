@@ -0,0 +1,131 @@
+package com.jelly.cinema.im.fanout;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.jelly.cinema.common.redis.cache.CacheInvalidationBus;
+import com.jelly.cinema.im.mapper.GroupMemberMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 群成员本地缓存（groupId -> 有序的成员 userId 数组）
+ *
+ * 群消息扩散和发言权限校验不再每条消息查一次 t_group_member：
+ * - 成员列表以 long[] 存放（已排序，可二分判断成员身份），按成员数计权重限制总量
+ * - 入群/踢人/退群/解散后调用 {@link #invalidate}，事务提交后清除本地条目，
+ *   并经 {@link CacheInvalidationBus} 通知其他节点
+ * - 过期时间兜底，防止失效消息丢失导致长期不一致
+ *
+ * @author Jelly Cinema
+ */
+@Slf4j
+@Component
+public class GroupMemberCache {
+
+    /**
+     * 失效总线上的缓存名
+     */
+    private static final String CACHE_NAME = "im:group:members";
+
+    private static final long[] EMPTY = new long[0];
+
+    private final GroupMemberMapper groupMemberMapper;
+    private final CacheInvalidationBus invalidationBus;
+
+    @Value("${im.group.member-cache.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    /**
+     * 所有群缓存的成员总数上限
+     */
+    @Value("${im.group.member-cache.max-members:2000000}")
+    private long maxMembers;
+
+    private LoadingCache<Long, long[]> members;
+
+    public GroupMemberCache(GroupMemberMapper groupMemberMapper, CacheInvalidationBus invalidationBus) {
+        this.groupMemberMapper = groupMemberMapper;
+        this.invalidationBus = invalidationBus;
+    }
+
+    @PostConstruct
+    public void init() {
+        members = Caffeine.newBuilder()
+                .maximumWeight(maxMembers)
+                .weigher((Long groupId, long[] userIds) -> Math.max(1, userIds.length))
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .build(this::load);
+        invalidationBus.register(this::onRemoteInvalidation);
+    }
+
+    /**
+     * 群成员 ID（升序），群不存在或无成员时返回空数组；调用方不得修改返回的数组
+     */
+    public long[] getMemberIds(Long groupId) {
+        return members.get(groupId);
+    }
+
+    /**
+     * 判断用户是否为群成员
+     */
+    public boolean isMember(Long groupId, Long userId) {
+        return userId != null && Arrays.binarySearch(getMemberIds(groupId), userId) >= 0;
+    }
+
+    /**
+     * 成员变更后清除缓存（在事务中调用时延迟到提交之后，避免并发读把旧成员列表重新装入）
+     */
+    public void invalidate(Long groupId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(groupId);
+                }
+            });
+        } else {
+            evict(groupId);
+        }
+    }
+
+    private void evict(Long groupId) {
+        members.invalidate(groupId);
+        invalidationBus.publish(CACHE_NAME, String.valueOf(groupId));
+    }
+
+    private long[] load(Long groupId) {
+        List<Long> userIds = groupMemberMapper.selectUserIdsByGroupId(groupId);
+        if (userIds == null || userIds.isEmpty()) {
+            return EMPTY;
+        }
+        long[] sorted = new long[userIds.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = userIds.get(i);
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private void onRemoteInvalidation(String cacheName, String key) {
+        if (!CACHE_NAME.equals(cacheName)) {
+            return;
+        }
+        if (CacheInvalidationBus.ALL_KEYS.equals(key)) {
+            members.invalidateAll();
+            return;
+        }
+        try {
+            members.invalidate(Long.valueOf(key));
+        } catch (NumberFormatException e) {
+            log.warn("忽略无效的群成员缓存失效消息: key={}", key);
+        }
+    }
+}
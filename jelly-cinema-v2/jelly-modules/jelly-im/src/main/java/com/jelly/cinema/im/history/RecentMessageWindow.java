@@ -0,0 +1,155 @@
+package com.jelly.cinema.im.history;
+
+import com.jelly.cinema.common.redis.service.RedisService;
+import com.jelly.cinema.im.domain.vo.MessageVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 会话最近消息窗口（jelly:im:session:{sessionId}:window）
+ *
+ * ZSet，成员为 MessageVO，分数为 msgSeq，另有一个哨兵成员记录窗口的完整性：
+ * - 窗口由一次数据库查询（最近 window-size 条）建立，同时写入哨兵；哨兵分数为 0 表示窗口包含会话全部消息，
+ *   否则为窗口内最小序列号 - 0.5，哨兵之上的消息是连续完整的；读取只使用哨兵之上的消息，越过哨兵的页回源数据库
+ * - 新消息在发送时追加（先于异步落库），窗口超过 2 * window-size 时从最旧一端裁剪，哨兵最先被裁掉，
+ *   之后的读取回源数据库并重建；重建只追加不删除，尚未落库的新消息不会丢失
+ * - 撤回/删除/清空消息时直接删除窗口
+ *
+ * 窗口不保存发送者昵称/头像，由调用方按页批量填充。
+ *
+ * @author Jelly Cinema
+ */
+@Slf4j
+@Component
+public class RecentMessageWindow {
+
+    private static final String WINDOW_KEY = "jelly:im:session:";
+
+    private static final String WINDOW_SUFFIX = ":window";
+
+    /**
+     * 哨兵成员
+     */
+    private static final String FLOOR_MARK = "#floor";
+
+    private final RedisService redisService;
+
+    /**
+     * 建立窗口时从数据库加载的消息数
+     */
+    @Value("${im.history.window-size:200}")
+    private int windowSize;
+
+    @Value("${im.history.window-ttl-minutes:30}")
+    private long ttlMinutes;
+
+    public RecentMessageWindow(RedisService redisService) {
+        this.redisService = redisService;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * 追加新消息
+     */
+    public void append(MessageVO message) {
+        if (message.getSessionId() == null || message.getMsgSeq() == null) {
+            return;
+        }
+        String key = key(message.getSessionId());
+        try {
+            redisService.executePipelined(ops -> {
+                ops.opsForZSet().add(key, message, message.getMsgSeq());
+                ops.opsForZSet().removeRange(key, 0, -(2L * windowSize + 2));
+                ops.expire(key, ttlMinutes, TimeUnit.MINUTES);
+            });
+        } catch (Exception e) {
+            log.warn("追加最近消息窗口失败: sessionId={}, error={}", message.getSessionId(), e.getMessage());
+        }
+    }
+
+    /**
+     * 读取序列号小于 beforeSeq 的最近 count 条消息（按序列号倒序）
+     *
+     * @param beforeSeq 为 null 时从最新一条开始
+     * @return 窗口不存在或无法完整覆盖这一页时返回 null，由调用方回源数据库
+     */
+    @SuppressWarnings("unchecked")
+    public List<MessageVO> read(String sessionId, Long beforeSeq, int count) {
+        String key = key(sessionId);
+        double max = beforeSeq == null ? Double.POSITIVE_INFINITY : beforeSeq - 0.5;
+        List<Object> results = redisService.executePipelined(ops -> {
+            ops.opsForZSet().score(key, FLOOR_MARK);
+            ops.opsForZSet().reverseRangeByScoreWithScores(key, Double.NEGATIVE_INFINITY, max, 0, count + 1);
+        });
+        if (!(results.get(0) instanceof Number floor)) {
+            return null;
+        }
+        List<MessageVO> messages = new ArrayList<>(count);
+        Set<ZSetOperations.TypedTuple<Object>> entries = (Set<ZSetOperations.TypedTuple<Object>>) results.get(1);
+        if (entries != null) {
+            long lastSeq = Long.MAX_VALUE;
+            for (ZSetOperations.TypedTuple<Object> entry : entries) {
+                // 哨兵之下的消息（迟到的低序列号追加）与窗口不连续，不能拼进这一页
+                if (entry.getScore() == null || entry.getScore() <= floor.doubleValue()) {
+                    break;
+                }
+                if (entry.getValue() instanceof MessageVO message && messages.size() < count
+                        && message.getMsgSeq() < lastSeq) {
+                    messages.add(message);
+                    lastSeq = message.getMsgSeq();
+                }
+            }
+        }
+        if (messages.size() >= count || floor.doubleValue() == 0) {
+            return messages;
+        }
+        // 这一页会越过哨兵，一部分早于窗口
+        return null;
+    }
+
+    /**
+     * 用数据库中的最近消息建立窗口
+     *
+     * @param latest   最近的消息（按序列号倒序）
+     * @param complete 是否已包含会话的全部消息
+     */
+    public void fill(String sessionId, List<MessageVO> latest, boolean complete) {
+        String key = key(sessionId);
+        double floor = complete || latest.isEmpty() ? 0 : latest.get(latest.size() - 1).getMsgSeq() - 0.5;
+        try {
+            redisService.executePipelined(ops -> {
+                for (MessageVO message : latest) {
+                    // 发送时追加的同一条消息（字段精度可能不同）以数据库版本替换
+                    ops.opsForZSet().removeRangeByScore(key, message.getMsgSeq(), message.getMsgSeq());
+                    ops.opsForZSet().add(key, message, message.getMsgSeq());
+                }
+                ops.opsForZSet().add(key, FLOOR_MARK, floor);
+                ops.opsForZSet().removeRange(key, 0, -(2L * windowSize + 2));
+                ops.expire(key, ttlMinutes, TimeUnit.MINUTES);
+            });
+        } catch (Exception e) {
+            log.warn("建立最近消息窗口失败: sessionId={}, error={}", sessionId, e.getMessage());
+        }
+    }
+
+    /**
+     * 消息被撤回/删除后丢弃窗口
+     */
+    public void invalidate(String sessionId) {
+        redisService.delete(key(sessionId));
+    }
+
+    private static String key(String sessionId) {
+        return WINDOW_KEY + sessionId + WINDOW_SUFFIX;
+    }
+}
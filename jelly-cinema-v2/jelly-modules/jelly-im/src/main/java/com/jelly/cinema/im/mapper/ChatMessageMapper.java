@@ -3,6 +3,8 @@ package com.jelly.cinema.im.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.jelly.cinema.im.domain.entity.ChatMessage;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
 
 /**
  * 聊天消息 Mapper
@@ -12,4 +14,17 @@ import org.apache.ibatis.annotations.Mapper;
 @Mapper
 public interface ChatMessageMapper extends BaseMapper<ChatMessage> {
 
+    /**
+     * 查询会话已使用的最大序列号
+     */
+    @Select("SELECT MAX(msg_seq) FROM t_chat_msg WHERE session_id = #{sessionId}")
+    Long selectMaxSeq(@Param("sessionId") String sessionId);
+
+    /**
+     * 统计会话中序列号大于 afterSeq 的消息数（走 idx_session_seq，最多数到 limit 条）
+     */
+    @Select("SELECT COUNT(*) FROM (SELECT 1 FROM t_chat_msg WHERE session_id = #{sessionId} " +
+            "AND msg_seq > #{afterSeq} AND deleted = 0 LIMIT #{limit}) t")
+    int countAfterSeq(@Param("sessionId") String sessionId, @Param("afterSeq") long afterSeq,
+                      @Param("limit") int limit);
 }
@@ -0,0 +1,48 @@
+package com.jelly.cinema.im.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.jelly.cinema.im.domain.entity.Conversation;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.List;
+
+/**
+ * 用户会话索引 Mapper
+ *
+ * @author Jelly Cinema
+ */
+@Mapper
+public interface ConversationMapper extends BaseMapper<Conversation> {
+
+    /**
+     * 查询用户最近的会话（按最后消息时间倒序）
+     */
+    @Select("SELECT * FROM t_im_conversation WHERE user_id = #{userId} AND deleted = 0 " +
+            "ORDER BY last_time DESC LIMIT #{limit}")
+    List<Conversation> selectRecentByUserId(@Param("userId") Long userId, @Param("limit") int limit);
+
+    /**
+     * 用户是否建立过会话索引（包括已移除的会话）
+     */
+    @Select("SELECT COUNT(*) > 0 FROM t_im_conversation WHERE user_id = #{userId}")
+    boolean existsByUserId(@Param("userId") Long userId);
+
+    /**
+     * 批量写入会话索引（按 user_id + session_id 唯一键覆盖，deleted=1 表示会话已被移除）
+     */
+    @Insert("<script>" +
+            "INSERT INTO t_im_conversation (id, user_id, session_id, type, target_id, last_msg_id, last_message, " +
+            "last_time, unread_count, create_time, update_time, deleted) VALUES " +
+            "<foreach collection='list' item='c' separator=','>" +
+            "(#{c.id}, #{c.userId}, #{c.sessionId}, #{c.type}, #{c.targetId}, #{c.lastMsgId}, #{c.lastMessage}, " +
+            "#{c.lastTime}, #{c.unreadCount}, NOW(), NOW(), #{c.deleted})" +
+            "</foreach>" +
+            " ON DUPLICATE KEY UPDATE type = VALUES(type), target_id = VALUES(target_id), " +
+            "last_msg_id = VALUES(last_msg_id), last_message = VALUES(last_message), last_time = VALUES(last_time), " +
+            "unread_count = VALUES(unread_count), update_time = NOW(), deleted = VALUES(deleted)" +
+            "</script>")
+    int batchUpsert(@Param("list") List<Conversation> list);
+}
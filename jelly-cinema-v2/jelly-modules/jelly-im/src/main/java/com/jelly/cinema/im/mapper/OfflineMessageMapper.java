@@ -0,0 +1,64 @@
+package com.jelly.cinema.im.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.jelly.cinema.im.domain.entity.OfflineMessage;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 离线消息 Mapper
+ *
+ * @author Jelly Cinema
+ */
+@Mapper
+public interface OfflineMessageMapper extends BaseMapper<OfflineMessage> {
+
+    /**
+     * 批量写入溢出的离线消息（user_id + message_id 唯一，重复溢出时忽略）
+     */
+    @Insert("<script>" +
+            "INSERT IGNORE INTO t_im_offline_msg (id, user_id, message_id, session_type, payload, msg_time, " +
+            "create_time, update_time, deleted) VALUES " +
+            "<foreach collection='list' item='m' separator=','>" +
+            "(#{m.id}, #{m.userId}, #{m.messageId}, #{m.sessionType}, #{m.payload}, #{m.msgTime}, NOW(), NOW(), 0)" +
+            "</foreach>" +
+            "</script>")
+    int batchInsertIgnore(@Param("list") List<OfflineMessage> list);
+
+    /**
+     * 查询用户最早的离线消息
+     */
+    @Select("SELECT id, message_id, payload FROM t_im_offline_msg WHERE user_id = #{userId} AND deleted = 0 " +
+            "ORDER BY msg_time, id LIMIT #{limit}")
+    List<OfflineMessage> selectOldest(@Param("userId") Long userId, @Param("limit") int limit);
+
+    /**
+     * 删除已送达的离线消息（物理删除）
+     */
+    @Delete("<script>" +
+            "DELETE FROM t_im_offline_msg WHERE user_id = #{userId} AND id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>" +
+            "</script>")
+    int deleteDelivered(@Param("userId") Long userId, @Param("ids") Collection<Long> ids);
+
+    /**
+     * 按消息 ID 删除已送达的离线消息（投递后才被溢出到 MySQL 的消息）
+     */
+    @Delete("<script>" +
+            "DELETE FROM t_im_offline_msg WHERE user_id = #{userId} AND message_id IN " +
+            "<foreach collection='messageIds' item='messageId' open='(' separator=',' close=')'>#{messageId}</foreach>" +
+            "</script>")
+    int deleteByMessageIds(@Param("userId") Long userId, @Param("messageIds") Collection<Long> messageIds);
+
+    /**
+     * 清理过期的离线消息（每次最多 limit 条）
+     */
+    @Delete("DELETE FROM t_im_offline_msg WHERE msg_time < #{before} LIMIT #{limit}")
+    int deleteExpired(@Param("before") long before, @Param("limit") int limit);
+}
@@ -0,0 +1,46 @@
+package com.jelly.cinema.im.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.jelly.cinema.im.domain.entity.ReadWatermark;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 已读水位 Mapper
+ *
+ * @author Jelly Cinema
+ */
+@Mapper
+public interface ReadWatermarkMapper extends BaseMapper<ReadWatermark> {
+
+    /**
+     * 推进已读水位（只增不减）
+     */
+    @Insert("INSERT INTO t_im_read_watermark (id, user_id, session_id, read_seq, create_time, update_time, deleted) " +
+            "VALUES (#{id}, #{userId}, #{sessionId}, #{readSeq}, NOW(), NOW(), 0) " +
+            "ON DUPLICATE KEY UPDATE read_seq = GREATEST(read_seq, VALUES(read_seq)), update_time = NOW()")
+    int advance(@Param("id") Long id, @Param("userId") Long userId,
+                @Param("sessionId") String sessionId, @Param("readSeq") Long readSeq);
+
+    /**
+     * 查询会话中各成员的已读水位
+     */
+    @Select("SELECT user_id, read_seq FROM t_im_read_watermark WHERE session_id = #{sessionId} AND deleted = 0")
+    List<ReadWatermark> selectBySessionId(@Param("sessionId") String sessionId);
+
+    /**
+     * 查询用户在指定会话中的已读水位
+     */
+    @Select("<script>" +
+            "SELECT session_id, read_seq FROM t_im_read_watermark WHERE user_id = #{userId} AND deleted = 0 " +
+            "AND session_id IN " +
+            "<foreach collection='sessionIds' item='sessionId' open='(' separator=',' close=')'>#{sessionId}</foreach>" +
+            "</script>")
+    List<ReadWatermark> selectByUserId(@Param("userId") Long userId,
+                                       @Param("sessionIds") Collection<String> sessionIds);
+}
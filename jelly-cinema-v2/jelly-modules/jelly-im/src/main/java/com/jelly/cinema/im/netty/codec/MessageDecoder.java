@@ -20,6 +20,10 @@ import lombok.extern.slf4j.Slf4j;
  * 长度字段偏移：16 bytes
  * 长度字段长度：4 bytes
  * 
+ * 零拷贝：父类切出的帧本身是输入缓冲区的 slice，消息内容再从帧上取 retained slice 作为
+ * {@link MessageProtocol#getBody()}，整条链路不产生 byte[] 拷贝；body 随 MessageProtocol 一起
+ * 由下游的 SimpleChannelInboundHandler 释放。
+ * 
  * @author Jelly Cinema
  */
 @Slf4j
@@ -101,11 +105,10 @@ public class MessageDecoder extends LengthFieldBasedFrameDecoder {
         // 7. 读取内容长度
         int contentLength = frame.readInt();
 
-        // 8. 读取内容
-        byte[] content = null;
+        // 8. 内容：共享帧内存的 retained slice（帧在 decode 中释放，body 仍保留一份引用）
+        ByteBuf body = null;
         if (contentLength > 0) {
-            content = new byte[contentLength];
-            frame.readBytes(content);
+            body = frame.readRetainedSlice(contentLength);
         }
 
         MessageProtocol message = MessageProtocol.builder()
@@ -113,7 +116,7 @@ public class MessageDecoder extends LengthFieldBasedFrameDecoder {
                 .messageType(messageType)
                 .status(status)
                 .messageId(messageId)
-                .content(content)
+                .body(body)
                 .build();
 
         log.debug("消息解码完成: type={}, messageId={}, contentLength={}", 
@@ -2,10 +2,14 @@ package com.jelly.cinema.im.netty.codec;
 
 import com.jelly.cinema.im.netty.protocol.MessageProtocol;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.handler.codec.MessageToMessageEncoder;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.List;
+
 /**
  * 消息编码器
  * 
@@ -16,13 +20,56 @@ import lombok.extern.slf4j.Slf4j;
  * | 魔数(4) | 版本(1) | 序列化(1)| 指令(1) | 状态(1) | 消息ID(8) | 长度(4) | 数据(N) |
  * +--------+--------+--------+--------+--------+--------+--------+--------+
  * 
+ * 缓冲区策略：
+ * - 内容为 byte[]：按帧长度一次性分配池化直接内存（ioBuffer），避免扩容
+ * - 内容为 ByteBuf：头部单独分配，与 body 组合为 CompositeByteBuf，body 不拷贝
+ * 
  * @author Jelly Cinema
  */
 @Slf4j
-public class MessageEncoder extends MessageToByteEncoder<MessageProtocol> {
+public class MessageEncoder extends MessageToMessageEncoder<MessageProtocol> {
+
+    /**
+     * 头部长度
+     */
+    private static final int HEADER_LENGTH = 20;
 
     @Override
-    protected void encode(ChannelHandlerContext ctx, MessageProtocol msg, ByteBuf out) throws Exception {
+    protected void encode(ChannelHandlerContext ctx, MessageProtocol msg, List<Object> out) throws Exception {
+        out.add(encodeFrame(ctx.alloc(), msg));
+
+        log.debug("消息编码完成: type={}, messageId={}, contentLength={}", 
+                msg.getMessageType(), msg.getMessageId(), msg.contentLength());
+    }
+
+    /**
+     * 将消息编码为完整的帧（不释放 msg，body 会被 retain 一次交给返回的帧）
+     * 
+     * 同一帧需要写给多个连接时（群发），可编码一次后对每个连接写 retainedDuplicate
+     */
+    public static ByteBuf encodeFrame(ByteBufAllocator alloc, MessageProtocol msg) {
+        ByteBuf body = msg.getBody();
+        int contentLength = msg.contentLength();
+
+        if (body != null) {
+            ByteBuf header = alloc.ioBuffer(HEADER_LENGTH);
+            writeHeader(header, msg, contentLength);
+            // 调用方（编码器父类）之后会 release 消息（即 body），这里先 retain 一次交给组合缓冲区
+            CompositeByteBuf frame = alloc.compositeDirectBuffer(2);
+            frame.addComponents(true, header, body.retain());
+            return frame;
+        }
+
+        ByteBuf frame = alloc.ioBuffer(HEADER_LENGTH + contentLength);
+        writeHeader(frame, msg, contentLength);
+        if (contentLength > 0) {
+            // 8. 内容 (N bytes)
+            frame.writeBytes(msg.getContent());
+        }
+        return frame;
+    }
+
+    private static void writeHeader(ByteBuf out, MessageProtocol msg, int contentLength) {
         // 1. 魔数 (4 bytes)
         out.writeInt(MessageProtocol.MAGIC_NUMBER);
         
@@ -42,17 +89,6 @@ public class MessageEncoder extends MessageToByteEncoder<MessageProtocol> {
         out.writeLong(msg.getMessageId());
         
         // 7. 内容长度 (4 bytes)
-        byte[] content = msg.getContent();
-        if (content != null) {
-            out.writeInt(content.length);
-            // 8. 内容 (N bytes)
-            out.writeBytes(content);
-        } else {
-            out.writeInt(0);
-        }
-
-        log.debug("消息编码完成: type={}, messageId={}, contentLength={}", 
-                msg.getMessageType(), msg.getMessageId(), 
-                content != null ? content.length : 0);
+        out.writeInt(contentLength);
     }
 }
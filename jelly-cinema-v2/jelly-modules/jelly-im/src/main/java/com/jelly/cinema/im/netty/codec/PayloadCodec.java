@@ -0,0 +1,96 @@
+package com.jelly.cinema.im.netty.codec;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.jelly.cinema.im.netty.protocol.MessageProtocol;
+import com.jelly.cinema.im.netty.serializer.JsonSerializer;
+import com.jelly.cinema.im.netty.serializer.Serializer;
+import com.jelly.cinema.im.netty.serializer.SerializerRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 消息内容编解码
+ *
+ * 按协议头中的 serializerType 选择序列化器，直接在 ByteBuf 上流式解析/生成，不经过中间的 byte[] 和 String：
+ * - 读取：堆内缓冲区直接传底层数组区间，直接内存缓冲区通过 ByteBufInputStream 流式读取
+ * - 写入：直接写入分配器给出的池化缓冲区
+ *
+ * 出站消息使用连接在认证时协商的序列化类型（{@link #SERIALIZER_KEY}），未协商时为 JSON。
+ *
+ * @author Jelly Cinema
+ */
+public final class PayloadCodec {
+
+    /**
+     * 连接协商的序列化类型
+     */
+    public static final AttributeKey<Byte> SERIALIZER_KEY = AttributeKey.valueOf("serializerType");
+
+    private PayloadCodec() {
+    }
+
+    /**
+     * 解析消息内容为指定类型
+     *
+     * @return 内容为空时返回 null
+     */
+    public static <T> T read(MessageProtocol protocol, Class<T> type) throws IOException {
+        Serializer serializer = SerializerRegistry.get(protocol.getSerializerType());
+        ByteBuf body = protocol.getBody();
+        if (body != null) {
+            if (body.hasArray()) {
+                return serializer.deserialize(body.array(), body.arrayOffset() + body.readerIndex(), body.readableBytes(), type);
+            }
+            try (InputStream in = new ByteBufInputStream(body.duplicate())) {
+                return serializer.deserialize(in, type);
+            }
+        }
+        byte[] content = protocol.getContent();
+        return content != null && content.length > 0 ? serializer.deserialize(content, type) : null;
+    }
+
+    /**
+     * 解析 JSON 消息内容为 JSON 树（认证等非固定结构的负载）
+     */
+    public static JsonNode readTree(MessageProtocol protocol) throws IOException {
+        JsonNode node = read(protocol, JsonNode.class);
+        return node != null ? node : JsonSerializer.mapper().missingNode();
+    }
+
+    /**
+     * 将对象序列化后写入新分配的缓冲区（调用方负责释放，通常交给 MessageProtocol.body 由编码器释放）
+     */
+    public static ByteBuf write(ByteBufAllocator allocator, Serializer serializer, Object value) throws IOException {
+        ByteBuf buffer = allocator.ioBuffer();
+        try (ByteBufOutputStream out = new ByteBufOutputStream(buffer)) {
+            serializer.serialize(value, out);
+            return buffer;
+        } catch (IOException | RuntimeException e) {
+            buffer.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 按连接协商的序列化类型构建出站消息，body 分配自该连接的分配器
+     */
+    public static MessageProtocol encode(Channel channel, byte messageType, long messageId, Object payload) throws IOException {
+        Byte negotiated = channel.attr(SERIALIZER_KEY).get();
+        Serializer serializer = SerializerRegistry.forPayload(
+                negotiated != null ? negotiated : MessageProtocol.SerializerType.JSON, payload.getClass());
+        return MessageProtocol.builder()
+                .messageType(messageType)
+                .messageId(messageId)
+                .status(MessageProtocol.MessageStatus.SUCCESS)
+                .serializerType(serializer.getType())
+                .body(write(channel.alloc(), serializer, payload))
+                .build();
+    }
+}
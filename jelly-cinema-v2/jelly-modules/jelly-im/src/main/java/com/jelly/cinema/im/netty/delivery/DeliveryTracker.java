@@ -0,0 +1,397 @@
+package com.jelly.cinema.im.netty.delivery;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.jelly.cinema.common.redis.service.RedisService;
+import com.jelly.cinema.im.netty.codec.PayloadCodec;
+import com.jelly.cinema.im.netty.model.ChatMessageDTO;
+import com.jelly.cinema.im.netty.offline.OfflineInbox;
+import com.jelly.cinema.im.netty.session.SessionManager;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 可靠投递跟踪器
+ *
+ * 未确认窗口：私聊消息推送给本节点的接收方时登记到该连接的未确认窗口（Channel 属性，内存），
+ * 并在共享的 HashedWheelTimer 上挂一个超时任务；客户端回复 CHAT_ACK 后从窗口移除并取消超时。
+ * 超时未确认时按指数退避重发，超过重试次数、窗口已满或连接断开时，未确认的消息转入 {@link OfflineInbox}，
+ * 下次登录分页投递（至少一次，客户端按 messageId 去重）。转离线的 Redis 写入在独立线程池中执行，
+ * 不占用 IO 线程和重发定时器线程；连接断开时同一用户的未确认消息合并为一次 pipeline。群消息按会话序列号拉取补齐，不登记窗口。
+ *
+ * 投递状态：状态先写入本地缓存，只有异常状态（发送失败、转离线）以及从异常恢复为已送达的状态
+ * 进入待写队列，由后台线程按周期用 pipeline 批量写入 im:msg:status:{msgId}；
+ * 正常的 发送中 → 已送达 路径不产生 Redis 写入。Redis 中的状态只记录异常投递（供排查），不提供按消息查询状态的接口，
+ * 本地缓存仅用于判断一条消息此前是否处于异常状态。
+ *
+ * @author Jelly Cinema
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "netty.server.enabled", havingValue = "true", matchIfMissing = false)
+public class DeliveryTracker {
+
+    /**
+     * 投递状态
+     */
+    public interface Status {
+        String SENDING = "SENDING";        // 发送中
+        String FAILED = "FAILED";          // 写入 MQ 失败，等待客户端重发
+        String DELIVERED = "DELIVERED";    // 接收方已确认
+        String OFFLINE = "OFFLINE";        // 未确认，已转入离线收件箱
+    }
+
+    /**
+     * Redis Key 前缀
+     */
+    private static final String MESSAGE_STATUS_KEY = "im:msg:status:";
+
+    /**
+     * 状态过期时间（7天）
+     */
+    private static final long STATUS_EXPIRE_DAYS = 7;
+
+    /**
+     * Channel 属性 Key：未确认窗口（msgId -> 待确认消息）
+     */
+    private static final AttributeKey<Map<Long, Pending>> WINDOW_KEY = AttributeKey.valueOf("unackedWindow");
+
+    private final SessionManager sessionManager;
+    private final OfflineInbox offlineInbox;
+    private final RedisService redisService;
+
+    /**
+     * 每个连接最多等待确认的消息数
+     */
+    @Value("${netty.delivery.window-size:256}")
+    private int windowSize;
+
+    /**
+     * 首次确认超时（毫秒），之后每次重发翻倍
+     */
+    @Value("${netty.delivery.ack-timeout-ms:3000}")
+    private long ackTimeoutMs;
+
+    /**
+     * 最大重发次数
+     */
+    @Value("${netty.delivery.max-retries:3}")
+    private int maxRetries;
+
+    /**
+     * 状态批量写入周期（毫秒）
+     */
+    @Value("${netty.delivery.status-flush-interval-ms:1000}")
+    private long statusFlushIntervalMs;
+
+    /**
+     * 单次 pipeline 写入的最大状态数
+     */
+    @Value("${netty.delivery.status-batch-size:500}")
+    private int statusBatchSize;
+
+    /**
+     * 本地保留的最近状态数
+     */
+    @Value("${netty.delivery.status-cache-size:100000}")
+    private long statusCacheSize;
+
+    /**
+     * 转离线写入线程数
+     */
+    @Value("${netty.delivery.offline-threads:2}")
+    private int offlineThreads;
+
+    private HashedWheelTimer timer;
+
+    private ScheduledExecutorService statusExecutor;
+
+    private ExecutorService offlineExecutor;
+
+    private Cache<Long, String> recentStatus;
+
+    /**
+     * 待写入 Redis 的状态（同一消息合并为最后一次状态）
+     */
+    private final Map<Long, String> pendingStatus = new ConcurrentHashMap<>();
+
+    /**
+     * 等待确认的一条推送
+     */
+    private static final class Pending {
+        private final Long userId;
+        private final byte messageType;
+        private final ChatMessageDTO chatMessage;
+        private int attempts;
+        private volatile Timeout timeout;
+
+        private Pending(Long userId, byte messageType, ChatMessageDTO chatMessage) {
+            this.userId = userId;
+            this.messageType = messageType;
+            this.chatMessage = chatMessage;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        timer = new HashedWheelTimer(runnable -> {
+            Thread thread = new Thread(runnable, "im-delivery-retransmit");
+            thread.setDaemon(true);
+            return thread;
+        }, 100, TimeUnit.MILLISECONDS, 512);
+        statusExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "im-status-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        statusExecutor.scheduleWithFixedDelay(this::flushStatus,
+                statusFlushIntervalMs, statusFlushIntervalMs, TimeUnit.MILLISECONDS);
+        AtomicInteger threadIndex = new AtomicInteger();
+        offlineExecutor = Executors.newFixedThreadPool(Math.max(1, offlineThreads), runnable -> {
+            Thread thread = new Thread(runnable, "im-delivery-offline-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        recentStatus = Caffeine.newBuilder()
+                .maximumSize(statusCacheSize)
+                .expireAfterWrite(10, TimeUnit.MINUTES)
+                .build();
+        log.info("可靠投递跟踪: window={}, ackTimeout={}ms, maxRetries={}", windowSize, ackTimeoutMs, maxRetries);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (timer != null) {
+            timer.stop();
+        }
+        if (offlineExecutor != null) {
+            // 已提交的转离线任务写完再退出，否则未确认的消息会丢失
+            offlineExecutor.shutdown();
+            try {
+                if (!offlineExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                    log.warn("转离线任务未在停机前完成");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (statusExecutor != null) {
+            statusExecutor.shutdownNow();
+        }
+        flushStatus();
+    }
+
+    /**
+     * 推送消息给本节点用户并登记到其连接的未确认窗口
+     *
+     * @return 用户不在本节点、窗口已满或编码失败时返回 false，由调用方转为离线消息
+     */
+    public boolean push(Long userId, byte messageType, ChatMessageDTO chatMessage) {
+        Channel channel = sessionManager.getChannel(userId);
+        if (channel == null || !channel.isActive()) {
+            return false;
+        }
+        Map<Long, Pending> window = window(channel);
+        Long messageId = chatMessage.getMessageId();
+        if (window.size() >= windowSize && !window.containsKey(messageId)) {
+            log.warn("未确认窗口已满，消息转为离线: userId={}, msgId={}, window={}", userId, messageId, window.size());
+            return false;
+        }
+
+        // 先登记再写出，避免确认先于登记到达
+        Pending pending = new Pending(userId, messageType, chatMessage);
+        Pending previous = window.put(messageId, pending);
+        if (previous != null && previous.timeout != null) {
+            previous.timeout.cancel();
+        }
+        pending.timeout = timer.newTimeout(t -> onTimeout(channel, messageId, pending), ackTimeoutMs, TimeUnit.MILLISECONDS);
+        if (!write(channel, pending)) {
+            window.remove(messageId, pending);
+            pending.timeout.cancel();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 接收方确认消息：从窗口移除并取消重发
+     */
+    public void acknowledge(Channel channel, long messageId) {
+        Map<Long, Pending> window = channel.attr(WINDOW_KEY).get();
+        Pending pending = window != null ? window.remove(messageId) : null;
+        if (pending != null && pending.timeout != null) {
+            pending.timeout.cancel();
+        }
+        recordStatus(messageId, Status.DELIVERED);
+        log.debug("消息确认送达: msgId={}, tracked={}", messageId, pending != null);
+    }
+
+    /**
+     * 连接断开：窗口中未确认的消息转入离线收件箱（在 IO 线程调用，写入交给转离线线程池）
+     */
+    public void onDisconnect(Channel channel) {
+        Map<Long, Pending> window = channel.attr(WINDOW_KEY).getAndSet(null);
+        if (window == null || window.isEmpty()) {
+            return;
+        }
+        List<Pending> unacked = new ArrayList<>(window.values());
+        window.clear();
+        for (Pending pending : unacked) {
+            if (pending.timeout != null) {
+                pending.timeout.cancel();
+            }
+        }
+        Long userId = unacked.get(0).userId;
+        submitOffline(() -> {
+            List<ChatMessageDTO> messages = new ArrayList<>(unacked.size());
+            for (Pending pending : unacked) {
+                messages.add(pending.chatMessage);
+            }
+            offlineInbox.saveAll(userId, messages);
+            for (ChatMessageDTO message : messages) {
+                recordStatus(message.getMessageId(), Status.OFFLINE);
+            }
+        });
+        log.info("连接断开，未确认消息转为离线: userId={}, count={}", userId, unacked.size());
+    }
+
+    /**
+     * 记录消息投递状态
+     *
+     * 发送中、已送达只写本地缓存；失败、转离线以及此前记录过异常状态的消息进入批量写入队列
+     */
+    public void recordStatus(Long messageId, String status) {
+        String previous = recentStatus.asMap().put(messageId, status);
+        if (Status.FAILED.equals(status) || Status.OFFLINE.equals(status)
+                || Status.FAILED.equals(previous) || Status.OFFLINE.equals(previous)) {
+            pendingStatus.put(messageId, status);
+        }
+    }
+
+    private Map<Long, Pending> window(Channel channel) {
+        Map<Long, Pending> window = channel.attr(WINDOW_KEY).get();
+        if (window == null) {
+            Map<Long, Pending> created = new ConcurrentHashMap<>();
+            window = channel.attr(WINDOW_KEY).setIfAbsent(created);
+            if (window == null) {
+                window = created;
+            }
+        }
+        return window;
+    }
+
+    private boolean write(Channel channel, Pending pending) {
+        try {
+            channel.writeAndFlush(PayloadCodec.encode(channel, pending.messageType,
+                    pending.chatMessage.getMessageId(), pending.chatMessage));
+            return true;
+        } catch (Exception e) {
+            log.error("序列化推送消息失败: userId={}, msgId={}", pending.userId, pending.chatMessage.getMessageId(), e);
+            return false;
+        }
+    }
+
+    /**
+     * 确认超时：连接仍在且未超过重试次数时重发（不可写时跳过本次），否则转为离线
+     */
+    private void onTimeout(Channel channel, Long messageId, Pending pending) {
+        Map<Long, Pending> window = channel.attr(WINDOW_KEY).get();
+        if (window == null || window.get(messageId) != pending) {
+            return;
+        }
+        if (pending.attempts >= maxRetries || !channel.isActive()) {
+            if (window.remove(messageId, pending)) {
+                log.warn("消息重发次数耗尽，转为离线: userId={}, msgId={}", pending.userId, messageId);
+                moveToOffline(pending);
+            }
+            return;
+        }
+        pending.attempts++;
+        if (channel.isWritable()) {
+            write(channel, pending);
+            log.debug("重发未确认消息: userId={}, msgId={}, attempt={}", pending.userId, messageId, pending.attempts);
+        }
+        pending.timeout = timer.newTimeout(t -> onTimeout(channel, messageId, pending),
+                ackTimeoutMs << pending.attempts, TimeUnit.MILLISECONDS);
+    }
+
+    private void moveToOffline(Pending pending) {
+        submitOffline(() -> {
+            offlineInbox.save(List.of(pending.userId), pending.chatMessage);
+            recordStatus(pending.chatMessage.getMessageId(), Status.OFFLINE);
+        });
+    }
+
+    /**
+     * 提交转离线写入；停机后线程池已关闭时在当前线程执行
+     */
+    private void submitOffline(Runnable task) {
+        try {
+            offlineExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+    }
+
+    /**
+     * 批量写入待持久化的状态：每批一次 pipeline
+     */
+    void flushStatus() {
+        if (pendingStatus.isEmpty()) {
+            return;
+        }
+        Map<Long, String> batch = new HashMap<>(Math.min(statusBatchSize, pendingStatus.size()) * 2);
+        int flushed = 0;
+        for (Long messageId : pendingStatus.keySet()) {
+            String status = pendingStatus.remove(messageId);
+            if (status == null) {
+                continue;
+            }
+            batch.put(messageId, status);
+            if (batch.size() >= statusBatchSize) {
+                flushed += writeStatus(batch);
+                batch.clear();
+            }
+        }
+        flushed += writeStatus(batch);
+        log.debug("投递状态批量写入: count={}", flushed);
+    }
+
+    private int writeStatus(Map<Long, String> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        try {
+            redisService.executePipelined(ops -> batch.forEach((messageId, status) ->
+                    ops.opsForValue().set(MESSAGE_STATUS_KEY + messageId, status, STATUS_EXPIRE_DAYS, TimeUnit.DAYS)));
+            return batch.size();
+        } catch (Exception e) {
+            // 写入失败的状态放回队列（不覆盖期间产生的新状态），下个周期重试
+            batch.forEach(pendingStatus::putIfAbsent);
+            log.error("批量写入投递状态失败: count={}", batch.size(), e);
+            return 0;
+        }
+    }
+}
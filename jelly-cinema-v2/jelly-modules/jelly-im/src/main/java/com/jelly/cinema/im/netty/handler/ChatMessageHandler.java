@@ -1,8 +1,13 @@
 package com.jelly.cinema.im.netty.handler;
 
-import cn.hutool.json.JSONUtil;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.jelly.cinema.im.netty.codec.PayloadCodec;
+import com.jelly.cinema.im.netty.delivery.DeliveryTracker;
+import com.jelly.cinema.im.netty.serializer.Serializer;
+import com.jelly.cinema.im.netty.serializer.SerializerRegistry;
 import com.jelly.cinema.im.netty.model.ChatMessageDTO;
 import com.jelly.cinema.im.netty.mq.MessageProducer;
+import com.jelly.cinema.im.netty.offline.OfflineInbox;
 import com.jelly.cinema.im.netty.protocol.MessageProtocol;
 import com.jelly.cinema.im.netty.session.SessionManager;
 import io.netty.channel.ChannelHandler;
@@ -21,10 +26,17 @@ import java.nio.charset.StandardCharsets;
  * 处理流程：
  * 1. 接收客户端消息
  * 2. 消息校验
- * 3. 发送 ACK 给发送方
- * 4. 写入 MQ 进行异步处理
+ * 3. 写入 MQ 进行异步处理（IO 线程只入队，不等待 Broker）
+ * 4. Broker 确认后发送 ACK 给发送方
  * 5. 路由消息到接收方
  * 
+ * 序列化协商：客户端在认证请求中通过 serializers 字段按优先级声明支持的格式（名称或类型编号），
+ * 服务端选择第一个支持的格式写入连接属性并在认证响应中返回，之后下行的聊天消息使用该格式；
+ * 上行消息始终按协议头中的 serializerType 解析。
+ * 
+ * 离线消息：认证成功后由 {@link OfflineInbox} 分页推送，客户端以 OFFLINE_ACK 确认一页后再推送下一页。
+ * 推送给接收方的私聊消息登记在 {@link DeliveryTracker} 的未确认窗口，收到 CHAT_ACK 前超时重发。
+ * 
  * @author Jelly Cinema
  */
 @Slf4j
@@ -36,6 +48,8 @@ public class ChatMessageHandler extends SimpleChannelInboundHandler<MessageProto
 
     private final SessionManager sessionManager;
     private final MessageProducer messageProducer;
+    private final OfflineInbox offlineInbox;
+    private final DeliveryTracker deliveryTracker;
 
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, MessageProtocol protocol) throws Exception {
@@ -57,6 +71,9 @@ public class ChatMessageHandler extends SimpleChannelInboundHandler<MessageProto
             case MessageProtocol.MessageType.CHAT_ACK:
                 handleChatAck(ctx, protocol);
                 break;
+            case MessageProtocol.MessageType.OFFLINE_ACK:
+                offlineInbox.acknowledge(ctx.channel(), protocol.getMessageId());
+                break;
             default:
                 log.warn("未知消息类型: {}", messageType);
         }
@@ -68,11 +85,16 @@ public class ChatMessageHandler extends SimpleChannelInboundHandler<MessageProto
     private void handleAuth(ChannelHandlerContext ctx, MessageProtocol protocol) {
         try {
             // 解析认证信息（简化示例，实际应验证 Token）
-            String content = new String(protocol.getContent(), StandardCharsets.UTF_8);
-            // 假设内容格式为 {"userId": 123, "token": "xxx"}
-            Long userId = JSONUtil.parseObj(content).getLong("userId");
+            // 假设内容格式为 {"userId": 123, "token": "xxx", "serializers": ["protobuf", "json"]}
+            JsonNode auth = PayloadCodec.readTree(protocol);
+            JsonNode userIdNode = auth.path("userId");
+            Long userId = userIdNode.canConvertToLong() ? userIdNode.asLong() : null;
 
             if (userId != null) {
+                // 协商序列化格式
+                Serializer serializer = negotiateSerializer(auth.path("serializers"));
+                ctx.channel().attr(PayloadCodec.SERIALIZER_KEY).set(serializer.getType());
+
                 // 绑定用户会话
                 sessionManager.bind(userId, ctx.channel());
 
@@ -82,14 +104,15 @@ public class ChatMessageHandler extends SimpleChannelInboundHandler<MessageProto
                         .messageId(protocol.getMessageId())
                         .status(MessageProtocol.MessageStatus.SUCCESS)
                         .serializerType(MessageProtocol.SerializerType.JSON)
-                        .content("{\"code\":0,\"message\":\"认证成功\"}".getBytes(StandardCharsets.UTF_8))
+                        .content(("{\"code\":0,\"message\":\"认证成功\",\"serializer\":\"" + serializer.getName() + "\"}")
+                                .getBytes(StandardCharsets.UTF_8))
                         .build();
 
                 ctx.writeAndFlush(response);
-                log.info("用户认证成功: userId={}", userId);
+                log.info("用户认证成功: userId={}, serializer={}", userId, serializer.getName());
 
-                // 推送离线消息
-                pushOfflineMessages(userId);
+                // 分页推送离线消息（客户端确认一页后推送下一页）
+                offlineInbox.startDelivery(userId, ctx.channel());
             } else {
                 sendAuthFailResponse(ctx, protocol, "用户ID不能为空");
             }
@@ -99,6 +122,26 @@ public class ChatMessageHandler extends SimpleChannelInboundHandler<MessageProto
         }
     }
 
+    /**
+     * 按客户端声明的优先级选择序列化格式，均不支持时使用 JSON
+     */
+    private Serializer negotiateSerializer(JsonNode accepted) {
+        if (accepted.isArray()) {
+            for (JsonNode candidate : accepted) {
+                Serializer serializer = SerializerRegistry.find(candidate.asText());
+                if (serializer != null) {
+                    return serializer;
+                }
+            }
+        } else if (!accepted.isMissingNode() && !accepted.isNull()) {
+            Serializer serializer = SerializerRegistry.find(accepted.asText());
+            if (serializer != null) {
+                return serializer;
+            }
+        }
+        return SerializerRegistry.json();
+    }
+
     /**
      * 发送认证失败响应
      */
@@ -124,9 +167,8 @@ public class ChatMessageHandler extends SimpleChannelInboundHandler<MessageProto
         }
 
         try {
-            // 1. 解析消息内容
-            String content = new String(protocol.getContent(), StandardCharsets.UTF_8);
-            ChatMessageDTO chatMessage = JSONUtil.toBean(content, ChatMessageDTO.class);
+            // 1. 解析消息内容（按协议头的序列化类型，直接从帧缓冲区流式解析）
+            ChatMessageDTO chatMessage = PayloadCodec.read(protocol, ChatMessageDTO.class);
             chatMessage.setSenderId(senderId);
             chatMessage.setMessageId(protocol.getMessageId());
             chatMessage.setTimestamp(System.currentTimeMillis());
@@ -134,18 +176,24 @@ public class ChatMessageHandler extends SimpleChannelInboundHandler<MessageProto
             log.info("收到私聊消息: from={}, to={}, msgId={}", 
                     senderId, chatMessage.getReceiverId(), protocol.getMessageId());
 
-            // 2. 发送 ACK 给发送方
-            sendAck(ctx, protocol.getMessageId(), MessageProtocol.MessageStatus.DELIVERED);
-
-            // 3. 写入 MQ 进行异步持久化和处理
-            messageProducer.sendChatMessage(chatMessage);
-
-            // 4. 尝试直接推送给接收方（如果在线）
-            boolean delivered = routeToReceiver(chatMessage);
-            if (!delivered) {
-                log.info("接收方不在线，消息已进入离线队列: to={}, msgId={}", 
-                        chatMessage.getReceiverId(), protocol.getMessageId());
-            }
+            // 2. 写入 MQ 进行异步持久化和处理，Broker 确认后再回 ACK 并路由（回到本连接的 EventLoop 执行）
+            long messageId = protocol.getMessageId();
+            messageProducer.sendChatMessage(chatMessage, ctx.channel()).whenCompleteAsync((result, e) -> {
+                if (e != null) {
+                    sendAck(ctx, messageId, MessageProtocol.MessageStatus.FAIL);
+                    return;
+                }
+
+                // 3. 发送 ACK 给发送方
+                sendAck(ctx, messageId, MessageProtocol.MessageStatus.DELIVERED);
+
+                // 4. 尝试直接推送给接收方（如果在线）
+                boolean delivered = routeToReceiver(ctx, chatMessage);
+                if (!delivered) {
+                    log.info("接收方不在线，消息已进入离线队列: to={}, msgId={}", 
+                            chatMessage.getReceiverId(), messageId);
+                }
+            }, ctx.executor());
 
         } catch (Exception e) {
             log.error("处理私聊消息失败", e);
@@ -164,9 +212,8 @@ public class ChatMessageHandler extends SimpleChannelInboundHandler<MessageProto
         }
 
         try {
-            // 1. 解析消息内容
-            String content = new String(protocol.getContent(), StandardCharsets.UTF_8);
-            ChatMessageDTO chatMessage = JSONUtil.toBean(content, ChatMessageDTO.class);
+            // 1. 解析消息内容（按协议头的序列化类型，直接从帧缓冲区流式解析）
+            ChatMessageDTO chatMessage = PayloadCodec.read(protocol, ChatMessageDTO.class);
             chatMessage.setSenderId(senderId);
             chatMessage.setMessageId(protocol.getMessageId());
             chatMessage.setTimestamp(System.currentTimeMillis());
@@ -175,11 +222,12 @@ public class ChatMessageHandler extends SimpleChannelInboundHandler<MessageProto
             log.info("收到群聊消息: from={}, groupId={}, msgId={}", 
                     senderId, chatMessage.getReceiverId(), protocol.getMessageId());
 
-            // 2. 发送 ACK 给发送方
-            sendAck(ctx, protocol.getMessageId(), MessageProtocol.MessageStatus.DELIVERED);
-
-            // 3. 写入 MQ 进行群消息扩散
-            messageProducer.sendGroupMessage(chatMessage);
+            // 2. 写入 MQ 进行群消息扩散，Broker 确认后发送 ACK 给发送方
+            long messageId = protocol.getMessageId();
+            messageProducer.sendGroupMessage(chatMessage, ctx.channel()).whenCompleteAsync((result, e) ->
+                    sendAck(ctx, messageId, e == null
+                            ? MessageProtocol.MessageStatus.DELIVERED
+                            : MessageProtocol.MessageStatus.FAIL), ctx.executor());
 
         } catch (Exception e) {
             log.error("处理群聊消息失败", e);
@@ -195,11 +243,11 @@ public class ChatMessageHandler extends SimpleChannelInboundHandler<MessageProto
         if (userId == null) return;
 
         try {
-            String content = new String(protocol.getContent(), StandardCharsets.UTF_8);
-            // 解析已读消息 ID 列表，更新已读状态
+            String content = protocol.contentAsString();
+            // 回执内容为 {"sessionId": "...", "readSeq": 123}，由 MQ 消费者推进已读水位
             log.debug("收到已读回执: userId={}, content={}", userId, content);
             
-            // 发送到 MQ 异步处理已读状态
+            // 发送到 MQ 异步处理
             messageProducer.sendReadReceipt(userId, content);
         } catch (Exception e) {
             log.error("处理已读回执失败", e);
@@ -213,8 +261,8 @@ public class ChatMessageHandler extends SimpleChannelInboundHandler<MessageProto
         Long userId = sessionManager.getUserId(ctx.channel());
         log.debug("收到消息 ACK: userId={}, msgId={}", userId, protocol.getMessageId());
         
-        // 更新消息投递状态
-        messageProducer.confirmMessageDelivered(protocol.getMessageId());
+        // 从未确认窗口移除，停止重发
+        deliveryTracker.acknowledge(ctx.channel(), protocol.getMessageId());
     }
 
     /**
@@ -233,7 +281,7 @@ public class ChatMessageHandler extends SimpleChannelInboundHandler<MessageProto
     /**
      * 路由消息到接收方
      */
-    private boolean routeToReceiver(ChatMessageDTO chatMessage) {
+    private boolean routeToReceiver(ChannelHandlerContext ctx, ChatMessageDTO chatMessage) {
         Long receiverId = chatMessage.getReceiverId();
 
         // 先检查本地是否在线
@@ -241,10 +289,10 @@ public class ChatMessageHandler extends SimpleChannelInboundHandler<MessageProto
             return pushToLocalUser(receiverId, chatMessage);
         }
 
-        // 检查是否在其他服务器（分布式场景）
-        if (sessionManager.isOnlineGlobal(receiverId)) {
-            // 通过 MQ 转发到其他服务器
-            messageProducer.routeToOtherServer(chatMessage);
+        // 查询接收方所在节点（本地路由缓存），只投递到该节点
+        String targetNode = sessionManager.getUserNode(receiverId);
+        if (targetNode != null && !targetNode.equals(sessionManager.getNodeId())) {
+            messageProducer.routeToOtherServer(chatMessage, targetNode, ctx.channel());
             return true;
         }
 
@@ -254,25 +302,29 @@ public class ChatMessageHandler extends SimpleChannelInboundHandler<MessageProto
     }
 
     /**
-     * 推送消息给本地用户
+     * 推送消息给本地用户（登记到未确认窗口，超时重发）
      */
     private boolean pushToLocalUser(Long userId, ChatMessageDTO chatMessage) {
-        MessageProtocol message = MessageProtocol.builder()
-                .messageType(MessageProtocol.MessageType.CHAT_MESSAGE)
-                .messageId(chatMessage.getMessageId())
-                .status(MessageProtocol.MessageStatus.SUCCESS)
-                .serializerType(MessageProtocol.SerializerType.JSON)
-                .content(JSONUtil.toJsonStr(chatMessage).getBytes(StandardCharsets.UTF_8))
-                .build();
+        return deliveryTracker.push(userId, MessageProtocol.MessageType.CHAT_MESSAGE, chatMessage);
+    }
 
-        return sessionManager.sendToUser(userId, message);
+    /**
+     * 连接断开时未确认的消息转为离线
+     */
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        deliveryTracker.onDisconnect(ctx.channel());
+        super.channelInactive(ctx);
     }
 
     /**
-     * 推送离线消息
+     * 连接恢复可写时继续投递离线消息
      */
-    private void pushOfflineMessages(Long userId) {
-        // 从 MQ/Redis 获取离线消息并推送
-        messageProducer.pushOfflineMessages(userId);
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (ctx.channel().isWritable()) {
+            offlineInbox.onWritable(ctx.channel());
+        }
+        super.channelWritabilityChanged(ctx);
     }
 }
@@ -1,12 +1,14 @@
 package com.jelly.cinema.im.netty.handler;
 
 import com.jelly.cinema.im.netty.protocol.MessageProtocol;
+import com.jelly.cinema.im.netty.session.IdleConnectionSweeper;
 import com.jelly.cinema.im.netty.session.SessionManager;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.handler.timeout.IdleState;
 import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.util.ReferenceCountUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -24,6 +26,7 @@ import org.springframework.stereotype.Component;
  * - 客户端需要定期发送心跳包（建议 30 秒一次）
  * - 服务端在读空闲超时后（60秒），认为连接不健康
  * - 连续 3 次空闲超时，关闭连接
+ * - 空闲检测由 IdleConnectionSweeper 的共享时间轮统一扫描，只产生读空闲事件
  * 
  * @author Jelly Cinema
  */
@@ -35,23 +38,23 @@ import org.springframework.stereotype.Component;
 public class HeartbeatHandler extends ChannelInboundHandlerAdapter {
 
     private final SessionManager sessionManager;
+    private final IdleConnectionSweeper idleConnectionSweeper;
 
     /**
      * 最大空闲次数，超过则断开连接
      */
     private static final int MAX_IDLE_COUNT = 3;
 
-    /**
-     * 空闲计数 Key
-     */
-    private static final String IDLE_COUNT_KEY = "idleCount";
-
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
         if (msg instanceof MessageProtocol protocol) {
             if (protocol.getMessageType() == MessageProtocol.MessageType.HEARTBEAT_REQUEST) {
-                // 处理心跳请求
-                handleHeartbeat(ctx, protocol);
+                // 处理心跳请求，消息在此终结，需要释放解码器保留的 body
+                try {
+                    handleHeartbeat(ctx, protocol);
+                } finally {
+                    ReferenceCountUtil.release(protocol);
+                }
                 return;
             }
         }
@@ -63,13 +66,10 @@ public class HeartbeatHandler extends ChannelInboundHandlerAdapter {
      * 处理心跳请求
      */
     private void handleHeartbeat(ChannelHandlerContext ctx, MessageProtocol request) {
-        // 1. 重置空闲计数
-        ctx.channel().attr(io.netty.util.AttributeKey.<Integer>valueOf(IDLE_COUNT_KEY)).set(0);
-
-        // 2. 更新最后心跳时间
+        // 1. 续期在线状态（最后读时间和空闲计数已由 IdleTracker 在读事件时更新）
         sessionManager.updateLastHeartbeat(ctx.channel());
 
-        // 3. 构建心跳响应 (PONG)
+        // 2. 构建心跳响应 (PONG)
         MessageProtocol response = MessageProtocol.builder()
                 .messageType(MessageProtocol.MessageType.HEARTBEAT_RESPONSE)
                 .messageId(request.getMessageId())
@@ -77,7 +77,7 @@ public class HeartbeatHandler extends ChannelInboundHandlerAdapter {
                 .serializerType(MessageProtocol.SerializerType.JSON)
                 .build();
 
-        // 4. 发送响应
+        // 3. 发送响应
         ctx.writeAndFlush(response);
 
         Long userId = sessionManager.getUserId(ctx.channel());
@@ -101,13 +101,8 @@ public class HeartbeatHandler extends ChannelInboundHandlerAdapter {
         String channelId = ctx.channel().id().asShortText();
 
         if (event.state() == IdleState.READER_IDLE) {
-            // 读空闲：客户端长时间没有发送消息
-            Integer idleCount = ctx.channel().attr(
-                    io.netty.util.AttributeKey.<Integer>valueOf(IDLE_COUNT_KEY)).get();
-            if (idleCount == null) {
-                idleCount = 0;
-            }
-            idleCount++;
+            // 读空闲：客户端长时间没有发送消息（空闲次数由 IdleConnectionSweeper 记录，收到数据即清零）
+            int idleCount = idleConnectionSweeper.getIdleCount(ctx.channel());
 
             if (idleCount >= MAX_IDLE_COUNT) {
                 log.warn("连接读空闲超时达到上限，关闭连接: userId={}, channelId={}, idleCount={}", 
@@ -116,18 +111,7 @@ public class HeartbeatHandler extends ChannelInboundHandlerAdapter {
             } else {
                 log.debug("连接读空闲: userId={}, channelId={}, idleCount={}/{}", 
                         userId, channelId, idleCount, MAX_IDLE_COUNT);
-                ctx.channel().attr(
-                        io.netty.util.AttributeKey.<Integer>valueOf(IDLE_COUNT_KEY)).set(idleCount);
             }
-
-        } else if (event.state() == IdleState.WRITER_IDLE) {
-            // 写空闲：服务端长时间没有发送消息
-            // 可以主动发送心跳探测
-            log.debug("连接写空闲: userId={}, channelId={}", userId, channelId);
-
-        } else if (event.state() == IdleState.ALL_IDLE) {
-            // 读写空闲
-            log.debug("连接读写空闲: userId={}, channelId={}", userId, channelId);
         }
     }
 
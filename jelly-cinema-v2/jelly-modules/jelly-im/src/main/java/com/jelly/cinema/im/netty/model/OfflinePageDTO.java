@@ -0,0 +1,65 @@
+package com.jelly.cinema.im.netty.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 离线消息分页 DTO
+ *
+ * 以 OFFLINE_MESSAGE 推送，协议头的 messageId 为页号；客户端处理完后回复携带同一页号的 OFFLINE_ACK，
+ * 服务端删除该页并推送下一页，hasMore 为 false 时投递结束。
+ *
+ * @author Jelly Cinema
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OfflinePageDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 离线消息（按时间升序）
+     */
+    private List<ChatMessageDTO> messages;
+
+    /**
+     * 群聊离线摘要（只在第一页携带，客户端按会话拉取历史消息）
+     */
+    private List<GroupSummary> groups;
+
+    /**
+     * 是否还有下一页
+     */
+    private boolean hasMore;
+
+    /**
+     * 群聊离线摘要
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class GroupSummary implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * 群 ID
+         */
+        private Long groupId;
+
+        /**
+         * 离线期间的消息数
+         */
+        private Long count;
+
+        /**
+         * 最后一条消息
+         */
+        private ChatMessageDTO lastMessage;
+    }
+}
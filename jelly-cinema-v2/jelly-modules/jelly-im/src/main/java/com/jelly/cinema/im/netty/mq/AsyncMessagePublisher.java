@@ -0,0 +1,298 @@
+package com.jelly.cinema.im.netty.mq;
+
+import io.netty.channel.Channel;
+import io.netty.util.concurrent.EventExecutor;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.producer.SendCallback;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.spring.core.RocketMQTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.Message;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 异步批量 MQ 发布器
+ *
+ * Netty IO 线程不再直接调用 syncSend：
+ * 1. 每个 EventLoop 一个有界环形队列（ArrayBlockingQueue），IO 线程只做入队
+ * 2. 独立的发布线程轮流排空各队列，按目标 Topic 聚合后调用 RocketMQ 批量异步发送
+ * 3. Broker 确认后完成对应的 Future，调用方据此回 ACK
+ * 4. 队列超过高水位时关闭来源连接的 autoRead，降到低水位后恢复；队列满时直接失败
+ *
+ * 在途批次数受信号量限制，Broker 变慢时队列会逐步积压并触发背压，而不是无限占用内存。
+ *
+ * @author Jelly Cinema
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "netty.server.enabled", havingValue = "true", matchIfMissing = false)
+public class AsyncMessagePublisher {
+
+    private final RocketMQTemplate rocketMQTemplate;
+
+    /**
+     * 每个 EventLoop 的队列容量
+     */
+    @Value("${netty.mq.publisher.queue-capacity:4096}")
+    private int queueCapacity;
+
+    /**
+     * 单个批次的最大消息数
+     */
+    @Value("${netty.mq.publisher.batch-size:64}")
+    private int batchSize;
+
+    /**
+     * 最大在途批次数
+     */
+    @Value("${netty.mq.publisher.max-in-flight:16}")
+    private int maxInFlight;
+
+    /**
+     * 批量发送超时（毫秒）
+     */
+    @Value("${netty.mq.publisher.send-timeout-ms:3000}")
+    private long sendTimeoutMs;
+
+    /**
+     * 高水位 / 低水位（占队列容量的比例）
+     */
+    @Value("${netty.mq.publisher.high-watermark:0.8}")
+    private double highWatermark;
+
+    @Value("${netty.mq.publisher.low-watermark:0.4}")
+    private double lowWatermark;
+
+    /**
+     * 非 Netty 线程（MQ 消费者等）共用的队列键
+     */
+    private static final Object SHARED_QUEUE = new Object();
+
+    /**
+     * 空闲时发布线程的最长休眠时间
+     */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Map<Object, PublishQueue> queues = new ConcurrentHashMap<>();
+
+    private Semaphore inFlight;
+
+    private volatile boolean running;
+
+    private Thread publisherThread;
+
+    /**
+     * 待发布的消息
+     */
+    private record PublishTask(String destination, Message<?> message, CompletableFuture<SendResult> future) {
+    }
+
+    /**
+     * 单个 EventLoop 的发布队列
+     */
+    private class PublishQueue {
+        private final ArrayBlockingQueue<PublishTask> tasks = new ArrayBlockingQueue<>(queueCapacity);
+
+        /**
+         * 因背压被关闭 autoRead 的连接
+         */
+        private final Set<Channel> pausedChannels = ConcurrentHashMap.newKeySet();
+
+        private boolean offer(PublishTask task, Channel source) {
+            if (!tasks.offer(task)) {
+                return false;
+            }
+            if (source != null && tasks.size() >= queueCapacity * highWatermark
+                    && source.config().isAutoRead() && pausedChannels.add(source)) {
+                source.config().setAutoRead(false);
+                log.warn("MQ 发布队列超过高水位，暂停读取: channelId={}, pending={}",
+                        source.id().asShortText(), tasks.size());
+            }
+            return true;
+        }
+
+        private void resumeIfDrained() {
+            if (pausedChannels.isEmpty() || tasks.size() > queueCapacity * lowWatermark) {
+                return;
+            }
+            for (Channel channel : pausedChannels) {
+                pausedChannels.remove(channel);
+                if (channel.isActive()) {
+                    channel.config().setAutoRead(true);
+                }
+            }
+            log.info("MQ 发布队列回落到低水位，恢复读取: pending={}", tasks.size());
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        inFlight = new Semaphore(maxInFlight);
+        running = true;
+        publisherThread = new Thread(this::publishLoop, "im-mq-publisher");
+        publisherThread.setDaemon(true);
+        publisherThread.start();
+        log.info("MQ 异步发布器启动: queueCapacity={}, batchSize={}, maxInFlight={}",
+                queueCapacity, batchSize, maxInFlight);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (publisherThread != null) {
+            LockSupport.unpark(publisherThread);
+            try {
+                publisherThread.join(sendTimeoutMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // 发布线程退出后仍未发出的消息直接失败，由调用方按失败处理（客户端重发）
+        queues.values().forEach(queue -> {
+            PublishTask task;
+            while ((task = queue.tasks.poll()) != null) {
+                task.future().completeExceptionally(new RejectedExecutionException("MQ 发布器已关闭"));
+            }
+        });
+    }
+
+    /**
+     * 发布消息
+     *
+     * @param source 来源连接（Netty IO 线程调用时传入，用于背压），其他线程传 null
+     * @return Broker 确认后完成；队列已满时立即以 RejectedExecutionException 失败
+     */
+    public CompletableFuture<SendResult> publish(Channel source, String destination, Message<?> message) {
+        CompletableFuture<SendResult> future = new CompletableFuture<>();
+        if (!running) {
+            future.completeExceptionally(new RejectedExecutionException("MQ 发布器已关闭"));
+            return future;
+        }
+
+        Object key = source != null ? source.eventLoop() : SHARED_QUEUE;
+        PublishQueue queue = queues.computeIfAbsent(key, k -> new PublishQueue());
+        boolean wasEmpty = queue.tasks.isEmpty();
+        if (!queue.offer(new PublishTask(destination, message, future), source)) {
+            future.completeExceptionally(new RejectedExecutionException("MQ 发布队列已满: " + destination));
+            return future;
+        }
+        if (wasEmpty) {
+            LockSupport.unpark(publisherThread);
+        }
+        return future;
+    }
+
+    /**
+     * 当前各队列积压的消息数
+     */
+    public Map<String, Integer> pendingCounts() {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        queues.forEach((key, queue) -> counts.put(
+                key instanceof EventExecutor executor ? executor.toString() : "shared", queue.tasks.size()));
+        return counts;
+    }
+
+    private void publishLoop() {
+        List<PublishTask> drained = new ArrayList<>(batchSize);
+        while (running || hasPending()) {
+            boolean idle = true;
+            for (PublishQueue queue : queues.values()) {
+                if (queue.tasks.isEmpty()) {
+                    continue;
+                }
+                if (!inFlight.tryAcquire()) {
+                    // 在途批次已满，等待回调释放后再排空，队列积压会触发背压
+                    break;
+                }
+                drained.clear();
+                queue.tasks.drainTo(drained, batchSize);
+                queue.resumeIfDrained();
+                if (drained.isEmpty()) {
+                    inFlight.release();
+                    continue;
+                }
+                idle = false;
+                sendBatches(drained);
+            }
+            if (idle) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    private boolean hasPending() {
+        return queues.values().stream().anyMatch(queue -> !queue.tasks.isEmpty());
+    }
+
+    /**
+     * 按目标聚合后批量发送，一次排空占用一个在途许可，所有批次回调后释放
+     */
+    private void sendBatches(List<PublishTask> drained) {
+        Map<String, List<PublishTask>> byDestination = new LinkedHashMap<>();
+        for (PublishTask task : drained) {
+            byDestination.computeIfAbsent(task.destination(), d -> new ArrayList<>()).add(task);
+        }
+
+        BatchCompletion completion = new BatchCompletion(byDestination.size());
+        byDestination.forEach((destination, tasks) -> {
+            List<Message<?>> messages = new ArrayList<>(tasks.size());
+            tasks.forEach(task -> messages.add(task.message()));
+            try {
+                rocketMQTemplate.asyncSend(destination, messages, new SendCallback() {
+                    @Override
+                    public void onSuccess(SendResult sendResult) {
+                        tasks.forEach(task -> task.future().complete(sendResult));
+                        completion.done();
+                    }
+
+                    @Override
+                    public void onException(Throwable e) {
+                        log.error("MQ 批量发送失败: destination={}, size={}", destination, tasks.size(), e);
+                        tasks.forEach(task -> task.future().completeExceptionally(e));
+                        completion.done();
+                    }
+                }, sendTimeoutMs);
+            } catch (Exception e) {
+                log.error("MQ 批量发送失败: destination={}, size={}", destination, tasks.size(), e);
+                tasks.forEach(task -> task.future().completeExceptionally(e));
+                completion.done();
+            }
+        });
+    }
+
+    /**
+     * 一次排空的所有批次完成后归还在途许可
+     */
+    private class BatchCompletion {
+        private int remaining;
+
+        private BatchCompletion(int batches) {
+            this.remaining = batches;
+        }
+
+        private synchronized void done() {
+            if (--remaining == 0) {
+                inFlight.release();
+                LockSupport.unpark(publisherThread);
+            }
+        }
+    }
+}
@@ -1,21 +1,32 @@
 package com.jelly.cinema.im.netty.mq;
 
+import cn.hutool.json.JSONArray;
+import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
 import com.jelly.cinema.im.domain.entity.ChatMessage;
+import com.jelly.cinema.im.fanout.FanoutMode;
+import com.jelly.cinema.im.fanout.GroupFanoutEngine;
+import com.jelly.cinema.im.netty.delivery.DeliveryTracker;
 import com.jelly.cinema.im.netty.model.ChatMessageDTO;
 import com.jelly.cinema.im.netty.protocol.MessageProtocol;
 import com.jelly.cinema.im.netty.session.SessionManager;
 import com.jelly.cinema.im.service.MessageService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.spring.annotation.ConsumeMode;
 import org.apache.rocketmq.spring.annotation.RocketMQMessageListener;
 import org.apache.rocketmq.spring.core.RocketMQListener;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * 消息消费者
@@ -25,6 +36,9 @@ import java.time.LocalDateTime;
  * 2. 持久化到数据库
  * 3. 推送消息给接收方
  * 
+ * 消息体按 {@link MessageProducer#SERIALIZER_HEADER} 属性解码，推送时使用接收方连接协商的格式。
+ * 群消息由 {@link GroupFanoutEngine} 决定接收者和扩散模式，按成员所在节点分组投递。
+ * 
  * @author Jelly Cinema
  */
 @Slf4j
@@ -37,6 +51,18 @@ public class MessageConsumer {
     private final MessageService messageService;
     private final MessageProducer messageProducer;
 
+    /**
+     * 解码 MQ 消息体为 ChatMessageDTO
+     */
+    static ChatMessageDTO decode(MessageExt message) {
+        try {
+            return MessageProducer.fromMqMessage(message.getBody(),
+                    message.getUserProperty(MessageProducer.SERIALIZER_HEADER));
+        } catch (IOException e) {
+            throw new IllegalStateException("MQ 消息解码失败: msgId=" + message.getMsgId(), e);
+        }
+    }
+
     /**
      * 私聊消息消费者
      */
@@ -48,14 +74,15 @@ public class MessageConsumer {
             consumeMode = ConsumeMode.ORDERLY
     )
     @RequiredArgsConstructor
-    public static class NettyChatMessageConsumer implements RocketMQListener<ChatMessageDTO> {
+    public static class NettyChatMessageConsumer implements RocketMQListener<MessageExt> {
 
         private final MessageService messageService;
-        private final SessionManager sessionManager;
         private final MessageProducer messageProducer;
+        private final DeliveryTracker deliveryTracker;
 
         @Override
-        public void onMessage(ChatMessageDTO chatMessage) {
+        public void onMessage(MessageExt message) {
+            ChatMessageDTO chatMessage = decode(message);
             log.info("消费私聊消息: msgId={}, from={}, to={}", 
                     chatMessage.getMessageId(), chatMessage.getSenderId(), chatMessage.getReceiverId());
 
@@ -94,24 +121,20 @@ public class MessageConsumer {
         }
 
         private boolean pushToReceiver(ChatMessageDTO chatMessage) {
-            Long receiverId = chatMessage.getReceiverId();
-
-            if (sessionManager.isOnlineLocal(receiverId)) {
-                MessageProtocol message = MessageProtocol.builder()
-                        .messageType(MessageProtocol.MessageType.CHAT_MESSAGE)
-                        .messageId(chatMessage.getMessageId())
-                        .status(MessageProtocol.MessageStatus.SUCCESS)
-                        .serializerType(MessageProtocol.SerializerType.JSON)
-                        .content(JSONUtil.toJsonStr(chatMessage).getBytes(StandardCharsets.UTF_8))
-                        .build();
-
-                return sessionManager.sendToUser(receiverId, message);
-            }
-
-            return false;
+            // 接收方在本节点时推送并登记到未确认窗口，否则返回 false
+            return deliveryTracker.push(chatMessage.getReceiverId(), MessageProtocol.MessageType.CHAT_MESSAGE, chatMessage);
         }
     }
 
+    /**
+     * 按推送目标的会话类型选择推送的消息类型
+     */
+    static byte pushType(ChatMessageDTO chatMessage) {
+        return Integer.valueOf(ChatMessageDTO.SessionType.GROUP).equals(chatMessage.getSessionType())
+                ? MessageProtocol.MessageType.GROUP_MESSAGE
+                : MessageProtocol.MessageType.CHAT_MESSAGE;
+    }
+
     /**
      * 群聊消息消费者
      */
@@ -123,14 +146,16 @@ public class MessageConsumer {
             consumeMode = ConsumeMode.ORDERLY
     )
     @RequiredArgsConstructor
-    public static class NettyGroupMessageConsumer implements RocketMQListener<ChatMessageDTO> {
+    public static class NettyGroupMessageConsumer implements RocketMQListener<MessageExt> {
 
         private final MessageService messageService;
         private final SessionManager sessionManager;
         private final MessageProducer messageProducer;
+        private final GroupFanoutEngine groupFanoutEngine;
 
         @Override
-        public void onMessage(ChatMessageDTO chatMessage) {
+        public void onMessage(MessageExt message) {
+            ChatMessageDTO chatMessage = decode(message);
             log.info("消费群聊消息: msgId={}, from={}, groupId={}", 
                     chatMessage.getMessageId(), chatMessage.getSenderId(), chatMessage.getReceiverId());
 
@@ -146,22 +171,50 @@ public class MessageConsumer {
                 entity.setCreateTime(LocalDateTime.now());
                 messageService.saveMessage(entity);
 
-                // 2. 获取群成员列表并推送
-                // 实际应从数据库获取群成员
-                // List<Long> memberIds = groupService.getGroupMemberIds(chatMessage.getReceiverId());
-                // for (Long memberId : memberIds) {
-                //     if (!memberId.equals(chatMessage.getSenderId())) {
-                //         pushToMember(memberId, chatMessage);
-                //     }
-                // }
-
-                log.info("群聊消息处理完成: msgId={}", chatMessage.getMessageId());
+                // 2. 按成员所在节点扩散
+                fanout(chatMessage);
 
             } catch (Exception e) {
                 log.error("处理群聊消息失败: msgId={}", chatMessage.getMessageId(), e);
                 throw new RuntimeException("处理群聊消息失败", e);
             }
         }
+
+        /**
+         * 本节点在线成员直接群发（每种序列化格式只编码一次），其他节点的成员按节点分批路由，
+         * 离线成员在写扩散模式下更新其群聊离线摘要，读扩散模式下上线后按序列号拉取
+         */
+        private void fanout(ChatMessageDTO chatMessage) {
+            GroupFanoutEngine.FanoutPlan plan = groupFanoutEngine.plan(chatMessage.getReceiverId(), chatMessage.getSenderId());
+
+            List<Long> local = new ArrayList<>();
+            List<Long> remote = new ArrayList<>();
+            for (long userId : plan.recipients()) {
+                (sessionManager.isOnlineLocal(userId) ? local : remote).add(userId);
+            }
+
+            Map<String, List<Long>> byNode = new HashMap<>();
+            List<Long> offline = new ArrayList<>();
+            Map<Long, String> nodes = remote.isEmpty() ? Map.of() : sessionManager.getUserNodes(remote);
+            for (Long userId : remote) {
+                String node = nodes.get(userId);
+                if (node == null || node.equals(sessionManager.getNodeId())) {
+                    offline.add(userId);
+                } else {
+                    byNode.computeIfAbsent(node, n -> new ArrayList<>()).add(userId);
+                }
+            }
+
+            int delivered = local.isEmpty() ? 0 : sessionManager.sendPayloadToUsers(local,
+                    MessageProtocol.MessageType.GROUP_MESSAGE, chatMessage.getMessageId(), chatMessage);
+            byNode.forEach((node, userIds) -> messageProducer.routeGroupToNode(chatMessage, node, userIds, plan.mode()));
+            if (plan.mode() == FanoutMode.WRITE_DIFFUSION) {
+                messageProducer.saveOfflineMessages(offline, chatMessage);
+            }
+
+            log.info("群聊消息扩散完成: msgId={}, mode={}, members={}, local={}, nodes={}, offline={}",
+                    chatMessage.getMessageId(), plan.mode(), plan.memberCount(), delivered, byNode.size(), offline.size());
+        }
     }
 
     /**
@@ -171,37 +224,94 @@ public class MessageConsumer {
     @ConditionalOnProperty(name = "netty.server.enabled", havingValue = "true", matchIfMissing = false)
     @RocketMQMessageListener(
             topic = "MESSAGE_ROUTE_TOPIC",
-            consumerGroup = "message-route-consumer-group"
+            selectorExpression = SessionManager.NODE_ID_PLACEHOLDER,
+            consumerGroup = "message-route-consumer-group-" + SessionManager.NODE_ID_PLACEHOLDER
     )
     @RequiredArgsConstructor
-    public static class NettyMessageRouteConsumer implements RocketMQListener<ChatMessageDTO> {
+    public static class NettyMessageRouteConsumer implements RocketMQListener<MessageExt> {
+
+        /**
+         * 最大转发次数，防止路由信息异常时在节点间来回转发
+         */
+        private static final int MAX_ROUTE_HOPS = 2;
 
         private final SessionManager sessionManager;
+        private final MessageProducer messageProducer;
+        private final DeliveryTracker deliveryTracker;
 
         @Override
-        public void onMessage(ChatMessageDTO chatMessage) {
-            Long receiverId = chatMessage.getReceiverId();
+        public void onMessage(MessageExt message) {
+            ChatMessageDTO chatMessage = decode(message);
+            String recipients = message.getUserProperty(MessageProducer.RECIPIENTS_HEADER);
+            if (recipients != null) {
+                deliverGroup(chatMessage, recipients, message.getUserProperty(MessageProducer.FANOUT_MODE_HEADER));
+                return;
+            }
+
+            String targetUser = message.getUserProperty(MessageProducer.TARGET_USER_HEADER);
+            Long receiverId = targetUser != null ? Long.valueOf(targetUser) : chatMessage.getReceiverId();
 
             log.info("消费路由消息: msgId={}, to={}", chatMessage.getMessageId(), receiverId);
 
             // 检查接收方是否在本节点
-            if (sessionManager.isOnlineLocal(receiverId)) {
-                MessageProtocol message = MessageProtocol.builder()
-                        .messageType(MessageProtocol.MessageType.CHAT_MESSAGE)
-                        .messageId(chatMessage.getMessageId())
-                        .status(MessageProtocol.MessageStatus.SUCCESS)
-                        .serializerType(MessageProtocol.SerializerType.JSON)
-                        .content(JSONUtil.toJsonStr(chatMessage).getBytes(StandardCharsets.UTF_8))
-                        .build();
-
-                sessionManager.sendToUser(receiverId, message);
+            if (deliveryTracker.push(receiverId, pushType(chatMessage), chatMessage)) {
                 log.info("路由消息推送成功: msgId={}, to={}", chatMessage.getMessageId(), receiverId);
+                return;
+            }
+
+            // 离线消息回放时用户已断开：放回其离线消息
+            if (targetUser != null) {
+                messageProducer.saveOfflineMessages(List.of(receiverId), chatMessage);
+                return;
+            }
+
+            // 发送方的路由缓存已过期（用户已切换节点或下线），重新查询后转发一次
+            int hops = parseHops(message.getUserProperty(MessageProducer.ROUTE_HOPS_HEADER));
+            String targetNode = sessionManager.getUserNodeFresh(receiverId);
+            if (targetNode != null && !targetNode.equals(sessionManager.getNodeId()) && hops < MAX_ROUTE_HOPS) {
+                messageProducer.routeToOtherServer(chatMessage, targetNode, null, hops + 1);
+            } else {
+                messageProducer.saveOfflineMessage(chatMessage);
+            }
+        }
+
+        /**
+         * 群消息路由：推送给本节点上的接收者，已不在本节点的接收者按扩散模式决定是否写离线消息
+         */
+        private void deliverGroup(ChatMessageDTO chatMessage, String recipients, String mode) {
+            List<Long> local = new ArrayList<>();
+            List<Long> missed = new ArrayList<>();
+            for (String id : recipients.split(",")) {
+                if (id.isEmpty()) {
+                    continue;
+                }
+                Long userId = Long.valueOf(id);
+                (sessionManager.isOnlineLocal(userId) ? local : missed).add(userId);
+            }
+
+            int delivered = local.isEmpty() ? 0 : sessionManager.sendPayloadToUsers(local,
+                    MessageProtocol.MessageType.GROUP_MESSAGE, chatMessage.getMessageId(), chatMessage);
+            if (!missed.isEmpty() && !FanoutMode.READ_DIFFUSION.name().equals(mode)) {
+                messageProducer.saveOfflineMessages(missed, chatMessage);
+            }
+            log.info("群消息路由推送: msgId={}, delivered={}, missed={}",
+                    chatMessage.getMessageId(), delivered, missed.size());
+        }
+
+        private int parseHops(String hops) {
+            try {
+                return hops != null ? Integer.parseInt(hops) : 1;
+            } catch (NumberFormatException e) {
+                return 1;
             }
         }
     }
 
     /**
      * 已读回执消费者
+     *
+     * 回执内容为 {"sessionId": "...", "readSeq": 123}（推进已读水位），
+     * 或兼容旧格式 {"messageIds": [...]}（按消息所在会话的最大序列号推进水位）
      */
     @Component
     @ConditionalOnProperty(name = "netty.server.enabled", havingValue = "true", matchIfMissing = false)
@@ -210,19 +320,30 @@ public class MessageConsumer {
             consumerGroup = "read-receipt-consumer-group"
     )
     @RequiredArgsConstructor
-    public static class NettyReadReceiptConsumer implements RocketMQListener<String> {
+    public static class NettyReadReceiptConsumer implements RocketMQListener<MessageExt> {
 
         private final MessageService messageService;
 
         @Override
-        public void onMessage(String content) {
-            log.debug("消费已读回执: content={}", content);
+        public void onMessage(MessageExt message) {
+            String content = new String(message.getBody(), StandardCharsets.UTF_8);
+            String userIdHeader = message.getUserProperty("userId");
+            log.debug("消费已读回执: userId={}, content={}", userIdHeader, content);
 
             try {
-                // 解析已读消息 ID 列表并更新状态
-                // messageService.markMessagesAsRead(messageIds);
+                JSONObject receipt = JSONUtil.parseObj(content);
+                String sessionId = receipt.getStr("sessionId");
+                Long readSeq = receipt.getLong("readSeq");
+                if (userIdHeader != null && sessionId != null && readSeq != null) {
+                    messageService.markReadUpTo(Long.valueOf(userIdHeader), sessionId, readSeq);
+                    return;
+                }
+                JSONArray messageIds = receipt.getJSONArray("messageIds");
+                if (messageIds != null && !messageIds.isEmpty()) {
+                    messageService.markMessagesAsRead(messageIds.toList(Long.class));
+                }
             } catch (Exception e) {
-                log.error("处理已读回执失败", e);
+                log.error("处理已读回执失败: content={}", content, e);
             }
         }
     }
@@ -1,27 +1,38 @@
 package com.jelly.cinema.im.netty.mq;
 
-import cn.hutool.json.JSONUtil;
+import com.jelly.cinema.im.fanout.FanoutMode;
+import com.jelly.cinema.im.netty.delivery.DeliveryTracker;
 import com.jelly.cinema.im.netty.model.ChatMessageDTO;
+import com.jelly.cinema.im.netty.offline.OfflineInbox;
+import com.jelly.cinema.im.netty.serializer.Serializer;
+import com.jelly.cinema.im.netty.serializer.SerializerRegistry;
+import com.jelly.cinema.im.netty.session.SessionManager;
+import io.netty.channel.Channel;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.producer.SendResult;
 import org.apache.rocketmq.spring.core.RocketMQTemplate;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
-import java.util.Set;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 消息生产者
  * 
  * 负责：
- * 1. 发送聊天消息到 MQ
- * 2. 管理消息投递状态
- * 3. 处理离线消息
- * 4. 消息重试机制
+ * 1. 发送聊天消息到 MQ（经 {@link AsyncMessagePublisher} 异步批量发送，不阻塞 IO 线程）
+ * 2. 记录消息发送状态（经 {@link DeliveryTracker} 批量持久化）
+ * 3. 离线消息写入 {@link OfflineInbox}（登录后由收件箱分页投递）
+ * 4. 发送失败标记为 FAILED，由客户端收到失败 ACK 后重发
+ * 
+ * MQ 消息体为 {@link #SERIALIZER_HEADER} 指定格式的字节数组，消费端按该属性解码，缺省视为 JSON 以兼容升级前积压的消息。
+ * 默认仍发送 JSON：滚动升级期间未升级的消费者只能解析 JSON，所有节点都能按该属性解码后再把 netty.mq.serializer 切换为 protobuf。
  * 
  * @author Jelly Cinema
  */
@@ -32,7 +43,52 @@ import java.util.concurrent.TimeUnit;
 public class MessageProducer {
 
     private final RocketMQTemplate rocketMQTemplate;
-    private final RedisTemplate<String, Object> redisTemplate;
+    private final AsyncMessagePublisher asyncMessagePublisher;
+    private final DeliveryTracker deliveryTracker;
+    private final OfflineInbox offlineInbox;
+
+    /**
+     * MQ 消息体序列化格式的消息属性名
+     */
+    public static final String SERIALIZER_HEADER = "SERIALIZER";
+
+    /**
+     * 路由转发次数的消息属性名
+     */
+    public static final String ROUTE_HOPS_HEADER = "ROUTE_HOPS";
+
+    /**
+     * 群消息路由的目标用户列表属性名（逗号分隔的 userId）
+     */
+    public static final String RECIPIENTS_HEADER = "RECIPIENTS";
+
+    /**
+     * 群消息扩散模式属性名
+     */
+    public static final String FANOUT_MODE_HEADER = "FANOUT_MODE";
+
+    /**
+     * 离线消息回放的目标用户属性名（升级前经 MQ 回放、仍在积压中的离线消息）
+     */
+    public static final String TARGET_USER_HEADER = "targetUserId";
+
+    /**
+     * 当前节点 ID（路由 Tag）
+     */
+    @Value(SessionManager.NODE_ID_PLACEHOLDER)
+    private String nodeId;
+
+    /**
+     * MQ 消息体序列化格式（名称或类型编号），全部节点升级后再切换为 protobuf
+     */
+    @Value("${netty.mq.serializer:json}")
+    private String mqSerializer;
+
+    /**
+     * 群消息路由时单条 MQ 消息携带的最大接收者数（受 MQ 消息属性长度限制）
+     */
+    @Value("${netty.group.route-batch-size:1000}")
+    private int groupRouteBatchSize;
 
     /**
      * MQ Topic
@@ -43,79 +99,116 @@ public class MessageProducer {
     private static final String TOPIC_READ_RECEIPT = "READ_RECEIPT_TOPIC";
 
     /**
-     * Redis Key 前缀
+     * 发送私聊消息到 MQ
+     *
+     * @param source 发送方连接（用于发布队列背压），非 IO 线程调用传 null
+     * @return Broker 确认后完成
      */
-    private static final String OFFLINE_MESSAGE_KEY = "im:offline:msg:";
-    private static final String MESSAGE_STATUS_KEY = "im:msg:status:";
-    private static final String MESSAGE_RETRY_KEY = "im:msg:retry:";
+    public CompletableFuture<SendResult> sendChatMessage(ChatMessageDTO chatMessage, Channel source) {
+        return publish(source, TOPIC_CHAT_MESSAGE, chatMessage, "私聊");
+    }
 
     /**
-     * 消息过期时间（7天）
+     * 发送群聊消息到 MQ
+     *
+     * @return Broker 确认后完成
      */
-    private static final long MESSAGE_EXPIRE_DAYS = 7;
+    public CompletableFuture<SendResult> sendGroupMessage(ChatMessageDTO chatMessage, Channel source) {
+        return publish(source, TOPIC_GROUP_MESSAGE, chatMessage, "群聊");
+    }
 
     /**
-     * 最大重试次数
+     * 路由消息到接收方所在节点，发送失败时保存为离线消息
+     *
+     * 消息以目标节点 ID 为 Tag 发送，只有该节点的路由消费者会收到
      */
-    private static final int MAX_RETRY_COUNT = 3;
+    public CompletableFuture<SendResult> routeToOtherServer(ChatMessageDTO chatMessage, String targetNode, Channel source) {
+        return routeToOtherServer(chatMessage, targetNode, source, 1);
+    }
 
     /**
-     * 发送私聊消息到 MQ
+     * 路由消息到指定节点
+     *
+     * @param hops 已转发次数（路由缓存过期导致的二次转发会递增）
      */
-    public void sendChatMessage(ChatMessageDTO chatMessage) {
+    public CompletableFuture<SendResult> routeToOtherServer(ChatMessageDTO chatMessage, String targetNode, Channel source, int hops) {
+        CompletableFuture<SendResult> future;
         try {
-            // 1. 记录消息状态（发送中）
-            saveMessageStatus(chatMessage.getMessageId(), "SENDING");
-
-            // 2. 发送到 MQ
-            rocketMQTemplate.syncSend(TOPIC_CHAT_MESSAGE, 
-                    MessageBuilder.withPayload(chatMessage).build());
-
-            log.info("私聊消息发送到 MQ: msgId={}, from={}, to={}", 
-                    chatMessage.getMessageId(), chatMessage.getSenderId(), chatMessage.getReceiverId());
-
+            future = asyncMessagePublisher.publish(source, routeDestination(targetNode),
+                    toMqMessage(chatMessage).setHeader(ROUTE_HOPS_HEADER, hops).build());
         } catch (Exception e) {
-            log.error("发送私聊消息到 MQ 失败: msgId={}", chatMessage.getMessageId(), e);
-            // 加入重试队列
-            addToRetryQueue(chatMessage);
+            future = CompletableFuture.failedFuture(e);
         }
+        return future.whenComplete((result, e) -> {
+            if (e == null) {
+                log.info("消息路由到其他服务器: msgId={}, to={}, node={}", 
+                        chatMessage.getMessageId(), chatMessage.getReceiverId(), targetNode);
+            } else {
+                log.error("消息路由失败: msgId={}", chatMessage.getMessageId(), e);
+                // 保存为离线消息
+                saveOfflineMessage(chatMessage);
+            }
+        });
     }
 
     /**
-     * 发送群聊消息到 MQ
+     * 把群消息路由到成员所在节点：每个节点按批发送，消息属性携带该节点上的接收者列表
+     *
+     * 发送失败时，写扩散模式下为这些接收者保存离线消息；读扩散模式下由成员上线后按序列号拉取
      */
-    public void sendGroupMessage(ChatMessageDTO chatMessage) {
-        try {
-            saveMessageStatus(chatMessage.getMessageId(), "SENDING");
-
-            rocketMQTemplate.syncSend(TOPIC_GROUP_MESSAGE, 
-                    MessageBuilder.withPayload(chatMessage).build());
-
-            log.info("群聊消息发送到 MQ: msgId={}, from={}, groupId={}", 
-                    chatMessage.getMessageId(), chatMessage.getSenderId(), chatMessage.getReceiverId());
-
-        } catch (Exception e) {
-            log.error("发送群聊消息到 MQ 失败: msgId={}", chatMessage.getMessageId(), e);
-            addToRetryQueue(chatMessage);
+    public void routeGroupToNode(ChatMessageDTO chatMessage, String targetNode, List<Long> recipients, FanoutMode mode) {
+        int batchSize = Math.max(1, groupRouteBatchSize);
+        for (int from = 0; from < recipients.size(); from += batchSize) {
+            List<Long> batch = recipients.subList(from, Math.min(recipients.size(), from + batchSize));
+            CompletableFuture<SendResult> future;
+            try {
+                StringBuilder ids = new StringBuilder(batch.size() * 20);
+                for (Long userId : batch) {
+                    if (ids.length() > 0) {
+                        ids.append(',');
+                    }
+                    ids.append(userId);
+                }
+                future = asyncMessagePublisher.publish(null, routeDestination(targetNode),
+                        toMqMessage(chatMessage)
+                                .setHeader(RECIPIENTS_HEADER, ids.toString())
+                                .setHeader(FANOUT_MODE_HEADER, mode.name())
+                                .build());
+            } catch (Exception e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            future.whenComplete((result, e) -> {
+                if (e != null) {
+                    log.error("群消息路由失败: msgId={}, node={}, recipients={}",
+                            chatMessage.getMessageId(), targetNode, batch.size(), e);
+                    if (mode == FanoutMode.WRITE_DIFFUSION) {
+                        saveOfflineMessages(batch, chatMessage);
+                    }
+                }
+            });
         }
     }
 
     /**
-     * 路由消息到其他服务器
+     * 记录发送中状态并提交到异步发布器，失败时标记为 FAILED（客户端收到失败 ACK 后重发）
      */
-    public void routeToOtherServer(ChatMessageDTO chatMessage) {
+    private CompletableFuture<SendResult> publish(Channel source, String topic, ChatMessageDTO chatMessage, String label) {
+        CompletableFuture<SendResult> future;
         try {
-            rocketMQTemplate.syncSend(TOPIC_MESSAGE_ROUTE, 
-                    MessageBuilder.withPayload(chatMessage).build());
-
-            log.info("消息路由到其他服务器: msgId={}, to={}", 
-                    chatMessage.getMessageId(), chatMessage.getReceiverId());
-
+            deliveryTracker.recordStatus(chatMessage.getMessageId(), DeliveryTracker.Status.SENDING);
+            future = asyncMessagePublisher.publish(source, topic, toMqMessage(chatMessage).build());
         } catch (Exception e) {
-            log.error("消息路由失败: msgId={}", chatMessage.getMessageId(), e);
-            // 保存为离线消息
-            saveOfflineMessage(chatMessage);
+            future = CompletableFuture.failedFuture(e);
         }
+        return future.whenComplete((result, e) -> {
+            if (e == null) {
+                log.info("{}消息发送到 MQ: msgId={}, from={}, to={}", label,
+                        chatMessage.getMessageId(), chatMessage.getSenderId(), chatMessage.getReceiverId());
+            } else {
+                log.error("发送{}消息到 MQ 失败: msgId={}", label, chatMessage.getMessageId(), e);
+                deliveryTracker.recordStatus(chatMessage.getMessageId(), DeliveryTracker.Status.FAILED);
+            }
+        });
     }
 
     /**
@@ -147,120 +240,41 @@ public class MessageProducer {
      * 保存离线消息
      */
     public void saveOfflineMessage(ChatMessageDTO chatMessage) {
-        try {
-            String key = OFFLINE_MESSAGE_KEY + chatMessage.getReceiverId();
-            String messageJson = JSONUtil.toJsonStr(chatMessage);
-
-            // 使用 ZSet 存储，score 为时间戳，便于按时间排序
-            redisTemplate.opsForZSet().add(key, messageJson, chatMessage.getTimestamp());
-
-            // 设置过期时间
-            redisTemplate.expire(key, MESSAGE_EXPIRE_DAYS, TimeUnit.DAYS);
-
-            log.info("离线消息保存成功: userId={}, msgId={}", 
-                    chatMessage.getReceiverId(), chatMessage.getMessageId());
-
-        } catch (Exception e) {
-            log.error("保存离线消息失败: msgId={}", chatMessage.getMessageId(), e);
-        }
-    }
-
-    /**
-     * 推送离线消息
-     */
-    public void pushOfflineMessages(Long userId) {
-        try {
-            String key = OFFLINE_MESSAGE_KEY + userId;
-            
-            // 获取所有离线消息
-            Set<Object> messages = redisTemplate.opsForZSet().range(key, 0, -1);
-            
-            if (messages != null && !messages.isEmpty()) {
-                log.info("推送离线消息: userId={}, count={}", userId, messages.size());
-                
-                // 通过 MQ 发送离线消息推送任务
-                for (Object messageJson : messages) {
-                    ChatMessageDTO chatMessage = JSONUtil.toBean(messageJson.toString(), ChatMessageDTO.class);
-                    
-                    // 标记为离线消息
-                    rocketMQTemplate.sendOneWay(TOPIC_MESSAGE_ROUTE + ":offline", 
-                            MessageBuilder.withPayload(chatMessage)
-                                    .setHeader("targetUserId", userId)
-                                    .build());
-                }
-
-                // 清空离线消息
-                redisTemplate.delete(key);
-            }
-        } catch (Exception e) {
-            log.error("推送离线消息失败: userId={}", userId, e);
-        }
+        offlineInbox.save(List.of(chatMessage.getReceiverId()), chatMessage);
     }
 
     /**
-     * 确认消息已送达
+     * 为多个用户保存同一条离线消息（群消息只更新各成员的离线摘要）
      */
-    public void confirmMessageDelivered(Long messageId) {
-        try {
-            saveMessageStatus(messageId, "DELIVERED");
-            
-            // 从重试队列移除
-            redisTemplate.delete(MESSAGE_RETRY_KEY + messageId);
-            
-            log.debug("消息确认送达: msgId={}", messageId);
-        } catch (Exception e) {
-            log.error("确认消息送达失败: msgId={}", messageId, e);
-        }
+    public void saveOfflineMessages(Collection<Long> userIds, ChatMessageDTO chatMessage) {
+        offlineInbox.save(userIds, chatMessage);
     }
 
     /**
-     * 保存消息状态
+     * 节点路由目标：MESSAGE_ROUTE_TOPIC:{nodeId}
      */
-    private void saveMessageStatus(Long messageId, String status) {
-        String key = MESSAGE_STATUS_KEY + messageId;
-        redisTemplate.opsForValue().set(key, status, MESSAGE_EXPIRE_DAYS, TimeUnit.DAYS);
+    private static String routeDestination(String node) {
+        return TOPIC_MESSAGE_ROUTE + ":" + node;
     }
 
     /**
-     * 加入重试队列
+     * 按配置的格式序列化 MQ 消息体
      */
-    private void addToRetryQueue(ChatMessageDTO chatMessage) {
-        try {
-            String key = MESSAGE_RETRY_KEY + chatMessage.getMessageId();
-            String countKey = key + ":count";
-
-            // 检查重试次数
-            Integer retryCount = (Integer) redisTemplate.opsForValue().get(countKey);
-            if (retryCount == null) {
-                retryCount = 0;
-            }
-
-            if (retryCount >= MAX_RETRY_COUNT) {
-                log.warn("消息重试次数已达上限，放弃重试: msgId={}", chatMessage.getMessageId());
-                saveMessageStatus(chatMessage.getMessageId(), "FAILED");
-                return;
-            }
-
-            // 保存到重试队列
-            redisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(chatMessage), 
-                    5 * (retryCount + 1), TimeUnit.MINUTES);
-            redisTemplate.opsForValue().increment(countKey);
-            redisTemplate.expire(countKey, MESSAGE_EXPIRE_DAYS, TimeUnit.DAYS);
-
-            log.info("消息加入重试队列: msgId={}, retryCount={}", 
-                    chatMessage.getMessageId(), retryCount + 1);
-
-        } catch (Exception e) {
-            log.error("加入重试队列失败: msgId={}", chatMessage.getMessageId(), e);
-        }
+    private MessageBuilder<byte[]> toMqMessage(ChatMessageDTO chatMessage) throws IOException {
+        Serializer configured = SerializerRegistry.find(mqSerializer);
+        Serializer serializer = SerializerRegistry.forPayload(
+                configured != null ? configured.getType() : SerializerRegistry.json().getType(), ChatMessageDTO.class);
+        return MessageBuilder.withPayload(serializer.serialize(chatMessage))
+                .setHeader(SERIALIZER_HEADER, serializer.getType());
     }
 
     /**
-     * 获取消息状态
+     * 解码 MQ 消息体
      */
-    public String getMessageStatus(Long messageId) {
-        String key = MESSAGE_STATUS_KEY + messageId;
-        Object status = redisTemplate.opsForValue().get(key);
-        return status != null ? status.toString() : null;
+    public static ChatMessageDTO fromMqMessage(byte[] body, String serializerType) throws IOException {
+        Serializer serializer = serializerType != null
+                ? SerializerRegistry.get(Byte.parseByte(serializerType))
+                : SerializerRegistry.json();
+        return serializer.deserialize(body, ChatMessageDTO.class);
     }
 }
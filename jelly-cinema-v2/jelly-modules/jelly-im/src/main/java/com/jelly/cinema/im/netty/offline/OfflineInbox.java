@@ -0,0 +1,540 @@
+package com.jelly.cinema.im.netty.offline;
+
+import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
+import com.jelly.cinema.common.redis.service.RedisService;
+import com.jelly.cinema.im.domain.entity.OfflineMessage;
+import com.jelly.cinema.im.mapper.OfflineMessageMapper;
+import com.jelly.cinema.im.netty.codec.PayloadCodec;
+import com.jelly.cinema.im.netty.model.ChatMessageDTO;
+import com.jelly.cinema.im.netty.model.OfflinePageDTO;
+import com.jelly.cinema.im.netty.protocol.MessageProtocol;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 离线消息收件箱
+ *
+ * 存储：
+ * - 私聊：Redis ZSET im:offline:msg:{userId}（成员为消息 JSON，score 为时间戳），
+ *   超过 redis-cap 条后由后台线程把最早的消息溢出到 MySQL t_im_offline_msg
+ * - 群聊：不再逐条写入，只维护每个群的离线摘要（HASH im:offline:group:{userId} 记录条数，
+ *   im:offline:group:last:{userId} 记录最后一条消息），客户端按会话用序列号游标拉取历史
+ *
+ * 投递：用户认证后按页推送（先 MySQL 中溢出的较早消息，再 Redis），每页一个 OFFLINE_MESSAGE 帧；
+ * 客户端回复同一页号的 OFFLINE_ACK 后才删除该页并推送下一页，未确认的页在重连后重新投递（至少一次，客户端按 messageId 去重）。
+ * 每页都先查 MySQL，投递期间溢出的消息在下一页送达；群聊摘要确认时按已投递的条数扣减（lua/offline_group_ack.lua），
+ * 投递后到达的群消息保留到下次登录。
+ * 连接不可写时暂停，可写后继续。分页读取在独立线程池中执行，不占用 IO 线程。
+ *
+ * @author Jelly Cinema
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "netty.server.enabled", havingValue = "true", matchIfMissing = false)
+public class OfflineInbox {
+
+    /**
+     * Redis Key 前缀（私聊离线消息沿用升级前的 Key，已有数据按页投递）
+     */
+    private static final String OFFLINE_MESSAGE_KEY = "im:offline:msg:";
+    private static final String GROUP_COUNT_KEY = "im:offline:group:";
+    private static final String GROUP_LAST_KEY = "im:offline:group:last:";
+
+    /**
+     * 离线消息过期时间（7天）
+     */
+    private static final long EXPIRE_DAYS = 7;
+
+    /**
+     * Channel 属性 Key：离线消息投递进度
+     */
+    private static final AttributeKey<Delivery> DELIVERY_KEY = AttributeKey.valueOf("offlineDelivery");
+
+    private static final AtomicLong PAGE_SEQUENCE = new AtomicLong();
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisService redisService;
+    private final OfflineMessageMapper offlineMessageMapper;
+
+    /**
+     * 每页最多推送的消息数
+     */
+    @Value("${netty.offline.page-size:100}")
+    private int pageSize;
+
+    /**
+     * 每个用户在 Redis 中保留的最大离线消息数，超出部分溢出到 MySQL
+     */
+    @Value("${netty.offline.redis-cap:1000}")
+    private int redisCap;
+
+    /**
+     * 溢出检查周期（毫秒）
+     */
+    @Value("${netty.offline.spill-interval-ms:1000}")
+    private long spillIntervalMs;
+
+    /**
+     * 单次溢出写入 MySQL 的最大条数
+     */
+    @Value("${netty.offline.spill-batch-size:500}")
+    private int spillBatchSize;
+
+    /**
+     * 分页投递线程数
+     */
+    @Value("${netty.offline.delivery-threads:4}")
+    private int deliveryThreads;
+
+    /**
+     * 超过上限、等待溢出的用户
+     */
+    private final Set<Long> overflowed = ConcurrentHashMap.newKeySet();
+
+    private ExecutorService deliveryExecutor;
+
+    private ScheduledExecutorService spillExecutor;
+
+    private DefaultRedisScript<Long> groupAckScript;
+
+    /**
+     * 单个连接的投递进度，处理时以自身加锁（确认和可写事件可能并发到达）
+     */
+    private static final class Delivery {
+        private final Long userId;
+        private boolean first = true;
+        private volatile boolean deferred;
+        private long pageId;
+        private List<Object> redisMembers = List.of();
+        private List<Long> redisMessageIds = List.of();
+        private List<Long> dbIds = List.of();
+        /**
+         * 已投递的群聊摘要：{groupId, 条数, 最后一条消息} 依次排列
+         */
+        private List<Object> groupAcks = List.of();
+
+        private Delivery(Long userId) {
+            this.userId = userId;
+        }
+
+        private boolean pending() {
+            return pageId != 0;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        deliveryExecutor = Executors.newFixedThreadPool(Math.max(1, deliveryThreads), runnable -> {
+            Thread thread = new Thread(runnable, "im-offline-delivery-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        spillExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "im-offline-spiller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        spillExecutor.scheduleWithFixedDelay(this::spill, spillIntervalMs, spillIntervalMs, TimeUnit.MILLISECONDS);
+        spillExecutor.scheduleWithFixedDelay(this::purgeExpired, 1, 1, TimeUnit.HOURS);
+        groupAckScript = new DefaultRedisScript<>();
+        groupAckScript.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/offline_group_ack.lua")));
+        groupAckScript.setResultType(Long.class);
+        log.info("离线收件箱: pageSize={}, redisCap={}", pageSize, redisCap);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (deliveryExecutor != null) {
+            deliveryExecutor.shutdownNow();
+        }
+        if (spillExecutor != null) {
+            spillExecutor.shutdownNow();
+        }
+        spill();
+    }
+
+    /**
+     * 保存离线消息：私聊写入收件箱，群聊只更新该群的离线摘要（一次 pipeline）
+     */
+    public void save(Collection<Long> userIds, ChatMessageDTO chatMessage) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        try {
+            String messageJson = JSONUtil.toJsonStr(chatMessage);
+            if (Integer.valueOf(ChatMessageDTO.SessionType.GROUP).equals(chatMessage.getSessionType())) {
+                String groupId = String.valueOf(chatMessage.getReceiverId());
+                redisService.executePipelined(ops -> userIds.forEach(userId -> {
+                    ops.opsForHash().increment(GROUP_COUNT_KEY + userId, groupId, 1);
+                    ops.opsForHash().put(GROUP_LAST_KEY + userId, groupId, messageJson);
+                    ops.expire(GROUP_COUNT_KEY + userId, EXPIRE_DAYS, TimeUnit.DAYS);
+                    ops.expire(GROUP_LAST_KEY + userId, EXPIRE_DAYS, TimeUnit.DAYS);
+                }));
+                log.info("更新群聊离线摘要: msgId={}, groupId={}, users={}", chatMessage.getMessageId(), groupId, userIds.size());
+                return;
+            }
+
+            double score = chatMessage.getTimestamp() != null ? chatMessage.getTimestamp() : System.currentTimeMillis();
+            List<Long> users = new ArrayList<>(userIds);
+            List<Object> results = redisService.executePipelined(ops -> users.forEach(userId -> {
+                String key = OFFLINE_MESSAGE_KEY + userId;
+                ops.opsForZSet().add(key, messageJson, score);
+                ops.opsForZSet().zCard(key);
+                ops.expire(key, EXPIRE_DAYS, TimeUnit.DAYS);
+            }));
+            for (int i = 0; i < users.size(); i++) {
+                Object size = results.size() > i * 3 + 1 ? results.get(i * 3 + 1) : null;
+                if (size instanceof Number count && count.longValue() > redisCap) {
+                    overflowed.add(users.get(i));
+                }
+            }
+            log.info("离线消息保存成功: msgId={}, users={}", chatMessage.getMessageId(), users.size());
+        } catch (Exception e) {
+            log.error("保存离线消息失败: msgId={}, users={}", chatMessage.getMessageId(), userIds.size(), e);
+        }
+    }
+
+    /**
+     * 保存同一用户的多条离线消息（连接断开时未确认的消息），所有写入合并为一次 pipeline
+     */
+    public void saveAll(Long userId, List<ChatMessageDTO> chatMessages) {
+        if (chatMessages.isEmpty()) {
+            return;
+        }
+        String messageKey = OFFLINE_MESSAGE_KEY + userId;
+        String countKey = GROUP_COUNT_KEY + userId;
+        String lastKey = GROUP_LAST_KEY + userId;
+        try {
+            boolean hasPrivate = chatMessages.stream()
+                    .anyMatch(message -> !Integer.valueOf(ChatMessageDTO.SessionType.GROUP).equals(message.getSessionType()));
+            List<Object> results = redisService.executePipelined(ops -> {
+                boolean hasGroup = false;
+                for (ChatMessageDTO chatMessage : chatMessages) {
+                    String messageJson = JSONUtil.toJsonStr(chatMessage);
+                    if (Integer.valueOf(ChatMessageDTO.SessionType.GROUP).equals(chatMessage.getSessionType())) {
+                        String groupId = String.valueOf(chatMessage.getReceiverId());
+                        ops.opsForHash().increment(countKey, groupId, 1);
+                        ops.opsForHash().put(lastKey, groupId, messageJson);
+                        hasGroup = true;
+                    } else {
+                        double score = chatMessage.getTimestamp() != null ? chatMessage.getTimestamp() : System.currentTimeMillis();
+                        ops.opsForZSet().add(messageKey, messageJson, score);
+                    }
+                }
+                if (hasGroup) {
+                    ops.expire(countKey, EXPIRE_DAYS, TimeUnit.DAYS);
+                    ops.expire(lastKey, EXPIRE_DAYS, TimeUnit.DAYS);
+                }
+                if (hasPrivate) {
+                    ops.expire(messageKey, EXPIRE_DAYS, TimeUnit.DAYS);
+                    // 最后一条命令，结果即收件箱大小
+                    ops.opsForZSet().zCard(messageKey);
+                }
+            });
+            if (hasPrivate && !results.isEmpty()
+                    && results.get(results.size() - 1) instanceof Number count && count.longValue() > redisCap) {
+                overflowed.add(userId);
+            }
+            log.info("离线消息批量保存成功: userId={}, count={}", userId, chatMessages.size());
+        } catch (Exception e) {
+            log.error("批量保存离线消息失败: userId={}, count={}", userId, chatMessages.size(), e);
+        }
+    }
+
+    /**
+     * 用户认证后开始投递离线消息
+     */
+    public void startDelivery(Long userId, Channel channel) {
+        Delivery delivery = new Delivery(userId);
+        channel.attr(DELIVERY_KEY).set(delivery);
+        submit(channel, delivery);
+    }
+
+    /**
+     * 客户端确认一页：删除该页并推送下一页，页号不匹配的确认忽略
+     */
+    public void acknowledge(Channel channel, long pageId) {
+        Delivery delivery = channel.attr(DELIVERY_KEY).get();
+        if (delivery == null) {
+            return;
+        }
+        deliveryExecutor.execute(() -> {
+            synchronized (delivery) {
+                if (delivery.pageId != pageId) {
+                    log.debug("忽略过期的离线消息确认: userId={}, pageId={}", delivery.userId, pageId);
+                    return;
+                }
+                if (!remove(delivery)) {
+                    return;
+                }
+                delivery.pageId = 0;
+                deliverNext(channel, delivery);
+            }
+        });
+    }
+
+    /**
+     * 连接恢复可写：继续因不可写而暂停的投递
+     */
+    public void onWritable(Channel channel) {
+        Delivery delivery = channel.attr(DELIVERY_KEY).get();
+        if (delivery != null && delivery.deferred) {
+            submit(channel, delivery);
+        }
+    }
+
+    private void submit(Channel channel, Delivery delivery) {
+        try {
+            deliveryExecutor.execute(() -> {
+                synchronized (delivery) {
+                    delivery.deferred = false;
+                    if (!delivery.pending()) {
+                        deliverNext(channel, delivery);
+                    }
+                }
+            });
+        } catch (Exception e) {
+            log.warn("提交离线消息投递失败: userId={}, error={}", delivery.userId, e.getMessage());
+        }
+    }
+
+    /**
+     * 读取并推送下一页（调用方持有 delivery 锁）
+     */
+    private void deliverNext(Channel channel, Delivery delivery) {
+        if (!channel.isActive() || channel.attr(DELIVERY_KEY).get() != delivery) {
+            return;
+        }
+        if (!channel.isWritable()) {
+            delivery.deferred = true;
+            log.debug("连接不可写，暂停离线消息投递: userId={}", delivery.userId);
+            return;
+        }
+
+        Long userId = delivery.userId;
+        try {
+            List<OfflinePageDTO.GroupSummary> groups = delivery.first ? loadGroupSummaries(delivery) : List.of();
+            delivery.first = false;
+
+            // 每页都先查 MySQL：投递期间可能有消息从 Redis 溢出过来，且它们早于 Redis 中剩余的消息
+            List<ChatMessageDTO> messages = new ArrayList<>(pageSize);
+            List<Long> dbIds = new ArrayList<>();
+            List<OfflineMessage> rows = offlineMessageMapper.selectOldest(userId, pageSize);
+            boolean dbFull = rows.size() >= pageSize;
+            for (OfflineMessage row : rows) {
+                dbIds.add(row.getId());
+                messages.add(JSONUtil.toBean(row.getPayload(), ChatMessageDTO.class));
+            }
+
+            List<Object> redisMembers = new ArrayList<>();
+            List<Long> redisMessageIds = new ArrayList<>();
+            long redisTotal = 0;
+            int remaining = pageSize - messages.size();
+            if (remaining > 0) {
+                String key = OFFLINE_MESSAGE_KEY + userId;
+                List<Object> results = redisService.executePipelined(ops -> {
+                    ops.opsForZSet().range(key, 0, remaining - 1);
+                    ops.opsForZSet().zCard(key);
+                });
+                if (results.get(0) instanceof Collection<?> members) {
+                    for (Object member : members) {
+                        ChatMessageDTO message = JSONUtil.toBean(member.toString(), ChatMessageDTO.class);
+                        redisMembers.add(member);
+                        redisMessageIds.add(message.getMessageId());
+                        messages.add(message);
+                    }
+                }
+                if (results.get(1) instanceof Number total) {
+                    redisTotal = total.longValue();
+                }
+            }
+
+            if (messages.isEmpty() && groups.isEmpty()) {
+                channel.attr(DELIVERY_KEY).compareAndSet(delivery, null);
+                return;
+            }
+
+            boolean hasMore = dbFull || redisTotal > redisMembers.size();
+            long pageId = PAGE_SEQUENCE.incrementAndGet();
+            MessageProtocol page = PayloadCodec.encode(channel, MessageProtocol.MessageType.OFFLINE_MESSAGE, pageId,
+                    new OfflinePageDTO(messages, groups, hasMore));
+            delivery.pageId = pageId;
+            delivery.dbIds = dbIds;
+            delivery.redisMembers = redisMembers;
+            delivery.redisMessageIds = redisMessageIds;
+            channel.writeAndFlush(page);
+            log.info("推送离线消息: userId={}, pageId={}, messages={}, groups={}, hasMore={}",
+                    userId, pageId, messages.size(), groups.size(), hasMore);
+        } catch (Exception e) {
+            log.error("推送离线消息失败: userId={}", userId, e);
+        }
+    }
+
+    /**
+     * 读取群聊离线摘要（确认第一页时按已投递的条数扣减）
+     */
+    private List<OfflinePageDTO.GroupSummary> loadGroupSummaries(Delivery delivery) {
+        Map<Object, Object> counts = redisTemplate.opsForHash().entries(GROUP_COUNT_KEY + delivery.userId);
+        if (counts.isEmpty()) {
+            return List.of();
+        }
+        List<Object> groupIds = new ArrayList<>(counts.keySet());
+        List<Object> lasts = redisTemplate.opsForHash().multiGet(GROUP_LAST_KEY + delivery.userId, groupIds);
+        List<OfflinePageDTO.GroupSummary> groups = new ArrayList<>(groupIds.size());
+        List<Object> groupAcks = new ArrayList<>(groupIds.size() * 3);
+        for (int i = 0; i < groupIds.size(); i++) {
+            Long groupId = Long.valueOf(groupIds.get(i).toString());
+            Object value = counts.get(groupIds.get(i));
+            long count = value instanceof Number n ? n.longValue() : Long.parseLong(String.valueOf(value));
+            Object last = lasts != null ? lasts.get(i) : null;
+            groups.add(new OfflinePageDTO.GroupSummary(groupId, count,
+                    last != null ? JSONUtil.toBean(last.toString(), ChatMessageDTO.class) : null));
+            groupAcks.add(groupId);
+            groupAcks.add(count);
+            groupAcks.add(last != null ? last : "");
+        }
+        delivery.groupAcks = groupAcks;
+        return groups;
+    }
+
+    /**
+     * 删除已确认的一页（调用方持有 delivery 锁）
+     *
+     * @return 删除失败时返回 false，该页保留到下次登录重新投递
+     */
+    private boolean remove(Delivery delivery) {
+        Long userId = delivery.userId;
+        try {
+            if (!delivery.dbIds.isEmpty()) {
+                offlineMessageMapper.deleteDelivered(userId, delivery.dbIds);
+            }
+            List<Object> members = delivery.redisMembers;
+            if (!members.isEmpty()) {
+                Long removed = redisTemplate.opsForZSet().remove(OFFLINE_MESSAGE_KEY + userId, members.toArray());
+                if (removed == null || removed < members.size()) {
+                    // 投递后被溢出到 MySQL 的消息按 messageId 删除，避免下一页重复投递
+                    offlineMessageMapper.deleteByMessageIds(userId, delivery.redisMessageIds);
+                }
+            }
+            List<Object> groupAcks = delivery.groupAcks;
+            if (!groupAcks.isEmpty()) {
+                redisTemplate.execute(groupAckScript, List.of(GROUP_COUNT_KEY + userId, GROUP_LAST_KEY + userId),
+                        groupAcks.toArray());
+            }
+            delivery.dbIds = List.of();
+            delivery.redisMembers = List.of();
+            delivery.redisMessageIds = List.of();
+            delivery.groupAcks = List.of();
+            return true;
+        } catch (Exception e) {
+            log.error("删除已确认的离线消息失败: userId={}, pageId={}", userId, delivery.pageId, e);
+            return false;
+        }
+    }
+
+    /**
+     * 把超过上限的用户的最早离线消息溢出到 MySQL：先写库（重复写入被唯一键忽略），再从 Redis 删除
+     */
+    void spill() {
+        if (overflowed.isEmpty()) {
+            return;
+        }
+        for (Long userId : overflowed) {
+            overflowed.remove(userId);
+            try {
+                spillUser(userId);
+            } catch (Exception e) {
+                log.error("离线消息溢出失败: userId={}", userId, e);
+            }
+        }
+    }
+
+    private void spillUser(Long userId) {
+        String key = OFFLINE_MESSAGE_KEY + userId;
+        int spilled = 0;
+        while (true) {
+            Long size = redisTemplate.opsForZSet().zCard(key);
+            long excess = size != null ? size - redisCap : 0;
+            if (excess <= 0) {
+                break;
+            }
+            Set<ZSetOperations.TypedTuple<Object>> oldest =
+                    redisTemplate.opsForZSet().rangeWithScores(key, 0, Math.min(excess, spillBatchSize) - 1);
+            if (oldest == null || oldest.isEmpty()) {
+                break;
+            }
+            List<OfflineMessage> rows = new ArrayList<>(oldest.size());
+            List<Object> members = new ArrayList<>(oldest.size());
+            for (ZSetOperations.TypedTuple<Object> tuple : oldest) {
+                Object member = tuple.getValue();
+                if (member == null) {
+                    continue;
+                }
+                ChatMessageDTO chatMessage = JSONUtil.toBean(member.toString(), ChatMessageDTO.class);
+                OfflineMessage row = new OfflineMessage();
+                row.setId(IdWorker.getId());
+                row.setUserId(userId);
+                row.setMessageId(chatMessage.getMessageId());
+                row.setSessionType(chatMessage.getSessionType());
+                row.setPayload(member.toString());
+                row.setMsgTime(tuple.getScore() != null ? tuple.getScore().longValue() : System.currentTimeMillis());
+                rows.add(row);
+                members.add(member);
+            }
+            offlineMessageMapper.batchInsertIgnore(rows);
+            redisTemplate.opsForZSet().remove(key, members.toArray());
+            spilled += rows.size();
+        }
+        if (spilled > 0) {
+            log.info("离线消息溢出到 MySQL: userId={}, count={}", userId, spilled);
+        }
+    }
+
+    /**
+     * 清理超过保留期的溢出消息（与 Redis 中离线消息的过期时间一致）
+     */
+    void purgeExpired() {
+        long before = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(EXPIRE_DAYS);
+        try {
+            int purged;
+            int total = 0;
+            do {
+                purged = offlineMessageMapper.deleteExpired(before, spillBatchSize);
+                total += purged;
+            } while (purged >= spillBatchSize);
+            if (total > 0) {
+                log.info("清理过期离线消息: count={}", total);
+            }
+        } catch (Exception e) {
+            log.error("清理过期离线消息失败", e);
+        }
+    }
+}
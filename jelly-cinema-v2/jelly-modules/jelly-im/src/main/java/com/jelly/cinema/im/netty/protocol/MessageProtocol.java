@@ -1,11 +1,14 @@
 package com.jelly.cinema.im.netty.protocol;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ReferenceCounted;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 
 /**
  * 自定义消息协议
@@ -15,13 +18,20 @@ import java.io.Serializable;
  * | 魔数(4) | 版本(1) | 序列化(1)| 指令(1) | 状态(1) | 消息ID(8) | 长度(4) | 数据(N) |
  * +--------+--------+--------+--------+--------+--------+--------+--------+
  * 
+ * 消息内容有两种承载方式：
+ * - content：字节数组，便于业务代码直接构造
+ * - body：ByteBuf，解码时为帧的 retained slice（不拷贝），出站时可直接写入池化缓冲区
+ * 
+ * 引用计数委托给 body：SimpleChannelInboundHandler / 编码器处理完后会自动 release；
+ * 携带 body 的消息写到多个 Channel 时，每多写一次需要先 retain 一次。
+ * 
  * @author Jelly Cinema
  */
 @Data
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
-public class MessageProtocol implements Serializable {
+public class MessageProtocol implements Serializable, ReferenceCounted {
 
     private static final long serialVersionUID = 1L;
 
@@ -60,6 +70,78 @@ public class MessageProtocol implements Serializable {
      */
     private byte[] content;
 
+    /**
+     * 消息内容（ByteBuf，优先于 content）
+     */
+    private transient ByteBuf body;
+
+    /**
+     * 消息内容长度
+     */
+    public int contentLength() {
+        if (body != null) {
+            return body.readableBytes();
+        }
+        return content != null ? content.length : 0;
+    }
+
+    /**
+     * 以 UTF-8 字符串读取消息内容（不移动 body 的读指针）
+     */
+    public String contentAsString() {
+        if (body != null) {
+            return body.toString(StandardCharsets.UTF_8);
+        }
+        return content != null ? new String(content, StandardCharsets.UTF_8) : null;
+    }
+
+    @Override
+    public int refCnt() {
+        return body != null ? body.refCnt() : 1;
+    }
+
+    @Override
+    public MessageProtocol retain() {
+        if (body != null) {
+            body.retain();
+        }
+        return this;
+    }
+
+    @Override
+    public MessageProtocol retain(int increment) {
+        if (body != null) {
+            body.retain(increment);
+        }
+        return this;
+    }
+
+    @Override
+    public MessageProtocol touch() {
+        if (body != null) {
+            body.touch();
+        }
+        return this;
+    }
+
+    @Override
+    public MessageProtocol touch(Object hint) {
+        if (body != null) {
+            body.touch(hint);
+        }
+        return this;
+    }
+
+    @Override
+    public boolean release() {
+        return body != null && body.release();
+    }
+
+    @Override
+    public boolean release(int decrement) {
+        return body != null && body.release(decrement);
+    }
+
     /**
      * 消息类型枚举
      */
@@ -75,6 +157,7 @@ public class MessageProtocol implements Serializable {
         byte SYSTEM_MESSAGE = 8;      // 系统消息
         byte OFFLINE_MESSAGE = 9;     // 离线消息推送
         byte READ_RECEIPT = 10;       // 已读回执
+        byte OFFLINE_ACK = 11;        // 离线消息分页 ACK（messageId 为页号）
     }
 
     /**
@@ -0,0 +1,32 @@
+package com.jelly.cinema.im.netty.serializer;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+
+import java.io.IOException;
+
+/**
+ * 二进制编码描述
+ * 
+ * 使用 Protobuf 线格式（字段号 + wire type），手写读写逻辑，不依赖 protoc 生成代码；
+ * 读取时跳过未知字段，新增字段只需分配新的字段号即可前后兼容。
+ * 
+ * @author Jelly Cinema
+ */
+public interface BinarySchema<T> {
+
+    /**
+     * 对应的 Java 类型
+     */
+    Class<T> type();
+
+    /**
+     * 写入对象的所有非空字段
+     */
+    void write(T value, CodedOutputStream out) throws IOException;
+
+    /**
+     * 读取对象，直到输入结束
+     */
+    T read(CodedInputStream in) throws IOException;
+}
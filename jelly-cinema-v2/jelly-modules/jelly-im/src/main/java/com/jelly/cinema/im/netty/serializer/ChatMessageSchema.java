@@ -0,0 +1,98 @@
+package com.jelly.cinema.im.netty.serializer;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import com.jelly.cinema.im.netty.model.ChatMessageDTO;
+
+import java.io.IOException;
+
+/**
+ * ChatMessageDTO 二进制编码
+ * 
+ * 等价的 proto 定义：
+ * <pre>
+ * message ChatMessage {
+ *   int64  message_id    = 1;
+ *   int64  sender_id     = 2;
+ *   int64  receiver_id   = 3;
+ *   int32  content_type  = 4;
+ *   string content       = 5;
+ *   int32  session_type  = 6;
+ *   int64  timestamp     = 7;
+ *   string client_msg_no = 8;
+ *   string extra         = 9;
+ * }
+ * </pre>
+ * 
+ * @author Jelly Cinema
+ */
+public class ChatMessageSchema implements BinarySchema<ChatMessageDTO> {
+
+    private static final int MESSAGE_ID = 1;
+    private static final int SENDER_ID = 2;
+    private static final int RECEIVER_ID = 3;
+    private static final int CONTENT_TYPE = 4;
+    private static final int CONTENT = 5;
+    private static final int SESSION_TYPE = 6;
+    private static final int TIMESTAMP = 7;
+    private static final int CLIENT_MSG_NO = 8;
+    private static final int EXTRA = 9;
+
+    @Override
+    public Class<ChatMessageDTO> type() {
+        return ChatMessageDTO.class;
+    }
+
+    @Override
+    public void write(ChatMessageDTO value, CodedOutputStream out) throws IOException {
+        if (value.getMessageId() != null) {
+            out.writeInt64(MESSAGE_ID, value.getMessageId());
+        }
+        if (value.getSenderId() != null) {
+            out.writeInt64(SENDER_ID, value.getSenderId());
+        }
+        if (value.getReceiverId() != null) {
+            out.writeInt64(RECEIVER_ID, value.getReceiverId());
+        }
+        if (value.getContentType() != null) {
+            out.writeInt32(CONTENT_TYPE, value.getContentType());
+        }
+        if (value.getContent() != null) {
+            out.writeString(CONTENT, value.getContent());
+        }
+        if (value.getSessionType() != null) {
+            out.writeInt32(SESSION_TYPE, value.getSessionType());
+        }
+        if (value.getTimestamp() != null) {
+            out.writeInt64(TIMESTAMP, value.getTimestamp());
+        }
+        if (value.getClientMsgNo() != null) {
+            out.writeString(CLIENT_MSG_NO, value.getClientMsgNo());
+        }
+        if (value.getExtra() != null) {
+            out.writeString(EXTRA, value.getExtra());
+        }
+    }
+
+    @Override
+    public ChatMessageDTO read(CodedInputStream in) throws IOException {
+        ChatMessageDTO message = new ChatMessageDTO();
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case MESSAGE_ID -> message.setMessageId(in.readInt64());
+                case SENDER_ID -> message.setSenderId(in.readInt64());
+                case RECEIVER_ID -> message.setReceiverId(in.readInt64());
+                case CONTENT_TYPE -> message.setContentType(in.readInt32());
+                case CONTENT -> message.setContent(in.readStringRequireUtf8());
+                case SESSION_TYPE -> message.setSessionType(in.readInt32());
+                case TIMESTAMP -> message.setTimestamp(in.readInt64());
+                case CLIENT_MSG_NO -> message.setClientMsgNo(in.readStringRequireUtf8());
+                case EXTRA -> message.setExtra(in.readStringRequireUtf8());
+                default -> in.skipField(tag);
+            }
+        }
+        return message;
+    }
+}
@@ -0,0 +1,59 @@
+package com.jelly.cinema.im.netty.serializer;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jelly.cinema.im.netty.protocol.MessageProtocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * JSON 序列化器（默认，支持任意对象）
+ * 
+ * @author Jelly Cinema
+ */
+public class JsonSerializer implements Serializer {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+    @Override
+    public byte getType() {
+        return MessageProtocol.SerializerType.JSON;
+    }
+
+    @Override
+    public String getName() {
+        return "json";
+    }
+
+    @Override
+    public boolean supports(Class<?> type) {
+        return true;
+    }
+
+    @Override
+    public void serialize(Object value, OutputStream out) throws IOException {
+        MAPPER.writeValue(out, value);
+    }
+
+    @Override
+    public <T> T deserialize(InputStream in, Class<T> type) throws IOException {
+        return MAPPER.readValue(in, type);
+    }
+
+    @Override
+    public <T> T deserialize(byte[] data, int offset, int length, Class<T> type) throws IOException {
+        return MAPPER.readValue(data, offset, length, type);
+    }
+
+    /**
+     * 共享的 ObjectMapper（解析认证等非固定结构的负载）
+     */
+    public static ObjectMapper mapper() {
+        return MAPPER;
+    }
+}
@@ -0,0 +1,78 @@
+package com.jelly.cinema.im.netty.serializer;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.jelly.cinema.im.netty.protocol.MessageProtocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Protobuf 线格式序列化器
+ * 
+ * 只支持注册了 {@link BinarySchema} 的类型（目前为 ChatMessageDTO），
+ * 其余负载（认证响应等低频消息）由 {@link SerializerRegistry#forPayload} 回退到 JSON。
+ * 
+ * @author Jelly Cinema
+ */
+public class ProtobufSerializer implements Serializer {
+
+    private final Map<Class<?>, BinarySchema<?>> schemas = new ConcurrentHashMap<>();
+
+    public ProtobufSerializer() {
+        register(new ChatMessageSchema());
+    }
+
+    /**
+     * 注册类型编码
+     */
+    public void register(BinarySchema<?> schema) {
+        schemas.put(schema.type(), schema);
+    }
+
+    @Override
+    public byte getType() {
+        return MessageProtocol.SerializerType.PROTOBUF;
+    }
+
+    @Override
+    public String getName() {
+        return "protobuf";
+    }
+
+    @Override
+    public boolean supports(Class<?> type) {
+        return schemas.containsKey(type);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void serialize(Object value, OutputStream out) throws IOException {
+        BinarySchema<Object> schema = (BinarySchema<Object>) schema(value.getClass());
+        CodedOutputStream coded = CodedOutputStream.newInstance(out);
+        schema.write(value, coded);
+        coded.flush();
+    }
+
+    @Override
+    public <T> T deserialize(InputStream in, Class<T> type) throws IOException {
+        return schema(type).read(CodedInputStream.newInstance(in));
+    }
+
+    @Override
+    public <T> T deserialize(byte[] data, int offset, int length, Class<T> type) throws IOException {
+        return schema(type).read(CodedInputStream.newInstance(data, offset, length));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> BinarySchema<T> schema(Class<T> type) {
+        BinarySchema<T> schema = (BinarySchema<T>) schemas.get(type);
+        if (schema == null) {
+            throw new IllegalArgumentException("Protobuf 序列化不支持的类型: " + type.getName());
+        }
+        return schema;
+    }
+}
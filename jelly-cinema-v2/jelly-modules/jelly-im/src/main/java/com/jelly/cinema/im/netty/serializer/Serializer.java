@@ -0,0 +1,63 @@
+package com.jelly.cinema.im.netty.serializer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 消息序列化器
+ * 
+ * 类型编号与协议头中的 {@link com.jelly.cinema.im.netty.protocol.MessageProtocol.SerializerType} 一一对应，
+ * 同一编号也用于标识 MQ 消息体的格式。
+ * 
+ * @author Jelly Cinema
+ */
+public interface Serializer {
+
+    /**
+     * 序列化类型（协议头中的 serializerType）
+     */
+    byte getType();
+
+    /**
+     * 序列化器名称（用于握手协商和配置）
+     */
+    String getName();
+
+    /**
+     * 是否支持该类型的对象
+     */
+    boolean supports(Class<?> type);
+
+    /**
+     * 序列化到输出流
+     */
+    void serialize(Object value, OutputStream out) throws IOException;
+
+    /**
+     * 从输入流反序列化
+     */
+    <T> T deserialize(InputStream in, Class<T> type) throws IOException;
+
+    /**
+     * 从字节数组区间反序列化
+     */
+    <T> T deserialize(byte[] data, int offset, int length, Class<T> type) throws IOException;
+
+    /**
+     * 序列化为字节数组
+     */
+    default byte[] serialize(Object value) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        serialize(value, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * 从字节数组反序列化
+     */
+    default <T> T deserialize(byte[] data, Class<T> type) throws IOException {
+        return deserialize(data, 0, data.length, type);
+    }
+}
@@ -0,0 +1,80 @@
+package com.jelly.cinema.im.netty.serializer;
+
+import com.jelly.cinema.im.netty.protocol.MessageProtocol;
+
+import java.util.Locale;
+
+/**
+ * 序列化器注册表
+ * 
+ * 编解码器运行在 IO 线程上，注册表按类型编号做数组下标查找，不经过 Spring 容器。
+ * 
+ * @author Jelly Cinema
+ */
+public final class SerializerRegistry {
+
+    private static final Serializer[] SERIALIZERS = new Serializer[16];
+
+    private static final Serializer JSON = new JsonSerializer();
+
+    static {
+        register(JSON);
+        register(new ProtobufSerializer());
+    }
+
+    private SerializerRegistry() {
+    }
+
+    /**
+     * 注册序列化器（相同类型编号会覆盖）
+     */
+    public static synchronized void register(Serializer serializer) {
+        SERIALIZERS[serializer.getType()] = serializer;
+    }
+
+    /**
+     * 按类型编号获取序列化器
+     */
+    public static Serializer get(byte type) {
+        Serializer serializer = type >= 0 && type < SERIALIZERS.length ? SERIALIZERS[type] : null;
+        if (serializer == null) {
+            throw new IllegalArgumentException("未知的序列化类型: " + type);
+        }
+        return serializer;
+    }
+
+    /**
+     * 按名称或类型编号获取序列化器，未知时返回 null
+     */
+    public static Serializer find(String nameOrType) {
+        if (nameOrType == null || nameOrType.isBlank()) {
+            return null;
+        }
+        String value = nameOrType.trim().toLowerCase(Locale.ROOT);
+        for (Serializer serializer : SERIALIZERS) {
+            if (serializer != null && (serializer.getName().equals(value)
+                    || String.valueOf(serializer.getType()).equals(value))) {
+                return serializer;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 默认序列化器（JSON）
+     */
+    public static Serializer json() {
+        return JSON;
+    }
+
+    /**
+     * 选择负载实际使用的序列化器：首选序列化器不支持该类型时回退到 JSON
+     */
+    public static Serializer forPayload(byte preferredType, Class<?> payloadType) {
+        if (preferredType == MessageProtocol.SerializerType.JSON) {
+            return JSON;
+        }
+        Serializer preferred = get(preferredType);
+        return preferred.supports(payloadType) ? preferred : JSON;
+    }
+}
@@ -4,13 +4,13 @@ import com.jelly.cinema.im.netty.codec.MessageDecoder;
 import com.jelly.cinema.im.netty.codec.MessageEncoder;
 import com.jelly.cinema.im.netty.handler.ChatMessageHandler;
 import com.jelly.cinema.im.netty.handler.HeartbeatHandler;
+import com.jelly.cinema.im.netty.session.IdleConnectionSweeper;
 import com.jelly.cinema.im.netty.session.SessionManager;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.handler.flush.FlushConsolidationHandler;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
@@ -20,7 +20,8 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 import java.net.InetAddress;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Netty 服务器
@@ -30,6 +31,9 @@ import java.util.concurrent.TimeUnit;
  * 2. 支持心跳检测
  * 3. 消息可靠传输
  * 
+ * 传输层由 netty.server.transport 选择（auto / io_uring / epoll / nio），原生传输不可用时自动回退到 NIO；
+ * 原生传输下按 acceptor-count 以 SO_REUSEPORT 多次绑定同一端口。
+ * 
  * 启用方式：在配置文件中设置 netty.server.enabled=true
  * 
  * @author Jelly Cinema
@@ -43,6 +47,7 @@ public class NettyServer {
     private final HeartbeatHandler heartbeatHandler;
     private final ChatMessageHandler chatMessageHandler;
     private final SessionManager sessionManager;
+    private final IdleConnectionSweeper idleConnectionSweeper;
 
     @Value("${netty.server.port:9999}")
     private int port;
@@ -50,29 +55,54 @@ public class NettyServer {
     @Value("${netty.server.boss-threads:1}")
     private int bossThreads;
 
-    @Value("${netty.server.worker-threads:8}")
+    /**
+     * Worker 线程数，0 表示使用 CPU 核数
+     */
+    @Value("${netty.server.worker-threads:0}")
     private int workerThreads;
 
     /**
-     * 读空闲超时（秒）
+     * 传输层：auto / io_uring / epoll / nio
+     */
+    @Value("${netty.server.transport:auto}")
+    private String transportType;
+
+    /**
+     * SO_REUSEPORT 绑定的 acceptor 数量（仅原生传输生效），0 表示与 Boss 线程数相同
+     */
+    @Value("${netty.server.acceptor-count:0}")
+    private int acceptorCount;
+
+    @Value("${netty.server.backlog:1024}")
+    private int backlog;
+
+    @Value("${netty.server.tcp-nodelay:true}")
+    private boolean tcpNoDelay;
+
+    /**
+     * 写缓冲区高/低水位（字节）：超过高水位时 Channel 变为不可写，回落到低水位后恢复
      */
-    @Value("${netty.server.reader-idle-time:60}")
-    private int readerIdleTime;
+    @Value("${netty.server.write-buffer-low-water-mark:32768}")
+    private int writeBufferLowWaterMark;
+
+    @Value("${netty.server.write-buffer-high-water-mark:131072}")
+    private int writeBufferHighWaterMark;
 
     /**
-     * 写空闲超时（秒）
+     * 是否合并 flush：读事件内及同一轮 EventLoop 内的多次 flush 合并为一次系统调用
      */
-    @Value("${netty.server.writer-idle-time:30}")
-    private int writerIdleTime;
+    @Value("${netty.server.flush-consolidation.enabled:true}")
+    private boolean flushConsolidationEnabled;
 
     /**
-     * 读写空闲超时（秒）
+     * 连续合并多少次 flush 后强制刷出一次，避免持续读入时写出延迟过大
      */
-    @Value("${netty.server.all-idle-time:90}")
-    private int allIdleTime;
+    @Value("${netty.server.flush-consolidation.explicit-flush-after-flushes:256}")
+    private int explicitFlushAfterFlushes;
 
     private EventLoopGroup bossGroup;
     private EventLoopGroup workerGroup;
+    private final List<Channel> serverChannels = new ArrayList<>();
     private Channel serverChannel;
 
     @PostConstruct
@@ -86,31 +116,45 @@ public class NettyServer {
     private void startServer() {
         log.info("===== 启动 Netty 服务器 =====");
 
-        bossGroup = new NioEventLoopGroup(bossThreads);
-        workerGroup = new NioEventLoopGroup(workerThreads);
+        NettyTransport transport = NettyTransport.select(transportType);
+        int workers = workerThreads > 0 ? workerThreads : Runtime.getRuntime().availableProcessors();
+        int acceptors = transport.supportsReusePort() ? Math.max(1, acceptorCount > 0 ? acceptorCount : bossThreads) : 1;
+        bossGroup = transport.newEventLoopGroup(Math.max(bossThreads, acceptors));
+        workerGroup = transport.newEventLoopGroup(workers);
 
         try {
             ServerBootstrap bootstrap = new ServerBootstrap();
             bootstrap.group(bossGroup, workerGroup)
-                    .channel(NioServerSocketChannel.class)
+                    .channel(transport.serverChannelClass())
                     // TCP 连接队列大小
-                    .option(ChannelOption.SO_BACKLOG, 1024)
+                    .option(ChannelOption.SO_BACKLOG, backlog)
+                    .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
                     // 开启 TCP 心跳机制
                     .childOption(ChannelOption.SO_KEEPALIVE, true)
                     // 关闭 Nagle 算法，提高实时性
-                    .childOption(ChannelOption.TCP_NODELAY, true)
+                    .childOption(ChannelOption.TCP_NODELAY, tcpNoDelay)
                     // 接收缓冲区大小
                     .childOption(ChannelOption.SO_RCVBUF, 65536)
                     // 发送缓冲区大小
                     .childOption(ChannelOption.SO_SNDBUF, 65536)
+                    // 池化直接内存分配器
+                    .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                    // 写缓冲区水位
+                    .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK,
+                            new WriteBufferWaterMark(writeBufferLowWaterMark, writeBufferHighWaterMark))
                     .childHandler(new ChannelInitializer<SocketChannel>() {
                         @Override
                         protected void initChannel(SocketChannel ch) throws Exception {
                             ChannelPipeline pipeline = ch.pipeline();
 
-                            // 1. 空闲状态检测器
-                            pipeline.addLast("idleStateHandler", new IdleStateHandler(
-                                    readerIdleTime, writerIdleTime, allIdleTime, TimeUnit.SECONDS));
+                            // 0. flush 合并（需位于所有会 flush 的处理器之前）
+                            if (flushConsolidationEnabled) {
+                                pipeline.addLast("flushConsolidation", new FlushConsolidationHandler(
+                                        explicitFlushAfterFlushes, true));
+                            }
+
+                            // 1. 空闲跟踪（共享时间轮扫描，连接上只保留槽位号）
+                            pipeline.addLast("idleTracker", idleConnectionSweeper.newTracker());
 
                             // 2. 消息解码器（处理粘包/拆包）
                             pipeline.addLast("messageDecoder", new MessageDecoder());
@@ -126,9 +170,14 @@ public class NettyServer {
                         }
                     });
 
-            // 绑定端口并启动
-            ChannelFuture future = bootstrap.bind(port).sync();
-            serverChannel = future.channel();
+            // 绑定端口并启动（多 acceptor 时每次绑定得到一个独立的监听 socket）
+            if (acceptors > 1) {
+                transport.enableReusePort(bootstrap);
+            }
+            for (int i = 0; i < acceptors; i++) {
+                serverChannels.add(bootstrap.bind(port).sync().channel());
+            }
+            serverChannel = serverChannels.get(0);
 
             // 设置服务器地址（用于分布式场景）
             String serverAddress = InetAddress.getLocalHost().getHostAddress() + ":" + port;
@@ -137,10 +186,10 @@ public class NettyServer {
             log.info("===== Netty 服务器启动成功 =====");
             log.info("监听端口: {}", port);
             log.info("服务器地址: {}", serverAddress);
-            log.info("Boss 线程数: {}", bossThreads);
-            log.info("Worker 线程数: {}", workerThreads);
-            log.info("读空闲超时: {} 秒", readerIdleTime);
-            log.info("写空闲超时: {} 秒", writerIdleTime);
+            log.info("传输层: {}", transport);
+            log.info("Acceptor 数: {}", acceptors);
+            log.info("Worker 线程数: {}", workers);
+            log.info("flush 合并: {}", flushConsolidationEnabled ? "开启(" + explicitFlushAfterFlushes + ")" : "关闭");
 
             // 等待服务器关闭
             serverChannel.closeFuture().sync();
@@ -156,9 +205,7 @@ public class NettyServer {
     public void shutdown() {
         log.info("===== 关闭 Netty 服务器 =====");
 
-        if (serverChannel != null) {
-            serverChannel.close();
-        }
+        serverChannels.forEach(Channel::close);
 
         if (bossGroup != null) {
             bossGroup.shutdownGracefully();
@@ -0,0 +1,149 @@
+package com.jelly.cinema.im.netty.server;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.incubator.channel.uring.IOUring;
+import io.netty.incubator.channel.uring.IOUringChannelOption;
+import io.netty.incubator.channel.uring.IOUringEventLoopGroup;
+import io.netty.incubator.channel.uring.IOUringServerSocketChannel;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Locale;
+
+/**
+ * Netty 传输层选择
+ *
+ * - io_uring：需显式配置且内核支持（5.9+），否则回退
+ * - epoll：Linux 下 auto 模式的默认选择
+ * - nio：其余平台或原生库不可用时的兜底
+ *
+ * 原生传输支持 SO_REUSEPORT，可在同一端口绑定多个 acceptor，由内核在多个监听 socket 间分发新连接。
+ *
+ * @author Jelly Cinema
+ */
+@Slf4j
+public enum NettyTransport {
+
+    IO_URING {
+        @Override
+        boolean isAvailable() {
+            return IOUring.isAvailable();
+        }
+
+        @Override
+        EventLoopGroup newEventLoopGroup(int threads) {
+            return new IOUringEventLoopGroup(threads);
+        }
+
+        @Override
+        Class<? extends ServerSocketChannel> serverChannelClass() {
+            return IOUringServerSocketChannel.class;
+        }
+
+        @Override
+        void enableReusePort(ServerBootstrap bootstrap) {
+            bootstrap.option(IOUringChannelOption.SO_REUSEPORT, true);
+        }
+    },
+
+    EPOLL {
+        @Override
+        boolean isAvailable() {
+            return Epoll.isAvailable();
+        }
+
+        @Override
+        EventLoopGroup newEventLoopGroup(int threads) {
+            return new EpollEventLoopGroup(threads);
+        }
+
+        @Override
+        Class<? extends ServerSocketChannel> serverChannelClass() {
+            return EpollServerSocketChannel.class;
+        }
+
+        @Override
+        void enableReusePort(ServerBootstrap bootstrap) {
+            bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+        }
+    },
+
+    NIO {
+        @Override
+        boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        EventLoopGroup newEventLoopGroup(int threads) {
+            return new NioEventLoopGroup(threads);
+        }
+
+        @Override
+        Class<? extends ServerSocketChannel> serverChannelClass() {
+            return NioServerSocketChannel.class;
+        }
+
+        @Override
+        boolean supportsReusePort() {
+            return false;
+        }
+
+        @Override
+        void enableReusePort(ServerBootstrap bootstrap) {
+            // 调用方按 supportsReusePort() 只绑定一个监听端口，这里不设置选项
+            log.warn("NIO 传输不支持 SO_REUSEPORT，忽略该选项");
+        }
+    };
+
+    abstract boolean isAvailable();
+
+    abstract EventLoopGroup newEventLoopGroup(int threads);
+
+    abstract Class<? extends ServerSocketChannel> serverChannelClass();
+
+    abstract void enableReusePort(ServerBootstrap bootstrap);
+
+    boolean supportsReusePort() {
+        return true;
+    }
+
+    /**
+     * 按配置选择传输层：auto / io_uring / epoll / nio，指定的传输不可用时依次回退
+     */
+    static NettyTransport select(String preferred) {
+        String value = preferred == null ? "auto" : preferred.trim().toLowerCase(Locale.ROOT).replace('-', '_');
+        NettyTransport[] candidates = switch (value) {
+            case "io_uring", "iouring" -> new NettyTransport[]{IO_URING, EPOLL, NIO};
+            case "epoll", "auto" -> new NettyTransport[]{EPOLL, NIO};
+            case "nio" -> new NettyTransport[]{NIO};
+            default -> {
+                log.warn("未知的 Netty 传输类型: {}，使用 auto", preferred);
+                yield new NettyTransport[]{EPOLL, NIO};
+            }
+        };
+        for (NettyTransport transport : candidates) {
+            if (transport.isAvailableSafely()) {
+                return transport;
+            }
+            log.info("Netty 传输不可用，尝试回退: {}", transport);
+        }
+        return NIO;
+    }
+
+    private boolean isAvailableSafely() {
+        try {
+            return isAvailable();
+        } catch (Throwable e) {
+            // 原生库缺失或架构不匹配时 isAvailable 本身也可能抛出 LinkageError
+            return false;
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.jelly.cinema.im.netty.session;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 连接空闲检测（共享时间轮）
+ *
+ * 替代每个连接一个 IdleStateHandler（每个连接各自调度定时任务、持有多个字段）：
+ * - 每个连接在注册时分配一个槽位，最后读时间和已触发的空闲次数存放在按页分配的原始类型数组中
+ * - 连接上只挂一个只有 int 字段的 {@link IdleTracker}，读事件只做一次数组写
+ * - 全局一个 HashedWheelTimer 周期性扫描所有槽位，读空闲超过 readerIdleTime 的整数倍时
+ *   向连接触发 READER_IDLE 事件，空闲次数由本类记录，HeartbeatHandler 据此决定是否断开
+ *
+ * @author Jelly Cinema
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "netty.server.enabled", havingValue = "true", matchIfMissing = false)
+public class IdleConnectionSweeper {
+
+    /**
+     * 每页槽位数
+     */
+    private static final int PAGE_SIZE = 4096;
+
+    private static final int PAGE_SHIFT = Integer.numberOfTrailingZeros(PAGE_SIZE);
+
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    /**
+     * 读空闲超时（秒）
+     */
+    @Value("${netty.server.reader-idle-time:60}")
+    private int readerIdleTime;
+
+    /**
+     * 扫描周期（毫秒）
+     */
+    @Value("${netty.server.idle-sweep-interval-ms:1000}")
+    private long sweepIntervalMs;
+
+    private long readerIdleMs;
+
+    private Timer timer;
+
+    private volatile boolean running;
+
+    /**
+     * 槽位页，按需扩容（写时复制）
+     */
+    private volatile Page[] pages = new Page[0];
+
+    /**
+     * 空闲槽位栈
+     */
+    private int[] freeSlots = new int[PAGE_SIZE];
+
+    private int freeCount;
+
+    /**
+     * 已分配的最大槽位（不含）
+     */
+    private int highWaterSlot;
+
+    /**
+     * 一页槽位
+     */
+    private static final class Page {
+        private final AtomicLongArray lastRead = new AtomicLongArray(PAGE_SIZE);
+        private final AtomicIntegerArray idleFired = new AtomicIntegerArray(PAGE_SIZE);
+        private final AtomicReferenceArray<Channel> channels = new AtomicReferenceArray<>(PAGE_SIZE);
+    }
+
+    @PostConstruct
+    public void init() {
+        readerIdleMs = TimeUnit.SECONDS.toMillis(readerIdleTime);
+        timer = new HashedWheelTimer(runnable -> {
+            Thread thread = new Thread(runnable, "im-idle-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        }, 100, TimeUnit.MILLISECONDS, 512);
+        running = true;
+        timer.newTimeout(new SweepTask(), sweepIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("连接空闲检测: readerIdle={}s, sweepInterval={}ms", readerIdleTime, sweepIntervalMs);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (timer != null) {
+            timer.stop();
+        }
+    }
+
+    /**
+     * 为新连接创建空闲跟踪处理器（每个连接一个实例，放在 pipeline 最前面）
+     */
+    public IdleTracker newTracker() {
+        return new IdleTracker();
+    }
+
+    /**
+     * 连接最后一次读到数据的时间（毫秒），未跟踪时返回 null
+     */
+    public Long getLastRead(Channel channel) {
+        IdleTracker tracker = channel.pipeline().get(IdleTracker.class);
+        if (tracker == null || tracker.slot < 0) {
+            return null;
+        }
+        return page(tracker.slot).lastRead.get(tracker.slot & PAGE_MASK);
+    }
+
+    /**
+     * 连接自最后一次读以来已触发的读空闲次数
+     */
+    public int getIdleCount(Channel channel) {
+        IdleTracker tracker = channel.pipeline().get(IdleTracker.class);
+        if (tracker == null || tracker.slot < 0) {
+            return 0;
+        }
+        return page(tracker.slot).idleFired.get(tracker.slot & PAGE_MASK);
+    }
+
+    /**
+     * 当前跟踪的连接数
+     */
+    public synchronized int trackedCount() {
+        return highWaterSlot - freeCount;
+    }
+
+    private Page page(int slot) {
+        return pages[slot >>> PAGE_SHIFT];
+    }
+
+    private synchronized int allocate(Channel channel) {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            slot = highWaterSlot++;
+            if ((slot >>> PAGE_SHIFT) >= pages.length) {
+                Page[] grown = new Page[pages.length + 1];
+                System.arraycopy(pages, 0, grown, 0, pages.length);
+                grown[pages.length] = new Page();
+                pages = grown;
+            }
+        }
+        Page page = page(slot);
+        int index = slot & PAGE_MASK;
+        page.lastRead.set(index, System.currentTimeMillis());
+        page.idleFired.set(index, 0);
+        page.channels.set(index, channel);
+        return slot;
+    }
+
+    private synchronized void release(int slot) {
+        page(slot).channels.set(slot & PAGE_MASK, null);
+        if (freeCount == freeSlots.length) {
+            int[] grown = new int[freeSlots.length * 2];
+            System.arraycopy(freeSlots, 0, grown, 0, freeCount);
+            freeSlots = grown;
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    /**
+     * 扫描一遍所有槽位，结束后重新调度自身
+     */
+    private class SweepTask implements TimerTask {
+
+        @Override
+        public void run(Timeout timeout) {
+            try {
+                sweep();
+            } catch (Exception e) {
+                log.error("连接空闲扫描失败", e);
+            } finally {
+                if (running) {
+                    timeout.timer().newTimeout(this, sweepIntervalMs, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+
+        private void sweep() {
+            long now = System.currentTimeMillis();
+            Page[] snapshot = pages;
+            for (Page page : snapshot) {
+                for (int i = 0; i < PAGE_SIZE; i++) {
+                    Channel channel = page.channels.get(i);
+                    if (channel == null) {
+                        continue;
+                    }
+                    int fired = page.idleFired.get(i);
+                    if (now - page.lastRead.get(i) >= readerIdleMs * (fired + 1)
+                            && page.idleFired.compareAndSet(i, fired, fired + 1)) {
+                        channel.eventLoop().execute(() ->
+                                channel.pipeline().fireUserEventTriggered(IdleStateEvent.READER_IDLE_STATE_EVENT));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 单个连接的空闲跟踪器：只记录槽位号，读事件时刷新最后读时间
+     */
+    public class IdleTracker extends ChannelDuplexHandler {
+
+        private int slot = -1;
+
+        @Override
+        public void handlerAdded(ChannelHandlerContext ctx) {
+            if (ctx.channel().isActive()) {
+                register(ctx.channel());
+            }
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) throws Exception {
+            register(ctx.channel());
+            super.channelActive(ctx);
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            if (slot >= 0) {
+                Page page = page(slot);
+                int index = slot & PAGE_MASK;
+                page.lastRead.lazySet(index, System.currentTimeMillis());
+                if (page.idleFired.get(index) != 0) {
+                    page.idleFired.set(index, 0);
+                }
+            }
+            ctx.fireChannelRead(msg);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            unregister();
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void handlerRemoved(ChannelHandlerContext ctx) {
+            unregister();
+        }
+
+        private void register(Channel channel) {
+            if (slot < 0) {
+                slot = allocate(channel);
+            }
+        }
+
+        private void unregister() {
+            if (slot >= 0) {
+                release(slot);
+                slot = -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package com.jelly.cinema.im.netty.session;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * 本地会话注册表：userId(long) -> 会话
+ *
+ * 供 Netty（Channel）与 WebSocket（WebSocketSession）两种接入共用，替代 ConcurrentHashMap&lt;Long, ?&gt;：
+ * - 键直接存放在 long[] 中，不装箱，也不为每个条目分配 Node 对象
+ * - 按 userId 哈希分段，每段一个开放寻址（线性探测）表，由 StampedLock 保护
+ * - 读走乐观读，写入/删除只锁所在分段
+ *
+ * 反向映射（会话 -> userId）不在此维护，由会话自身的属性保存（Channel attr / WebSocketSession attributes）。
+ *
+ * @author Jelly Cinema
+ */
+public final class LongSessionRegistry<S> {
+
+    private static final int SEGMENT_COUNT = 64;
+
+    private static final int SEGMENT_MASK = SEGMENT_COUNT - 1;
+
+    private static final int MIN_SEGMENT_CAPACITY = 16;
+
+    private final Segment<S>[] segments;
+
+    /**
+     * 遍历回调
+     */
+    @FunctionalInterface
+    public interface Visitor<S> {
+        void accept(long key, S session);
+    }
+
+    public LongSessionRegistry() {
+        this(0);
+    }
+
+    /**
+     * @param expectedSize 预估会话数，用于预分配各分段容量
+     */
+    @SuppressWarnings("unchecked")
+    public LongSessionRegistry(int expectedSize) {
+        int perSegment = Math.max(MIN_SEGMENT_CAPACITY, tableSizeFor(expectedSize / SEGMENT_COUNT * 4 / 3 + 1));
+        segments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment<>(perSegment);
+        }
+    }
+
+    /**
+     * 获取会话，不存在时返回 null
+     */
+    public S get(long key) {
+        long hash = mix(key);
+        return segmentFor(hash).get(key, hash);
+    }
+
+    /**
+     * 登记会话
+     *
+     * @return 被替换的旧会话，没有时返回 null
+     */
+    public S put(long key, S session) {
+        Objects.requireNonNull(session, "session");
+        long hash = mix(key);
+        return segmentFor(hash).put(key, hash, session);
+    }
+
+    /**
+     * 仅当当前登记的会话就是 session 时才移除（旧连接的关闭事件不会移除新连接）
+     */
+    public boolean remove(long key, S session) {
+        long hash = mix(key);
+        return segmentFor(hash).remove(key, hash, session) != null;
+    }
+
+    /**
+     * 移除会话
+     *
+     * @return 被移除的会话，没有时返回 null
+     */
+    public S remove(long key) {
+        long hash = mix(key);
+        return segmentFor(hash).remove(key, hash, null);
+    }
+
+    /**
+     * 当前会话数（各分段之和，并发修改时为近似值）
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<S> segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    /**
+     * 遍历所有会话：逐段在读锁下拷贝快照，回调在锁外执行
+     */
+    public void forEach(Visitor<? super S> visitor) {
+        List<Object> snapshot = new ArrayList<>();
+        for (Segment<S> segment : segments) {
+            snapshot.clear();
+            segment.snapshot(snapshot);
+            for (int i = 0; i < snapshot.size(); i += 2) {
+                @SuppressWarnings("unchecked")
+                S session = (S) snapshot.get(i + 1);
+                visitor.accept((Long) snapshot.get(i), session);
+            }
+        }
+    }
+
+    /**
+     * 所有 userId 的快照
+     */
+    public Set<Long> keySnapshot() {
+        Set<Long> keys = new HashSet<>(Math.max(16, size() * 4 / 3 + 1));
+        forEach((key, session) -> keys.add(key));
+        return keys;
+    }
+
+    private Segment<S> segmentFor(long hash) {
+        return segments[(int) (hash >>> 58) & SEGMENT_MASK];
+    }
+
+    /**
+     * 64 位混淆（MurmurHash3 fmix64），高位选段，低位定位槽
+     */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    private static int tableSizeFor(int capacity) {
+        int n = -1 >>> Integer.numberOfLeadingZeros(Math.max(1, capacity - 1));
+        return n < 0 ? 1 : Math.min(n + 1, 1 << 30);
+    }
+
+    /**
+     * 一张开放寻址表：keys / values 并行数组（等长），values[i] == null 表示空槽
+     */
+    private static final class Table {
+
+        private final long[] keys;
+
+        private final Object[] values;
+
+        private Table(int capacity) {
+            keys = new long[capacity];
+            values = new Object[capacity];
+        }
+    }
+
+    /**
+     * 单个分段
+     */
+    private static final class Segment<S> {
+
+        private final StampedLock lock = new StampedLock();
+
+        private Table table;
+
+        private volatile int size;
+
+        private Segment(int capacity) {
+            table = new Table(capacity);
+        }
+
+        private S get(long key, long hash) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                S session = find(table, key, hash);
+                if (lock.validate(stamp)) {
+                    return session;
+                }
+            }
+            stamp = lock.readLock();
+            try {
+                return find(table, key, hash);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * 只通过传入的同一张表读取，乐观读期间即使表被扩容也不会越界，结果由 validate 判定是否可用
+         */
+        @SuppressWarnings("unchecked")
+        private static <S> S find(Table table, long key, long hash) {
+            long[] keys = table.keys;
+            Object[] values = table.values;
+            int mask = values.length - 1;
+            int index = (int) hash & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                Object value = values[index];
+                if (value == null) {
+                    return null;
+                }
+                if (keys[index] == key) {
+                    return (S) value;
+                }
+                index = (index + 1) & mask;
+            }
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        private S put(long key, long hash, S session) {
+            long stamp = lock.writeLock();
+            try {
+                long[] keys = table.keys;
+                Object[] values = table.values;
+                int mask = values.length - 1;
+                int index = (int) hash & mask;
+                while (values[index] != null) {
+                    if (keys[index] == key) {
+                        Object previous = values[index];
+                        values[index] = session;
+                        return (S) previous;
+                    }
+                    index = (index + 1) & mask;
+                }
+                keys[index] = key;
+                values[index] = session;
+                int newSize = size + 1;
+                size = newSize;
+                if (newSize > values.length * 3 / 4) {
+                    resize(values.length << 1);
+                }
+                return null;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * @param expected 非 null 时只有当前值为 expected 才移除
+         */
+        @SuppressWarnings("unchecked")
+        private S remove(long key, long hash, S expected) {
+            long stamp = lock.writeLock();
+            try {
+                long[] keys = table.keys;
+                Object[] values = table.values;
+                int mask = values.length - 1;
+                int index = (int) hash & mask;
+                while (values[index] != null) {
+                    if (keys[index] == key) {
+                        Object previous = values[index];
+                        if (expected != null && previous != expected) {
+                            return null;
+                        }
+                        deleteAt(index);
+                        size = size - 1;
+                        return (S) previous;
+                    }
+                    index = (index + 1) & mask;
+                }
+                return null;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * 线性探测的回移删除：把后续同簇中可以前移的条目填回空洞，不留墓碑
+         */
+        private void deleteAt(int hole) {
+            long[] keys = table.keys;
+            Object[] values = table.values;
+            int mask = values.length - 1;
+            int index = (hole + 1) & mask;
+            while (values[index] != null) {
+                int home = (int) mix(keys[index]) & mask;
+                // home 不在 (hole, index] 区间内时，条目可以移到 hole
+                if (((index - home) & mask) >= ((index - hole) & mask)) {
+                    keys[hole] = keys[index];
+                    values[hole] = values[index];
+                    hole = index;
+                }
+                index = (index + 1) & mask;
+            }
+            values[hole] = null;
+            keys[hole] = 0;
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = table.keys;
+            Object[] oldValues = table.values;
+            Table resized = new Table(capacity);
+            long[] newKeys = resized.keys;
+            Object[] newValues = resized.values;
+            int mask = capacity - 1;
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] == null) {
+                    continue;
+                }
+                int index = (int) mix(oldKeys[i]) & mask;
+                while (newValues[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                newKeys[index] = oldKeys[i];
+                newValues[index] = oldValues[i];
+            }
+            table = resized;
+        }
+
+        private void snapshot(List<Object> out) {
+            long stamp = lock.readLock();
+            try {
+                long[] keys = table.keys;
+                Object[] values = table.values;
+                for (int i = 0; i < values.length; i++) {
+                    if (values[i] != null) {
+                        out.add(keys[i]);
+                        out.add(values[i]);
+                    }
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+    }
+}
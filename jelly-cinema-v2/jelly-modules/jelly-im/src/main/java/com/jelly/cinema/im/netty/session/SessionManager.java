@@ -1,25 +1,44 @@
 package com.jelly.cinema.im.netty.session;
 
+import com.jelly.cinema.common.redis.service.RedisService;
+import com.jelly.cinema.im.netty.codec.MessageEncoder;
+import com.jelly.cinema.im.netty.codec.PayloadCodec;
+import com.jelly.cinema.im.netty.protocol.MessageProtocol;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
 import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
  * 会话管理器
  * 
  * 管理用户连接会话：
- * 1. 本地内存：Channel 映射
+ * 1. 本地内存：userId -> Channel 登记在 {@link LongSessionRegistry}，反向映射保存在 Channel 属性 {@link #USER_ID_KEY}
  * 2. Redis：分布式在线状态
  * 
+ * 在线状态写入做了合并：心跳只把用户记入待刷新集合，后台线程按周期用 pipeline 批量续期；
+ * 绑定/解绑时的写入各自合并为一次往返。跨节点的在线查询走 {@link UserRouteDirectory} 本地缓存。
+ * 
  * @author Jelly Cinema
  */
 @Slf4j
@@ -28,30 +47,25 @@ import java.util.concurrent.TimeUnit;
 public class SessionManager {
 
     /**
-     * Channel 属性 Key：用户 ID
+     * 节点 ID 配置占位符（同时用于 MQ 路由 Tag 和消费组名，只能包含字母、数字、下划线和中划线）
      */
-    public static final AttributeKey<Long> USER_ID_KEY = AttributeKey.valueOf("userId");
+    public static final String NODE_ID_PLACEHOLDER = "${netty.server.node-id:${HOSTNAME:im-node}}";
 
     /**
-     * Channel 属性 Key：最后心跳时间
+     * Channel 属性 Key：用户 ID
      */
-    public static final AttributeKey<Long> LAST_HEARTBEAT_KEY = AttributeKey.valueOf("lastHeartbeat");
+    public static final AttributeKey<Long> USER_ID_KEY = AttributeKey.valueOf("userId");
 
     /**
      * 本地会话映射：userId -> Channel
      */
-    private static final Map<Long, Channel> LOCAL_USER_CHANNEL_MAP = new ConcurrentHashMap<>();
-
-    /**
-     * 本地会话映射：channelId -> userId
-     */
-    private static final Map<String, Long> LOCAL_CHANNEL_USER_MAP = new ConcurrentHashMap<>();
+    private static final LongSessionRegistry<Channel> LOCAL_CHANNELS = new LongSessionRegistry<>(1 << 16);
 
     /**
      * Redis Key 前缀
      */
     private static final String ONLINE_USER_KEY = "im:online:user:";
-    private static final String USER_SERVER_KEY = "im:user:server:";
+    static final String USER_SERVER_KEY = "im:user:server:";
 
     /**
      * 在线状态过期时间（秒）
@@ -61,6 +75,40 @@ public class SessionManager {
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
 
+    @Autowired
+    private RedisService redisService;
+
+    @Autowired
+    private UserRouteDirectory userRouteDirectory;
+
+    @Autowired
+    private IdleConnectionSweeper idleConnectionSweeper;
+
+    /**
+     * 在线状态批量续期周期（秒），需明显小于在线状态过期时间
+     */
+    @Value("${netty.presence.flush-interval-seconds:30}")
+    private long presenceFlushIntervalSeconds;
+
+    /**
+     * 单次 pipeline 续期的最大用户数
+     */
+    @Value("${netty.presence.batch-size:1000}")
+    private int presenceBatchSize;
+
+    /**
+     * 等待续期的用户（心跳时加入，批量续期时移除）
+     */
+    private final Set<Long> pendingRefresh = ConcurrentHashMap.newKeySet();
+
+    private ScheduledExecutorService presenceExecutor;
+
+    /**
+     * 当前节点 ID（写入 im:user:server:{userId}，跨节点消息按它投递到唯一节点）
+     */
+    @Value(NODE_ID_PLACEHOLDER)
+    private String nodeId;
+
     /**
      * 当前服务器地址（用于分布式场景）
      */
@@ -68,47 +116,68 @@ public class SessionManager {
 
     public void setServerAddress(String serverAddress) {
         this.serverAddress = serverAddress;
+        log.info("IM 节点: nodeId={}, address={}", nodeId, serverAddress);
+    }
+
+    @PostConstruct
+    public void init() {
+        presenceExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "im-presence-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        presenceExecutor.scheduleWithFixedDelay(this::flushPresence,
+                presenceFlushIntervalSeconds, presenceFlushIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (presenceExecutor != null) {
+            presenceExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 当前节点 ID
+     */
+    public String getNodeId() {
+        return nodeId;
     }
 
     /**
      * 绑定用户与 Channel
      */
     public void bind(Long userId, Channel channel) {
-        // 1. 移除旧连接（如果存在）
-        Channel oldChannel = LOCAL_USER_CHANNEL_MAP.get(userId);
+        // 1. 绑定新连接
+        channel.attr(USER_ID_KEY).set(userId);
+        Channel oldChannel = LOCAL_CHANNELS.put(userId, channel);
+
+        // 2. 关闭旧连接（如果存在），先清掉其用户属性，旧连接的关闭事件不会再触发下线
         if (oldChannel != null && oldChannel != channel) {
             log.info("用户 {} 的旧连接将被关闭", userId);
-            String oldChannelId = oldChannel.id().asLongText();
-            LOCAL_CHANNEL_USER_MAP.remove(oldChannelId);
+            oldChannel.attr(USER_ID_KEY).set(null);
             oldChannel.close();
         }
 
-        // 2. 绑定新连接
-        String channelId = channel.id().asLongText();
-        channel.attr(USER_ID_KEY).set(userId);
-        channel.attr(LAST_HEARTBEAT_KEY).set(System.currentTimeMillis());
-
-        LOCAL_USER_CHANNEL_MAP.put(userId, channel);
-        LOCAL_CHANNEL_USER_MAP.put(channelId, userId);
-
         // 3. 更新 Redis 在线状态
         updateOnlineStatus(userId, true);
+        userRouteDirectory.put(userId, nodeId);
 
-        log.info("用户 {} 绑定成功, channelId={}", userId, channelId);
+        log.info("用户 {} 绑定成功, channelId={}", userId, channel.id().asShortText());
     }
 
     /**
      * 解绑用户与 Channel
      */
     public void unbind(Channel channel) {
-        String channelId = channel.id().asLongText();
-        Long userId = LOCAL_CHANNEL_USER_MAP.remove(channelId);
+        Long userId = channel.attr(USER_ID_KEY).getAndSet(null);
 
-        if (userId != null) {
-            LOCAL_USER_CHANNEL_MAP.remove(userId);
+        // 只有当前登记的仍是该连接时才下线，避免覆盖同一用户的新连接
+        if (userId != null && LOCAL_CHANNELS.remove(userId, channel)) {
             // 更新 Redis 离线状态
             updateOnlineStatus(userId, false);
-            log.info("用户 {} 解绑成功, channelId={}", userId, channelId);
+            userRouteDirectory.invalidate(userId);
+            log.info("用户 {} 解绑成功, channelId={}", userId, channel.id().asShortText());
         }
     }
 
@@ -116,7 +185,7 @@ public class SessionManager {
      * 获取用户的 Channel
      */
     public Channel getChannel(Long userId) {
-        return LOCAL_USER_CHANNEL_MAP.get(userId);
+        return LOCAL_CHANNELS.get(userId);
     }
 
     /**
@@ -130,25 +199,36 @@ public class SessionManager {
      * 判断用户是否在线（本地）
      */
     public boolean isOnlineLocal(Long userId) {
-        Channel channel = LOCAL_USER_CHANNEL_MAP.get(userId);
+        Channel channel = LOCAL_CHANNELS.get(userId);
         return channel != null && channel.isActive();
     }
 
     /**
-     * 判断用户是否在线（全局）
+     * 判断用户是否在线（全局，经本地路由缓存）
      */
     public boolean isOnlineGlobal(Long userId) {
-        String key = ONLINE_USER_KEY + userId;
-        return Boolean.TRUE.equals(redisTemplate.hasKey(key));
+        return isOnlineLocal(userId) || userRouteDirectory.lookup(userId) != null;
+    }
+
+    /**
+     * 获取用户所在节点 ID（经本地路由缓存）
+     */
+    public String getUserNode(Long userId) {
+        return userRouteDirectory.lookup(userId);
+    }
+
+    /**
+     * 批量获取用户所在节点 ID（经本地路由缓存，未命中的一次 MGET），结果只包含在线用户
+     */
+    public Map<Long, String> getUserNodes(Collection<Long> userIds) {
+        return userRouteDirectory.lookupAll(userIds);
     }
 
     /**
-     * 获取用户所在服务器地址
+     * 获取用户所在节点 ID（绕过本地缓存，用于路由缓存过期后的重新确认）
      */
-    public String getUserServerAddress(Long userId) {
-        String key = USER_SERVER_KEY + userId;
-        Object address = redisTemplate.opsForValue().get(key);
-        return address != null ? address.toString() : null;
+    public String getUserNodeFresh(Long userId) {
+        return userRouteDirectory.lookupFresh(userId);
     }
 
     /**
@@ -160,18 +240,16 @@ public class SessionManager {
             String serverKey = USER_SERVER_KEY + userId;
 
             if (online) {
-                // 设置在线状态
-                redisTemplate.opsForValue().set(onlineKey, System.currentTimeMillis(), 
-                        ONLINE_EXPIRE_SECONDS, TimeUnit.SECONDS);
-                // 设置用户所在服务器
-                if (serverAddress != null) {
-                    redisTemplate.opsForValue().set(serverKey, serverAddress, 
-                            ONLINE_EXPIRE_SECONDS, TimeUnit.SECONDS);
-                }
+                // 设置在线状态和用户所在节点（一次往返）
+                long now = System.currentTimeMillis();
+                redisService.executePipelined(ops -> {
+                    ops.opsForValue().set(onlineKey, now, ONLINE_EXPIRE_SECONDS, TimeUnit.SECONDS);
+                    ops.opsForValue().set(serverKey, nodeId, ONLINE_EXPIRE_SECONDS, TimeUnit.SECONDS);
+                });
             } else {
                 // 删除在线状态
-                redisTemplate.delete(onlineKey);
-                redisTemplate.delete(serverKey);
+                pendingRefresh.remove(userId);
+                redisTemplate.delete(List.of(onlineKey, serverKey));
             }
         } catch (Exception e) {
             log.error("更新 Redis 在线状态失败: userId={}, online={}", userId, online, e);
@@ -179,27 +257,55 @@ public class SessionManager {
     }
 
     /**
-     * 刷新在线状态（心跳时调用）
+     * 刷新在线状态（心跳时调用，只记录，由后台线程批量续期）
      */
     public void refreshOnlineStatus(Long userId) {
-        try {
-            String onlineKey = ONLINE_USER_KEY + userId;
-            String serverKey = USER_SERVER_KEY + userId;
+        pendingRefresh.add(userId);
+    }
 
-            redisTemplate.expire(onlineKey, ONLINE_EXPIRE_SECONDS, TimeUnit.SECONDS);
-            if (serverAddress != null) {
-                redisTemplate.expire(serverKey, ONLINE_EXPIRE_SECONDS, TimeUnit.SECONDS);
+    /**
+     * 批量续期在线状态：每批用户的在线/节点 Key 通过一次 pipeline 完成 EXPIRE
+     */
+    void flushPresence() {
+        if (pendingRefresh.isEmpty()) {
+            return;
+        }
+        List<Long> batch = new ArrayList<>(Math.min(presenceBatchSize, pendingRefresh.size()));
+        int refreshed = 0;
+        for (Long userId : pendingRefresh) {
+            pendingRefresh.remove(userId);
+            batch.add(userId);
+            if (batch.size() >= presenceBatchSize) {
+                refreshed += expireBatch(batch);
+                batch.clear();
             }
+        }
+        refreshed += expireBatch(batch);
+        log.debug("在线状态批量续期: users={}", refreshed);
+    }
+
+    private int expireBatch(List<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return 0;
+        }
+        try {
+            redisService.executePipelined(ops -> userIds.forEach(userId -> {
+                ops.expire(ONLINE_USER_KEY + userId, ONLINE_EXPIRE_SECONDS, TimeUnit.SECONDS);
+                ops.expire(USER_SERVER_KEY + userId, ONLINE_EXPIRE_SECONDS, TimeUnit.SECONDS);
+            }));
+            return userIds.size();
         } catch (Exception e) {
-            log.error("刷新在线状态失败: userId={}", userId, e);
+            // 续期失败的用户放回集合，下个周期重试
+            pendingRefresh.addAll(userIds);
+            log.error("批量续期在线状态失败: users={}", userIds.size(), e);
+            return 0;
         }
     }
 
     /**
-     * 更新最后心跳时间
+     * 更新最后心跳时间（时间戳由 {@link IdleConnectionSweeper} 在读事件时记录，这里只续期在线状态）
      */
     public void updateLastHeartbeat(Channel channel) {
-        channel.attr(LAST_HEARTBEAT_KEY).set(System.currentTimeMillis());
         Long userId = getUserId(channel);
         if (userId != null) {
             refreshOnlineStatus(userId);
@@ -210,25 +316,27 @@ public class SessionManager {
      * 获取最后心跳时间
      */
     public Long getLastHeartbeat(Channel channel) {
-        return channel.attr(LAST_HEARTBEAT_KEY).get();
+        return idleConnectionSweeper.getLastRead(channel);
     }
 
     /**
      * 获取本地在线用户数
      */
     public int getLocalOnlineCount() {
-        return LOCAL_USER_CHANNEL_MAP.size();
+        return LOCAL_CHANNELS.size();
     }
 
     /**
-     * 获取所有本地在线用户 ID
+     * 获取所有本地在线用户 ID（快照）
      */
     public Set<Long> getLocalOnlineUserIds() {
-        return LOCAL_USER_CHANNEL_MAP.keySet();
+        return LOCAL_CHANNELS.keySnapshot();
     }
 
     /**
      * 向用户发送消息
+     * 
+     * 消息的引用计数由本方法接管：写出后由编码器释放，用户不在线时直接释放
      */
     public boolean sendToUser(Long userId, Object message) {
         Channel channel = getChannel(userId);
@@ -236,17 +344,147 @@ public class SessionManager {
             channel.writeAndFlush(message);
             return true;
         }
+        ReferenceCountUtil.release(message);
         return false;
     }
 
+    /**
+     * 以用户连接协商的序列化格式向用户推送负载
+     */
+    public boolean sendPayload(Long userId, byte messageType, long messageId, Object payload) {
+        Channel channel = getChannel(userId);
+        if (channel == null || !channel.isActive()) {
+            return false;
+        }
+        MessageProtocol message;
+        try {
+            message = PayloadCodec.encode(channel, messageType, messageId, payload);
+        } catch (Exception e) {
+            log.error("序列化推送消息失败: userId={}, msgId={}", userId, messageId, e);
+            return false;
+        }
+        channel.writeAndFlush(message);
+        return true;
+    }
+
+    /**
+     * 以各连接协商的序列化格式向多个本地用户推送同一负载
+     * 
+     * 按连接的序列化类型分组，每组只编码一次后交给 {@link #sendToUsers}
+     * 
+     * @return 实际写出的本地连接数
+     */
+    public int sendPayloadToUsers(Collection<Long> userIds, byte messageType, long messageId, Object payload) {
+        Map<Byte, List<Long>> usersByType = new HashMap<>(4);
+        Map<Byte, Channel> sampleByType = new HashMap<>(4);
+        for (Long userId : userIds) {
+            Channel channel = getChannel(userId);
+            if (channel == null || !channel.isActive()) {
+                continue;
+            }
+            Byte type = channel.attr(PayloadCodec.SERIALIZER_KEY).get();
+            Byte key = type != null ? type : MessageProtocol.SerializerType.JSON;
+            usersByType.computeIfAbsent(key, k -> new ArrayList<>()).add(userId);
+            sampleByType.putIfAbsent(key, channel);
+        }
+
+        int count = 0;
+        for (Map.Entry<Byte, List<Long>> entry : usersByType.entrySet()) {
+            try {
+                MessageProtocol message = PayloadCodec.encode(sampleByType.get(entry.getKey()),
+                        messageType, messageId, payload);
+                count += sendToUsers(entry.getValue(), message);
+            } catch (Exception e) {
+                log.error("序列化群发消息失败: msgId={}, serializer={}", messageId, entry.getKey(), e);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 向多个本地用户发送同一条消息
+     * 
+     * 帧只编码一次，各连接写入共享缓冲区的 retainedDuplicate；按 EventLoop 分组，
+     * 每个 EventLoop 提交一个任务写完其上所有连接后逐个 flush，一批消息每个连接只触发一次 flush。
+     * 消息的引用计数由本方法接管。
+     * 
+     * @return 实际写出的本地连接数
+     */
+    public int sendToUsers(Collection<Long> userIds, MessageProtocol message) {
+        Map<EventLoop, List<Channel>> channelsByLoop = new HashMap<>();
+        int count = 0;
+        for (Long userId : userIds) {
+            Channel channel = getChannel(userId);
+            if (channel != null && channel.isActive()) {
+                channelsByLoop.computeIfAbsent(channel.eventLoop(), loop -> new ArrayList<>()).add(channel);
+                count++;
+            }
+        }
+        if (count == 0) {
+            ReferenceCountUtil.release(message);
+            return 0;
+        }
+
+        ByteBuf frame;
+        try {
+            frame = MessageEncoder.encodeFrame(channelsByLoop.values().iterator().next().get(0).alloc(), message);
+        } finally {
+            ReferenceCountUtil.release(message);
+        }
+
+        try {
+            channelsByLoop.forEach((loop, channels) -> {
+                ByteBuf shared = frame.retainedDuplicate();
+                try {
+                    loop.execute(() -> writeShared(channels, shared));
+                } catch (Exception e) {
+                    shared.release();
+                    log.warn("EventLoop 拒绝群发任务: channels={}, error={}", channels.size(), e.getMessage());
+                }
+            });
+        } finally {
+            frame.release();
+        }
+        return count;
+    }
+
+    /**
+     * 在连接所属的 EventLoop 上写出共享帧，全部写完后再统一 flush
+     */
+    private void writeShared(List<Channel> channels, ByteBuf shared) {
+        try {
+            for (Channel channel : channels) {
+                if (channel.isActive()) {
+                    channel.write(shared.retainedDuplicate(), channel.voidPromise());
+                }
+            }
+            for (Channel channel : channels) {
+                channel.flush();
+            }
+        } finally {
+            shared.release();
+        }
+    }
+
     /**
      * 广播消息给所有在线用户
+     * 
+     * MessageProtocol 走 {@link #sendToUsers} 只编码一次；其他消息每个连接的编码器都会释放一次，
+     * 因此每次写出前 retain，最后释放调用方持有的引用
      */
     public void broadcast(Object message) {
-        LOCAL_USER_CHANNEL_MAP.values().forEach(channel -> {
-            if (channel.isActive()) {
-                channel.writeAndFlush(message);
-            }
-        });
+        if (message instanceof MessageProtocol protocol) {
+            sendToUsers(LOCAL_CHANNELS.keySnapshot(), protocol);
+            return;
+        }
+        try {
+            LOCAL_CHANNELS.forEach((userId, channel) -> {
+                if (channel.isActive()) {
+                    channel.writeAndFlush(ReferenceCountUtil.retain(message));
+                }
+            });
+        } finally {
+            ReferenceCountUtil.release(message);
+        }
     }
 }
@@ -0,0 +1,169 @@
+package com.jelly.cinema.im.netty.session;
+
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用户路由目录（userId -> 所在节点 ID）
+ *
+ * 以 Redis 中的 im:user:server:{userId} 为准，本地用 Caffeine 做短 TTL 缓存：
+ * - 在线用户缓存 online-ttl，离线结果缓存更短的 offline-ttl，避免离线用户反复穿透
+ * - 本节点绑定/解绑用户时直接更新本地缓存
+ * - 批量查询（群聊扩散）对未命中的用户一次 MGET
+ *
+ * 缓存可能短暂过期（用户切换节点），目标节点收到后会用 {@link #lookupFresh} 重新确认并转发。
+ *
+ * @author Jelly Cinema
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "netty.server.enabled", havingValue = "true", matchIfMissing = false)
+public class UserRouteDirectory {
+
+    /**
+     * 离线标记（Caffeine 不缓存 null）
+     */
+    private static final String OFFLINE = "";
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    @Value("${netty.route.online-ttl-ms:5000}")
+    private long onlineTtlMs;
+
+    @Value("${netty.route.offline-ttl-ms:1000}")
+    private long offlineTtlMs;
+
+    @Value("${netty.route.max-size:200000}")
+    private long maxSize;
+
+    private LoadingCache<Long, String> routes;
+
+    public UserRouteDirectory(RedisTemplate<String, Object> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @PostConstruct
+    public void init() {
+        routes = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<Long, String>() {
+                    @Override
+                    public long expireAfterCreate(Long userId, String node, long currentTime) {
+                        return TimeUnit.MILLISECONDS.toNanos(OFFLINE.equals(node) ? offlineTtlMs : onlineTtlMs);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Long userId, String node, long currentTime, long currentDuration) {
+                        return expireAfterCreate(userId, node, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(Long userId, String node, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build(new CacheLoader<>() {
+                    @Override
+                    public String load(Long userId) {
+                        return loadFromRedis(userId);
+                    }
+
+                    @Override
+                    public Map<Long, String> loadAll(Set<? extends Long> userIds) {
+                        return loadAllFromRedis(userIds);
+                    }
+                });
+    }
+
+    /**
+     * 查询用户所在节点（可能命中本地缓存）
+     *
+     * @return 节点 ID，离线时返回 null
+     */
+    public String lookup(Long userId) {
+        String node = routes.get(userId);
+        return OFFLINE.equals(node) ? null : node;
+    }
+
+    /**
+     * 绕过本地缓存查询用户所在节点，并刷新缓存
+     */
+    public String lookupFresh(Long userId) {
+        String node = loadFromRedis(userId);
+        routes.put(userId, node);
+        return OFFLINE.equals(node) ? null : node;
+    }
+
+    /**
+     * 批量查询用户所在节点，结果只包含在线用户
+     */
+    public Map<Long, String> lookupAll(Collection<Long> userIds) {
+        Map<Long, String> nodes = routes.getAll(userIds);
+        Map<Long, String> online = new HashMap<>(nodes.size());
+        nodes.forEach((userId, node) -> {
+            if (!OFFLINE.equals(node)) {
+                online.put(userId, node);
+            }
+        });
+        return online;
+    }
+
+    /**
+     * 记录用户所在节点（本节点绑定时调用）
+     */
+    public void put(Long userId, String node) {
+        routes.put(userId, node);
+    }
+
+    /**
+     * 移除用户的缓存路由
+     */
+    public void invalidate(Long userId) {
+        routes.invalidate(userId);
+    }
+
+    private String loadFromRedis(Long userId) {
+        try {
+            Object node = redisTemplate.opsForValue().get(SessionManager.USER_SERVER_KEY + userId);
+            return node != null ? node.toString() : OFFLINE;
+        } catch (Exception e) {
+            log.warn("查询用户路由失败: userId={}, error={}", userId, e.getMessage());
+            return OFFLINE;
+        }
+    }
+
+    private Map<Long, String> loadAllFromRedis(Collection<? extends Long> userIds) {
+        List<Long> ids = new ArrayList<>(userIds);
+        List<String> keys = new ArrayList<>(ids.size());
+        ids.forEach(userId -> keys.add(SessionManager.USER_SERVER_KEY + userId));
+
+        Map<Long, String> result = new HashMap<>(ids.size());
+        try {
+            List<Object> values = redisTemplate.opsForValue().multiGet(keys);
+            for (int i = 0; i < ids.size(); i++) {
+                Object node = values != null && i < values.size() ? values.get(i) : null;
+                result.put(ids.get(i), node != null ? node.toString() : OFFLINE);
+            }
+        } catch (Exception e) {
+            log.warn("批量查询用户路由失败: size={}, error={}", ids.size(), e.getMessage());
+            ids.forEach(userId -> result.put(userId, OFFLINE));
+        }
+        return result;
+    }
+}
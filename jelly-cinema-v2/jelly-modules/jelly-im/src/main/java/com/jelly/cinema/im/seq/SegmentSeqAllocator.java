@@ -0,0 +1,318 @@
+package com.jelly.cinema.im.seq;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.jelly.cinema.common.redis.service.RedisService;
+import com.jelly.cinema.im.mapper.ChatMessageMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 会话消息序列号分配器（单持有者号段租约）
+ *
+ * 替代每条消息一次 INCR：节点经 lua/seq_lease.lua 从 Redis 的 jelly:im:seq:{sessionId} 租下一段序列号，
+ * 在本地用 AtomicLong 逐个发放，号段用完或租约过期后再租下一段：
+ * - 同一会话同一时刻只有一个节点持有号段（jelly:im:seq:owner:{sessionId}，有效期即租约有效期），
+ *   因此会话内的序列号按分配时间递增，下游可以把序列号当作顺序使用（拉取、已读水位、游标分页）
+ * - 其他节点写入同一会话时不等待：脚本把会话标记为多节点写入（jelly:im:seq:shared:{sessionId}），
+ *   经 jelly:im:seq:revoke 频道通知持有者关闭号段，本次直接 INCR；此后各节点在本地记住该标记，
+ *   以普通 INCR 逐条分配，标记在 shared-ttl-ms 内无写入后失效，会话回到号段模式
+ * - 续租时若计数器仍停在上一号段末尾（期间没有其他分配），未发放的序列号归还给计数器，单节点会话不产生空洞
+ * - 步长自适应：号段在租期内用完则翻倍（热会话），过期时仍有剩余则减半（冷会话），范围 [initial-step, max-step]
+ * - Redis 中的计数器不存在时（首次或被淘汰），以 MySQL 中该会话的最大序列号为起点，避免序列号回退
+ *
+ * 每条消息的 Redis 往返次数（原方案固定为 1 次 INCR）：
+ * - 单节点写入的热会话：每个号段 1 次 EVAL，即 1/step，步长增长到 max-step 后约为 1/1024
+ * - 单节点写入的冷会话：每个租期 1 次 EVAL，租期 30s、初始步长 16 时，每 30s 不超过 16 条消息只需 1 次往返
+ * - 多节点写入的会话：每条 1 次 INCR，与原方案相同；只有切换为多节点写入的那一条走 EVAL
+ * SegmentSeqAllocatorTest 按同样的场景统计 Redis 调用次数。
+ *
+ * 撤销通知到达持有者之前（Pub/Sub 延迟，通常为毫秒级；通知丢失时最长一个租期），持有者仍可能发出比对方更小的序列号，
+ * 这与消息经 MQ 异步落库造成的可见顺序差异属于同一量级。
+ * 序列号之间仍可能有空洞（计数器被淘汰重建、号段被撤销、节点在租约内宕机），只能当作顺序，不能当作条数。
+ *
+ * @author Jelly Cinema
+ */
+@Slf4j
+@Component
+public class SegmentSeqAllocator {
+
+    /**
+     * 序列号计数器 Key 前缀（与原先逐条 INCR 使用的 Key 相同，升级后号段从原计数继续）
+     */
+    public static final String SEQ_KEY = "jelly:im:seq:";
+
+    private static final String OWNER_KEY = "jelly:im:seq:owner:";
+    private static final String SHARED_KEY = "jelly:im:seq:shared:";
+
+    /**
+     * 号段撤销频道（消息体为会话 ID）
+     */
+    static final String REVOKE_CHANNEL = "jelly:im:seq:revoke";
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final RedisService redisService;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ChatMessageMapper chatMessageMapper;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    /**
+     * 节点实例 ID（号段持有者标识，每次启动不同）
+     */
+    private final String instanceId = UUID.randomUUID().toString();
+
+    @Value("${im.seq.initial-step:16}")
+    private int initialStep;
+
+    @Value("${im.seq.max-step:1024}")
+    private int maxStep;
+
+    /**
+     * 号段租约有效期（毫秒），按普通聊天的发送间隔设置，冷会话在一个租期内的消息共用一次 EVAL
+     */
+    @Value("${im.seq.lease-ttl-ms:30000}")
+    private long leaseTtlMs;
+
+    /**
+     * 多节点写入标记有效期（毫秒）
+     */
+    @Value("${im.seq.shared-ttl-ms:60000}")
+    private long sharedTtlMs;
+
+    /**
+     * 本地最多保留号段的会话数
+     */
+    @Value("${im.seq.max-sessions:100000}")
+    private long maxSessions;
+
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    private Cache<String, Segment> segments;
+
+    /**
+     * 本地记住的多节点写入会话，期间直接逐条 INCR
+     */
+    private Cache<String, Boolean> sharedSessions;
+
+    @SuppressWarnings("rawtypes")
+    private DefaultRedisScript<List> leaseScript;
+
+    /**
+     * 已租下的号段 [next, end]
+     */
+    static final class Segment {
+        private final AtomicLong next;
+        private final long end;
+        private final int step;
+        private final long expireAt;
+
+        Segment(long start, long end, int step, long expireAt) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+            this.step = step;
+            this.expireAt = expireAt;
+        }
+
+        /**
+         * @return 下一个序列号，号段用完、已过期或已关闭时返回 -1
+         */
+        long tryNext(long now) {
+            if (now >= expireAt) {
+                return -1;
+            }
+            long seq = next.getAndIncrement();
+            return seq <= end ? seq : -1;
+        }
+
+        boolean exhausted() {
+            return next.get() > end;
+        }
+
+        /**
+         * 关闭号段，之后不再发放
+         *
+         * @return 第一个未发放的序列号，已用完时返回 -1
+         */
+        long close() {
+            long first = next.getAndSet(end + 1);
+            return first <= end ? first : -1;
+        }
+    }
+
+    public SegmentSeqAllocator(RedisService redisService, StringRedisTemplate stringRedisTemplate,
+                               ChatMessageMapper chatMessageMapper,
+                               RedisMessageListenerContainer listenerContainer) {
+        this.redisService = redisService;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.chatMessageMapper = chatMessageMapper;
+        this.listenerContainer = listenerContainer;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        // 过期号段多保留几个租期，续租时据此调整步长和归还序列号
+        segments = Caffeine.newBuilder()
+                .maximumSize(maxSessions)
+                .expireAfterWrite(leaseTtlMs * 4, TimeUnit.MILLISECONDS)
+                .build();
+        // 本地标记短于 Redis 中的标记：仍在逐条分配的节点每半个有效期至少经脚本续一次标记，
+        // 因此 Redis 中的标记失效时，没有节点还停留在逐条分配
+        sharedSessions = Caffeine.newBuilder()
+                .maximumSize(maxSessions)
+                .expireAfterWrite(sharedTtlMs / 2, TimeUnit.MILLISECONDS)
+                .build();
+        leaseScript = new DefaultRedisScript<>();
+        leaseScript.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/seq_lease.lua")));
+        leaseScript.setResultType(List.class);
+        listenerContainer.addMessageListener(
+                (message, pattern) -> revoke(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(REVOKE_CHANNEL));
+        log.info("会话序列号分配器: initialStep={}, maxStep={}, leaseTtl={}ms, sharedTtl={}ms",
+                initialStep, maxStep, leaseTtlMs, sharedTtlMs);
+    }
+
+    /**
+     * 分配会话的下一个序列号
+     */
+    public long next(String sessionId) {
+        Segment segment = segments.getIfPresent(sessionId);
+        if (segment != null) {
+            long seq = segment.tryNext(System.currentTimeMillis());
+            if (seq > 0) {
+                return seq;
+            }
+        }
+        if (sharedSessions.getIfPresent(sessionId) != null) {
+            return increment(sessionId);
+        }
+
+        synchronized (locks[(sessionId.hashCode() & 0x7fffffff) % LOCK_STRIPES]) {
+            // 其他线程可能已经续租
+            Segment current = segments.getIfPresent(sessionId);
+            long now = System.currentTimeMillis();
+            if (current != null) {
+                long seq = current.tryNext(now);
+                if (seq > 0) {
+                    return seq;
+                }
+            }
+            Lease lease = lease(sessionId, current, now);
+            if (lease.segment == null) {
+                sharedSessions.put(sessionId, Boolean.TRUE);
+                segments.invalidate(sessionId);
+                return lease.seq;
+            }
+            // 先取走自己的序列号再发布号段，否则步长很小时可能被无锁路径上的其他线程取完
+            long seq = lease.segment.tryNext(now);
+            segments.put(sessionId, lease.segment);
+            if (sharedSessions.getIfPresent(sessionId) != null) {
+                // 撤销通知先于租约结果到达
+                lease.segment.close();
+            }
+            return seq;
+        }
+    }
+
+    /**
+     * 其他节点写入了本节点持有号段的会话：关闭号段，之后逐条分配
+     */
+    void revoke(String sessionId) {
+        // 先记标记再关闭号段，与 next 中"先发布号段再检查标记"配合，两边至少有一边看到对方
+        sharedSessions.put(sessionId, Boolean.TRUE);
+        Segment segment = segments.getIfPresent(sessionId);
+        if (segment != null) {
+            segment.close();
+            segments.invalidate(sessionId);
+            log.debug("会话序列号号段被撤销: sessionId={}", sessionId);
+        }
+    }
+
+    /**
+     * 多节点写入时逐条分配，与原先的 INCR 相同
+     */
+    private long increment(String sessionId) {
+        String key = SEQ_KEY + sessionId;
+        Long seq = redisService.increment(key, 1L);
+        if (seq == null) {
+            throw new IllegalStateException("分配会话序列号失败: " + sessionId);
+        }
+        return seq + floorIfCreated(sessionId, key, seq);
+    }
+
+    /**
+     * 租约结果：号段或逐条分配的序列号
+     */
+    private record Lease(Segment segment, long seq) {
+    }
+
+    /**
+     * 号段在租期内用完则翻倍，否则减半
+     */
+    private int nextStep(Segment previous) {
+        if (previous == null) {
+            return initialStep;
+        }
+        int step = previous.exhausted() ? previous.step << 1 : previous.step >> 1;
+        return Math.max(initialStep, Math.min(maxStep, step));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Lease lease(String sessionId, Segment previous, long now) {
+        int step = nextStep(previous);
+        long unused = previous != null ? previous.close() : -1;
+
+        String key = SEQ_KEY + sessionId;
+        List<Long> result = stringRedisTemplate.execute(leaseScript,
+                List.of(key, OWNER_KEY + sessionId, SHARED_KEY + sessionId),
+                instanceId, String.valueOf(step), String.valueOf(leaseTtlMs),
+                String.valueOf(Math.max(unused, 0)), String.valueOf(unused > 0 ? previous.end : 0),
+                String.valueOf(sharedTtlMs), REVOKE_CHANNEL, sessionId);
+        if (result == null || result.size() < 3) {
+            throw new IllegalStateException("租用会话序列号失败: " + sessionId);
+        }
+        long floor = floorIfCreated(sessionId, key, result.get(0));
+        long start = result.get(0) + floor;
+        long end = result.get(1) + floor;
+        if (result.get(2) != 1) {
+            return new Lease(null, start);
+        }
+        // 本地租约不晚于 Redis 中持有者标记的过期时间（标记在脚本执行时才开始计时）
+        return new Lease(new Segment(start, end, step, now + leaseTtlMs), 0);
+    }
+
+    /**
+     * 计数器刚被创建（分配结果从 1 开始）时，以数据库中的最大序列号为起点
+     *
+     * @return 需要加到本次分配结果上的偏移量
+     */
+    private long floorIfCreated(String sessionId, String key, long start) {
+        if (start != 1) {
+            return 0;
+        }
+        Long floor = chatMessageMapper.selectMaxSeq(sessionId);
+        if (floor == null || floor <= 0) {
+            return 0;
+        }
+        redisService.increment(key, floor);
+        log.info("会话序列号计数器重建: sessionId={}, floor={}", sessionId, floor);
+        return floor;
+    }
+}
@@ -4,6 +4,7 @@ import com.jelly.cinema.common.core.domain.PageQuery;
 import com.jelly.cinema.common.core.domain.PageResult;
 import com.jelly.cinema.im.domain.dto.MessageDTO;
 import com.jelly.cinema.im.domain.entity.ChatMessage;
+import com.jelly.cinema.im.domain.vo.MessageCursorVO;
 import com.jelly.cinema.im.domain.vo.MessageVO;
 import com.jelly.cinema.im.domain.vo.SessionVO;
 
@@ -41,6 +42,28 @@ public interface MessageService {
      */
     PageResult<MessageVO> getHistory(String sessionId, PageQuery query);
 
+    /**
+     * 按序列号游标获取历史消息（不统计总数，最近的消息优先从 Redis 窗口读取）
+     *
+     * @param userId    用户 ID
+     * @param sessionId 会话 ID
+     * @param beforeSeq 游标：只返回序列号小于它的消息，为空时从最新一条开始
+     * @param limit     每页条数
+     * @return 本页消息（按序列号倒序）及下一页游标
+     */
+    MessageCursorVO getHistoryBefore(Long userId, String sessionId, Long beforeSeq, Integer limit);
+
+    /**
+     * 按序列号拉取群消息（读扩散的群，成员上线后从本地最大序列号之后拉取）
+     *
+     * @param userId   用户 ID
+     * @param groupId  群 ID
+     * @param afterSeq 客户端已有的最大序列号
+     * @param limit    拉取条数
+     * @return 序列号升序的消息列表
+     */
+    List<MessageVO> pullGroupMessages(Long userId, Long groupId, Long afterSeq, Integer limit);
+
     /**
      * 撤回消息
      *
@@ -82,6 +105,15 @@ public interface MessageService {
      */
     void markAsRead(Long userId, String sessionId);
 
+    /**
+     * 推进已读水位（已读到 readSeq 为止的消息），并异步通知对方
+     *
+     * @param userId    用户 ID
+     * @param sessionId 会话 ID
+     * @param readSeq   已读到的消息序列号（含）
+     */
+    void markReadUpTo(Long userId, String sessionId, Long readSeq);
+
     /**
      * 保存消息（供 Netty 消息处理器调用）
      *
@@ -15,6 +15,8 @@ import com.jelly.cinema.im.domain.entity.Friend;
 import com.jelly.cinema.im.domain.entity.Group;
 import com.jelly.cinema.im.domain.entity.GroupMember;
 import com.jelly.cinema.im.domain.vo.ApplyRecordVO;
+import com.jelly.cinema.im.conversation.ConversationIndex;
+import com.jelly.cinema.im.fanout.GroupMemberCache;
 import com.jelly.cinema.im.mapper.ApplyRecordMapper;
 import com.jelly.cinema.im.mapper.FriendMapper;
 import com.jelly.cinema.im.mapper.GroupMapper;
@@ -47,6 +49,8 @@ public class ApplyServiceImpl implements ApplyService {
     private final GroupMemberMapper groupMemberMapper;
     private final RemoteUserService remoteUserService;
     private final ChatWebSocketHandler webSocketHandler;
+    private final GroupMemberCache groupMemberCache;
+    private final ConversationIndex conversationIndex;
 
     @Override
     public void applyFriend(FriendApplyDTO dto) {
@@ -323,6 +327,8 @@ public class ApplyServiceImpl implements ApplyService {
         member.setRole(role);
         member.setJoinTime(LocalDateTime.now());
         groupMemberMapper.insert(member);
+        groupMemberCache.invalidate(groupId);
+        conversationIndex.onGroupJoin(groupId, List.of(userId));
 
         // 更新群成员数
         Group group = groupMapper.selectById(groupId);
@@ -8,10 +8,12 @@ import com.jelly.cinema.common.api.feign.RemoteUserService;
 import com.jelly.cinema.common.core.domain.R;
 import com.jelly.cinema.common.core.exception.ServiceException;
 import com.jelly.cinema.common.security.utils.LoginHelper;
+import com.jelly.cinema.im.conversation.ConversationIndex;
 import com.jelly.cinema.im.domain.entity.Group;
 import com.jelly.cinema.im.domain.entity.GroupMember;
 import com.jelly.cinema.im.domain.vo.GroupMemberVO;
 import com.jelly.cinema.im.domain.vo.GroupVO;
+import com.jelly.cinema.im.fanout.GroupMemberCache;
 import com.jelly.cinema.im.mapper.GroupMapper;
 import com.jelly.cinema.im.mapper.GroupMemberMapper;
 import com.jelly.cinema.im.service.GroupService;
@@ -40,6 +42,8 @@ public class GroupServiceImpl implements GroupService {
     private final GroupMemberMapper groupMemberMapper;
     private final RemoteUserService remoteUserService;
     private final ChatWebSocketHandler webSocketHandler;
+    private final GroupMemberCache groupMemberCache;
+    private final ConversationIndex conversationIndex;
 
     @Override
     @Transactional(rollbackFor = Exception.class)
@@ -63,6 +67,8 @@ public class GroupServiceImpl implements GroupService {
 
         // 添加群主
         addMember(group.getId(), currentUserId, GroupMember.ROLE_OWNER);
+        List<Long> joinedIds = new ArrayList<>();
+        joinedIds.add(currentUserId);
 
         // 添加初始成员
         if (memberIds != null && !memberIds.isEmpty()) {
@@ -70,10 +76,13 @@ public class GroupServiceImpl implements GroupService {
                 if (!memberId.equals(currentUserId)) {
                     addMember(group.getId(), memberId, GroupMember.ROLE_MEMBER);
                     group.setMemberCount(group.getMemberCount() + 1);
+                    joinedIds.add(memberId);
                 }
             }
             groupMapper.updateById(group);
         }
+        groupMemberCache.invalidate(group.getId());
+        conversationIndex.onGroupJoin(group.getId(), joinedIds);
 
         log.info("群聊创建成功: groupId={}, name={}, owner={}", group.getId(), name, currentUserId);
         return group.getId();
@@ -214,6 +223,7 @@ public class GroupServiceImpl implements GroupService {
 
         Long currentUserId = LoginHelper.getUserId();
         GroupMember currentMember = getMember(groupId, currentUserId);
+        List<Long> kickedIds = new ArrayList<>();
 
         for (Long memberId : memberIds) {
             GroupMember member = getMember(groupId, memberId);
@@ -228,10 +238,13 @@ public class GroupServiceImpl implements GroupService {
             }
 
             groupMemberMapper.deleteById(member.getId());
+            kickedIds.add(memberId);
         }
 
         // 更新群成员数
         updateMemberCount(groupId);
+        groupMemberCache.invalidate(groupId);
+        conversationIndex.onGroupLeave(groupId, kickedIds);
 
         log.info("踢出群成员: groupId={}, memberIds={}", groupId, memberIds);
         
@@ -346,6 +359,8 @@ public class GroupServiceImpl implements GroupService {
 
         groupMemberMapper.deleteById(member.getId());
         updateMemberCount(groupId);
+        groupMemberCache.invalidate(groupId);
+        conversationIndex.onGroupLeave(groupId, List.of(currentUserId));
 
         log.info("退出群聊: groupId={}, userId={}", groupId, currentUserId);
     }
@@ -359,6 +374,7 @@ public class GroupServiceImpl implements GroupService {
         LambdaQueryWrapper<GroupMember> wrapper = new LambdaQueryWrapper<>();
         wrapper.eq(GroupMember::getGroupId, groupId);
         groupMemberMapper.delete(wrapper);
+        groupMemberCache.invalidate(groupId);
 
         // 标记群为已解散
         Group group = groupMapper.selectById(groupId);
@@ -393,6 +409,7 @@ public class GroupServiceImpl implements GroupService {
             throw new ServiceException("群聊不存在或已解散");
         }
 
+        List<Long> joinedIds = new ArrayList<>();
         for (Long userId : userIds) {
             if (getMember(groupId, userId) != null) {
                 continue; // 已是群成员
@@ -402,9 +419,12 @@ public class GroupServiceImpl implements GroupService {
             }
             addMember(groupId, userId, GroupMember.ROLE_MEMBER);
             group.setMemberCount(group.getMemberCount() + 1);
+            joinedIds.add(userId);
         }
 
         groupMapper.updateById(group);
+        groupMemberCache.invalidate(groupId);
+        conversationIndex.onGroupJoin(groupId, joinedIds);
         log.info("邀请入群: groupId={}, userIds={}", groupId, userIds);
     }
 
@@ -10,6 +10,7 @@ import com.jelly.cinema.im.domain.entity.ChatMessage;
 import com.jelly.cinema.im.domain.entity.Friend;
 import com.jelly.cinema.im.domain.entity.Group;
 import com.jelly.cinema.im.domain.entity.GroupMember;
+import com.jelly.cinema.im.fanout.GroupMemberCache;
 import com.jelly.cinema.im.mapper.ChatMessageMapper;
 import com.jelly.cinema.im.mapper.FriendMapper;
 import com.jelly.cinema.im.mapper.GroupMapper;
@@ -38,6 +39,7 @@ public class ImAdminServiceImpl implements ImAdminService {
     private final ChatMessageMapper chatMessageMapper;
     private final FriendMapper friendMapper;
     private final RemoteUserService remoteUserService;
+    private final GroupMemberCache groupMemberCache;
 
     @Override
     public List<RemoteGroup> getGroups(int pageNum, int pageSize, String keyword) {
@@ -135,6 +137,7 @@ public class ImAdminServiceImpl implements ImAdminService {
         LambdaQueryWrapper<GroupMember> memberWrapper = new LambdaQueryWrapper<>();
         memberWrapper.eq(GroupMember::getGroupId, groupId);
         groupMemberMapper.delete(memberWrapper);
+        groupMemberCache.invalidate(groupId);
         
         log.info("群组 {} 已被管理员解散，原因: {}", groupId, reason);
     }
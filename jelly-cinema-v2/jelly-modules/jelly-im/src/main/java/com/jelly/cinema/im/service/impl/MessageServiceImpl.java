@@ -12,17 +12,25 @@ import com.jelly.cinema.common.core.domain.PageResult;
 import com.jelly.cinema.common.core.domain.R;
 import com.jelly.cinema.common.core.exception.ServiceException;
 import com.jelly.cinema.common.redis.service.RedisService;
+import com.jelly.cinema.im.conversation.ConversationIndex;
+import com.jelly.cinema.im.conversation.ReadReceiptBatcher;
 import com.jelly.cinema.im.domain.dto.MessageDTO;
 import com.jelly.cinema.im.domain.entity.ChatMessage;
 import com.jelly.cinema.im.domain.entity.Friend;
 import com.jelly.cinema.im.domain.entity.Group;
-import com.jelly.cinema.im.domain.entity.GroupMember;
+import com.jelly.cinema.im.domain.entity.ReadWatermark;
+import com.jelly.cinema.im.domain.vo.MessageCursorVO;
 import com.jelly.cinema.im.domain.vo.MessageVO;
 import com.jelly.cinema.im.domain.vo.SessionVO;
+import com.jelly.cinema.im.fanout.GroupFanoutEngine;
+import com.jelly.cinema.im.fanout.GroupMemberCache;
+import com.jelly.cinema.im.history.RecentMessageWindow;
+import com.jelly.cinema.im.seq.SegmentSeqAllocator;
 import com.jelly.cinema.im.mapper.ChatMessageMapper;
 import com.jelly.cinema.im.mapper.FriendMapper;
 import com.jelly.cinema.im.mapper.GroupMapper;
 import com.jelly.cinema.im.mapper.GroupMemberMapper;
+import com.jelly.cinema.im.mapper.ReadWatermarkMapper;
 import com.jelly.cinema.im.mq.MessageProducer;
 import com.jelly.cinema.im.service.MessageService;
 import com.jelly.cinema.im.websocket.ChatWebSocketHandler;
@@ -54,6 +62,13 @@ public class MessageServiceImpl implements MessageService {
     private final GroupMemberMapper groupMemberMapper;
     private final FriendMapper friendMapper;
     private final ObjectMapper objectMapper;
+    private final GroupMemberCache groupMemberCache;
+    private final GroupFanoutEngine groupFanoutEngine;
+    private final SegmentSeqAllocator seqAllocator;
+    private final ConversationIndex conversationIndex;
+    private final ReadWatermarkMapper readWatermarkMapper;
+    private final ReadReceiptBatcher readReceiptBatcher;
+    private final RecentMessageWindow recentMessageWindow;
     
     @Autowired(required = false)
     private MessageProducer messageProducer;
@@ -65,7 +80,14 @@ public class MessageServiceImpl implements MessageService {
                               GroupMapper groupMapper,
                               GroupMemberMapper groupMemberMapper,
                               FriendMapper friendMapper,
-                              ObjectMapper objectMapper) {
+                              ObjectMapper objectMapper,
+                              GroupMemberCache groupMemberCache,
+                              GroupFanoutEngine groupFanoutEngine,
+                              SegmentSeqAllocator seqAllocator,
+                              ConversationIndex conversationIndex,
+                              ReadWatermarkMapper readWatermarkMapper,
+                              ReadReceiptBatcher readReceiptBatcher,
+                              RecentMessageWindow recentMessageWindow) {
         this.chatMessageMapper = chatMessageMapper;
         this.redisService = redisService;
         this.webSocketHandler = webSocketHandler;
@@ -74,6 +96,13 @@ public class MessageServiceImpl implements MessageService {
         this.groupMemberMapper = groupMemberMapper;
         this.friendMapper = friendMapper;
         this.objectMapper = objectMapper;
+        this.groupMemberCache = groupMemberCache;
+        this.groupFanoutEngine = groupFanoutEngine;
+        this.seqAllocator = seqAllocator;
+        this.conversationIndex = conversationIndex;
+        this.readWatermarkMapper = readWatermarkMapper;
+        this.readReceiptBatcher = readReceiptBatcher;
+        this.recentMessageWindow = recentMessageWindow;
     }
 
     /**
@@ -88,12 +117,14 @@ public class MessageServiceImpl implements MessageService {
         }
     }
 
-    private static final String SESSION_KEY = "jelly:im:session:";
-    private static final String MSG_SEQ_KEY = "jelly:im:seq:";
+    /**
+     * 旧版未读计数 Key，仅在首次建立会话索引时读取迁移
+     */
     private static final String UNREAD_KEY = "jelly:im:unread:";
     private static final String RATE_LIMIT_KEY = "jelly:im:rate:";
     private static final int MAX_CONTENT_LENGTH = 5000;
     private static final int RATE_LIMIT_PER_MINUTE = 30;
+    private static final int MAX_PULL_SIZE = 200;
 
     @Override
     public void sendMessage(Long fromId, MessageDTO dto) {
@@ -131,13 +162,8 @@ public class MessageServiceImpl implements MessageService {
                 throw new ServiceException("对方已将您屏蔽，无法发送消息");
             }
         } else if (dto.getCmdType() == 2) {
-            // 群聊：校验群成员身份
-            Long memberCount = groupMemberMapper.selectCount(
-                    new LambdaQueryWrapper<GroupMember>()
-                            .eq(GroupMember::getGroupId, toId)
-                            .eq(GroupMember::getUserId, fromId)
-            );
-            if (memberCount == 0) {
+            // 群聊：校验群成员身份（走群成员缓存）
+            if (!groupMemberCache.isMember(toId, fromId)) {
                 throw new ServiceException("您不是该群成员，无法发送消息");
             }
         }
@@ -145,8 +171,8 @@ public class MessageServiceImpl implements MessageService {
         // 生成会话 ID
         String sessionId = generateSessionId(fromId, toId, dto.getCmdType());
 
-        // 生成消息序列号
-        Long msgSeq = redisService.increment(MSG_SEQ_KEY + sessionId);
+        // 生成消息序列号（本地号段发放）
+        Long msgSeq = seqAllocator.next(sessionId);
 
         // 构建消息
         ChatMessage message = new ChatMessage();
@@ -171,10 +197,9 @@ public class MessageServiceImpl implements MessageService {
         message.setMsgSeq(msgSeq);
         message.setStatus(0);
 
-        // 写入 Redis Timeline（用于快速拉取）
-        String timelineKey = SESSION_KEY + sessionId + ":timeline";
+        // 追加到会话最近消息窗口（先于异步落库，打开会话时直接从窗口读取）
         MessageVO vo = toVO(message);
-        redisService.zAdd(timelineKey, toJsonSafe(vo), System.currentTimeMillis());
+        recentMessageWindow.append(vo);
 
         // 发送到 MQ 异步持久化（如果 MQ 可用）
         if (messageProducer != null) {
@@ -202,18 +227,16 @@ public class MessageServiceImpl implements MessageService {
         log.info("准备推送消息: cmdType={}, fromId={}, toId={}", dto.getCmdType(), fromId, toId);
         
         if (dto.getCmdType() == 2) {
-            // 群聊：推送给所有在线的群成员（除了发送者）
-            List<Long> memberIds = groupMemberMapper.selectUserIdsByGroupId(toId);
-            log.info("群成员列表: groupId={}, memberIds={}", toId, memberIds);
-            for (Long memberId : memberIds) {
-                if (!memberId.equals(fromId)) {
-                    log.info("尝试推送给群成员: memberId={}, 在线={}", memberId, webSocketHandler.isOnline(memberId));
-                    webSocketHandler.sendToUser(memberId, pushJson);
-                }
-            }
-            log.info("群消息推送完成: groupId={}, 成员数={}", toId, memberIds.size());
+            // 群聊：由扩散引擎并行推送给在线成员（除了发送者）
+            GroupFanoutEngine.FanoutPlan plan = groupFanoutEngine.plan(toId, fromId);
+            // 更新会话索引：写扩散为每个接收者累加未读数，读扩散的群由成员按序列号拉取
+            conversationIndex.onGroupMessage(message, plan);
+            groupFanoutEngine.deliver(plan.recipients(),
+                    (userIds, from, to) -> webSocketHandler.sendToUsers(userIds, from, to, pushJson));
+            log.info("群消息提交扩散: groupId={}, 成员数={}, mode={}", toId, plan.memberCount(), plan.mode());
         } else {
-            // 私聊：推送给接收方
+            // 私聊：更新双方会话索引并推送给接收方
+            conversationIndex.onPrivateMessage(message);
             log.info("尝试推送私聊消息: toId={}, 在线={}", toId, webSocketHandler.isOnline(toId));
             webSocketHandler.sendToUser(toId, pushJson);
         }
@@ -223,8 +246,33 @@ public class MessageServiceImpl implements MessageService {
 
     @Override
     public List<SessionVO> getSessionList(Long userId) {
+        // 从会话索引读取；索引尚未建立时按消息表聚合一次并写入索引
+        List<SessionVO> result = conversationIndex.list(userId);
+        if (result == null) {
+            result = aggregateSessions(userId);
+            conversationIndex.rebuild(userId, result);
+        }
+
+        // 填充昵称和头像
+        fillSessionProfiles(userId, result);
+
+        // 按最后消息时间排序
+        result.sort((a, b) -> {
+            if (a.getLastTime() == null) return 1;
+            if (b.getLastTime() == null) return -1;
+            return b.getLastTime().compareTo(a.getLastTime());
+        });
+
+        log.info("获取会话列表: userId={}, sessionCount={}", userId, result.size());
+        return result;
+    }
+
+    /**
+     * 按消息表聚合会话列表（仅在首次建立会话索引时执行）
+     */
+    private List<SessionVO> aggregateSessions(Long userId) {
         List<SessionVO> result = new ArrayList<>();
-        log.info("获取会话列表开始: userId={}", userId);
+        log.info("聚合会话列表开始: userId={}", userId);
         
         // ========== 1. 查询私聊会话 ==========
         LambdaQueryWrapper<ChatMessage> wrapper = new LambdaQueryWrapper<>();
@@ -244,26 +292,6 @@ public class MessageServiceImpl implements MessageService {
                         (m1, m2) -> m1.getCreateTime().isAfter(m2.getCreateTime()) ? m1 : m2
                 ));
 
-        // 收集所有需要查询的用户 ID
-        Set<Long> userIds = new HashSet<>();
-        for (ChatMessage msg : sessionMap.values()) {
-            userIds.add(msg.getFromId().equals(userId) ? msg.getToId() : msg.getFromId());
-        }
-        
-        // 批量查询用户信息
-        Map<Long, RemoteUser> userMap = new HashMap<>();
-        if (!userIds.isEmpty()) {
-            try {
-                R<List<RemoteUser>> userResult = remoteUserService.getUsersByIds(new ArrayList<>(userIds));
-                if (userResult.isSuccess() && userResult.getData() != null) {
-                    userMap = userResult.getData().stream()
-                            .collect(Collectors.toMap(RemoteUser::getId, u -> u, (a, b) -> a));
-                }
-            } catch (Exception e) {
-                log.warn("查询用户信息失败: {}", e.getMessage());
-            }
-        }
-
         // 构建私聊会话列表
         for (ChatMessage msg : sessionMap.values()) {
             SessionVO vo = new SessionVO();
@@ -279,21 +307,6 @@ public class MessageServiceImpl implements MessageService {
             vo.setUserId(targetUserId);
             vo.setLastMessage(msg.getContent());
             vo.setLastTime(msg.getCreateTime());
-            
-            // 计算未读数
-            String unreadKey = UNREAD_KEY + userId + ":" + sessionId;
-            Integer unreadCount = redisService.get(unreadKey);
-            vo.setUnreadCount(unreadCount != null ? unreadCount : 0);
-            
-            // 填充用户信息
-            RemoteUser targetUser = userMap.get(targetUserId);
-            if (targetUser != null) {
-                vo.setNickname(targetUser.getNickname());
-                vo.setAvatar(targetUser.getAvatar());
-            } else {
-                vo.setNickname("用户" + targetUserId);
-            }
-            
             result.add(vo);
         }
         
@@ -311,8 +324,6 @@ public class MessageServiceImpl implements MessageService {
                 vo.setSessionId(sessionId);
                 vo.setType(2); // 群聊
                 vo.setGroupId(group.getId());
-                vo.setNickname(group.getName());
-                vo.setAvatar(group.getAvatar());
                 
                 // 查询群的最后一条消息
                 LambdaQueryWrapper<ChatMessage> groupMsgWrapper = new LambdaQueryWrapper<>();
@@ -329,26 +340,92 @@ public class MessageServiceImpl implements MessageService {
                     vo.setLastTime(group.getCreateTime());
                 }
                 
-                // 计算未读数
-                String unreadKey = UNREAD_KEY + userId + ":" + sessionId;
-                Integer unreadCount = redisService.get(unreadKey);
-                vo.setUnreadCount(unreadCount != null ? unreadCount : 0);
-                
                 result.add(vo);
             }
         }
         
-        // 按最后消息时间排序
-        result.sort((a, b) -> {
-            if (a.getLastTime() == null) return 1;
-            if (b.getLastTime() == null) return -1;
-            return b.getLastTime().compareTo(a.getLastTime());
-        });
+        // ========== 3. 迁移旧版未读计数（一次 MGET） ==========
+        fillUnreadCounts(userId, result);
 
-        log.info("获取会话列表结束: userId={}, sessionCount={}", userId, result.size());
+        log.info("聚合会话列表结束: userId={}, sessionCount={}", userId, result.size());
         return result;
     }
 
+    /**
+     * 从旧版未读计数 Key 批量读取会话未读数
+     */
+    private void fillUnreadCounts(Long userId, List<SessionVO> sessions) {
+        if (sessions.isEmpty()) {
+            return;
+        }
+        List<String> unreadKeys = sessions.stream()
+                .map(vo -> UNREAD_KEY + userId + ":" + vo.getSessionId())
+                .collect(Collectors.toList());
+        List<Object> unreadCounts = redisService.mGet(unreadKeys);
+        for (int i = 0; i < sessions.size(); i++) {
+            Object unreadCount = i < unreadCounts.size() ? unreadCounts.get(i) : null;
+            sessions.get(i).setUnreadCount(unreadCount instanceof Number number ? number.intValue() : 0);
+        }
+    }
+
+    /**
+     * 批量填充对方昵称/头像与群名称/头像，已解散或不存在的群会话从列表和索引中移除
+     */
+    private void fillSessionProfiles(Long userId, List<SessionVO> sessions) {
+        Set<Long> userIds = new HashSet<>();
+        Set<Long> groupIds = new HashSet<>();
+        for (SessionVO vo : sessions) {
+            if (vo.getType() == 2) {
+                groupIds.add(vo.getGroupId());
+            } else {
+                userIds.add(vo.getUserId());
+            }
+        }
+
+        // 批量查询用户信息
+        Map<Long, RemoteUser> userMap = new HashMap<>();
+        if (!userIds.isEmpty()) {
+            try {
+                R<List<RemoteUser>> userResult = remoteUserService.getUsersByIds(new ArrayList<>(userIds));
+                if (userResult.isSuccess() && userResult.getData() != null) {
+                    userMap = userResult.getData().stream()
+                            .collect(Collectors.toMap(RemoteUser::getId, u -> u, (a, b) -> a));
+                }
+            } catch (Exception e) {
+                log.warn("查询用户信息失败: {}", e.getMessage());
+            }
+        }
+
+        // 批量查询群信息
+        Map<Long, Group> groupMap = groupIds.isEmpty() ? Collections.emptyMap()
+                : groupMapper.selectBatchIds(groupIds).stream()
+                        .collect(Collectors.toMap(Group::getId, g -> g, (a, b) -> a));
+
+        Iterator<SessionVO> iterator = sessions.iterator();
+        while (iterator.hasNext()) {
+            SessionVO vo = iterator.next();
+            if (vo.getType() == 2) {
+                Group group = groupMap.get(vo.getGroupId());
+                if (group == null || group.getStatus() != 0) {
+                    // 群已解散
+                    iterator.remove();
+                    conversationIndex.remove(userId, vo.getSessionId());
+                    continue;
+                }
+                vo.setNickname(group.getName());
+                vo.setAvatar(group.getAvatar());
+            } else {
+                RemoteUser targetUser = userMap.get(vo.getUserId());
+                if (targetUser != null) {
+                    vo.setNickname(targetUser.getNickname());
+                    vo.setAvatar(targetUser.getAvatar());
+                } else {
+                    vo.setNickname("用户" + vo.getUserId());
+                }
+            }
+        }
+    }
+
     @Override
     public PageResult<MessageVO> getHistory(String sessionId, PageQuery query) {
         log.info("获取历史消息开始: sessionId={}, pageNum={}, pageSize={}",
@@ -374,9 +451,8 @@ public class MessageServiceImpl implements MessageService {
                 wrapper
         );
 
-        List<MessageVO> voList = page.getRecords().stream()
-                .map(this::toVO)
-                .collect(Collectors.toList());
+        List<MessageVO> voList = toVOList(page.getRecords());
+        fillReadStatus(sessionId, voList);
 
         PageResult<MessageVO> result = PageResult.build(voList, page.getTotal(),
                 query.getPageNum(), query.getPageSize());
@@ -385,6 +461,108 @@ public class MessageServiceImpl implements MessageService {
         return result;
     }
 
+    @Override
+    public MessageCursorVO getHistoryBefore(Long userId, String sessionId, Long beforeSeq, Integer limit) {
+        checkSessionAccess(userId, sessionId);
+        int size = limit == null || limit <= 0 ? 20 : Math.min(limit, MAX_PULL_SIZE);
+
+        // 多取一条用于判断是否还有更早的消息
+        List<MessageVO> page = recentMessageWindow.read(sessionId, beforeSeq, size + 1);
+        if (page == null) {
+            // 窗口未命中：走 (session_id, msg_seq) 索引范围扫描，无 OFFSET、无 COUNT
+            int fetch = beforeSeq == null ? Math.max(size + 1, recentMessageWindow.getWindowSize()) : size + 1;
+            LambdaQueryWrapper<ChatMessage> wrapper = new LambdaQueryWrapper<>();
+            if (sessionId.startsWith("private_")) {
+                // 兼容旧格式 sessionId（x_y），两段索引范围合并后仍按 msg_seq 取前 N 条
+                wrapper.in(ChatMessage::getSessionId, sessionId, sessionId.substring("private_".length()));
+            } else {
+                wrapper.eq(ChatMessage::getSessionId, sessionId);
+            }
+            wrapper.lt(beforeSeq != null, ChatMessage::getMsgSeq, beforeSeq)
+                    .eq(ChatMessage::getStatus, 0)
+                    .orderByDesc(ChatMessage::getMsgSeq)
+                    .last("LIMIT " + fetch);
+            List<ChatMessage> rows = chatMessageMapper.selectList(wrapper);
+            page = rows.stream().map(this::toBaseVO).collect(Collectors.toList());
+            if (beforeSeq == null) {
+                // 打开会话时顺便建立最近消息窗口
+                recentMessageWindow.fill(sessionId, page, rows.size() < fetch);
+            }
+        }
+
+        boolean hasMore = page.size() > size;
+        List<MessageVO> records = new ArrayList<>(hasMore ? page.subList(0, size) : page);
+        fillSenders(records);
+        fillReadStatus(sessionId, records);
+
+        MessageCursorVO result = new MessageCursorVO();
+        result.setRecords(records);
+        result.setHasMore(hasMore);
+        result.setNextBeforeSeq(hasMore ? records.get(records.size() - 1).getMsgSeq() : null);
+        return result;
+    }
+
+    /**
+     * 校验用户是否为会话参与者
+     */
+    private void checkSessionAccess(Long userId, String sessionId) {
+        if (sessionId.startsWith("group_")) {
+            Long groupId = ConversationIndex.targetOf(userId, sessionId);
+            if (groupId == null || !groupMemberCache.isMember(groupId, userId)) {
+                throw new ServiceException("您不是该群成员");
+            }
+            return;
+        }
+        String ids = sessionId.startsWith("private_") ? sessionId.substring("private_".length()) : sessionId;
+        if (!Arrays.asList(ids.split("_")).contains(String.valueOf(userId))) {
+            throw new ServiceException("无权访问此会话");
+        }
+    }
+
+    /**
+     * 私聊消息的已读状态由接收方的已读水位推导（兼容旧数据中逐条写入的 read_status）
+     */
+    private void fillReadStatus(String sessionId, List<MessageVO> messages) {
+        if (messages.isEmpty() || sessionId.startsWith("group_")) {
+            return;
+        }
+        // 先读会话索引中的水位，缺失时再查水位表
+        Set<Long> readerIds = messages.stream().map(MessageVO::getToId).collect(Collectors.toSet());
+        Map<Long, Long> readSeqs = conversationIndex.readSeqs(sessionId, readerIds);
+        if (readSeqs.size() < readerIds.size()) {
+            for (ReadWatermark watermark : readWatermarkMapper.selectBySessionId(sessionId)) {
+                readSeqs.merge(watermark.getUserId(), watermark.getReadSeq(), Math::max);
+            }
+        }
+        if (readSeqs.isEmpty()) {
+            return;
+        }
+        for (MessageVO vo : messages) {
+            Long readSeq = readSeqs.get(vo.getToId());
+            if (readSeq != null && vo.getMsgSeq() != null && vo.getMsgSeq() <= readSeq
+                    && sessionId.equals(vo.getSessionId())) {
+                vo.setReadStatus(1);
+            }
+        }
+    }
+
+    @Override
+    public List<MessageVO> pullGroupMessages(Long userId, Long groupId, Long afterSeq, Integer limit) {
+        if (!groupMemberCache.isMember(groupId, userId)) {
+            throw new ServiceException("您不是该群成员");
+        }
+        int size = limit == null || limit <= 0 ? 50 : Math.min(limit, MAX_PULL_SIZE);
+
+        LambdaQueryWrapper<ChatMessage> wrapper = new LambdaQueryWrapper<>();
+        wrapper.eq(ChatMessage::getSessionId, "group_" + groupId)
+                .gt(ChatMessage::getMsgSeq, afterSeq == null ? 0L : afterSeq)
+                .eq(ChatMessage::getStatus, 0)
+                .orderByAsc(ChatMessage::getMsgSeq)
+                .last("LIMIT " + size);
+
+        return toVOList(chatMessageMapper.selectList(wrapper));
+    }
+
     @Override
     public void recallMessage(Long userId, Long messageId) {
         ChatMessage message = chatMessageMapper.selectById(messageId);
@@ -403,6 +581,8 @@ public class MessageServiceImpl implements MessageService {
 
         message.setStatus(1);
         chatMessageMapper.updateById(message);
+        conversationIndex.onRecall(message);
+        recentMessageWindow.invalidate(message.getSessionId());
 
         // 构建撤回通知（Long ID 需要转字符串避免 JS 精度丢失）
         String pushJson = toJsonSafe(Map.of(
@@ -443,6 +623,27 @@ public class MessageServiceImpl implements MessageService {
      * 转换为 VO（单条消息）
      */
     private MessageVO toVO(ChatMessage message) {
+        MessageVO vo = toBaseVO(message);
+        
+        // 查询发送者信息
+        try {
+            R<RemoteUser> userResult = remoteUserService.getUserById(message.getFromId());
+            if (userResult.isSuccess() && userResult.getData() != null) {
+                RemoteUser user = userResult.getData();
+                vo.setFromNickname(user.getNickname());
+                vo.setFromAvatar(user.getAvatar());
+            }
+        } catch (Exception e) {
+            log.warn("查询发送者信息失败: {}", e.getMessage());
+        }
+        
+        return vo;
+    }
+
+    /**
+     * 转换为 VO（不含发送者昵称/头像）
+     */
+    private MessageVO toBaseVO(ChatMessage message) {
         MessageVO vo = BeanUtil.copyProperties(message, MessageVO.class);
         
         // 解析 extra 字段：如果是 JSON 且包含 fileName，提取出来返回给前端
@@ -457,19 +658,6 @@ public class MessageServiceImpl implements MessageService {
                 // 解析失败，保持原值
             }
         }
-        
-        // 查询发送者信息
-        try {
-            R<RemoteUser> userResult = remoteUserService.getUserById(message.getFromId());
-            if (userResult.isSuccess() && userResult.getData() != null) {
-                RemoteUser user = userResult.getData();
-                vo.setFromNickname(user.getNickname());
-                vo.setFromAvatar(user.getAvatar());
-            }
-        } catch (Exception e) {
-            log.warn("查询发送者信息失败: {}", e.getMessage());
-        }
-        
         return vo;
     }
     
@@ -477,13 +665,24 @@ public class MessageServiceImpl implements MessageService {
      * 批量转换为 VO（消息列表）
      */
     private List<MessageVO> toVOList(List<ChatMessage> messages) {
+        List<MessageVO> result = messages.stream()
+                .map(this::toBaseVO)
+                .collect(Collectors.toList());
+        fillSenders(result);
+        return result;
+    }
+
+    /**
+     * 批量填充发送者昵称和头像（一次远程调用）
+     */
+    private void fillSenders(List<MessageVO> messages) {
         if (messages.isEmpty()) {
-            return new ArrayList<>();
+            return;
         }
         
         // 收集所有发送者 ID
         Set<Long> senderIds = messages.stream()
-                .map(ChatMessage::getFromId)
+                .map(MessageVO::getFromId)
                 .collect(Collectors.toSet());
         
         // 批量查询用户信息
@@ -498,33 +697,13 @@ public class MessageServiceImpl implements MessageService {
             log.warn("批量查询用户信息失败: {}", e.getMessage());
         }
         
-        // 转换为 VO
-        List<MessageVO> result = new ArrayList<>();
-        for (ChatMessage msg : messages) {
-            MessageVO vo = BeanUtil.copyProperties(msg, MessageVO.class);
-            
-            // 解析 extra 字段：如果是 JSON 且包含 fileName，提取出来返回给前端
-            String extra = msg.getExtra();
-            if (extra != null && extra.startsWith("{")) {
-                try {
-                    cn.hutool.json.JSONObject jsonObj = JSONUtil.parseObj(extra);
-                    if (jsonObj.containsKey("fileName")) {
-                        vo.setExtra(jsonObj.getStr("fileName"));
-                    }
-                } catch (Exception e) {
-                    // 解析失败，保持原值
-                }
-            }
-            
-            RemoteUser sender = userMap.get(msg.getFromId());
+        for (MessageVO vo : messages) {
+            RemoteUser sender = userMap.get(vo.getFromId());
             if (sender != null) {
                 vo.setFromNickname(sender.getNickname());
                 vo.setFromAvatar(sender.getAvatar());
             }
-            result.add(vo);
         }
-        
-        return result;
     }
 
     @Override
@@ -532,9 +711,8 @@ public class MessageServiceImpl implements MessageService {
     public void deleteSession(Long userId, String sessionId, Boolean keepMessages) {
         log.info("删除会话: userId={}, sessionId={}, keepMessages={}", userId, sessionId, keepMessages);
 
-        // 删除会话的未读计数
-        String unreadKey = UNREAD_KEY + userId + ":" + sessionId;
-        redisService.delete(unreadKey);
+        // 从会话索引中移除（同时清除未读计数）
+        conversationIndex.remove(userId, sessionId);
 
         // 如果不保留消息，删除该会话的所有消息
         if (!Boolean.TRUE.equals(keepMessages)) {
@@ -543,6 +721,7 @@ public class MessageServiceImpl implements MessageService {
             // 对于私聊，只删除当前用户可见的消息（实际上是标记删除）
             // 为简化实现，这里直接删除消息
             chatMessageMapper.delete(wrapper);
+            recentMessageWindow.invalidate(sessionId);
             log.info("删除会话消息: sessionId={}", sessionId);
         }
     }
@@ -565,6 +744,7 @@ public class MessageServiceImpl implements MessageService {
         // 标记消息为已删除（status=2）
         message.setStatus(2);
         chatMessageMapper.updateById(message);
+        recentMessageWindow.invalidate(message.getSessionId());
     }
 
     @Override
@@ -588,63 +768,58 @@ public class MessageServiceImpl implements MessageService {
         LambdaQueryWrapper<ChatMessage> wrapper = new LambdaQueryWrapper<>();
         wrapper.eq(ChatMessage::getSessionId, sessionId);
         chatMessageMapper.delete(wrapper);
+        recentMessageWindow.invalidate(sessionId);
 
-        // 清除未读计数
-        String unreadKey = UNREAD_KEY + userId + ":" + sessionId;
-        redisService.delete(unreadKey);
+        // 重置该用户的未读计数和已读水位（会话摘要为双方共享，保留）
+        conversationIndex.onCleared(userId, sessionId);
     }
 
     @Override
-    @Transactional(rollbackFor = Exception.class)
     public void markAsRead(Long userId, String sessionId) {
-        log.info("标记消息已读: userId={}, sessionId={}", userId, sessionId);
+        // 已读到会话当前的最后一条消息
+        Long readSeq = conversationIndex.lastSeq(sessionId);
+        if (readSeq == null) {
+            readSeq = chatMessageMapper.selectMaxSeq(sessionId);
+        }
+        markReadUpTo(userId, sessionId, readSeq);
+    }
 
-        // 清除未读计数
-        String unreadKey = UNREAD_KEY + userId + ":" + sessionId;
-        redisService.delete(unreadKey);
+    @Override
+    public void markReadUpTo(Long userId, String sessionId, Long readSeq) {
+        log.info("推进已读水位: userId={}, sessionId={}, readSeq={}", userId, sessionId, readSeq);
+        checkSessionAccess(userId, sessionId);
+
+        // 水位不能超过会话当前的最后一条消息（回执来自客户端）
+        if (readSeq != null && readSeq > 0) {
+            Long lastSeq = conversationIndex.lastSeq(sessionId);
+            if (lastSeq == null || readSeq > lastSeq) {
+                Long maxSeq = chatMessageMapper.selectMaxSeq(sessionId);
+                lastSeq = maxSeq != null ? Math.max(maxSeq, lastSeq != null ? lastSeq : 0L) : lastSeq;
+            }
+            if (lastSeq == null || lastSeq <= 0) {
+                log.warn("会话没有消息，忽略已读水位: userId={}, sessionId={}, readSeq={}", userId, sessionId, readSeq);
+                readSeq = null;
+            } else if (readSeq > lastSeq) {
+                log.warn("已读水位超过会话最大序列号，已截断: userId={}, sessionId={}, readSeq={}, lastSeq={}",
+                        userId, sessionId, readSeq, lastSeq);
+                readSeq = lastSeq;
+            }
+        }
 
-        // 只处理私聊消息的已读状态（群聊不需要）
-        if (!sessionId.startsWith("group_")) {
-            // 查找该会话中发给当前用户的所有未读消息（兼容旧 sessionId 格式）
-            LambdaQueryWrapper<ChatMessage> wrapper = new LambdaQueryWrapper<>();
+        // 清除未读计数并记录水位
+        conversationIndex.markRead(userId, sessionId, readSeq);
+        if (readSeq == null || readSeq <= 0) {
+            return;
+        }
 
-            if (sessionId.startsWith("private_")) {
-                // 新格式：private_min_max，同时兼容旧的 min_max
-                String oldSessionId = sessionId.substring("private_".length());
-                wrapper.and(w -> w.eq(ChatMessage::getSessionId, sessionId)
-                        .or().eq(ChatMessage::getSessionId, oldSessionId));
-            } else {
-                // 旧格式：直接按原 sessionId 匹配
-                wrapper.eq(ChatMessage::getSessionId, sessionId);
-            }
+        // 一条 upsert 推进水位，不再逐条更新消息的 read_status
+        readWatermarkMapper.advance(IdWorker.getId(), userId, sessionId, readSeq);
 
-            wrapper.eq(ChatMessage::getToId, userId)
-                   .eq(ChatMessage::getCmdType, 1)  // 私聊
-                   .and(w -> w.isNull(ChatMessage::getReadStatus).or().eq(ChatMessage::getReadStatus, 0));
-            
-            List<ChatMessage> unreadMessages = chatMessageMapper.selectList(wrapper);
-            
-            if (!unreadMessages.isEmpty()) {
-                // 收集需要通知的发送者ID
-                Set<Long> senderIds = new HashSet<>();
-                
-                // 批量更新消息为已读
-                for (ChatMessage msg : unreadMessages) {
-                    msg.setReadStatus(1);
-                    chatMessageMapper.updateById(msg);
-                    senderIds.add(msg.getFromId());
-                }
-                
-                log.info("已更新 {} 条消息为已读状态", unreadMessages.size());
-                
-                // 通过 WebSocket 通知发送方消息已被读取
-                for (Long senderId : senderIds) {
-                    Map<String, Object> notification = new HashMap<>();
-                    notification.put("type", "read");
-                    notification.put("sessionId", sessionId);
-                    notification.put("readerId", String.valueOf(userId));  // 转为字符串避免 JS 大数字精度丢失
-                    webSocketHandler.sendToUser(senderId, JSONUtil.toJsonStr(notification));
-                }
+        // 私聊：批量异步通知对方消息已被读取（群聊不需要）
+        if (!sessionId.startsWith("group_")) {
+            Long peerId = ConversationIndex.targetOf(userId, sessionId);
+            if (peerId != null && !peerId.equals(userId)) {
+                readReceiptBatcher.submit(peerId, userId, sessionId, readSeq);
             }
         }
     }
@@ -672,7 +847,7 @@ public class MessageServiceImpl implements MessageService {
 
         // 生成消息序列号（如果没有）
         if (message.getMsgSeq() == null) {
-            message.setMsgSeq(redisService.increment(MSG_SEQ_KEY + message.getSessionId()));
+            message.setMsgSeq(seqAllocator.next(message.getSessionId()));
         }
 
         // 设置消息类型（如果没有）
@@ -691,26 +866,35 @@ public class MessageServiceImpl implements MessageService {
         }
 
         chatMessageMapper.insert(message);
+        recentMessageWindow.append(toBaseVO(message));
+
+        // 更新会话索引
+        if (message.getCmdType() != null && message.getCmdType() == 2) {
+            conversationIndex.onGroupMessage(message, groupFanoutEngine.plan(message.getToId(), message.getFromId()));
+        } else {
+            conversationIndex.onPrivateMessage(message);
+        }
         log.info("消息保存成功: id={}, sessionId={}", message.getId(), message.getSessionId());
     }
 
     @Override
-    @Transactional(rollbackFor = Exception.class)
     public void markMessagesAsRead(List<Long> messageIds) {
         if (messageIds == null || messageIds.isEmpty()) {
             return;
         }
 
-        log.info("批量标记消息已读: messageIds={}", messageIds);
+        log.info("批量标记消息已读: count={}", messageIds.size());
 
-        for (Long messageId : messageIds) {
-            ChatMessage message = chatMessageMapper.selectById(messageId);
-            if (message != null && (message.getReadStatus() == null || message.getReadStatus() == 0)) {
-                message.setReadStatus(1);
-                chatMessageMapper.updateById(message);
+        // 一次查出所有消息，按 (接收者, 会话) 取最大序列号推进水位
+        Map<Long, Map<String, Long>> readSeqs = new HashMap<>();
+        for (ChatMessage message : chatMessageMapper.selectBatchIds(messageIds)) {
+            if (message.getCmdType() == null || message.getCmdType() != 1 || message.getMsgSeq() == null) {
+                continue;
             }
+            readSeqs.computeIfAbsent(message.getToId(), k -> new HashMap<>())
+                    .merge(message.getSessionId(), message.getMsgSeq(), Math::max);
         }
-
-        log.info("批量标记已读完成: count={}", messageIds.size());
+        readSeqs.forEach((userId, sessions) ->
+                sessions.forEach((sessionId, readSeq) -> markReadUpTo(userId, sessionId, readSeq)));
     }
 }
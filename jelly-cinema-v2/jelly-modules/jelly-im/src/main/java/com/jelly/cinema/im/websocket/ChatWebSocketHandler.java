@@ -3,6 +3,7 @@ package com.jelly.cinema.im.websocket;
 import cn.hutool.json.JSONUtil;
 import com.jelly.cinema.im.domain.dto.MessageDTO;
 import com.jelly.cinema.im.domain.vo.FriendVO;
+import com.jelly.cinema.im.netty.session.LongSessionRegistry;
 import com.jelly.cinema.im.service.FriendService;
 import com.jelly.cinema.im.service.MessageService;
 import lombok.extern.slf4j.Slf4j;
@@ -17,6 +18,7 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -37,16 +39,16 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
     }
 
     /**
-     * 在线用户会话 Map: userId -> WebSocketSession
+     * 在线用户会话: userId -> WebSocketSession（反向映射为会话属性 userId）
      */
-    private static final Map<Long, WebSocketSession> ONLINE_SESSIONS = new ConcurrentHashMap<>();
+    private static final LongSessionRegistry<WebSocketSession> ONLINE_SESSIONS = new LongSessionRegistry<>();
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) {
         Long userId = getUserId(session);
         if (userId != null) {
             // Close stale session if exists (e.g. network reconnect)
-            WebSocketSession oldSession = ONLINE_SESSIONS.get(userId);
+            WebSocketSession oldSession = ONLINE_SESSIONS.put(userId, session);
             if (oldSession != null && oldSession.isOpen() && !oldSession.getId().equals(session.getId())) {
                 try {
                     oldSession.close(CloseStatus.NORMAL);
@@ -55,7 +57,6 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
                     log.warn("关闭旧连接失败: userId={}", userId);
                 }
             }
-            ONLINE_SESSIONS.put(userId, session);
             log.info("用户上线: {}, 当前在线人数: {}", userId, ONLINE_SESSIONS.size());
             // 通知好友该用户上线
             notifyFriendsOnlineStatus(userId, true);
@@ -94,9 +95,7 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
                 status != null ? status.getReason() : null);
         if (userId != null) {
             // 只有当前session是存储的session时才移除，避免新连接被旧连接关闭事件覆盖
-            WebSocketSession storedSession = ONLINE_SESSIONS.get(userId);
-            if (storedSession != null && storedSession.getId().equals(session.getId())) {
-                ONLINE_SESSIONS.remove(userId);
+            if (ONLINE_SESSIONS.remove(userId, session)) {
                 log.info("用户下线: {}, 当前在线人数: {}", userId, ONLINE_SESSIONS.size());
                 // 通知好友该用户下线
                 notifyFriendsOnlineStatus(userId, false);
@@ -120,7 +119,7 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
         log.info("推送消息: userId={}, 在线={}, sessionOpen={}", userId, session != null, session != null && session.isOpen());
         if (session != null && session.isOpen()) {
             try {
-                session.sendMessage(new TextMessage(message));
+                send(session, new TextMessage(message));
                 log.info("消息推送成功: userId={}", userId);
             } catch (IOException e) {
                 log.error("发送消息失败: userId={}", userId, e);
@@ -139,6 +138,40 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
         }
     }
 
+    /**
+     * 发送同一条消息给 userIds[from, to) 中的在线用户（群消息扩散用）
+     *
+     * 消息只构建一次，不在线的用户直接跳过，不逐个打印日志
+     *
+     * @return 实际送达的用户数
+     */
+    public int sendToUsers(long[] userIds, int from, int to, String message) {
+        TextMessage textMessage = new TextMessage(message);
+        int delivered = 0;
+        for (int i = from; i < to; i++) {
+            WebSocketSession session = ONLINE_SESSIONS.get(userIds[i]);
+            if (session == null || !session.isOpen()) {
+                continue;
+            }
+            try {
+                send(session, textMessage);
+                delivered++;
+            } catch (IOException e) {
+                log.warn("发送消息失败: userId={}, error={}", userIds[i], e.getMessage());
+            }
+        }
+        return delivered;
+    }
+
+    /**
+     * 同一会话的发送串行化（WebSocketSession 不支持并发发送，群消息可能由扩散线程并行推送）
+     */
+    private void send(WebSocketSession session, TextMessage message) throws IOException {
+        synchronized (session) {
+            session.sendMessage(message);
+        }
+    }
+
     /**
      * 判断用户是否在线
      */
@@ -161,8 +194,8 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
     /**
      * 获取所有在线用户ID
      */
-    public java.util.Set<Long> getOnlineUserIds() {
-        return ONLINE_SESSIONS.keySet();
+    public Set<Long> getOnlineUserIds() {
+        return ONLINE_SESSIONS.keySnapshot();
     }
 
     /**
@@ -171,7 +204,7 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
     private void sendError(WebSocketSession session, String error) {
         try {
             String json = JSONUtil.toJsonStr(Map.of("type", "error", "message", error));
-            session.sendMessage(new TextMessage(json));
+            send(session, new TextMessage(json));
         } catch (IOException e) {
             log.error("发送错误消息失败", e);
         }
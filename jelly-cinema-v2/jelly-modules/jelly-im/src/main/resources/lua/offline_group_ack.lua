@@ -0,0 +1,25 @@
+-- offline_group_ack.lua
+-- 确认群聊离线摘要：按已投递的条数扣减，只删除没有新消息的群
+-- KEYS[1]: 离线条数 (im:offline:group:{userId})
+-- KEYS[2]: 最后一条消息 (im:offline:group:last:{userId})
+-- ARGV: 每个群三个参数 {groupId, 已投递条数, 已投递的最后一条消息}
+-- Return: 清除的群数
+
+local countKey = KEYS[1]
+local lastKey = KEYS[2]
+local cleared = 0
+
+for i = 1, #ARGV, 3 do
+    local groupId = ARGV[i]
+    local remaining = redis.call('HINCRBY', countKey, groupId, -tonumber(ARGV[i + 1]))
+    if remaining <= 0 then
+        redis.call('HDEL', countKey, groupId)
+        cleared = cleared + 1
+    end
+    -- 投递后有新消息时最后一条已被覆盖，保留
+    if redis.call('HGET', lastKey, groupId) == ARGV[i + 2] then
+        redis.call('HDEL', lastKey, groupId)
+    end
+end
+
+return cleared
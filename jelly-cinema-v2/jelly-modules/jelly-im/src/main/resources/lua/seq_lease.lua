@@ -0,0 +1,47 @@
+-- seq_lease.lua
+-- 会话序列号号段租约：同一时刻只有一个节点可以持有号段，其他节点写入同一会话时立即切换为逐条 INCR
+-- KEYS[1]: 计数器 (jelly:im:seq:{sessionId})
+-- KEYS[2]: 号段持有者 (jelly:im:seq:owner:{sessionId})
+-- KEYS[3]: 多节点写入标记 (jelly:im:seq:shared:{sessionId})
+-- ARGV[1]: 节点实例 ID
+-- ARGV[2]: 号段步长
+-- ARGV[3]: 租约有效期（毫秒）
+-- ARGV[4]: 上一号段第一个未发放的序列号
+-- ARGV[5]: 上一号段末尾（0 表示没有可归还的序列号）
+-- ARGV[6]: 多节点写入标记有效期（毫秒）
+-- ARGV[7]: 号段撤销频道
+-- ARGV[8]: 会话 ID
+-- Return: {start, end, leased}
+--   leased=1: 获得号段 [start, end]
+--   leased=0: 多节点写入，逐条分配的序列号 start
+
+local counterKey = KEYS[1]
+local ownerKey = KEYS[2]
+local sharedKey = KEYS[3]
+
+-- 多节点写入中：逐条分配
+if redis.call('EXISTS', sharedKey) == 1 then
+    redis.call('PEXPIRE', sharedKey, ARGV[6])
+    local seq = redis.call('INCR', counterKey)
+    return {seq, seq, 0}
+end
+
+-- 其他节点持有号段：标记为多节点写入，通知持有者关闭号段，本次直接逐条分配，不等待对方租约到期
+local owner = redis.call('GET', ownerKey)
+if owner and owner ~= ARGV[1] then
+    redis.call('SET', sharedKey, '1', 'PX', ARGV[6])
+    redis.call('PUBLISH', ARGV[7], ARGV[8])
+    local seq = redis.call('INCR', counterKey)
+    return {seq, seq, 0}
+end
+
+-- 上一号段之后没有其他分配：归还未发放的序列号
+local prevEnd = tonumber(ARGV[5])
+if prevEnd > 0 and tonumber(redis.call('GET', counterKey) or '0') == prevEnd then
+    redis.call('SET', counterKey, tonumber(ARGV[4]) - 1)
+end
+
+local step = tonumber(ARGV[2])
+redis.call('SET', ownerKey, ARGV[1], 'PX', ARGV[3])
+local last = redis.call('INCRBY', counterKey, step)
+return {last - step + 1, last, 1}
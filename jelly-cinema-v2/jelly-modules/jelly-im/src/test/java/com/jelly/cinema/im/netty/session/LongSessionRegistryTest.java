@@ -0,0 +1,171 @@
+package com.jelly.cinema.im.netty.session;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * LongSessionRegistry 测试：开放寻址 + 回移删除的正确性、扩容、并发读写
+ *
+ * @author Jelly Cinema
+ */
+class LongSessionRegistryTest {
+
+    @Test
+    void putGetReplaceAndRemove() {
+        LongSessionRegistry<String> registry = new LongSessionRegistry<>();
+        assertNull(registry.put(1L, "a"));
+        assertNull(registry.put(0L, "zero"));
+        assertNull(registry.put(-1L, "minus"));
+        assertEquals("a", registry.get(1L));
+        assertEquals("zero", registry.get(0L));
+        assertEquals("minus", registry.get(-1L));
+
+        assertEquals("a", registry.put(1L, "b"));
+        assertEquals("b", registry.get(1L));
+        assertEquals(3, registry.size());
+
+        assertEquals("b", registry.remove(1L));
+        assertNull(registry.get(1L));
+        assertNull(registry.remove(1L));
+        assertEquals(2, registry.size());
+    }
+
+    @Test
+    void conditionalRemoveKeepsNewerSession() {
+        LongSessionRegistry<Object> registry = new LongSessionRegistry<>();
+        Object oldSession = new Object();
+        Object newSession = new Object();
+        registry.put(42L, oldSession);
+        registry.put(42L, newSession);
+
+        // 旧连接的关闭事件不能移除新连接
+        assertFalse(registry.remove(42L, oldSession));
+        assertSame(newSession, registry.get(42L));
+        assertTrue(registry.remove(42L, newSession));
+        assertNull(registry.get(42L));
+    }
+
+    @Test
+    void randomOperationsMatchHashMap() {
+        // 小容量 + 小键空间：大量冲突、扩容和回移删除
+        LongSessionRegistry<Long> registry = new LongSessionRegistry<>();
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(20240601L);
+        for (int i = 0; i < 200_000; i++) {
+            long key = random.nextInt(5_000) - 100;
+            switch (random.nextInt(4)) {
+                case 0, 1 -> assertEquals(expected.put(key, (long) i), registry.put(key, (long) i));
+                case 2 -> assertEquals(expected.remove(key), registry.remove(key));
+                default -> assertEquals(expected.get(key), registry.get(key));
+            }
+        }
+        assertEquals(expected.size(), registry.size());
+        for (long key = -100; key < 4_900; key++) {
+            assertEquals(expected.get(key), registry.get(key), "key=" + key);
+        }
+        Map<Long, Long> visited = new HashMap<>();
+        registry.forEach((key, session) -> assertNull(visited.put(key, session)));
+        assertEquals(expected, visited);
+        assertEquals(expected.keySet(), registry.keySnapshot());
+    }
+
+    @Test
+    void removingEveryOtherKeyKeepsProbeChainsReachable() {
+        LongSessionRegistry<Long> registry = new LongSessionRegistry<>(16);
+        // 雪花 ID 风格的键：低位相同，依赖 mix 打散
+        List<Long> keys = new ArrayList<>();
+        for (long i = 0; i < 20_000; i++) {
+            long key = (i << 22) | 7;
+            keys.add(key);
+            registry.put(key, i);
+        }
+        for (int i = 0; i < keys.size(); i += 2) {
+            assertEquals((long) i, registry.remove(keys.get(i)));
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            Long value = registry.get(keys.get(i));
+            if (i % 2 == 0) {
+                assertNull(value);
+            } else {
+                assertEquals((long) i, value);
+            }
+        }
+        assertEquals(keys.size() / 2, registry.size());
+    }
+
+    @Test
+    void concurrentWritersAndReaders() throws Exception {
+        LongSessionRegistry<Long> registry = new LongSessionRegistry<>();
+        int writers = 4;
+        int keysPerWriter = 20_000;
+        ExecutorService executor = Executors.newFixedThreadPool(writers + 2);
+        CountDownLatch start = new CountDownLatch(1);
+        Set<Long> wrongReads = ConcurrentHashMap.newKeySet();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int w = 0; w < writers; w++) {
+                long base = (long) w * keysPerWriter;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (long key = base; key < base + keysPerWriter; key++) {
+                        registry.put(key, key);
+                    }
+                    // 删除一半，另一半保留
+                    for (long key = base; key < base + keysPerWriter; key += 2) {
+                        registry.remove(key);
+                    }
+                    return null;
+                }));
+            }
+            for (int r = 0; r < 2; r++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    Random random = new Random();
+                    for (int i = 0; i < 200_000; i++) {
+                        long key = random.nextInt(writers * keysPerWriter);
+                        Long value = registry.get(key);
+                        // 读到的值只能是该键自己的会话
+                        if (value != null && value != key) {
+                            wrongReads.add(key);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(wrongReads.isEmpty(), "读到其他键的会话: " + wrongReads);
+        Set<Long> expected = new HashSet<>();
+        for (long key = 1; key < (long) writers * keysPerWriter; key += 2) {
+            expected.add(key);
+            assertEquals(key, registry.get(key));
+        }
+        assertEquals(expected, registry.keySnapshot());
+        assertEquals(expected.size(), registry.size());
+    }
+}
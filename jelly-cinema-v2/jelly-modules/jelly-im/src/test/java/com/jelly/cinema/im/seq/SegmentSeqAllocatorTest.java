@@ -0,0 +1,329 @@
+package com.jelly.cinema.im.seq;
+
+import com.jelly.cinema.common.redis.service.RedisService;
+import com.jelly.cinema.im.mapper.ChatMessageMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * SegmentSeqAllocator 测试
+ *
+ * Redis 由 {@link FakeSeqRedis} 代替，按 lua/seq_lease.lua 的语义在内存中执行租约脚本并同步投递撤销通知，
+ * 两个分配器实例模拟两个节点共享同一个 Redis。
+ *
+ * @author Jelly Cinema
+ */
+class SegmentSeqAllocatorTest {
+
+    private static final String SESSION = "group_1";
+
+    private static final long LEASE_TTL_MS = 50;
+
+    private FakeSeqRedis redis;
+
+    private ChatMessageMapper chatMessageMapper;
+
+    @BeforeEach
+    void setUp() {
+        redis = new FakeSeqRedis();
+        chatMessageMapper = mock(ChatMessageMapper.class);
+    }
+
+    @Test
+    void singleNodeIssuesContiguousSeqs() {
+        SegmentSeqAllocator allocator = newAllocator();
+        List<Long> seqs = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            seqs.add(allocator.next(SESSION));
+        }
+        for (int i = 0; i < seqs.size(); i++) {
+            assertEquals(i + 1, seqs.get(i));
+        }
+    }
+
+    @Test
+    void expiredSegmentGivesBackUnusedSeqs() throws InterruptedException {
+        SegmentSeqAllocator allocator = newAllocator();
+        // 热起来，让步长增大
+        for (int i = 0; i < 100; i++) {
+            allocator.next(SESSION);
+        }
+        long last = allocator.next(SESSION);
+        // 号段过期后续租，剩余的序列号归还，冷会话不产生空洞
+        for (int round = 0; round < 3; round++) {
+            Thread.sleep(LEASE_TTL_MS * 2);
+            long seq = allocator.next(SESSION);
+            assertEquals(last + 1, seq);
+            last = seq;
+        }
+    }
+
+    @Test
+    void stepGrowsForHotSessionAndStaysWithinBounds() {
+        SegmentSeqAllocator allocator = newAllocator();
+        for (int i = 0; i < 5_000; i++) {
+            allocator.next(SESSION);
+        }
+        List<Integer> steps = redis.leasedSteps;
+        assertEquals(1, steps.get(0));
+        assertTrue(steps.stream().allMatch(step -> step >= 1 && step <= 64), "steps=" + steps);
+        assertTrue(steps.contains(64), "热会话的步长应增长到上限: " + steps);
+        assertTrue(steps.size() < 5_000 / 16, "续租次数过多: " + steps.size());
+    }
+
+    @Test
+    void newCounterStartsAboveDatabaseMaxSeq() {
+        when(chatMessageMapper.selectMaxSeq(SESSION)).thenReturn(41L);
+        SegmentSeqAllocator allocator = newAllocator();
+        assertEquals(42, allocator.next(SESSION));
+        assertEquals(43, allocator.next(SESSION));
+        assertTrue(redis.counter(SESSION) >= 43, "计数器应从数据库最大序列号继续");
+    }
+
+    @Test
+    void twoNodesStayOrderedBySendTime() {
+        SegmentSeqAllocator nodeA = newAllocator();
+        SegmentSeqAllocator nodeB = newAllocator();
+        long previous = 0;
+        // 交替在两个节点发送：后发送的消息序列号必须更大
+        for (int i = 0; i < 200; i++) {
+            SegmentSeqAllocator node = i % 3 == 0 ? nodeB : nodeA;
+            long seq = node.next(SESSION);
+            assertTrue(seq > previous, "seq " + seq + " 不大于前一条 " + previous + "（第 " + i + " 条）");
+            previous = seq;
+        }
+        assertTrue(redis.sharedFlag(SESSION), "多节点写入后应切换为逐条分配");
+    }
+
+    @Test
+    void contendedSessionDoesNotWaitForLease() {
+        SegmentSeqAllocator nodeA = newAllocator();
+        SegmentSeqAllocator nodeB = newAllocator();
+        // 租约远长于测试时间：等待对方租约到期会让测试超时
+        ReflectionTestUtils.setField(nodeA, "leaseTtlMs", 60_000L);
+        ReflectionTestUtils.setField(nodeB, "leaseTtlMs", 60_000L);
+        long started = System.currentTimeMillis();
+        assertEquals(1, nodeA.next(SESSION));
+        assertEquals(2, nodeB.next(SESSION));
+        assertEquals(3, nodeA.next(SESSION));
+        assertTrue(System.currentTimeMillis() - started < 1_000, "不应等待其他节点的租约到期");
+    }
+
+    @Test
+    void singleNodeNeedsFarFewerRoundTripsThanIncr() {
+        SegmentSeqAllocator allocator = newDefaultAllocator();
+        int messages = 10_000;
+        for (int i = 0; i < messages; i++) {
+            allocator.next(SESSION);
+        }
+        // 原方案每条消息一次 INCR；初始步长 16 翻倍到 1024 后每 1024 条一次 EVAL
+        assertTrue(redis.roundTrips() <= messages / 500, "Redis 往返次数: " + redis.roundTrips());
+    }
+
+    @Test
+    void sharedSessionCostsOneIncrPerMessage() {
+        SegmentSeqAllocator nodeA = newDefaultAllocator();
+        SegmentSeqAllocator nodeB = newDefaultAllocator();
+        int messages = 1_000;
+        for (int i = 0; i < messages; i++) {
+            (i % 2 == 0 ? nodeA : nodeB).next(SESSION);
+        }
+        // 只有第一条走号段租约，之后每条一次 INCR，与原方案相同
+        assertEquals(messages, redis.roundTrips());
+        // 被撤销号段中未发放的 15 个序列号成为空洞
+        assertEquals(messages + 15, redis.counter(SESSION));
+    }
+
+    @Test
+    void concurrentAllocationIsUniqueAndContiguous() throws Exception {
+        SegmentSeqAllocator allocator = newAllocator();
+        int threads = 8;
+        int perThread = 2_000;
+        Set<Long> seqs = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < perThread; i++) {
+                        assertTrue(seqs.add(allocator.next(SESSION)));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(threads * perThread, seqs.size());
+        for (long seq = 1; seq <= threads * perThread; seq++) {
+            assertTrue(seqs.contains(seq), "缺少序列号 " + seq);
+        }
+    }
+
+    @Test
+    void concurrentAllocationAcrossNodesIsUnique() throws Exception {
+        SegmentSeqAllocator nodeA = newAllocator();
+        SegmentSeqAllocator nodeB = newAllocator();
+        Set<Long> seqs = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                SegmentSeqAllocator node = t % 2 == 0 ? nodeA : nodeB;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        assertTrue(seqs.add(node.next(SESSION)));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(2_000, seqs.size());
+    }
+
+    private SegmentSeqAllocator newAllocator() {
+        RedisService redisService = mock(RedisService.class);
+        when(redisService.increment(anyString(), anyLong()))
+                .thenAnswer(invocation -> redis.incrBy(invocation.getArgument(0), invocation.getArgument(1)));
+        SegmentSeqAllocator allocator = new SegmentSeqAllocator(redisService, redis, chatMessageMapper,
+                mock(RedisMessageListenerContainer.class));
+        ReflectionTestUtils.setField(allocator, "initialStep", 1);
+        ReflectionTestUtils.setField(allocator, "maxStep", 64);
+        ReflectionTestUtils.setField(allocator, "leaseTtlMs", LEASE_TTL_MS);
+        ReflectionTestUtils.setField(allocator, "sharedTtlMs", 10_000L);
+        ReflectionTestUtils.setField(allocator, "maxSessions", 1_000L);
+        allocator.init();
+        redis.subscribers.add(allocator);
+        return allocator;
+    }
+
+    /**
+     * 生产环境默认参数的分配器
+     */
+    private SegmentSeqAllocator newDefaultAllocator() {
+        SegmentSeqAllocator allocator = newAllocator();
+        ReflectionTestUtils.setField(allocator, "initialStep", 16);
+        ReflectionTestUtils.setField(allocator, "maxStep", 1024);
+        ReflectionTestUtils.setField(allocator, "leaseTtlMs", 30_000L);
+        return allocator;
+    }
+
+    /**
+     * 内存中的租约脚本（与 lua/seq_lease.lua 的语义一致），整个脚本在一把锁内执行，相当于 Redis 的单线程
+     */
+    static final class FakeSeqRedis extends StringRedisTemplate {
+
+        private final Map<String, Long> counters = new HashMap<>();
+        private final Map<String, String> owners = new HashMap<>();
+        private final Map<String, Long> expireAt = new HashMap<>();
+        private final Map<String, Boolean> shared = new HashMap<>();
+        private final List<Integer> leasedSteps = new ArrayList<>();
+        private final List<SegmentSeqAllocator> subscribers = new ArrayList<>();
+        private long roundTrips;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public synchronized <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+            String counterKey = keys.get(0);
+            String ownerKey = keys.get(1);
+            String sharedKey = keys.get(2);
+            long now = System.currentTimeMillis();
+            String nodeId = (String) args[0];
+            int step = Integer.parseInt((String) args[1]);
+            long leaseMs = Long.parseLong((String) args[2]);
+            long prevFirstUnused = Long.parseLong((String) args[3]);
+            long prevEnd = Long.parseLong((String) args[4]);
+            long sharedMs = Long.parseLong((String) args[5]);
+            String sessionId = (String) args[7];
+            roundTrips++;
+
+            if (alive(sharedKey, now)) {
+                expireAt.put(sharedKey, now + sharedMs);
+                long seq = add(counterKey, 1);
+                return (T) List.of(seq, seq, 0L);
+            }
+            String owner = alive(ownerKey, now) ? owners.get(ownerKey) : null;
+            if (owner != null && !owner.equals(nodeId)) {
+                shared.put(sharedKey, true);
+                expireAt.put(sharedKey, now + sharedMs);
+                subscribers.forEach(subscriber -> subscriber.revoke(sessionId));
+                long seq = add(counterKey, 1);
+                return (T) List.of(seq, seq, 0L);
+            }
+            if (prevEnd > 0 && counters.getOrDefault(counterKey, 0L) == prevEnd) {
+                counters.put(counterKey, prevFirstUnused - 1);
+            }
+            owners.put(ownerKey, nodeId);
+            expireAt.put(ownerKey, now + leaseMs);
+            long last = add(counterKey, step);
+            leasedSteps.add(step);
+            return (T) List.of(last - step + 1, last, 1L);
+        }
+
+        synchronized long incrBy(String key, long delta) {
+            roundTrips++;
+            return add(key, delta);
+        }
+
+        synchronized long roundTrips() {
+            return roundTrips;
+        }
+
+        private long add(String key, long delta) {
+            return counters.merge(key, delta, Long::sum);
+        }
+
+        synchronized long counter(String sessionId) {
+            return counters.getOrDefault(SegmentSeqAllocator.SEQ_KEY + sessionId, 0L);
+        }
+
+        synchronized boolean sharedFlag(String sessionId) {
+            return shared.containsKey("jelly:im:seq:shared:" + sessionId);
+        }
+
+        private boolean alive(String key, long now) {
+            Long expire = expireAt.get(key);
+            if (expire == null || expire <= now) {
+                owners.remove(key);
+                shared.remove(key);
+                expireAt.remove(key);
+                return false;
+            }
+            return true;
+        }
+    }
+}